@@ -0,0 +1,52 @@
+package apoc.algo;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * compares one page rank iteration over the relationships in offset order with the same relationships in Hilbert order,
+ * the rank arrays of the larger graphs exceed the CPU caches
+ */
+public class PageRankEdgeOrderBenchmarks {
+
+    @State(Scope.Benchmark)
+    public static class RandomGraphState {
+
+        @Param({"100000", "2000000", "10000000"})
+        public int nodes;
+
+        @Param({"10"})
+        public int degree;
+
+        CoreGraphAlgorithms offsetOrder;
+        CoreGraphAlgorithms hilbertOrder;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            Random random = new Random(42);
+            int[] offsets = new int[nodes];
+            int[] rels = new int[nodes * degree];
+            for (int node = 0; node < nodes; node++) {
+                offsets[node] = node * degree;
+                for (int i = 0; i < degree; i++) {
+                    rels[node * degree + i] = random.nextInt(nodes);
+                }
+                Arrays.sort(rels, node * degree, (node + 1) * degree);
+            }
+            offsetOrder = new CoreGraphAlgorithms(offsets, rels);
+            hilbertOrder = new CoreGraphAlgorithms(offsets, rels).withHilbertOrder();
+        }
+    }
+
+    @Benchmark
+    public float[] pageRankOffsetOrder(RandomGraphState state) {
+        return state.offsetOrder.pageRank(1);
+    }
+
+    @Benchmark
+    public float[] pageRankHilbertOrder(RandomGraphState state) {
+        return state.hilbertOrder.pageRank(1);
+    }
+}
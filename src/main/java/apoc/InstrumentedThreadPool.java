@@ -0,0 +1,89 @@
+package apoc;
+
+import apoc.util.Util;
+
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread pool that measures how long its tasks wait in the queue and how long they run, and counts the tasks whose
+ * callers had to wait for room in the full queue. Its threads are named after the pool.
+ */
+class InstrumentedThreadPool extends ThreadPoolExecutor {
+    private final String name;
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+    private final LongAdder finished = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder runNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong maxRunNanos = new AtomicLong();
+
+    InstrumentedThreadPool(String name, int coreThreads, int maxThreads, BlockingQueue<Runnable> queue) {
+        super(coreThreads, maxThreads, 30L, TimeUnit.SECONDS, queue, threadFactory(name), new Pools.CallerBlocksPolicy());
+        this.name = name;
+    }
+
+    private static java.util.concurrent.ThreadFactory threadFactory(String name) {
+        AtomicInteger threads = new AtomicInteger();
+        return runnable -> new Thread(runnable, "apoc-" + name + "-" + threads.incrementAndGet());
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        submitted.increment();
+        super.execute(new Timed(command));
+    }
+
+    void blocked() {
+        blocked.increment();
+    }
+
+    private class Timed implements Runnable {
+        private final Runnable task;
+        private final long queued = System.nanoTime();
+
+        Timed(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            record(waitNanos, maxWaitNanos, start - queued);
+            try {
+                task.run();
+            } finally {
+                record(runNanos, maxRunNanos, System.nanoTime() - start);
+                finished.increment();
+            }
+        }
+    }
+
+    private static void record(LongAdder total, AtomicLong max, long nanos) {
+        total.add(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    Map<String, Object> getStatistics() {
+        long tasks = Math.max(1, finished.sum());
+        Map<String, Object> stats = Pools.statistics(name, this);
+        stats.putAll(Util.map("submittedTasks", submitted.sum(), "rejectedTasks", blocked.sum(),
+                "avgWaitMillis", toMillis(waitNanos.sum()) / tasks, "maxWaitMillis", toMillis(maxWaitNanos.get()),
+                "avgRunMillis", toMillis(runNanos.sum()) / tasks, "maxRunMillis", toMillis(maxRunNanos.get())));
+        return stats;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
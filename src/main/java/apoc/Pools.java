@@ -5,21 +5,44 @@ import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.kernel.impl.util.JobScheduler;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
-import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
 
 public class Pools {
 
     static final String CONFIG_JOBS_SCHEDULED_NUM_THREADS = "jobs.scheduled.num_threads";
     static final String CONFIG_JOBS_POOL_NUM_THREADS = "jobs.pool.num_threads";
+    // per named pool, e.g. jobs.algo.num_threads and jobs.algo.queue_size
+    static final String CONFIG_JOBS_NAMED_NUM_THREADS = "jobs.%s.num_threads";
+    static final String CONFIG_JOBS_NAMED_QUEUE_SIZE = "jobs.%s.queue_size";
+
+    public static final String ALGO_POOL = "algo";
+    public static final String IMPORT_POOL = "import";
+    public static final String WORK_STEALING_POOL = "forkjoin";
+    public static final String WARMUP_POOL = "warmup";
 
     private final static int DEFAULT_SCHEDULED_THREADS = Runtime.getRuntime().availableProcessors() / 4;
     private final static int DEFAULT_POOL_THREADS = Runtime.getRuntime().availableProcessors() * 2;
+    private final static int DEFAULT_WORK_STEALING_THREADS = Runtime.getRuntime().availableProcessors();
+    private final static int QUEUED_TASKS_PER_THREAD = 25;
+
+    // pools by name, for their statistics
+    private final static Map<String, ExecutorService> POOLS = new LinkedHashMap<>();
 
     public final static ExecutorService SINGLE = createSinglePool();
     public final static ExecutorService DEFAULT = createDefaultPool();
+    // graph algorithms, so that analytics don't hold up the transactions run by the default pool
+    public final static ExecutorService ALGO = createNamedPool(ALGO_POOL);
+    // batches of apoc.periodic.iterate and other bulk writes
+    public final static ExecutorService IMPORT = createNamedPool(IMPORT_POOL);
+    // loading pages and records for apoc.warmup, so that a warmup doesn't occupy the default pool for minutes
+    public final static ExecutorService WARMUP = createNamedPool(WARMUP_POOL);
+    // CPU-bound work that splits itself into tasks of uneven cost, idle threads steal the pending tasks of busy ones
+    public final static ForkJoinPool WORK_STEALING = createWorkStealingPool();
     public final static ScheduledExecutorService SCHEDULED = createScheduledPool();
     public static JobScheduler NEO4J_SCHEDULER = null;
 
@@ -29,42 +52,117 @@ public class Pools {
 
     public static ExecutorService createDefaultPool() {
         int threads = getNoThreadsInDefaultPool();
-        int queueSize = threads * 25;
-        return new ThreadPoolExecutor(threads / 2, threads, 30L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize),
-                new CallerBlocksPolicy());
-//                new ThreadPoolExecutor.CallerRunsPolicy());
+        int queueSize = getQueueSize("default", threads);
+        return register(new InstrumentedThreadPool("default", threads / 2, threads, new ArrayBlockingQueue<>(queueSize)));
+    }
+
+    /**
+     * a pool that starts all of its threads before it queues tasks, as its callers usually submit one task per thread
+     * and wait for all of them, the idle threads stop after a while
+     */
+    private static ExecutorService createNamedPool(String name) {
+        int threads = getNoThreadsInPool(name);
+        InstrumentedThreadPool pool = new InstrumentedThreadPool(name, threads, threads, new ArrayBlockingQueue<>(getQueueSize(name, threads)));
+        pool.allowCoreThreadTimeOut(true);
+        return register(pool);
+    }
+
+    /**
+     * a pool with jobs.forkjoin.num_threads threads, by default one per processor, as its tasks don't block
+     */
+    private static ForkJoinPool createWorkStealingPool() {
+        Integer threads = Util.toInteger(ApocConfiguration.get(String.format(CONFIG_JOBS_NAMED_NUM_THREADS, WORK_STEALING_POOL), DEFAULT_WORK_STEALING_THREADS));
+        ForkJoinPool.ForkJoinWorkerThreadFactory threadFactory = pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("apoc-" + WORK_STEALING_POOL + "-" + thread.getPoolIndex());
+            return thread;
+        };
+        return register(WORK_STEALING_POOL, new ForkJoinPool(Math.max(1, threads == null ? DEFAULT_WORK_STEALING_THREADS : threads), threadFactory, null, false));
     }
+
+    private static <T extends ThreadPoolExecutor> T register(T pool) {
+        return register(pool instanceof InstrumentedThreadPool ? ((InstrumentedThreadPool) pool).getName() : "scheduled", pool);
+    }
+
+    private static <T extends ExecutorService> T register(String name, T pool) {
+        POOLS.put(name, pool);
+        return pool;
+    }
+
     static class CallerBlocksPolicy implements RejectedExecutionHandler {
         @Override
         public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
             if (!executor.isShutdown()) {
-                // block caller for 100ns
-                LockSupport.parkNanos(100);
+                // all threads are busy and the queue is full, block the caller until there is room in the queue
+                if (executor instanceof InstrumentedThreadPool) {
+                    ((InstrumentedThreadPool) executor).blocked();
+                }
                 try {
-                    // submit again
-                    executor.submit(r).get();
-                } catch (InterruptedException | ExecutionException e) {
-                    throw new RuntimeException(e);
+                    executor.getQueue().put(r);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException("Interrupted while waiting for room in the queue", e);
                 }
             }
         }
     }
 
     public static int getNoThreadsInDefaultPool() {
-        Integer maxThreads = Util.toInteger(ApocConfiguration.get(CONFIG_JOBS_POOL_NUM_THREADS, DEFAULT_POOL_THREADS));
+        Object configured = ApocConfiguration.get(String.format(CONFIG_JOBS_NAMED_NUM_THREADS, "default"), null);
+        Integer maxThreads = Util.toInteger(configured != null ? configured : ApocConfiguration.get(CONFIG_JOBS_POOL_NUM_THREADS, DEFAULT_POOL_THREADS));
         return Math.max(1, maxThreads == null ? DEFAULT_POOL_THREADS : maxThreads);
     }
+    /**
+     * the threads of a named pool from jobs.<name>.num_threads, by default as many as in the default pool
+     */
+    public static int getNoThreadsInPool(String name) {
+        Integer threads = Util.toInteger(ApocConfiguration.get(String.format(CONFIG_JOBS_NAMED_NUM_THREADS, name), getNoThreadsInDefaultPool()));
+        return Math.max(1, threads == null ? getNoThreadsInDefaultPool() : threads);
+    }
+    public static int getNoThreadsInAlgoPool() {
+        return getNoThreadsInPool(ALGO_POOL);
+    }
+    private static int getQueueSize(String name, int threads) {
+        Integer queueSize = Util.toInteger(ApocConfiguration.get(String.format(CONFIG_JOBS_NAMED_QUEUE_SIZE, name), threads * QUEUED_TASKS_PER_THREAD));
+        return Math.max(1, queueSize == null ? threads * QUEUED_TASKS_PER_THREAD : queueSize);
+    }
     public static int getNoThreadsInScheduledPool() {
         Integer maxThreads = Util.toInteger(ApocConfiguration.get(CONFIG_JOBS_SCHEDULED_NUM_THREADS, DEFAULT_SCHEDULED_THREADS));
         return Math.max(1, maxThreads == null ? DEFAULT_POOL_THREADS : maxThreads);
     }
 
     private static ExecutorService createSinglePool() {
-        return Executors.newSingleThreadExecutor();
+        return register(new InstrumentedThreadPool("single", 1, 1, new LinkedBlockingQueue<>()));
     }
 
     private static ScheduledExecutorService createScheduledPool() {
-        return Executors.newScheduledThreadPool(getNoThreadsInScheduledPool());
+        return register(new ScheduledThreadPoolExecutor(getNoThreadsInScheduledPool()));
+    }
+
+    /**
+     * threads, queue and task latencies of each pool
+     */
+    public static List<Map<String, Object>> getStatistics() {
+        List<Map<String, Object>> result = new ArrayList<>(POOLS.size());
+        POOLS.forEach((name, pool) -> {
+            if (pool instanceof InstrumentedThreadPool) result.add(((InstrumentedThreadPool) pool).getStatistics());
+            else if (pool instanceof ThreadPoolExecutor) result.add(statistics(name, (ThreadPoolExecutor) pool));
+            else if (pool instanceof ForkJoinPool) result.add(statistics(name, (ForkJoinPool) pool));
+        });
+        return result;
+    }
+
+    static Map<String, Object> statistics(String name, ForkJoinPool pool) {
+        return Util.map("name", name, "coreThreads", pool.getParallelism(), "maxThreads", pool.getParallelism(),
+                "threads", pool.getPoolSize(), "activeThreads", pool.getActiveThreadCount(),
+                "queueSize", pool.getQueuedTaskCount() + pool.getQueuedSubmissionCount(), "stolenTasks", pool.getStealCount());
+    }
+
+    static Map<String, Object> statistics(String name, ThreadPoolExecutor pool) {
+        return Util.map("name", name, "coreThreads", pool.getCorePoolSize(), "maxThreads", pool.getMaximumPoolSize(),
+                "threads", pool.getPoolSize(), "activeThreads", pool.getActiveCount(), "largestThreads", pool.getLargestPoolSize(),
+                "queueSize", pool.getQueue().size(), "queueRemaining", pool.getQueue().remainingCapacity(),
+                "completedTasks", pool.getCompletedTaskCount());
     }
 
     public static <T> Future<Void> processBatch(List<T> batch, GraphDatabaseService db, Consumer<T> action) {
@@ -38,15 +38,17 @@ public class Centrality {
     @Context
     public GraphDatabaseAPI dbAPI;
 
-    static final ExecutorService pool = Pools.DEFAULT;
+    static final ExecutorService pool = Pools.ALGO;
+    static final double DEFAULT_SAMPLING_CONFIDENCE = 0.95;
 
     @Procedure("apoc.algo.betweenness")
-    @Description("CALL apoc.algo.betweenness(['TYPE',...],nodes,BOTH) YIELD node, score - calculate betweenness " +
-            "centrality for given nodes")
+    @Description("CALL apoc.algo.betweenness(['TYPE',...],nodes,BOTH,{topK:0}) YIELD node, score - calculate betweenness " +
+            "centrality for given nodes, with topK only the k most central nodes ordered by score")
     public Stream<NodeScore> betweenness(
             @Name("types") List<String> types,
             @Name("nodes") List<Node> nodes,
-            @Name("direction") String direction) {
+            @Name("direction") String direction,
+            @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
         assertParametersNotNull(types, nodes);
         try {
             RelationshipType[] relationshipTypes = types.isEmpty()
@@ -63,6 +65,12 @@ public class Centrality {
             BetweennessCentrality<Double> betweennessCentrality =
                     new BetweennessCentrality<>(sssp, new HashSet<>(nodes));
 
+            int topK = AlgoUtils.getTopK(config);
+            if (topK > 0) {
+                return AlgoUtils.topK(db, nodes.stream().mapToLong(Node::getId),
+                        id -> betweennessCentrality.getCentrality(db.getNodeById(id)), topK);
+            }
+
             return nodes.stream()
                     .map(node -> new NodeScore(node, betweennessCentrality.getCentrality(node)));
         } catch (Exception e) {
@@ -75,7 +83,8 @@ public class Centrality {
 
     @Procedure(value = "apoc.algo.betweennessCypher",mode = Mode.WRITE)
     @Description("CALL apoc.algo.betweennessCypher(node_cypher,rel_cypher,write) - calculates betweeness " +
-    " centrality based on cypher input")
+    " centrality based on cypher input, approximated from a sample of source nodes with {samples:k} or {sampleRate:0.01} or {error:0.01,confidence:0.95} " +
+    "and {sampling:'uniform'|'degree',seed:42}")
     public Stream<apoc.algo.algorithms.AlgorithmInterface.Statistics> betweennessCypher(
             @Name("config") Map<String, Object> config) {
         String nodeCypher = AlgoUtils.getCypher(config, AlgoUtils.SETTING_CYPHER_NODE, AlgoUtils.DEFAULT_CYPHER_NODE);
@@ -83,7 +92,7 @@ public class Centrality {
         boolean shouldWrite = (boolean)config.getOrDefault(AlgoUtils.SETTING_WRITE, AlgoUtils.DEFAULT_PAGE_RANK_WRITE);
         Number weight = (Number) config.get(SETTING_WEIGHTED);
         Number batchSize = (Number) config.get(SETTING_BATCH_SIZE);
-        int concurrency = ((Number) config.getOrDefault("concurrency",Pools.getNoThreadsInDefaultPool())).intValue();
+        int concurrency = ((Number) config.getOrDefault("concurrency",Pools.getNoThreadsInAlgoPool())).intValue();
         String property = (String) config.getOrDefault("property","betweenness_centrality");
 
         long beforeReading = System.currentTimeMillis();
@@ -105,6 +114,7 @@ public class Centrality {
         log.info("BetweennessCypher: Number of relationships: " + betweennessCentrality.numberOfRels());
 
 
+        withSampling(betweennessCentrality, config).withWriteBatchSize(AlgoUtils.getWriteBatchSize(config));
         betweennessCentrality.computeUnweightedParallel();
 
         long afterComputation = System.currentTimeMillis();
@@ -121,13 +131,67 @@ public class Centrality {
     }
 
 
+    @Procedure(value = "apoc.algo.closenessCypher", mode = Mode.WRITE)
+    @Description("CALL apoc.algo.closenessCypher({node_cypher,rel_cypher,write:false,property:'closeness',harmonicProperty:'harmonic',writeBatchSize:10000}) - calculates " +
+            "closeness and harmonic centrality of all nodes along the relationships of the cypher input with a bit-parallel multi-source breadth first search")
+    public Stream<apoc.algo.algorithms.AlgorithmInterface.Statistics> closenessCypher(
+            @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        String nodeCypher = AlgoUtils.getCypher(config, AlgoUtils.SETTING_CYPHER_NODE, AlgoUtils.DEFAULT_CYPHER_NODE);
+        String relCypher = AlgoUtils.getCypher(config, AlgoUtils.SETTING_CYPHER_REL, AlgoUtils.DEFAULT_CYPHER_REL);
+        boolean shouldWrite = Util.toBoolean(config.getOrDefault(AlgoUtils.SETTING_WRITE, false));
+        Number batchSize = (Number) config.get(SETTING_BATCH_SIZE);
+        int concurrency = ((Number) config.getOrDefault("concurrency", Pools.getNoThreadsInAlgoPool())).intValue();
+        String property = (String) config.getOrDefault("property", "closeness");
+        String harmonicProperty = (String) config.getOrDefault("harmonicProperty", "harmonic");
+
+        Algorithm algorithm = new Algorithm(dbAPI, pool, log);
+        if (!algorithm.readNodeAndRelCypher(relCypher, nodeCypher, null, batchSize, concurrency)) {
+            String errorMsg = "Failure while reading cypher queries. Make sure the results are ordered.";
+            log.info(errorMsg);
+            throw new RuntimeException(errorMsg);
+        }
+        Closeness closeness = new Closeness(algorithm, pool, log).withProperty(property)
+                .withWriteBatchSize(AlgoUtils.getWriteBatchSize(config));
+        closeness.compute();
+        if (shouldWrite) {
+            closeness.writeResultsToDB(dbAPI, harmonicProperty);
+            log.info("ClosenessCypher: Writeback took " + closeness.getStatistics().writeMillis + " milliseconds");
+        }
+        return Stream.of(closeness.getStatistics());
+    }
+
+    /**
+     * configures sampled betweenness from {samples:k}, {sampleRate:fraction} or {error:e,confidence:c},
+     * and {sampling:'uniform'|'degree', seed:long}, without any of them betweenness is exact
+     */
+    static apoc.algo.algorithms.BetweennessCentrality withSampling(apoc.algo.algorithms.BetweennessCentrality betweenness,
+                                                                   Map<String, Object> config) {
+        long nodes = betweenness.numberOfNodes();
+        int samples = 0;
+        if (config.containsKey("samples")) {
+            samples = Util.toLong(config.get("samples")).intValue();
+        } else if (config.containsKey("sampleRate")) {
+            samples = (int) Math.ceil(nodes * Util.toDouble(config.get("sampleRate")));
+        } else if (config.containsKey("error")) {
+            double confidence = Util.toDouble(config.getOrDefault("confidence", DEFAULT_SAMPLING_CONFIDENCE));
+            samples = apoc.algo.algorithms.BetweennessCentrality.sampleSize(nodes, Util.toDouble(config.get("error")), confidence);
+        }
+        String sampling = (String) config.getOrDefault("sampling", "uniform");
+        if (!"uniform".equalsIgnoreCase(sampling) && !"degree".equalsIgnoreCase(sampling)) {
+            throw new IllegalArgumentException("Unknown sampling " + sampling + ", use 'uniform' or 'degree'");
+        }
+        long seed = config.containsKey("seed") ? Util.toLong(config.get("seed")) : System.nanoTime();
+        return betweenness.withSampling(samples, "degree".equalsIgnoreCase(sampling), seed);
+    }
+
     @Procedure("apoc.algo.closeness")
-    @Description("CALL apoc.algo.closeness(['TYPE',...],nodes, INCOMING) YIELD node, score - calculate closeness " +
-            "centrality for given nodes")
+    @Description("CALL apoc.algo.closeness(['TYPE',...],nodes, INCOMING,{topK:0}) YIELD node, score - calculate closeness " +
+            "centrality for given nodes, with topK only the k most central nodes ordered by score")
     public Stream<NodeScore> closeness(
             @Name("types") List<String> types,
             @Name("nodes") List<Node> nodes,
-            @Name("direction") String direction) {
+            @Name("direction") String direction,
+            @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
         assertParametersNotNull(types, nodes);
         try {
             RelationshipType[] relationshipTypes = types.isEmpty()
@@ -156,6 +220,11 @@ public class Centrality {
                                 }
                             });
 
+            int topK = AlgoUtils.getTopK(config);
+            if (topK > 0) {
+                return AlgoUtils.topK(db, nodes.stream().mapToLong(Node::getId),
+                        id -> closenessCentrality.getCentrality(db.getNodeById(id)), topK);
+            }
             return nodes.stream()
                     .map(node -> new NodeScore(node, closenessCentrality.getCentrality(node)));
         } catch (Exception e) {
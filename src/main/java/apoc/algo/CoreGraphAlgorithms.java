@@ -1,15 +1,33 @@
 package apoc.algo;
 
+import apoc.Pools;
+import apoc.algo.algorithms.Adjacency;
+import apoc.algo.algorithms.ProjectedGraph;
+import apoc.algo.pagerank.NodeCounter;
+import apoc.util.Util;
 import org.neo4j.collection.primitive.PrimitiveLongIterator;
 import org.neo4j.cursor.Cursor;
 import org.neo4j.graphdb.Direction;
 import org.neo4j.kernel.api.ReadOperations;
 import org.neo4j.kernel.api.Statement;
 import org.neo4j.kernel.api.exceptions.EntityNotFoundException;
+import org.neo4j.kernel.impl.api.RelationshipVisitor;
 import org.neo4j.kernel.impl.api.store.RelationshipIterator;
+import org.neo4j.kernel.impl.store.NodeStore;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.storageengine.api.NodeItem;
 import org.neo4j.storageengine.api.RelationshipItem;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
 import static org.neo4j.graphdb.Direction.OUTGOING;
 import static org.neo4j.kernel.api.ReadOperations.ANY_LABEL;
 import static org.neo4j.kernel.api.ReadOperations.ANY_RELATIONSHIP_TYPE;
@@ -25,13 +43,27 @@ import static org.neo4j.kernel.api.ReadOperations.ANY_RELATIONSHIP_TYPE;
  */
 public class CoreGraphAlgorithms {
     private final Statement stmt;
+    private final ProjectedGraph graph;
+    private final GraphDatabaseAPI db;
+    private final ExecutorService pool;
     private int nodeCount;
+    private int nodeIdSpace;
     private int relCount;
     private int[] nodeRelOffsets;
     private int[] rels;
     public static final float ALPHA = 0.15f;
     private int labelId;
     private int relTypeId;
+    private int[] degrees;
+    // outgoing degrees if the relationships were loaded in another direction
+    private int[] outDegrees;
+    private int[] hilbertStart, hilbertEnd;
+    private int iterations;
+    private double l1Norm;
+    private LoadStatistics loadStatistics;
+    // batches per thread, so that ranges with many relationships don't leave the other threads idle
+    static final int BATCHES_PER_THREAD = 4;
+    static final int MIN_UNION_FIND_BATCH = 10_000;
 
     private long spreadBits32(int y) {
         long x = y;
@@ -110,20 +142,60 @@ public class CoreGraphAlgorithms {
 
     //convert (x,y) to d
     int xy2d(int n, int x, int y) {
-        int[] xy = new int[2];
-        int rx, ry, d = 0;
-        // loop over bits not value
-        for (int s = n >> 1; s != 0; s >>= 1) {
-            rx = (x & s) != 0 ? 1 : 0; // todo better, perhaps 0*x or / s aka >>
-            ry = (y & s) != 0 ? 1 : 0;
+        return (int) hilbertIndex(n, x, y);
+    }
+
+    /**
+     * position of the cell (x,y) along the Hilbert curve filling an n x n grid, n being a power of two
+     * long arithmetic as n*n exceeds the int range for more than 2^15 nodes
+     */
+    static long hilbertIndex(long n, long x, long y) {
+        long d = 0;
+        for (long s = n >> 1; s != 0; s >>= 1) {
+            int rx = (x & s) != 0 ? 1 : 0;
+            int ry = (y & s) != 0 ? 1 : 0;
             d += s * s * ((3 * rx) ^ ry);
-            xy[0] = x;
-            xy[1] = y;
-            rot(s, xy, rx, ry);
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = n - 1 - x;
+                    y = n - 1 - y;
+                }
+                long t = x;
+                x = y;
+                y = t;
+            }
         }
         return d;
     }
 
+    // inverse of hilbertIndex, writes x to xs[idx] and y to ys[idx]
+    static void hilbertCell(long n, long d, int[] xs, int[] ys, int idx) {
+        long x = 0, y = 0, t = d;
+        for (long s = 1; s < n; s <<= 1) {
+            long rx = 1 & (t >> 1);
+            long ry = 1 & (t ^ rx);
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = s - 1 - x;
+                    y = s - 1 - y;
+                }
+                long tmp = x;
+                x = y;
+                y = tmp;
+            }
+            x += s * rx;
+            y += s * ry;
+            t >>= 2;
+        }
+        xs[idx] = (int) x;
+        ys[idx] = (int) y;
+    }
+
+    // smallest power of two grid that holds all node-ids
+    static long hilbertSize(int nodeIdSpace) {
+        return nodeIdSpace <= 1 ? 1 : Long.highestOneBit(nodeIdSpace - 1L) << 1;
+    }
+
     //convert d to (x,y)
     void d2xy(int n, int d, int[] xy) {
         int rx, ry, s, t = d;
@@ -211,16 +283,19 @@ public class CoreGraphAlgorithms {
     }
 
     public int[] loadDegrees(String relName, Direction direction) throws EntityNotFoundException {
+        if (stmt == null) {
+            return Util.withStatement(db, (s, ops) -> loadDegrees(ops, relName == null ? ANY_RELATIONSHIP_TYPE : ops.relationshipTypeGetForName(relName), direction));
+        }
         ReadOperations ops = stmt.readOperations();
-        int[] degrees = new int[nodeCount];
+        int[] degrees = new int[nodeIdSpace];
         if (relName == null) {
-            for (int nodeIdx=0; nodeIdx<nodeCount; nodeIdx++) {
+            for (int nodeIdx=0; nodeIdx<nodeIdSpace; nodeIdx++) {
                 degrees[nodeIdx] = ops.nodeGetDegree(unMapId(nodeIdx), direction);
             }
         }
         else {
             int relType = ops.relationshipTypeGetForName(relName);
-            for (int nodeIdx=0; nodeIdx<nodeCount; nodeIdx++) {
+            for (int nodeIdx=0; nodeIdx<nodeIdSpace; nodeIdx++) {
                 degrees[nodeIdx] = ops.nodeGetDegree(unMapId(nodeIdx), direction, relType);
             }
         }
@@ -228,8 +303,8 @@ public class CoreGraphAlgorithms {
     }
     private int[] loadDegrees(ReadOperations ops, int relType, Direction direction) {
         try {
-            int[] degrees = new int[nodeCount];
-            for (int nodeIdx = 0; nodeIdx < nodeCount; nodeIdx++) {
+            int[] degrees = new int[nodeIdSpace];
+            for (int nodeIdx = 0; nodeIdx < nodeIdSpace; nodeIdx++) {
                 degrees[nodeIdx] = relType == ANY_RELATIONSHIP_TYPE ?
                         ops.nodeGetDegree(unMapId(nodeIdx), direction) :
                         ops.nodeGetDegree(unMapId(nodeIdx), direction, relType);
@@ -279,12 +354,45 @@ public class CoreGraphAlgorithms {
     }
 
     private void runProgram(RelationshipProgram consumer) {
-        runProgram(nodeCount, nodeRelOffsets,rels,consumer);
+        runProgram(consumer, null);
     }
 
-    private static void runProgram(int nodeCount, int[] offsets, int[] rels, RelationshipProgram consumer) {
+    // only runs the program for relationships of active start nodes, all nodes are active if active is null
+    private void runProgram(RelationshipProgram consumer, IntPredicate active) {
+        if (hilbertStart != null) {
+            int[] starts = hilbertStart, ends = hilbertEnd;
+            for (int i = 0; i < starts.length; i++) {
+                if (active == null || active.test(starts[i])) consumer.accept(starts[i], ends[i]);
+            }
+            return;
+        }
+        if (graph != null) {
+            graph.forEachRelationship((start, end) -> {
+                if (active == null || active.test(start)) consumer.accept(start, end);
+            });
+            return;
+        }
+        runProgram(0, nodeIdSpace, nodeRelOffsets,rels,active,consumer);
+    }
+
+    // runs the program for the relationships of the start nodes from (inclusive) to (exclusive)
+    private void runProgram(int from, int to, RelationshipProgram consumer) {
+        if (graph != null) {
+            Adjacency.Cursor cursor = graph.adjacency(OUTGOING).cursor();
+            for (int start = from; start < to; start++) {
+                cursor.init(start);
+                while (cursor.hasNext()) consumer.accept(start, cursor.next());
+            }
+            return;
+        }
+        runProgram(from, to, nodeRelOffsets, rels, null, consumer);
+    }
+
+    private static void runProgram(int from, int to, int[] offsets, int[] rels, IntPredicate active, RelationshipProgram consumer) {
+        int nodeCount = offsets.length;
         int start;
-        for (start = 0; start < nodeCount ; start++) {
+        for (start = from; start < to ; start++) {
+            if (active != null && !active.test(start)) continue;
             int offset = offsets[start];
             int nextOffset = start+1 == nodeCount ? rels.length : offsets[start+1];
             while (offset != nextOffset) {
@@ -296,6 +404,40 @@ public class CoreGraphAlgorithms {
         }
     }
 
+    /**
+     * Orders the relationships along the Hilbert curve over the (start,end) adjacency matrix, which is then used by
+     * pageRank, pregel and the other programs instead of the offset order.
+     * Consecutive relationships then touch nearby start and end entries of the per-node arrays, which keeps them in
+     * cache for graphs whose node arrays exceed the CPU caches, at the cost of two int arrays for the reordered relationships.
+     * Relationship order changes floating point summation order, results can differ in the last digits.
+     */
+    public CoreGraphAlgorithms withHilbertOrder() {
+        long n = hilbertSize(nodeIdSpace);
+        long[] keys;
+        if (graph != null) {
+            keys = new long[relCount];
+            int[] idx = {0};
+            graph.forEachRelationship((start, end) -> keys[idx[0]++] = hilbertIndex(n, start, end));
+        } else {
+            keys = new long[rels.length];
+            int nodes = Math.min(nodeIdSpace, nodeRelOffsets.length);
+            IntStream.range(0, nodes).parallel().forEach(node -> {
+                int next = node + 1 == nodes ? rels.length : nodeRelOffsets[node + 1];
+                for (int i = nodeRelOffsets[node]; i < next; i++) {
+                    keys[i] = rels[i] == -1 ? Long.MAX_VALUE : hilbertIndex(n, node, rels[i]);
+                }
+            });
+        }
+        Arrays.parallelSort(keys);
+        int count = keys.length;
+        while (count > 0 && keys[count - 1] == Long.MAX_VALUE) count--;
+        int[] starts = new int[count], ends = new int[count];
+        IntStream.range(0, count).parallel().forEach(i -> hilbertCell(n, keys[i], starts, ends, i));
+        this.hilbertStart = starts;
+        this.hilbertEnd = ends;
+        return this;
+    }
+
     /*
         let mut src: Vec<f32> = (0..nodes).map(|_| 0f32).collect();
     let mut dst: Vec<f32> = (0..nodes).map(|_| 0f32).collect();
@@ -312,23 +454,76 @@ public class CoreGraphAlgorithms {
      */
 
     public float[] pageRank(int iterations) {
-        float oneMinusAlpha = 1 - ALPHA;
-        int[] degrees = loadDegrees(stmt.readOperations(), relTypeId , OUTGOING);
-        float[] dst = new float[nodeCount]; float[] src = new float[nodeCount];
+        return pageRank(iterations, 0, false);
+    }
 
+    /**
+     * stops early once the L1 norm of the rank changes of an iteration is below the tolerance,
+     * in delta mode only the rank changes of nodes whose change exceeds tolerance / nodes are propagated,
+     * which skips the relationships of all other nodes
+     */
+    public float[] pageRank(int iterations, double tolerance, boolean delta) {
+        float oneMinusAlpha = 1 - ALPHA;
+        int[] degrees = graph != null ? graph.degrees(OUTGOING) : this.degrees != null ? this.degrees : loadDegrees(stmt.readOperations(), relTypeId , OUTGOING);
+        float[] dst = new float[nodeIdSpace]; float[] src = new float[nodeIdSpace];
+        // ranks of the previous iteration, or the accumulated ranks in delta mode
+        float[] ranks = tolerance > 0 || delta ? new float[nodeIdSpace] : null;
+        float threshold = (float) (tolerance / nodeIdSpace);
+
+        this.iterations = 0;
+        this.l1Norm = 0;
         for (int it = 0; it < iterations; it++) {
-            for (int node = 0; node < nodeCount; node++) {
-                src[node] = ALPHA * dst[node] / (float) degrees[node];
-                dst[node] = oneMinusAlpha;
+            if (delta && it > 0) {
+                for (int node = 0; node < nodeIdSpace; node++) {
+                    float change = dst[node];
+                    src[node] = Math.abs(change) > threshold ? ALPHA * change / (float) degrees[node] : 0;
+                    dst[node] = 0;
+                }
+                runProgram((start, end) -> dst[end] += src[start], node -> src[node] != 0);
+            } else {
+                for (int node = 0; node < nodeIdSpace; node++) {
+                    if (ranks != null) ranks[node] = dst[node];
+                    src[node] = ALPHA * dst[node] / (float) degrees[node];
+                    dst[node] = oneMinusAlpha;
+                }
+                runProgram((start, end) -> dst[end] += src[start]);
+            }
+            this.iterations = it + 1;
+            if (ranks != null) {
+                double sum = 0;
+                for (int node = 0; node < nodeIdSpace; node++) {
+                    if (delta) {
+                        ranks[node] += dst[node];
+                        sum += Math.abs(dst[node]);
+                    } else {
+                        sum += Math.abs(dst[node] - ranks[node]);
+                    }
+                }
+                this.l1Norm = sum;
+                if (sum < tolerance) break;
             }
-            runProgram((start, end) -> dst[end] += src[start]);
         }
-        for (int node = 0; node < nodeCount; node++) {
-            if (degrees[node] == 0 && dst[node] == oneMinusAlpha) dst[node] = 0;
+        if (delta) System.arraycopy(ranks, 0, dst, 0, nodeIdSpace);
+        for (int node = 0; node < nodeIdSpace; node++) {
+            if (degrees[node] <= 0 && dst[node] == oneMinusAlpha) dst[node] = 0;
         }
         return dst;
     }
 
+    /**
+     * number of iterations the last pageRank ran
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * L1 norm of the rank changes in the last iteration of pageRank, if run with a tolerance or in delta mode
+     */
+    public double getL1Norm() {
+        return l1Norm;
+    }
+
     interface SuperStep {
         boolean run();
     }
@@ -344,7 +539,7 @@ public class CoreGraphAlgorithms {
         class PageRank implements SuperStep, RelationshipProgram {
             private int iterations;
             float alpha = 0.15f; float oneMinusAlpha = 1 - alpha;
-            float[] dst = new float[nodeCount]; float[] src = new float[nodeCount];
+            float[] dst = new float[nodeIdSpace]; float[] src = new float[nodeIdSpace];
 
             public PageRank(int iterations) {
                 this.iterations = iterations;
@@ -357,7 +552,7 @@ public class CoreGraphAlgorithms {
 
             @Override
             public boolean run() {
-                for (int node = 0; node < nodeCount; node++) {
+                for (int node = 0; node < nodeIdSpace; node++) {
                     src[node] = alpha * dst[node] / (float) nodeRelOffsets[node];
                     dst[node] = oneMinusAlpha;
                 }
@@ -388,8 +583,8 @@ public class CoreGraphAlgorithms {
      */
 
     public int[] labelPropagation() {
-        int[] labels = new int[nodeCount];
-        for (int nodeId = 0; nodeId < nodeCount; nodeId++) labels[nodeId] = nodeId;
+        int[] labels = new int[nodeIdSpace];
+        for (int nodeId = 0; nodeId < nodeIdSpace; nodeId++) labels[nodeId] = nodeId;
 
         boolean[] done = {false};
         while (!done[0]) {
@@ -423,9 +618,9 @@ public class CoreGraphAlgorithms {
      */
 
     public int[] unionFind() {
-        byte[] rank = new byte[nodeCount];
-        int[] root = new int[nodeCount];
-        for (int nodeId = 0; nodeId < nodeCount; nodeId++) root[nodeId] = nodeId;
+        byte[] rank = new byte[nodeIdSpace];
+        int[] root = new int[nodeIdSpace];
+        for (int nodeId = 0; nodeId < nodeIdSpace; nodeId++) root[nodeId] = nodeId;
 
         runProgram((x, y) -> {
             while (x != root[x]) x = root[x];
@@ -439,9 +634,77 @@ public class CoreGraphAlgorithms {
                 }
             }
         });
+        // resolve to the final root, so that each node directly carries its component id
+        for (int nodeId = 0; nodeId < nodeIdSpace; nodeId++) {
+            int r = nodeId;
+            while (r != root[r]) r = root[r];
+            root[nodeId] = r;
+        }
         return root;
     }
 
+    /**
+     * Lock-free parallel union-find, ranges of start nodes are processed concurrently.
+     * Roots are linked to the smaller root with a compare-and-set, so like unionFind() each component is identified by
+     * its smallest node-id. Finds halve their path with compare-and-set too, stale reads only lead to a retry.
+     */
+    public int[] unionFind(ExecutorService pool) {
+        AtomicIntegerArray parent = new AtomicIntegerArray(nodeIdSpace);
+        for (int nodeId = 0; nodeId < nodeIdSpace; nodeId++) parent.lazySet(nodeId, nodeId);
+
+        int batchSize = Math.max(MIN_UNION_FIND_BATCH, nodeIdSpace / (Pools.getNoThreadsInAlgoPool() * BATCHES_PER_THREAD));
+        List<Future<?>> futures = new ArrayList<>(nodeIdSpace / batchSize + 1);
+        for (int from = 0; from < nodeIdSpace; from += batchSize) {
+            int batchStart = from, batchEnd = Math.min(nodeIdSpace, from + batchSize);
+            futures.add(pool.submit(() -> runProgram(batchStart, batchEnd, (x, y) -> union(parent, x, y))));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new RuntimeException("Error computing union find", e);
+            }
+        }
+        int[] root = new int[nodeIdSpace];
+        IntStream.range(0, nodeIdSpace).parallel().forEach(nodeId -> root[nodeId] = find(parent, nodeId));
+        return root;
+    }
+
+    static int find(AtomicIntegerArray parent, int x) {
+        while (true) {
+            int p = parent.get(x);
+            if (p == x) return x;
+            int gp = parent.get(p);
+            if (p == gp) return p;
+            parent.compareAndSet(x, p, gp);
+            x = gp;
+        }
+    }
+
+    static void union(AtomicIntegerArray parent, int x, int y) {
+        while (true) {
+            x = find(parent, x);
+            y = find(parent, y);
+            if (x == y) return;
+            if (x < y) {
+                int t = x;
+                x = y;
+                y = t;
+            }
+            // only succeeds if x is still a root
+            if (parent.compareAndSet(x, x, y)) return;
+        }
+    }
+
+    /**
+     * if the node-id is part of the loaded graph, for the sequential loader all node-ids up to the node count are
+     */
+    public boolean contains(int node) {
+        if (node < 0 || node >= nodeIdSpace) return false;
+        if (graph != null) return graph.contains(node);
+        return degrees == null || degrees[node] >= 0;
+    }
+
     private int loadRels(ReadOperations ops, PrimitiveLongIterator relIds, int size, int relType, int[] rels) throws EntityNotFoundException {
         // todo reuse array
         int idx = 0, count = 0;
@@ -469,6 +732,210 @@ public class CoreGraphAlgorithms {
 
     public CoreGraphAlgorithms(Statement stmt) {
         this.stmt = stmt;
+        this.graph = null;
+        this.db = null;
+        this.pool = null;
+    }
+
+    /**
+     * loads the graph in parallel with init(), each thread reads a page-aligned range of the node-store in its own transaction
+     */
+    public CoreGraphAlgorithms(GraphDatabaseAPI db, ExecutorService pool) {
+        this.stmt = null;
+        this.graph = null;
+        this.db = db;
+        this.pool = pool;
+    }
+
+    /**
+     * runs the algorithms on already loaded relationships, the targets of node n are stored in rels from nodeRelOffsets[n]
+     */
+    public CoreGraphAlgorithms(int[] nodeRelOffsets, int[] rels) {
+        this.stmt = null;
+        this.graph = null;
+        this.db = null;
+        this.pool = null;
+        this.nodeCount = this.nodeIdSpace = nodeRelOffsets.length;
+        this.nodeRelOffsets = nodeRelOffsets;
+        this.rels = rels;
+        this.relCount = rels.length;
+        this.degrees = new int[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            degrees[node] = (node + 1 == nodeCount ? rels.length : nodeRelOffsets[node + 1]) - nodeRelOffsets[node];
+        }
+    }
+
+    /**
+     * runs the algorithms on an already loaded projection instead of loading the graph with init()
+     */
+    public CoreGraphAlgorithms(ProjectedGraph graph) {
+        this.stmt = null;
+        this.graph = graph;
+        this.db = null;
+        this.pool = null;
+        this.nodeCount = (int) graph.getProjectedNodeCount();
+        this.nodeIdSpace = graph.getNodeCount();
+        this.relCount = (int) graph.getRelCount();
+    }
+
+    public static class LoadStatistics {
+        public long nodes, relationships, batches, batchSize, degreeMillis, offsetMillis, relationshipMillis;
+    }
+
+    /*
+     * parallel loading: parallel degrees + serial offsets + parallel rels
+     * the node-id space is split into ranges of whole node-store pages, so that threads don't contend on the same pages
+     * relationships deleted between the degree and the relationship phase or leading to nodes outside of the label
+     * leave -1 entries which runProgram skips, relationships added in between are ignored
+     */
+    private CoreGraphAlgorithms loadParallel(String label, String rel) {
+        int[] tokens = Util.withStatement(db, (s, ops) -> new int[]{
+                label == null ? ANY_LABEL : ops.labelGetForName(label),
+                rel == null ? ANY_RELATIONSHIP_TYPE : ops.relationshipTypeGetForName(rel)});
+        // unknown names would resolve to ANY_LABEL or ANY_RELATIONSHIP_TYPE, so they match nothing instead
+        if ((label != null && tokens[0] < 0) || (rel != null && tokens[1] < 0)) {
+            return empty();
+        }
+        return loadParallel(tokens[0], tokens[1] == ANY_RELATIONSHIP_TYPE ? null : new int[]{tokens[1]}, OUTGOING);
+    }
+
+    private CoreGraphAlgorithms empty() {
+        this.nodeCount = this.nodeIdSpace = this.relCount = 0;
+        this.degrees = this.nodeRelOffsets = this.rels = new int[0];
+        this.loadStatistics = new LoadStatistics();
+        return this;
+    }
+
+    /**
+     * loads the relationships of the given types of all nodes with the parallel loader, with INCOMING the relationships
+     * of a node are its sources, which the pull based page rank iterates, getOutDegrees() has the outgoing degrees then
+     * @param relTypeIds null for all types
+     */
+    public CoreGraphAlgorithms initParallel(int[] relTypeIds, Direction direction) {
+        return loadParallel(ANY_LABEL, relTypeIds, direction);
+    }
+
+    private CoreGraphAlgorithms loadParallel(int labelId, int[] relTypeIds, Direction direction) {
+        this.labelId = labelId;
+        NodeStore nodeStore = new NodeCounter().getNeoStores(db).getNodeStore();
+        this.nodeIdSpace = (int) nodeStore.getHighestPossibleIdInUse() + 1;
+        int batchSize = batchSize(nodeIdSpace, nodeStore.getRecordsPerPage(), Pools.getNoThreadsInAlgoPool());
+        LoadStatistics stats = new LoadStatistics();
+        stats.batchSize = batchSize;
+        stats.batches = (nodeIdSpace + batchSize - 1) / batchSize;
+
+        long start = System.currentTimeMillis();
+        int[] degrees = new int[nodeIdSpace];
+        int[] outDegrees = direction == OUTGOING ? degrees : new int[nodeIdSpace];
+        List<Future<Integer>> futures = new ArrayList<>((int) stats.batches);
+        for (int from = 0; from < nodeIdSpace; from += batchSize) {
+            int batchStart = from, batchEnd = Math.min(nodeIdSpace, from + batchSize);
+            futures.add(Util.inTxFuture(pool, db, (s, ops) -> loadDegrees(ops, batchStart, batchEnd, relTypeIds, direction, degrees, outDegrees)));
+        }
+        this.nodeCount = sum(futures);
+        stats.nodes = nodeCount;
+        stats.degreeMillis = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        int[] offsets = new int[nodeIdSpace];
+        long offset = 0;
+        for (int node = 0; node < nodeIdSpace; node++) {
+            offsets[node] = (int) offset;
+            offset += Math.max(0, degrees[node]);
+        }
+        if (offset > Integer.MAX_VALUE) {
+            throw new RuntimeException("Too many relationships to load: " + offset);
+        }
+        int[] rels = new int[(int) offset];
+        stats.offsetMillis = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        for (int from = 0; from < nodeIdSpace; from += batchSize) {
+            int batchStart = from, batchEnd = Math.min(nodeIdSpace, from + batchSize);
+            futures.add(Util.inTxFuture(pool, db, (s, ops) -> loadRels(ops, batchStart, batchEnd, relTypeIds, direction, degrees, offsets, rels)));
+        }
+        this.relCount = sum(futures);
+        stats.relationships = relCount;
+        stats.relationshipMillis = System.currentTimeMillis() - start;
+
+        this.degrees = degrees;
+        this.outDegrees = outDegrees;
+        this.nodeRelOffsets = offsets;
+        this.rels = rels;
+        this.loadStatistics = stats;
+        return this;
+    }
+
+    static int batchSize(int nodeIdSpace, int recordsPerPage, int threads) {
+        int pages = (nodeIdSpace + recordsPerPage - 1) / recordsPerPage;
+        return Math.max(1, pages / (threads * BATCHES_PER_THREAD)) * recordsPerPage;
+    }
+
+    // degree -1 marks node-ids that are not part of the graph
+    private int loadDegrees(ReadOperations ops, int from, int to, int[] relTypeIds, Direction direction, int[] degrees, int[] outDegrees) {
+        int count = 0;
+        for (int node = from; node < to; node++) {
+            degrees[node] = -1;
+            outDegrees[node] = -1;
+            try {
+                if (!ops.nodeExists(node)) continue;
+                if (labelId != ANY_LABEL && !ops.nodeHasLabel(node, labelId)) continue;
+                degrees[node] = degree(ops, node, direction, relTypeIds);
+                if (outDegrees != degrees) outDegrees[node] = degree(ops, node, OUTGOING, relTypeIds);
+                count++;
+            } catch (EntityNotFoundException e) {
+                // deleted concurrently
+            }
+        }
+        return count;
+    }
+
+    private static int degree(ReadOperations ops, int node, Direction direction, int[] relTypeIds) throws EntityNotFoundException {
+        if (relTypeIds == null) return ops.nodeGetDegree(node, direction);
+        int degree = 0;
+        for (int relTypeId : relTypeIds) {
+            degree += ops.nodeGetDegree(node, direction, relTypeId);
+        }
+        return degree;
+    }
+
+    private int loadRels(ReadOperations ops, int from, int to, int[] relTypeIds, Direction direction, int[] degrees, int[] offsets, int[] rels) {
+        int[] idx = new int[1];
+        // only relationships to nodes of the graph, i.e. with the label and not created since the degrees were read
+        RelationshipVisitor<RuntimeException> visitor = (relId, type, start, end) -> {
+            long other = direction == OUTGOING ? end : start;
+            if (other < degrees.length && degrees[mapId(other)] >= 0) rels[idx[0]++] = mapId(other);
+        };
+        int count = 0;
+        for (int node = from; node < to; node++) {
+            if (degrees[node] <= 0) continue;
+            idx[0] = offsets[node];
+            int end = idx[0] + degrees[node];
+            try {
+                RelationshipIterator relIds = relTypeIds == null ? ops.nodeGetRelationships(node, direction) : ops.nodeGetRelationships(node, direction, relTypeIds);
+                while (idx[0] < end && relIds.hasNext()) {
+                    relIds.relationshipVisit(relIds.next(), visitor);
+                }
+            } catch (EntityNotFoundException e) {
+                // deleted concurrently
+            }
+            count += idx[0] - offsets[node];
+            while (idx[0] < end) rels[idx[0]++] = -1;
+        }
+        return count;
+    }
+
+    private static int sum(List<Future<Integer>> futures) {
+        int total = 0;
+        for (Future<Integer> future : futures) {
+            try {
+                total += future.get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new RuntimeException("Error loading the graph in parallel", e);
+            }
+        }
+        futures.clear();
+        return total;
     }
 
     private void loadRels(ReadOperations ops, int labelId, int relTypeId) throws EntityNotFoundException {
@@ -500,9 +967,11 @@ public class CoreGraphAlgorithms {
                     loadNodes(ops, ops.nodesGetAll(), labelId,    nodeCount, relTypeId) :
                     loadNodes(ops, ops.nodesGetForLabel(labelId), nodeCount, relTypeId, OUTGOING);
         }
+        this.nodeIdSpace = nodeCount;
     }
 
     public CoreGraphAlgorithms init(String label) throws EntityNotFoundException {
+        if (stmt == null) return loadParallel(label, null);
         ReadOperations ops = stmt.readOperations();
 
         int labelId = ops.labelGetForName(label);
@@ -517,9 +986,9 @@ public class CoreGraphAlgorithms {
     // degrees only for pageRank
     // optionally check target node label?
     // multiple rel-types
-    // parallel loading (parallel degrees + serial offsets + parallel rels + serial compaction (flag if need to)
     // keep threads with open worker-tx for reads
     public CoreGraphAlgorithms init(String label, String rel) throws EntityNotFoundException {
+        if (stmt == null) return loadParallel(label, rel);
         ReadOperations ops = stmt.readOperations();
         int labelId = ops.labelGetForName(label);
         int relTypeId = ops.relationshipTypeGetForName(rel);
@@ -529,6 +998,7 @@ public class CoreGraphAlgorithms {
     }
 
     public CoreGraphAlgorithms init() throws EntityNotFoundException {
+        if (stmt == null) return loadParallel(null, null);
         ReadOperations ops = stmt.readOperations();
         loadNodes(ops, ANY_LABEL, ANY_RELATIONSHIP_TYPE);
         loadRels(ops, ANY_LABEL,ANY_RELATIONSHIP_TYPE);
@@ -550,4 +1020,26 @@ public class CoreGraphAlgorithms {
     public int[] getRels() {
         return rels;
     }
+
+    /**
+     * the number of loaded relationships per node-id, -1 for node-ids that are not part of the graph
+     */
+    public int[] getDegrees() {
+        return degrees;
+    }
+
+    public int[] getOutDegrees() {
+        return outDegrees == null ? degrees : outDegrees;
+    }
+
+    public int getNodeIdSpace() {
+        return nodeIdSpace;
+    }
+
+    /**
+     * the phase timings of the parallel loader, null for the other loaders
+     */
+    public LoadStatistics getLoadStatistics() {
+        return loadStatistics;
+    }
 }
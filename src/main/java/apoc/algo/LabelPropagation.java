@@ -15,7 +15,7 @@ import java.util.concurrent.Future;
 import static apoc.util.Util.parseDirection;
 
 public class LabelPropagation {
-    static final ExecutorService pool = Pools.DEFAULT;
+    static final ExecutorService pool = Pools.ALGO;
 
     @Context
     public GraphDatabaseService db;
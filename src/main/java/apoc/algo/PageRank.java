@@ -24,8 +24,10 @@ public class PageRank {
 
     private static final String SETTING_PAGE_RANK_ITERATIONS = "iterations";
     private static final String SETTING_PAGE_RANK_TYPES = "types";
+    static final String SETTING_PAGE_RANK_TOLERANCE = "tolerance";
+    static final String SETTING_PAGE_RANK_DELTA = "delta";
 
-    static final ExecutorService pool = Pools.DEFAULT;
+    static final ExecutorService pool = Pools.ALGO;
     static final Long DEFAULT_PAGE_RANK_ITERATIONS = 20L;
 
     @Context
@@ -41,24 +43,26 @@ public class PageRank {
             @Name("nodes") List<Node> nodes) {
         return innerPageRank(
                 DEFAULT_PAGE_RANK_ITERATIONS,
-                nodes);
+                nodes,
+                Util.map());
     }
 
     @Procedure("apoc.algo.pageRankWithConfig")
     @Description(
-            "CALL apoc.algo.pageRankWithConfig(nodes,{iterations:_,types:_}) YIELD node, score, info - calculates page rank" +
-                    " for given nodes")
+            "CALL apoc.algo.pageRankWithConfig(nodes,{iterations:_,types:_,tolerance:0.0,delta:false,topK:0}) YIELD node, score, info - calculates page rank" +
+                    " for given nodes, with topK only the k highest ranked nodes ordered by score")
     public Stream<NodeScore> pageRankWithConfig(
             @Name("nodes") List<Node> nodes,
             @Name("config") Map<String, Object> config) {
             return innerPageRank(
                     (Long) config.getOrDefault(SETTING_PAGE_RANK_ITERATIONS, DEFAULT_PAGE_RANK_ITERATIONS),
                     nodes,
+                    config,
                     Util.typesAndDirectionsToTypesArray((String) config.getOrDefault(SETTING_PAGE_RANK_TYPES, "")));
     }
     @Procedure(value = "apoc.algo.pageRankStats",mode = Mode.WRITE)
     @Description(
-            "CALL apoc.algo.pageRankStats({iterations:_,types:_,write:true,...}) YIELD nodeCount - calculates page rank on graph " +
+            "CALL apoc.algo.pageRankStats({iterations:_,types:_,tolerance:0.0,delta:false,write:true,writeBatchSize:10000,...}) YIELD nodeCount - calculates page rank on graph " +
                     " for given nodes and potentially writes back")
     public Stream<PageRankStatistics> pageRankStats(@Name("config") Map<String, Object> config) {
         Long iterations = (Long) config.getOrDefault(SETTING_PAGE_RANK_ITERATIONS, DEFAULT_PAGE_RANK_ITERATIONS);
@@ -67,7 +71,7 @@ public class PageRank {
     }
 
     @Procedure(value = "apoc.algo.pageRankWithCypher",mode = Mode.WRITE)
-    @Description("CALL apoc.algo.pageRankWithCypher({iterations,node_cypher,rel_cypher,write,property,numCpu}) - calculates page rank based on cypher input")
+    @Description("CALL apoc.algo.pageRankWithCypher({iterations,tolerance,delta,node_cypher,rel_cypher,write,property,writeBatchSize,numCpu}) - calculates page rank based on cypher input")
     public Stream<PageRankStatistics> pageRankWithCypher(
             @Name("config") Map<String, Object> config) {
         Long iterations = (Long) config.getOrDefault(SETTING_PAGE_RANK_ITERATIONS, DEFAULT_PAGE_RANK_ITERATIONS);
@@ -76,12 +80,13 @@ public class PageRank {
         boolean shouldWrite = (boolean)config.getOrDefault(SETTING_WRITE, DEFAULT_PAGE_RANK_WRITE);
         Number weight = (Number) config.get(SETTING_WEIGHTED);
         Number batchSize = (Number) config.get(SETTING_BATCH_SIZE);
-        int concurrency = ((Number) config.getOrDefault("concurrency",Pools.getNoThreadsInDefaultPool())).intValue();
+        int concurrency = ((Number) config.getOrDefault("concurrency",Pools.getNoThreadsInAlgoPool())).intValue();
         String property = (String) config.getOrDefault("property","pagerank");
 
         long beforeReading = System.currentTimeMillis();
         log.info("Pagerank: Reading data into local ds");
         PageRankArrayStorageParallelCypher pageRank = new PageRankArrayStorageParallelCypher(db, pool, log);
+        withConvergence(pageRank, config).withWriteBatchSize(AlgoUtils.getWriteBatchSize(config));
         boolean success = pageRank.readNodeAndRelCypherData(
                 relCypher, nodeCypher,weight, batchSize, concurrency);
         if (!success) {
@@ -108,10 +113,21 @@ public class PageRank {
         return Stream.of(pageRank.getStatistics());
     }
 
-    private Stream<NodeScore> innerPageRank(Long iterations, List<Node> nodes, RelationshipType... types) {
+    static <T extends apoc.algo.pagerank.PageRank> T withConvergence(T pageRank, Map<String, Object> config) {
+        pageRank.withTolerance(Util.toDouble(config.getOrDefault(SETTING_PAGE_RANK_TOLERANCE, 0D)));
+        pageRank.withDelta(Util.toBoolean(config.getOrDefault(SETTING_PAGE_RANK_DELTA, false)));
+        return pageRank;
+    }
+
+    private Stream<NodeScore> innerPageRank(Long iterations, List<Node> nodes, Map<String, Object> config, RelationshipType... types) {
         try {
-            PageRankArrayStorageParallelSPI pageRank = new PageRankArrayStorageParallelSPI(db, pool);
+            PageRankArrayStorageParallelSPI pageRank = withConvergence(new PageRankArrayStorageParallelSPI(db, pool), config);
             pageRank.compute(iterations.intValue(), types);
+            logLoadStatistics(pageRank.getLoadStatistics());
+            int topK = getTopK(config);
+            if (topK > 0) {
+                return AlgoUtils.topK(db, nodes.stream().mapToLong(Node::getId), pageRank::getResult, topK);
+            }
             return nodes.stream().map(node -> new NodeScore(node, pageRank.getResult(node.getId())));
         } catch (Exception e) {
             String errMsg = "Error encountered while calculating page rank";
@@ -121,8 +137,10 @@ public class PageRank {
     }
     private Stream<PageRankStatistics> innerPageRankStats(int iterations, Map<String,Object> config, RelationshipType... types) {
         try {
-            PageRankArrayStorageParallelSPI pageRank = new PageRankArrayStorageParallelSPI(db, pool);
+            PageRankArrayStorageParallelSPI pageRank = withConvergence(new PageRankArrayStorageParallelSPI(db, pool), config);
+            pageRank.withWriteBatchSize(AlgoUtils.getWriteBatchSize(config));
             pageRank.compute(iterations, types);
+            logLoadStatistics(pageRank.getLoadStatistics());
             if ((boolean)config.getOrDefault(SETTING_WRITE, DEFAULT_PAGE_RANK_WRITE)) {
                 pageRank.writeResultsToDB();
             }
@@ -133,4 +151,9 @@ public class PageRank {
             throw new RuntimeException(errMsg, e);
         }
     }
+
+    private void logLoadStatistics(CoreGraphAlgorithms.LoadStatistics stats) {
+        log.info("Pagerank: loaded %d nodes and %d relationships in %d batches of %d node-ids, degrees in %d ms, offsets in %d ms, relationships in %d ms",
+                stats.nodes, stats.relationships, stats.batches, stats.batchSize, stats.degreeMillis, stats.offsetMillis, stats.relationshipMillis);
+    }
 }
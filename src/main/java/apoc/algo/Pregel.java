@@ -70,7 +70,7 @@ public class Pregel {
     GraphDatabaseAPI api;
     private ThreadToStatementContextBridge ctx;
     private int batchSize = 10_000;
-    private ExecutorService pool = Pools.DEFAULT;
+    private ExecutorService pool = Pools.ALGO;
 
     public Pregel(GraphDatabaseAPI api) {
         this.api = api;
@@ -0,0 +1,143 @@
+package apoc.algo;
+
+import apoc.Pools;
+import apoc.algo.algorithms.AlgoUtils;
+import apoc.algo.algorithms.AlgorithmInterface;
+import apoc.algo.algorithms.BetweennessCentrality;
+import apoc.algo.algorithms.Closeness;
+import apoc.algo.algorithms.ProjectedGraph;
+import apoc.algo.pagerank.PageRankArrayStorageProjected;
+import apoc.result.NodePartition;
+import apoc.result.NodeScore;
+import apoc.util.Util;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.logging.Log;
+import org.neo4j.procedure.Context;
+import org.neo4j.procedure.Description;
+import org.neo4j.procedure.Name;
+import org.neo4j.procedure.Procedure;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * procedures to load named, compressed in-memory projections of the graph and to run the algorithms on them
+ */
+public class Projection {
+
+    static final ExecutorService pool = Pools.ALGO;
+
+    @Context
+    public GraphDatabaseAPI db;
+
+    @Context
+    public Log log;
+
+    @Procedure("apoc.algo.graph.load")
+    @Description("CALL apoc.algo.graph.load(name,{label:'Label',relationship:'TYPE1|TYPE2',weight:'property',defaultWeight:1.0,reverse:false}) YIELD name, nodes, relationships - loads a compressed in-memory projection of the graph, which is reused by the apoc.algo.graph.* procedures")
+    public Stream<GraphInfo> load(@Name("name") String name, @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        ProjectedGraph graph = ProjectedGraph.load(db, name, config == null ? Util.map() : config);
+        log.info("Projected graph %s: loaded %d nodes and %d relationships in %d ms into %d bytes",
+                name, graph.getProjectedNodeCount(), graph.getRelCount(), graph.getLoadMillis(), graph.getAllocatedBytes());
+        return Stream.of(new GraphInfo(graph));
+    }
+
+    @Procedure("apoc.algo.graph.list")
+    @Description("CALL apoc.algo.graph.list() YIELD name, nodes, relationships - lists the loaded graph projections")
+    public Stream<GraphInfo> list() {
+        return ProjectedGraph.list().stream().map(GraphInfo::new);
+    }
+
+    @Procedure("apoc.algo.graph.remove")
+    @Description("CALL apoc.algo.graph.remove(name) YIELD name, nodes, relationships - removes the graph projection and frees its memory")
+    public Stream<GraphInfo> remove(@Name("name") String name) {
+        ProjectedGraph graph = ProjectedGraph.remove(name);
+        return graph == null ? Stream.empty() : Stream.of(new GraphInfo(graph));
+    }
+
+    @Procedure("apoc.algo.graph.pageRank")
+    @Description("CALL apoc.algo.graph.pageRank(name,{iterations:20,tolerance:0.0,delta:false,topK:0}) YIELD node, score - calculates page rank on the graph projection")
+    public Stream<NodeScore> pageRank(@Name("name") String name, @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        try (ProjectedGraph graph = ProjectedGraph.get(name)) {
+            int iterations = Util.toLong(config.getOrDefault("iterations", PageRank.DEFAULT_PAGE_RANK_ITERATIONS)).intValue();
+            PageRankArrayStorageProjected pageRank = PageRank.withConvergence(new PageRankArrayStorageProjected(graph), config);
+            pageRank.compute(iterations);
+            return scores(graph, pageRank, config);
+        }
+    }
+
+    @Procedure("apoc.algo.graph.betweenness")
+    @Description("CALL apoc.algo.graph.betweenness(name,{samples:0,sampleRate:null,error:null,confidence:0.95,sampling:'uniform',seed:null,topK:0}) YIELD node, score - calculates betweenness centrality along the outgoing relationships of the graph projection, approximated from a sample of source nodes if configured")
+    public Stream<NodeScore> betweenness(@Name("name") String name, @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        try (ProjectedGraph graph = ProjectedGraph.get(name)) {
+            BetweennessCentrality betweenness = Centrality.withSampling(new BetweennessCentrality(db, pool, log, graph), config);
+            betweenness.computeUnweightedParallel();
+            return scores(graph, betweenness, config);
+        }
+    }
+
+    @Procedure("apoc.algo.graph.closeness")
+    @Description("CALL apoc.algo.graph.closeness(name,{direction:'OUTGOING',harmonic:false,topK:0}) YIELD node, score - calculates unweighted closeness or harmonic centrality on the graph projection, INCOMING and BOTH need a projection loaded with {reverse:true}")
+    public Stream<NodeScore> closeness(@Name("name") String name, @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        try (ProjectedGraph graph = ProjectedGraph.get(name)) {
+            Direction direction = Util.parseDirection((String) config.getOrDefault("direction", "OUTGOING"));
+            Closeness closeness = new Closeness(graph.adjacency(direction), pool, log);
+            closeness.compute();
+            return scores(graph, Util.toBoolean(config.get("harmonic")) ? closeness.harmonic("harmonic") : closeness, config);
+        }
+    }
+
+    @Procedure("apoc.algo.graph.labelPropagation")
+    @Description("CALL apoc.algo.graph.labelPropagation(name) YIELD node, partition - propagates the minimal node-id along the relationships of the graph projection until stable")
+    public Stream<NodePartition> labelPropagation(@Name("name") String name) {
+        try (ProjectedGraph graph = ProjectedGraph.get(name)) {
+            return partitions(graph, new CoreGraphAlgorithms(graph).labelPropagation());
+        }
+    }
+
+    @Procedure("apoc.algo.graph.unionFind")
+    @Description("CALL apoc.algo.graph.unionFind(name) YIELD node, partition - computes the weakly connected components of the graph projection")
+    public Stream<NodePartition> unionFind(@Name("name") String name) {
+        try (ProjectedGraph graph = ProjectedGraph.get(name)) {
+            return partitions(graph, new CoreGraphAlgorithms(graph).unionFind());
+        }
+    }
+
+    // the results only read the node set of the graph, which stays on the heap after it is released
+    private Stream<NodeScore> scores(ProjectedGraph graph, AlgorithmInterface algorithm, Map<String, Object> config) {
+        int topK = AlgoUtils.getTopK(config);
+        if (topK > 0) {
+            return AlgoUtils.topK(db, nodeIds(graph).asLongStream(), algorithm::getResult, topK);
+        }
+        return nodeIds(graph).mapToObj(id -> new NodeScore(db.getNodeById(id), algorithm.getResult(id)));
+    }
+
+    private Stream<NodePartition> partitions(ProjectedGraph graph, int[] partitions) {
+        return nodeIds(graph).mapToObj(id -> new NodePartition(db.getNodeById(id), partitions[id]));
+    }
+
+    private IntStream nodeIds(ProjectedGraph graph) {
+        return IntStream.range(0, graph.getNodeCount()).filter(graph::contains);
+    }
+
+    public static class GraphInfo {
+        public final String name;
+        public final long nodes;
+        public final long relationships;
+        public final long bytes;
+        public final long loadMillis;
+        public final Map<String, Object> config;
+
+        public GraphInfo(ProjectedGraph graph) {
+            this.name = graph.getName();
+            this.nodes = graph.getProjectedNodeCount();
+            this.relationships = graph.getRelCount();
+            this.bytes = graph.getAllocatedBytes();
+            this.loadMillis = graph.getLoadMillis();
+            this.config = graph.getConfig();
+        }
+    }
+}
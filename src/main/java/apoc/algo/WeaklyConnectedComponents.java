@@ -1,11 +1,15 @@
 package apoc.algo;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Stack;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import org.neo4j.collection.primitive.Primitive;
@@ -15,17 +19,28 @@ import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.kernel.api.exceptions.EntityNotFoundException;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.logging.Log;
 import org.neo4j.procedure.Context;
+import org.neo4j.procedure.Mode;
+import org.neo4j.procedure.Name;
 import org.neo4j.procedure.Procedure;
 
 import org.neo4j.procedure.Description;
+import apoc.Pools;
+import apoc.algo.algorithms.AlgoUtils;
+import apoc.algo.algorithms.ProjectedGraph;
 import apoc.algo.wcc.CCVar;
 import apoc.result.CCResult;
+import apoc.util.Util;
 
 public class WeaklyConnectedComponents {
 
+	static final ExecutorService pool = Pools.ALGO;
+	static final String DEFAULT_PROPERTY = "component";
+	static final long DEFAULT_BATCH_SIZE = 10_000;
+
 	@Context
 	public GraphDatabaseAPI dbAPI;
 
@@ -74,6 +89,105 @@ public class WeaklyConnectedComponents {
             ));
 	}
 
+	@Procedure(value = "apoc.algo.wccStats", mode = Mode.WRITE)
+	@Description("CALL apoc.algo.wccStats({label:null,relationship:null,graph:null,write:false,property:'component',batchSize:10000}) YIELD nodes, components, maxSize - " +
+			"computes the weakly connected components with a parallel union-find on the loaded graph or the named graph projection, optionally writing the component id back")
+	public Stream<WccStatistics> wccStats(@Name(value = "config", defaultValue = "{}") Map<String, Object> config) throws EntityNotFoundException {
+		String graphName = (String) config.get("graph");
+		try (ProjectedGraph graph = graphName == null ? null : ProjectedGraph.get(graphName)) {
+			WccStatistics stats = new WccStatistics();
+			long start = System.currentTimeMillis();
+			CoreGraphAlgorithms algos = load(graph, config);
+			stats.nodes = algos.getNodeCount();
+			stats.relationships = algos.getRelCount();
+			stats.loadMillis = System.currentTimeMillis() - start;
+			CoreGraphAlgorithms.LoadStatistics load = algos.getLoadStatistics();
+			if (load != null) {
+				log.info("WCC: loaded in %d batches of %d node-ids, degrees in %d ms, offsets in %d ms, relationships in %d ms",
+						load.batches, load.batchSize, load.degreeMillis, load.offsetMillis, load.relationshipMillis);
+			}
+
+			start = System.currentTimeMillis();
+			int[] components = algos.unionFind(pool);
+			int[] sizes = sizes(algos, components);
+			for (int size : sizes) {
+				if (size == 0) continue;
+				stats.components++;
+				stats.maxSize = Math.max(stats.maxSize, size);
+			}
+			stats.computeMillis = System.currentTimeMillis() - start;
+
+			if (Util.toBoolean(config.getOrDefault("write", false))) {
+				start = System.currentTimeMillis();
+				stats.write = true;
+				stats.property = (String) config.getOrDefault("property", DEFAULT_PROPERTY);
+				int batchSize = Util.toLong(config.getOrDefault("batchSize", DEFAULT_BATCH_SIZE)).intValue();
+				AlgoUtils.writeBackResults(pool, dbAPI, stats.property, components, algos::contains, batchSize);
+				stats.writeMillis = System.currentTimeMillis() - start;
+			}
+			log.info("WCC: %d nodes, %d relationships, %d components, loaded in %d ms, computed in %d ms, written in %d ms",
+					stats.nodes, stats.relationships, stats.components, stats.loadMillis, stats.computeMillis, stats.writeMillis);
+			return Stream.of(stats);
+		}
+	}
+
+	@Procedure("apoc.algo.wccSizes")
+	@Description("CALL apoc.algo.wccSizes({label:null,relationship:null,graph:null,limit:-1}) YIELD component, size - " +
+			"streams the id and size of the weakly connected components, largest first, computed with a parallel union-find")
+	public Stream<ComponentSize> wccSizes(@Name(value = "config", defaultValue = "{}") Map<String, Object> config) throws EntityNotFoundException {
+		String graphName = (String) config.get("graph");
+		int[] sizes;
+		try (ProjectedGraph graph = graphName == null ? null : ProjectedGraph.get(graphName)) {
+			CoreGraphAlgorithms algos = load(graph, config);
+			sizes = sizes(algos, algos.unionFind(pool));
+		}
+		int count = 0;
+		for (int size : sizes) if (size > 0) count++;
+		// size in the upper, component id in the lower bits, so that sorting orders by size
+		long[] components = new long[count];
+		count = 0;
+		for (int component = 0; component < sizes.length; component++) {
+			if (sizes[component] > 0) components[count++] = ((long) sizes[component] << 32) | component;
+		}
+		Arrays.parallelSort(components);
+		long limit = Util.toLong(config.getOrDefault("limit", -1L));
+		return IntStream.range(0, components.length)
+				.limit(limit < 0 ? components.length : limit)
+				.mapToObj(i -> components[components.length - 1 - i])
+				.map(c -> new ComponentSize(c & 0xFFFFFFFFL, c >>> 32));
+	}
+
+	private CoreGraphAlgorithms load(ProjectedGraph graph, Map<String, Object> config) throws EntityNotFoundException {
+		if (graph != null) {
+			return new CoreGraphAlgorithms(graph);
+		}
+		return new CoreGraphAlgorithms(dbAPI, pool).init((String) config.get("label"), (String) config.get("relationship"));
+	}
+
+	private int[] sizes(CoreGraphAlgorithms algos, int[] components) {
+		int[] sizes = new int[components.length];
+		for (int node = 0; node < components.length; node++) {
+			if (algos.contains(node)) sizes[components[node]]++;
+		}
+		return sizes;
+	}
+
+	public static class WccStatistics {
+		public long nodes, relationships, components, maxSize, loadMillis, computeMillis, writeMillis;
+		public boolean write;
+		public String property;
+	}
+
+	public static class ComponentSize {
+		public final long component;
+		public final long size;
+
+		public ComponentSize(long component, long size) {
+			this.component = component;
+			this.size = size;
+		}
+	}
+
 	private PrimitiveLongSet go(Node node, Direction direction, List<CCVar> result) {
 
 		PrimitiveLongSet visitedIDs = Primitive.longSet(0);
@@ -0,0 +1,32 @@
+package apoc.algo.algorithms;
+
+/**
+ * read access to the neighbours of dense (algo) node ids, implemented by the compressed
+ * {@link CompressedAdjacency} of a {@link ProjectedGraph} and by the plain int-arrays of {@link Algorithm}
+ */
+public interface Adjacency {
+    int getNodeCount();
+
+    int degree(int node);
+
+    /**
+     * @return a new cursor, cursors are not thread-safe, so use one per thread
+     */
+    Cursor cursor();
+
+    interface Cursor {
+        /**
+         * positions the cursor before the first neighbour of the given node
+         */
+        Cursor init(int node);
+
+        boolean hasNext();
+
+        int next();
+
+        /**
+         * @return weight of the relationship last returned by {@link #next()}, 1 if unweighted
+         */
+        float weight();
+    }
+}
@@ -1,22 +1,19 @@
 package apoc.algo.algorithms;
 
+import apoc.result.NodeScore;
 import apoc.util.Util;
-import org.neo4j.cypher.EntityNotFoundException;
-import org.neo4j.graphdb.Transaction;
-import org.neo4j.kernel.api.DataWriteOperations;
-import org.neo4j.kernel.api.exceptions.InvalidTransactionTypeKernelException;
-import org.neo4j.kernel.api.exceptions.legacyindex.AutoIndexingKernelException;
-import org.neo4j.kernel.api.exceptions.schema.IllegalTokenNameException;
-import org.neo4j.kernel.api.properties.DefinedProperty;
-import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.function.IntPredicate;
+import java.util.function.LongToDoubleFunction;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 public class AlgoUtils {
     public static final String SETTING_CYPHER_NODE = "node_cypher";
@@ -24,6 +21,8 @@ public class AlgoUtils {
     public static final String SETTING_WRITE = "write";
     public static final String SETTING_WEIGHTED = "weight";
     public static final String SETTING_BATCH_SIZE = "batchSize";
+    public static final String SETTING_WRITE_BATCH_SIZE = "writeBatchSize";
+    public static final String SETTING_TOP_K = "topK";
 
     public static final String DEFAULT_CYPHER_REL =
             "MATCH (s)-[r]->(t) RETURN id(s) as source, id(t) as target, 1 as weight";
@@ -55,55 +54,37 @@ public class AlgoUtils {
         return total;
     }
 
-    public static void writeBackResults(ExecutorService pool, GraphDatabaseAPI db, AlgorithmInterface algorithm,
+    public static ResultWriter.WriteStatistics writeBackResults(ExecutorService pool, GraphDatabaseAPI db, AlgorithmInterface algorithm,
                                         int batchSize) {
-        ThreadToStatementContextBridge ctx = db.getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class);
-        int propertyNameId;
-        try (Transaction tx = db.beginTx()) {
-            // If the transaction is terminated just return
-            if (Util.transactionIsTerminated(db)) {
-                return;
-            }
-            propertyNameId = ctx.get().tokenWriteOperations().propertyKeyGetOrCreateForName(algorithm.getPropertyName());
-            tx.success();
-        } catch (IllegalTokenNameException e) {
-            throw new RuntimeException(e);
-        }
-        final long totalNodes = algorithm.numberOfNodes();
-        int batches = (int) totalNodes / batchSize;
-        List<Future> futures = new ArrayList<>(batches);
-        for (int i = 0; i < totalNodes; i += batchSize) {
-            int nodeIndex = i;
-            final int start = nodeIndex;
-            Future future = pool.submit(new Runnable() {
-                public void run() {
-                    try (Transaction tx = db.beginTx()) {
-                        // If the transaction is terminated just return
-                        if (Util.transactionIsTerminated(db)) {
-                            return;
-                        }
+        return new ResultWriter(db, pool).withBatchSize(batchSize).write(algorithm);
+    }
+
+    /**
+     * writes values[node] as long property for the node-ids accepted by the filter,
+     * in parallel transactions of batchSize node-ids
+     */
+    public static ResultWriter.WriteStatistics writeBackResults(ExecutorService pool, GraphDatabaseAPI db, String property, int[] values,
+                                        IntPredicate filter, int batchSize) {
+        return new ResultWriter(db, pool).withBatchSize(batchSize).write(property, values, filter);
+    }
 
-                        DataWriteOperations ops = ctx.get().dataWriteOperations();
-                        for (int i = 0; i < batchSize; i++) {
-                            int nodeIndex = i + start;
-                            if (nodeIndex >= totalNodes) break;
+    /**
+     * @return the number of best scored nodes to return, 0 for all nodes
+     */
+    public static int getTopK(Map<String, Object> config) {
+        return config == null ? 0 : Util.toLong(config.getOrDefault(SETTING_TOP_K, 0)).intValue();
+    }
 
-                            long graphNode = algorithm.getMappedNode(nodeIndex);
-                            double value = algorithm.getResult(graphNode);
-                            if (graphNode == -1) {
-                                System.out.println("Node node found for " + graphNode + " mapped node " + nodeIndex);
-                            } else
-                                ops.nodeSetProperty(graphNode, DefinedProperty.doubleProperty(propertyNameId, value));
-                        }
-                        tx.success();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
-            });
+    /**
+     * the k nodes with the highest scores ordered by descending score, only k nodes are kept while scoring
+     */
+    public static Stream<NodeScore> topK(GraphDatabaseService db, LongStream nodeIds, LongToDoubleFunction score, int k) {
+        TopK top = new TopK(k);
+        nodeIds.forEach(id -> top.offer(id, score.applyAsDouble(id)));
+        return top.stream((id, value) -> new NodeScore(db.getNodeById(id), value));
+    }
 
-            futures.add(future);
-        }
-        AlgoUtils.waitForTasks(futures);
+    public static int getWriteBatchSize(Map<String, Object> config) {
+        return Util.toLong(config.getOrDefault(SETTING_WRITE_BATCH_SIZE, ResultWriter.DEFAULT_BATCH_SIZE)).intValue();
     }
 }
\ No newline at end of file
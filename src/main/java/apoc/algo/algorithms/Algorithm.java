@@ -218,6 +218,10 @@ public class Algorithm implements AlgoIdGenerator {
         return nodeMapping[algoId];
     }
 
+    public Adjacency adjacency() {
+        return new ArrayAdjacency(getNodeCount(), sourceDegreeData, sourceChunkStartingIndex, relationshipTarget, relationshipWeight);
+    }
+
     private class NodeLoaderVisitor implements Result.ResultVisitor<RuntimeException> {
         int nodes = 0;
 
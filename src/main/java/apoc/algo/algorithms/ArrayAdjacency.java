@@ -0,0 +1,61 @@
+package apoc.algo.algorithms;
+
+/**
+ * {@link Adjacency} view on the offset-based int-arrays loaded by {@link Algorithm}
+ */
+public class ArrayAdjacency implements Adjacency {
+    private final int nodeCount;
+    private final int[] degrees;
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] weights;
+
+    public ArrayAdjacency(int nodeCount, int[] degrees, int[] offsets, int[] targets, int[] weights) {
+        this.nodeCount = nodeCount;
+        this.degrees = degrees;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+    }
+
+    @Override
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    @Override
+    public int degree(int node) {
+        return degrees[node];
+    }
+
+    @Override
+    public Cursor cursor() {
+        return new ArrayCursor();
+    }
+
+    private class ArrayCursor implements Cursor {
+        private int idx, end;
+
+        @Override
+        public Cursor init(int node) {
+            idx = offsets[node];
+            end = idx + degrees[node];
+            return this;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return idx < end;
+        }
+
+        @Override
+        public int next() {
+            return targets[idx++];
+        }
+
+        @Override
+        public float weight() {
+            return weights == null ? 1f : weights[idx - 1];
+        }
+    }
+}
@@ -3,17 +3,20 @@ package apoc.algo.algorithms;
 import apoc.Pools;
 import org.neo4j.collection.primitive.Primitive;
 import org.neo4j.collection.primitive.PrimitiveIntObjectMap;
+import org.neo4j.graphdb.Direction;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.logging.Log;
 
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class BetweennessCentrality implements AlgorithmInterface {
-    public static final int WRITE_BATCH=100_000;
-    public final int MINIMUM_BATCH_SIZE =10_000 ;
+    // ranges of sources per thread, so that the threads that drew cheap sources take over more ranges than the others
+    private static final int RANGES_PER_THREAD = 16;
     private Algorithm algorithm;
+    private ProjectedGraph graph;
     private Log log;
     GraphDatabaseAPI db;
     ExecutorService pool;
@@ -21,9 +24,13 @@ public class BetweennessCentrality implements AlgorithmInterface {
     private int relCount;
     private Statistics stats = new Statistics();
 
-    private PrimitiveIntObjectMap intermediateBcPerThread;
     float betweennessCentrality[];
     private String property;
+    private int writeBatchSize = ResultWriter.DEFAULT_BATCH_SIZE;
+    // number of sampled source nodes, 0 for exact betweenness from all source nodes
+    private int samples;
+    private boolean degreeWeighted;
+    private long seed;
 
     public BetweennessCentrality(GraphDatabaseAPI db,
                                  ExecutorService pool, Log log)
@@ -34,10 +41,23 @@ public class BetweennessCentrality implements AlgorithmInterface {
         algorithm = new Algorithm(db, pool, log);
     }
 
+    public BetweennessCentrality(GraphDatabaseAPI db,
+                                 ExecutorService pool, Log log, ProjectedGraph graph)
+    {
+        this.pool = pool;
+        this.db = db;
+        this.log = log;
+        this.graph = graph;
+        this.nodeCount = graph.getNodeCount();
+        this.relCount = (int) graph.getRelCount();
+        stats.nodes = graph.getProjectedNodeCount();
+        stats.relationships = graph.getRelCount();
+    }
+
     @Override
     public double getResult(long node) {
         float val = -1;
-        int logicalIndex = algorithm.getAlgoNodeId((int)node);
+        int logicalIndex = graph != null ? (int) node : algorithm.getAlgoNodeId((int)node);
         if (logicalIndex >= 0 && betweennessCentrality.length >= logicalIndex) {
             val = betweennessCentrality[logicalIndex];
         }
@@ -56,7 +76,7 @@ public class BetweennessCentrality implements AlgorithmInterface {
 
     @Override
     public long getMappedNode(int algoId) {
-        return algorithm.getMappedNode(algoId);
+        return graph != null ? algoId : algorithm.getMappedNode(algoId);
     }
 
     public boolean readNodeAndRelCypherData(String relCypher, String nodeCypher, Number weight, Number batchSize, int concurrency) {
@@ -78,19 +98,48 @@ public class BetweennessCentrality implements AlgorithmInterface {
         return stats;
     }
 
+    /**
+     * Approximates betweenness by running Brandes only from a sample of source nodes and extrapolating their
+     * dependencies to all sources. Sources are drawn uniformly without replacement, or with replacement proportional
+     * to their degree, each dependency is scaled by the inverse of the sampling probability, so the scores stay unbiased.
+     * @param samples the number of source nodes, 0 or at least the number of nodes computes exact betweenness
+     */
+    public BetweennessCentrality withSampling(int samples, boolean degreeWeighted, long seed) {
+        this.samples = samples;
+        this.degreeWeighted = degreeWeighted;
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Number of uniformly sampled sources so that with the given confidence every score, normalized by n*(n-1),
+     * is within the error of the exact value (Hoeffding's inequality with a union bound over all nodes).
+     */
+    public static int sampleSize(long nodes, double error, double confidence) {
+        if (nodes <= 1) return (int) nodes;
+        double samples = Math.log(2 * nodes / (1 - confidence)) / (2 * error * error);
+        return (int) Math.min(nodes, Math.ceil(samples));
+    }
+
     public void computeUnweightedSeq() {
-        computeUnweightedSeq(algorithm.sourceDegreeData,
-                algorithm.sourceChunkStartingIndex,
-                algorithm.relationshipTarget);
+        computeUnweightedSeq(adjacency());
+    }
+
+    private Adjacency adjacency() {
+        return graph != null ? graph.adjacency(Direction.OUTGOING) : algorithm.adjacency();
     }
 
-    private void computeUnweightedSeq(int[] sourceDegreeData, int[] sourceChunkStartingIndex, int[] relationshipTarget) {
+    private void computeUnweightedSeq(Adjacency adjacency) {
         betweennessCentrality = new float[nodeCount];
         Arrays.fill(betweennessCentrality, 0);
         long before = System.currentTimeMillis();
         int start = 0;
         int end = nodeCount;
-        processNodesInBatch(-1, start, end, sourceDegreeData, sourceChunkStartingIndex, relationshipTarget);
+        Workspace workspace = new Workspace();
+        processNodesInBatch(workspace, start, end, adjacency, null, null);
+        for (int node = 0; node < nodeCount; node++) {
+            betweennessCentrality[node] = (float) workspace.dependencies[node];
+        }
         long after = System.currentTimeMillis();
         long difference = after - before;
         log.info("Computations took " + difference + " milliseconds");
@@ -98,53 +147,48 @@ public class BetweennessCentrality implements AlgorithmInterface {
     }
 
     public void computeUnweightedParallel() {
-        computeUnweightedParallel(algorithm.sourceDegreeData,
-                algorithm.sourceChunkStartingIndex,
-                algorithm.relationshipTarget);
+        computeUnweightedParallel(adjacency());
     }
 
     public void computeUnweightedParallel(int [] sourceDegreeData,
                                   int [] sourceChunkStartingIndex,
                                   int [] relationshipTarget) {
+        computeUnweightedParallel(new ArrayAdjacency(nodeCount, sourceDegreeData, sourceChunkStartingIndex, relationshipTarget, null));
+    }
+
+    public void computeUnweightedParallel(Adjacency adjacency) {
         betweennessCentrality = new float[nodeCount];
         Arrays.fill(betweennessCentrality, 0);
         long before = System.currentTimeMillis();
 
-        int numOfThreads = Pools.getNoThreadsInDefaultPool();
-        assert(numOfThreads != 0);
-        int batchSize = (int)nodeCount/numOfThreads;
-        int batches = 0;
-        if (batchSize > 0)
-            batches = (int)nodeCount/batchSize;
-
-        if (batchSize < MINIMUM_BATCH_SIZE) {
-            batches = 1;
-            batchSize = nodeCount;
+        int[] sources = null;
+        float[] scales = null;
+        int sourceCount = nodeCount;
+        if (samples > 0 && samples < nodeCount) {
+            scales = new float[nodeCount];
+            sources = degreeWeighted ? sampleByDegree(adjacency, scales) : sampleUniform(adjacency, scales);
+            sourceCount = sources.length;
+            log.info("Sampled " + sourceCount + " distinct source nodes out of " + nodeCount);
         }
 
-
-        List<Future> futures = new ArrayList<>(batches);
-        intermediateBcPerThread = Primitive.intObjectMap();
-        int nodeIter = 0;
-        int batchNumber = 0;
-        while(nodeIter < nodeCount) {
-            final int start = nodeIter;
-            final int end = Integer.min(start + batchSize, nodeCount);
-            final int threadBatchNo = batchNumber;
-            Future future = pool.submit(new Runnable() {
-                @Override
-                public void run() {
-                    processNodesInBatch(threadBatchNo, start, end, sourceDegreeData, sourceChunkStartingIndex, relationshipTarget);
-                }
-            });
-            nodeIter = end;
-            batchNumber++;
-            futures.add(future);
+        // every thread needs 20 bytes per node, so only start as many as there are ranges
+        int threads = Math.max(1, Math.min(Pools.getNoThreadsInAlgoPool(), sourceCount));
+        int rangeSize = Math.max(1, sourceCount / (threads * RANGES_PER_THREAD));
+        log.info("Processing " + sourceCount + " sources in ranges of " + rangeSize + " on " + threads + " threads");
+        // summed up in double precision, so that the scores don't depend on which thread processed which range
+        double[] scores = new double[nodeCount];
+        AtomicInteger nextSource = new AtomicInteger();
+        int[] rangeSources = sources;
+        float[] rangeScales = scales;
+        int count = sourceCount;
+        List<Future> futures = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            futures.add(pool.submit(() -> processRanges(adjacency, rangeSources, rangeScales, count, rangeSize, nextSource, scores)));
         }
-        log.info("Total batches: " + batchNumber);
         AlgoUtils.waitForTasks(futures);
-
-        compileResults(batchNumber);
+        for (int node = 0; node < nodeCount; node++) {
+            betweennessCentrality[node] = (float) scores[node];
+        }
 
         long after = System.currentTimeMillis();
         long difference = after - before;
@@ -152,43 +196,120 @@ public class BetweennessCentrality implements AlgorithmInterface {
         stats.computeMillis = difference;
     }
 
-    private void compileResults(int batchNumber) {
-        for (int i = 0; i < nodeCount; i++) {
-            float value = 0;
-            Object batchValue = 0;
-            for (int batch = 0; batch < batchNumber; batch++) {
-                batchValue = ((PrimitiveIntObjectMap)intermediateBcPerThread.get(batch)).get(i);
-                if (batchValue != null)
-                    value += (float)batchValue;
+    // k distinct sources out of the nodes with relationships, each one stands for n/k sources
+    private int[] sampleUniform(Adjacency adjacency, float[] scales) {
+        int[] candidates = new int[nodeCount];
+        int candidateCount = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            if (adjacency.degree(node) > 0) candidates[candidateCount++] = node;
+        }
+        int sampleCount = Math.min(samples, candidateCount);
+        // partial Fisher-Yates shuffle
+        Random random = new Random(seed);
+        for (int i = 0; i < sampleCount; i++) {
+            int j = i + random.nextInt(candidateCount - i);
+            int tmp = candidates[i];
+            candidates[i] = candidates[j];
+            candidates[j] = tmp;
+        }
+        int[] sources = Arrays.copyOf(candidates, sampleCount);
+        Arrays.sort(sources);
+        for (int source : sources) {
+            scales[source] = candidateCount / (float) sampleCount;
+        }
+        return sources;
+    }
+
+    // k draws with replacement with probability degree/totalDegree, each draw stands for totalDegree/(k*degree) sources
+    private int[] sampleByDegree(Adjacency adjacency, float[] scales) {
+        long[] cumulativeDegrees = new long[nodeCount];
+        long totalDegree = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            totalDegree += adjacency.degree(node);
+            cumulativeDegrees[node] = totalDegree;
+        }
+        if (totalDegree == 0) return new int[0];
+        Random random = new Random(seed);
+        int sourceCount = 0;
+        for (int i = 0; i < samples; i++) {
+            long pick = (long) (random.nextDouble() * totalDegree);
+            int idx = Arrays.binarySearch(cumulativeDegrees, pick + 1);
+            // first node whose cumulative degree exceeds the pick
+            int source = idx >= 0 ? idx : -idx - 1;
+            while (source > 0 && cumulativeDegrees[source - 1] == cumulativeDegrees[source]) source--;
+            if (scales[source] == 0) sourceCount++;
+            // draws of the same source add up
+            scales[source] += totalDegree / ((float) samples * adjacency.degree(source));
+        }
+        int[] sources = new int[sourceCount];
+        sourceCount = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            if (scales[node] > 0) sources[sourceCount++] = node;
+        }
+        return sources;
+    }
+
+    /**
+     * Takes ranges of sources until there are none left, traversals from sources in a dense part of the graph take
+     * much longer than others, so equal batches per thread would leave most threads waiting for the slowest one.
+     * The dependencies of the ranges are summed up in one array per thread and added to the scores at the end.
+     */
+    private void processRanges(Adjacency adjacency, int[] sources, float[] scales, int sourceCount, int rangeSize,
+                               AtomicInteger nextSource, double[] scores) {
+        Workspace workspace = new Workspace();
+        int start;
+        while ((start = nextSource.getAndAdd(rangeSize)) < sourceCount) {
+            processNodesInBatch(workspace, start, Math.min(sourceCount, start + rangeSize), adjacency, sources, scales);
+        }
+        synchronized (scores) {
+            for (int node = 0; node < nodeCount; node++) {
+                scores[node] += workspace.dependencies[node];
             }
-            betweennessCentrality[i] = value;
         }
     }
 
-    private void processNodesInBatch(int threadBatchNo,
+    /**
+     * The arrays of a thread, reused for all of its sources, 20 bytes per node.
+     */
+    private class Workspace {
+        final double[] dependencies = new double[nodeCount];
+        final int[] numShortestPaths = new int[nodeCount]; // sigma
+        final int[] distance = new int[nodeCount];
+        final float[] delta = new float[nodeCount];
+    }
+
+    /**
+     * @param workspace the dependencies of the sources are added to its dependencies
+     * @param sources if not null the source nodes are sources[start] until sources[end], otherwise start until end
+     * @param scales if not null the dependencies of each source are scaled by scales[source]
+     */
+    private void processNodesInBatch(Workspace workspace,
                                      int start,
                                      int end,
-                                     int [] sourceDegreeData,
-                                     int [] sourceChunkStartingIndex,
-                                     int [] relationshipTarget) {
+                                     Adjacency adjacency,
+                                     int[] sources,
+                                     float[] scales) {
         Stack<Integer> stack = new Stack<>(); // S
         Queue<Integer> queue = new LinkedList<>();
 
-        log.info("Thread: " + Thread.currentThread().getName() + " processing " + start + " " + end);
+        log.debug("Thread: " + Thread.currentThread().getName() + " processing " + start + " " + end);
         // Map<Integer, ArrayList<Integer>>predecessors = new HashMap<Integer, ArrayList<Integer>>(); // Pw
 
         PrimitiveIntObjectMap predecessors = Primitive.intObjectMap();
 
-        int numShortestPaths[] = new int [nodeCount]; // sigma
-        int distance[] = new int[nodeCount]; // distance
-        PrimitiveIntObjectMap map = Primitive.intObjectMap();
-        float delta[] = new float[nodeCount];
+        double[] dependencies = workspace.dependencies;
+        int[] numShortestPaths = workspace.numShortestPaths;
+        int[] distance = workspace.distance;
+        float[] delta = workspace.delta;
+        Adjacency.Cursor neighbours = adjacency.cursor();
 
         int processedNode = 0;
-        for (int source = start; source < end; source++) {
+        for (int sourceIdx = start; sourceIdx < end; sourceIdx++) {
+            int source = sources == null ? sourceIdx : sources[sourceIdx];
+            float scale = scales == null ? 1 : scales[source];
 
             processedNode++;
-            if (sourceDegreeData[source] == 0) {
+            if (adjacency.degree(source) == 0) {
                 continue;
             }
 
@@ -206,11 +327,9 @@ public class BetweennessCentrality implements AlgorithmInterface {
                 stack.push(nodeDequeued);
 
                 // For each neighbour of dequeued.
-                int chunkIndex = sourceChunkStartingIndex[nodeDequeued];
-                int degree = sourceDegreeData[nodeDequeued];
-
-                for (int j = 0; j < degree; j++) {
-                    int target = relationshipTarget[chunkIndex + j];
+                neighbours.init(nodeDequeued);
+                while (neighbours.hasNext()) {
+                    int target = neighbours.next();
 
                     if (distance[target] < 0) {
                         queue.add(target);
@@ -242,15 +361,7 @@ public class BetweennessCentrality implements AlgorithmInterface {
                     delta[node] += partialDependency;
                 }
                 if (poppedNode != source && delta[poppedNode] != 0.0) {
-                    if (threadBatchNo == -1) {
-                        betweennessCentrality[poppedNode] = betweennessCentrality[poppedNode] + delta[poppedNode];
-                    } else {
-                        Object storedValue = map.get(poppedNode);
-                        if (storedValue != null)
-                            map.put(poppedNode, ((float)storedValue) + delta[poppedNode]);
-                        else
-                            map.put(poppedNode, delta[poppedNode]);
-                    }
+                    dependencies[poppedNode] += scale * delta[poppedNode];
                 }
             }
 
@@ -259,21 +370,18 @@ public class BetweennessCentrality implements AlgorithmInterface {
             }
         }
 
-        intermediateBcPerThread.put(threadBatchNo, map);
-        delta = null;
-        numShortestPaths = null;
-        stack = null;
-        queue = null;
-        distance = null;
         log.debug("Thread: " + Thread.currentThread().getName() + " Finishing " + processedNode);
     }
 
+    public BetweennessCentrality withWriteBatchSize(int writeBatchSize) {
+        this.writeBatchSize = writeBatchSize;
+        return this;
+    }
+
     public void writeResultsToDB(String property) {
         this.property = property;
         stats.write = true;
-        long before = System.currentTimeMillis();
-        AlgoUtils.writeBackResults(pool, db, this, WRITE_BATCH);
-        stats.writeMillis = System.currentTimeMillis() - before;
+        stats.writeMillis = new ResultWriter(db, pool).withLog(log).withBatchSize(writeBatchSize).write(this).writeMillis;
         stats.property = getPropertyName();
     }
 }
@@ -0,0 +1,202 @@
+package apoc.algo.algorithms;
+
+import apoc.Pools;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.logging.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unweighted closeness centrality (1 / sum of the distances to all reachable nodes) and harmonic centrality
+ * (sum of the inverse distances to all reachable nodes) on dense node ids.
+ * Runs a bit-parallel multi-source breadth first search, which traverses from 64 sources at once, the bits of a long
+ * per node mark which of the sources have seen and which have to visit the node. So each level is a single sweep over
+ * the relationships for all 64 sources. Groups of sources are processed in parallel.
+ */
+public class Closeness implements AlgorithmInterface {
+    static final int SOURCES_PER_WORD = Long.SIZE;
+    private final Adjacency adjacency;
+    private final ExecutorService pool;
+    private final Log log;
+    private final int nodeCount;
+    // maps between node-ids and the dense ids of the cypher loaded graph, null for a projection
+    private final AlgoIdGenerator ids;
+    private double[] closeness;
+    private double[] harmonic;
+    private String property = "closeness";
+    private int writeBatchSize = ResultWriter.DEFAULT_BATCH_SIZE;
+    private Statistics stats = new Statistics();
+
+    public Closeness(Adjacency adjacency, ExecutorService pool, Log log) {
+        this(adjacency, null, pool, log);
+    }
+
+    public Closeness(Algorithm algorithm, ExecutorService pool, Log log) {
+        this(algorithm.adjacency(), algorithm, pool, log);
+        stats.relationships = algorithm.relCount;
+        stats.readNodeMillis = algorithm.readNodeMillis;
+        stats.readRelationshipMillis = algorithm.readRelationshipMillis;
+    }
+
+    private Closeness(Adjacency adjacency, AlgoIdGenerator ids, ExecutorService pool, Log log) {
+        this.adjacency = adjacency;
+        this.ids = ids;
+        this.pool = pool;
+        this.log = log;
+        this.nodeCount = adjacency.getNodeCount();
+        stats.nodes = nodeCount;
+    }
+
+    public void compute() {
+        closeness = new double[nodeCount];
+        harmonic = new double[nodeCount];
+        long before = System.currentTimeMillis();
+        // sources without relationships have a closeness of 0 and don't need a bit
+        int[] sources = new int[nodeCount];
+        int sourceCount = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            if (adjacency.degree(node) > 0) sources[sourceCount++] = node;
+        }
+        int words = (sourceCount + SOURCES_PER_WORD - 1) / SOURCES_PER_WORD;
+        // every thread needs three longs per node, so only start as many as there is work for
+        int threads = Math.min(Pools.getNoThreadsInAlgoPool(), words);
+        AtomicInteger nextWord = new AtomicInteger();
+        List<Future> futures = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            int count = sourceCount;
+            futures.add(pool.submit(() -> processSources(sources, count, nextWord)));
+        }
+        AlgoUtils.waitForTasks(futures);
+        stats.computeMillis = System.currentTimeMillis() - before;
+        log.info("Closeness: Computations for %d sources in %d words took %d milliseconds", sourceCount, words, stats.computeMillis);
+    }
+
+    private void processSources(int[] sources, int sourceCount, AtomicInteger nextWord) {
+        long[] seen = new long[nodeCount];
+        long[] visit = new long[nodeCount];
+        long[] visitNext = new long[nodeCount];
+        long[] distanceSum = new long[SOURCES_PER_WORD];
+        double[] inverseDistanceSum = new double[SOURCES_PER_WORD];
+        Adjacency.Cursor neighbours = adjacency.cursor();
+        int word;
+        while ((word = nextWord.getAndIncrement()) * SOURCES_PER_WORD < sourceCount) {
+            int offset = word * SOURCES_PER_WORD;
+            int bits = Math.min(SOURCES_PER_WORD, sourceCount - offset);
+            Arrays.fill(seen, 0);
+            Arrays.fill(visit, 0);
+            Arrays.fill(distanceSum, 0);
+            Arrays.fill(inverseDistanceSum, 0);
+            for (int bit = 0; bit < bits; bit++) {
+                int source = sources[offset + bit];
+                seen[source] |= 1L << bit;
+                visit[source] |= 1L << bit;
+            }
+            boolean reached = true;
+            for (int distance = 1; reached; distance++) {
+                reached = false;
+                double inverseDistance = 1D / distance;
+                for (int node = 0; node < nodeCount; node++) {
+                    long frontier = visit[node];
+                    if (frontier == 0) continue;
+                    neighbours.init(node);
+                    while (neighbours.hasNext()) {
+                        int target = neighbours.next();
+                        long newlySeen = frontier & ~seen[target];
+                        if (newlySeen == 0) continue;
+                        seen[target] |= newlySeen;
+                        visitNext[target] |= newlySeen;
+                        reached = true;
+                        for (; newlySeen != 0; newlySeen &= newlySeen - 1) {
+                            int bit = Long.numberOfTrailingZeros(newlySeen);
+                            distanceSum[bit] += distance;
+                            inverseDistanceSum[bit] += inverseDistance;
+                        }
+                    }
+                }
+                long[] tmp = visit;
+                visit = visitNext;
+                visitNext = tmp;
+                Arrays.fill(visitNext, 0);
+            }
+            for (int bit = 0; bit < bits; bit++) {
+                int source = sources[offset + bit];
+                closeness[source] = distanceSum[bit] == 0 ? 0 : 1D / distanceSum[bit];
+                harmonic[source] = inverseDistanceSum[bit];
+            }
+        }
+    }
+
+    public Closeness withProperty(String property) {
+        this.property = property;
+        return this;
+    }
+
+    private int algoId(long node) {
+        return ids == null ? (int) node : ids.getAlgoNodeId(node);
+    }
+
+    @Override
+    public double getResult(long node) {
+        int id = algoId(node);
+        return closeness == null || id < 0 || id >= nodeCount ? 0 : closeness[id];
+    }
+
+    public double getHarmonic(long node) {
+        int id = algoId(node);
+        return harmonic == null || id < 0 || id >= nodeCount ? 0 : harmonic[id];
+    }
+
+    /**
+     * the harmonic centrality as an algorithm result, e.g. for writing it back
+     */
+    public AlgorithmInterface harmonic(String property) {
+        Closeness closeness = this;
+        return new AlgorithmInterface() {
+            public double getResult(long node) { return closeness.getHarmonic(node); }
+            public long numberOfNodes() { return closeness.numberOfNodes(); }
+            public String getPropertyName() { return property; }
+            public long getMappedNode(int algoId) { return closeness.getMappedNode(algoId); }
+        };
+    }
+
+    @Override
+    public long numberOfNodes() {
+        return nodeCount;
+    }
+
+    @Override
+    public String getPropertyName() {
+        return property;
+    }
+
+    @Override
+    public long getMappedNode(int algoId) {
+        return ids == null ? algoId : ids.getMappedNode(algoId);
+    }
+
+    public Statistics getStatistics() {
+        return stats;
+    }
+
+    public Closeness withWriteBatchSize(int writeBatchSize) {
+        this.writeBatchSize = writeBatchSize;
+        return this;
+    }
+
+    public void writeResultsToDB(GraphDatabaseAPI db, String harmonicProperty) {
+        stats.write = true;
+        long before = System.currentTimeMillis();
+        ResultWriter writer = new ResultWriter(db, pool).withLog(log).withBatchSize(writeBatchSize);
+        writer.write(this);
+        if (harmonicProperty != null) {
+            writer.write(harmonic(harmonicProperty));
+        }
+        stats.writeMillis = System.currentTimeMillis() - before;
+        stats.property = property;
+    }
+}
@@ -0,0 +1,279 @@
+package apoc.algo.algorithms;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Off-heap adjacency lists for dense node ids.
+ * Each list is stored as varint(degree) followed by the sorted, delta- and varint-encoded target ids,
+ * optionally each followed by the 4 bytes of the float relationship weight.
+ * The bytes live in direct ByteBuffer pages, only the per-node start offsets are kept on the heap.
+ *
+ * Lists can be added from several threads, reading is only safe after all lists were added.
+ * The creator owns one reference, readers {@link #retain()} one while they read, the pages are dropped
+ * when the last reference is released.
+ */
+public class CompressedAdjacency implements Adjacency {
+    static final int PAGE_BITS = 24;
+    static final int PAGE_SIZE = 1 << PAGE_BITS;
+    static final long PAGE_MASK = PAGE_SIZE - 1;
+    static final int MIN_PAGE_SIZE = 1 << 16;
+    private static final long NO_RELATIONSHIPS = -1L;
+
+    private final int nodeCount;
+    private final boolean weighted;
+    private final long[] offsets;
+    private ByteBuffer[] pages = new ByteBuffer[1];
+    private long position = 0;
+    private long relCount = 0;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    public CompressedAdjacency(int nodeCount, boolean weighted) {
+        this.nodeCount = nodeCount;
+        this.weighted = weighted;
+        this.offsets = new long[nodeCount];
+        Arrays.fill(offsets, NO_RELATIONSHIPS);
+    }
+
+    /**
+     * stores the neighbours of a node, the arrays are sorted in place
+     * @param weights can be null for unweighted adjacencies
+     */
+    public void add(int node, int[] targets, float[] weights, int count) {
+        if (count == 0) return;
+        Scratch s = scratch.get();
+        int len = weighted ? s.encodeWeighted(targets, weights, count) : s.encode(targets, count);
+        offsets[node] = append(s.bytes, len, count);
+    }
+
+    private synchronized long append(byte[] bytes, int len, int count) {
+        long start = position;
+        int written = 0;
+        while (written < len) {
+            int pageIdx = (int) (position >>> PAGE_BITS);
+            int inPage = (int) (position & PAGE_MASK);
+            int chunk = Math.min(len - written, PAGE_SIZE - inPage);
+            ByteBuffer page = page(pageIdx, inPage + chunk);
+            page.position(inPage);
+            page.put(bytes, written, chunk);
+            written += chunk;
+            position += chunk;
+        }
+        relCount += count;
+        return start;
+    }
+
+    // grows the last page in steps until it reaches PAGE_SIZE, so small graphs don't allocate a full page
+    private ByteBuffer page(int pageIdx, int required) {
+        if (pageIdx >= pages.length) {
+            pages = Arrays.copyOf(pages, Math.max(pageIdx + 1, pages.length * 2));
+        }
+        ByteBuffer page = pages[pageIdx];
+        if (page == null || page.capacity() < required) {
+            int capacity = MIN_PAGE_SIZE;
+            while (capacity < required) capacity <<= 1;
+            ByteBuffer newPage = ByteBuffer.allocateDirect(capacity);
+            if (page != null) {
+                page.clear();
+                newPage.put(page);
+            }
+            pages[pageIdx] = page = newPage;
+        }
+        return page;
+    }
+
+    private byte get(long pos) {
+        return pages[(int) (pos >>> PAGE_BITS)].get((int) (pos & PAGE_MASK));
+    }
+
+    @Override
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public long getRelCount() {
+        return relCount;
+    }
+
+    public boolean isWeighted() {
+        return weighted;
+    }
+
+    /**
+     * @return off-heap bytes allocated plus the on-heap offsets
+     */
+    public long getAllocatedBytes() {
+        long bytes = (long) offsets.length * Long.BYTES;
+        for (ByteBuffer page : pages) {
+            if (page != null) bytes += page.capacity();
+        }
+        return bytes;
+    }
+
+    @Override
+    public int degree(int node) {
+        long offset = offsets[node];
+        if (offset == NO_RELATIONSHIPS) return 0;
+        int value = 0, shift = 0;
+        byte b;
+        do {
+            b = get(offset++);
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    @Override
+    public Cursor cursor() {
+        return new CompressedCursor();
+    }
+
+    /**
+     * adds a reference for a reader, which has to {@link #release()} it when done
+     * @return false if the last reference was already released
+     */
+    public boolean retain() {
+        int count;
+        do {
+            count = references.get();
+            if (count == 0) return false;
+        } while (!references.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    /**
+     * drops a reference, the last one drops the pages, the direct memory is freed when the buffers are garbage collected
+     */
+    public void release() {
+        int count = references.decrementAndGet();
+        if (count < 0) {
+            references.incrementAndGet();
+            throw new IllegalStateException("Adjacency was already released");
+        }
+        if (count == 0) {
+            pages = new ByteBuffer[1];
+            position = 0;
+        }
+    }
+
+    private class CompressedCursor implements Cursor {
+        private long pos;
+        private int remaining;
+        private int current;
+        private float weight = 1f;
+
+        @Override
+        public Cursor init(int node) {
+            long offset = offsets[node];
+            current = 0;
+            if (offset == NO_RELATIONSHIPS) {
+                remaining = 0;
+            } else {
+                pos = offset;
+                remaining = readVInt();
+            }
+            return this;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public int next() {
+            remaining--;
+            current += readVInt();
+            if (weighted) {
+                weight = Float.intBitsToFloat(readInt());
+            }
+            return current;
+        }
+
+        @Override
+        public float weight() {
+            return weight;
+        }
+
+        private int readVInt() {
+            int value = 0, shift = 0;
+            byte b;
+            do {
+                b = get(pos++);
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+
+        private int readInt() {
+            return (get(pos++) & 0xFF) << 24 | (get(pos++) & 0xFF) << 16 | (get(pos++) & 0xFF) << 8 | (get(pos++) & 0xFF);
+        }
+    }
+
+    /**
+     * per thread encoding buffers
+     */
+    private static class Scratch {
+        byte[] bytes = new byte[1024];
+        long[] packed = new long[0];
+        int idx;
+
+        int encode(int[] targets, int count) {
+            Arrays.sort(targets, 0, count);
+            reset(count, 5);
+            writeVInt(count);
+            int previous = 0;
+            for (int i = 0; i < count; i++) {
+                writeVInt(targets[i] - previous);
+                previous = targets[i];
+            }
+            return idx;
+        }
+
+        // sorts target and weight together by packing them into one long, the non-negative target in the high bits
+        int encodeWeighted(int[] targets, float[] weights, int count) {
+            if (packed.length < count) packed = new long[Math.max(count, packed.length * 2)];
+            for (int i = 0; i < count; i++) {
+                float weight = weights == null ? 1f : weights[i];
+                packed[i] = ((long) targets[i]) << 32 | (Float.floatToRawIntBits(weight) & 0xFFFFFFFFL);
+            }
+            Arrays.sort(packed, 0, count);
+            reset(count, 9);
+            writeVInt(count);
+            int previous = 0;
+            for (int i = 0; i < count; i++) {
+                int target = (int) (packed[i] >>> 32);
+                writeVInt(target - previous);
+                writeInt((int) packed[i]);
+                previous = target;
+            }
+            return idx;
+        }
+
+        private void reset(int count, int bytesPerEntry) {
+            int required = (count + 1) * bytesPerEntry;
+            if (bytes.length < required) bytes = new byte[Math.max(required, bytes.length * 2)];
+            idx = 0;
+        }
+
+        private void writeVInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                bytes[idx++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[idx++] = (byte) value;
+        }
+
+        private void writeInt(int value) {
+            bytes[idx++] = (byte) (value >>> 24);
+            bytes[idx++] = (byte) (value >>> 16);
+            bytes[idx++] = (byte) (value >>> 8);
+            bytes[idx++] = (byte) value;
+        }
+    }
+}
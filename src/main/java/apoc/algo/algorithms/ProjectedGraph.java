@@ -0,0 +1,365 @@
+package apoc.algo.algorithms;
+
+import apoc.algo.pagerank.NodeCounter;
+import apoc.util.Util;
+import org.neo4j.collection.primitive.PrimitiveLongIterator;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.kernel.api.ReadOperations;
+import org.neo4j.kernel.api.exceptions.EntityNotFoundException;
+import org.neo4j.kernel.impl.api.RelationshipVisitor;
+import org.neo4j.kernel.impl.api.store.RelationshipIterator;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.neo4j.kernel.api.ReadOperations.ANY_LABEL;
+
+/**
+ * A named, compressed in-memory projection of (a part of) the graph, loaded once and shared by the algorithms.
+ * Node ids are used directly as dense ids (0..highest node id), so no id-mapping is needed.
+ * Outgoing relationships are always loaded, incoming ones (the reverse index) optionally.
+ * Readers get the graph with {@link #get(String)} and close it when done, so that a concurrent remove or reload
+ * only frees the adjacency lists after the running algorithms finished.
+ */
+public class ProjectedGraph implements AutoCloseable {
+
+    private static final Map<String, ProjectedGraph> GRAPHS = new ConcurrentHashMap<>();
+
+    public static final String CONFIG_LABEL = "label";
+    public static final String CONFIG_RELATIONSHIP = "relationship";
+    public static final String CONFIG_WEIGHT = "weight";
+    public static final String CONFIG_DEFAULT_WEIGHT = "defaultWeight";
+    public static final String CONFIG_REVERSE = "reverse";
+
+    private final String name;
+    private final String label;
+    private final String relationshipType;
+    private final String weightProperty;
+    private final int nodeCount;
+    private final BitSet nodes;
+    private final CompressedAdjacency outgoing;
+    private final CompressedAdjacency incoming;
+    private long loadMillis;
+
+    private ProjectedGraph(String name, String label, String relationshipType, String weightProperty, int nodeCount, boolean reverse) {
+        this.name = name;
+        this.label = label;
+        this.relationshipType = relationshipType;
+        this.weightProperty = weightProperty;
+        this.nodeCount = nodeCount;
+        this.nodes = new BitSet(nodeCount);
+        boolean weighted = weightProperty != null;
+        this.outgoing = new CompressedAdjacency(nodeCount, weighted);
+        this.incoming = reverse ? new CompressedAdjacency(nodeCount, weighted) : null;
+    }
+
+    /**
+     * @return the graph retained for the caller, which has to close it when done reading
+     */
+    public static ProjectedGraph get(String name) {
+        while (true) {
+            ProjectedGraph graph = GRAPHS.get(name);
+            if (graph == null) {
+                throw new RuntimeException("No projected graph with name " + name + " loaded, use apoc.algo.graph.load first");
+            }
+            // otherwise it was removed or replaced concurrently
+            if (graph.retain()) return graph;
+        }
+    }
+
+    public static Collection<ProjectedGraph> list() {
+        return GRAPHS.values();
+    }
+
+    public static ProjectedGraph remove(String name) {
+        ProjectedGraph graph = GRAPHS.remove(name);
+        if (graph != null) graph.release();
+        return graph;
+    }
+
+    public static void clear() {
+        GRAPHS.values().forEach(ProjectedGraph::release);
+        GRAPHS.clear();
+    }
+
+    /**
+     * loads the projection with the read-operations of the current transaction and registers it under its name,
+     * replacing a previously loaded graph with the same name
+     */
+    public static ProjectedGraph load(GraphDatabaseAPI db, String name, Map<String, Object> config) {
+        String label = (String) config.get(CONFIG_LABEL);
+        String relationshipType = (String) config.get(CONFIG_RELATIONSHIP);
+        String weightProperty = (String) config.get(CONFIG_WEIGHT);
+        float defaultWeight = ((Number) config.getOrDefault(CONFIG_DEFAULT_WEIGHT, 1)).floatValue();
+        boolean reverse = Util.toBoolean(config.getOrDefault(CONFIG_REVERSE, false));
+
+        long start = System.currentTimeMillis();
+        ProjectedGraph graph = new ProjectedGraph(name, label, relationshipType, weightProperty, new NodeCounter().getNodeCount(db), reverse);
+        Util.withStatement(db, (stmt, ops) -> {
+            graph.load(ops, defaultWeight);
+            return null;
+        });
+        graph.loadMillis = System.currentTimeMillis() - start;
+
+        ProjectedGraph previous = GRAPHS.put(name, graph);
+        if (previous != null) previous.release();
+        return graph;
+    }
+
+    private void load(ReadOperations ops, float defaultWeight) {
+        int labelId = label == null ? ANY_LABEL : ops.labelGetForName(label);
+        if (label != null && labelId == ANY_LABEL) return;
+        int[] relTypes = relationshipTypeIds(ops);
+        if (relTypes != null && relTypes.length == 0) return;
+        int weightKey = weightProperty == null ? -1 : ops.propertyKeyGetForName(weightProperty);
+
+        // the projected nodes first, so that the relationships to nodes without the label are left out in both directions
+        PrimitiveLongIterator it = labelId == ANY_LABEL ? ops.nodesGetAll() : ops.nodesGetForLabel(labelId);
+        while (it.hasNext()) {
+            nodes.set((int) it.next());
+        }
+        BitSet projected = labelId == ANY_LABEL ? null : nodes;
+        RelationshipCollector collector = new RelationshipCollector(ops, weightKey, defaultWeight);
+        for (int node = nodes.nextSetBit(0); node >= 0; node = nodes.nextSetBit(node + 1)) {
+            collector.collect(node, Direction.OUTGOING, relTypes, projected);
+            outgoing.add(node, collector.targets, collector.weights, collector.count);
+            if (incoming != null) {
+                collector.collect(node, Direction.INCOMING, relTypes, projected);
+                incoming.add(node, collector.targets, collector.weights, collector.count);
+            }
+        }
+    }
+
+    // null for all types, empty if none of the types exists
+    private int[] relationshipTypeIds(ReadOperations ops) {
+        if (relationshipType == null) return null;
+        String[] names = relationshipType.split("\\|");
+        int[] ids = new int[names.length];
+        int count = 0;
+        for (String typeName : names) {
+            int id = ops.relationshipTypeGetForName(typeName.trim());
+            if (id >= 0) ids[count++] = id;
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    private static class RelationshipCollector implements RelationshipVisitor<RuntimeException> {
+        private final ReadOperations ops;
+        private final int weightKey;
+        private final float defaultWeight;
+        int[] targets = new int[64];
+        float[] weights;
+        int count;
+        private long node;
+        // the nodes at the other end that are kept, null for all
+        private BitSet projected;
+
+        RelationshipCollector(ReadOperations ops, int weightKey, float defaultWeight) {
+            this.ops = ops;
+            this.weightKey = weightKey;
+            this.defaultWeight = defaultWeight;
+            this.weights = weightKey == -1 ? null : new float[targets.length];
+        }
+
+        void collect(long node, Direction direction, int[] relTypes, BitSet projected) {
+            this.node = node;
+            this.projected = projected;
+            this.count = 0;
+            try {
+                RelationshipIterator rels = relTypes == null ?
+                        ops.nodeGetRelationships(node, direction) :
+                        ops.nodeGetRelationships(node, direction, relTypes);
+                while (rels.hasNext()) {
+                    rels.relationshipVisit(rels.next(), this);
+                }
+            } catch (EntityNotFoundException e) {
+                // node was deleted concurrently, project it without relationships
+                count = 0;
+            }
+        }
+
+        @Override
+        public void visit(long relId, int type, long start, long end) throws RuntimeException {
+            long other = start == node ? end : start;
+            if (projected != null && !projected.get((int) other)) return;
+            if (count == targets.length) {
+                targets = Arrays.copyOf(targets, count * 2);
+                if (weights != null) weights = Arrays.copyOf(weights, count * 2);
+            }
+            targets[count] = (int) other;
+            if (weights != null) weights[count] = weight(relId);
+            count++;
+        }
+
+        private float weight(long relId) {
+            try {
+                Object value = ops.relationshipGetProperty(relId, weightKey);
+                return value instanceof Number ? ((Number) value).floatValue() : defaultWeight;
+            } catch (EntityNotFoundException e) {
+                return defaultWeight;
+            }
+        }
+    }
+
+    public interface RelationshipConsumer {
+        void accept(int source, int target);
+    }
+
+    /**
+     * visits all (outgoing) relationships of the projection
+     */
+    public void forEachRelationship(RelationshipConsumer consumer) {
+        Adjacency.Cursor cursor = outgoing.cursor();
+        for (int node = 0; node < nodeCount; node++) {
+            cursor.init(node);
+            while (cursor.hasNext()) {
+                consumer.accept(node, cursor.next());
+            }
+        }
+    }
+
+    public Adjacency adjacency(Direction direction) {
+        switch (direction) {
+            case OUTGOING:
+                return outgoing;
+            case INCOMING:
+                return incoming();
+            default:
+                return new BothAdjacency(outgoing, incoming());
+        }
+    }
+
+    private CompressedAdjacency incoming() {
+        if (incoming == null) {
+            throw new RuntimeException("Projected graph " + name + " was loaded without incoming relationships, use {reverse:true}");
+        }
+        return incoming;
+    }
+
+    public boolean hasReverse() {
+        return incoming != null;
+    }
+
+    public int[] degrees(Direction direction) {
+        Adjacency adjacency = adjacency(direction);
+        int[] degrees = new int[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            degrees[node] = adjacency.degree(node);
+        }
+        return degrees;
+    }
+
+    public boolean contains(long node) {
+        return node < nodeCount && nodes.get((int) node);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return size of the dense id-space, i.e. the highest node id + 1
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public long getProjectedNodeCount() {
+        return nodes.cardinality();
+    }
+
+    public long getRelCount() {
+        return outgoing.getRelCount();
+    }
+
+    public boolean isWeighted() {
+        return outgoing.isWeighted();
+    }
+
+    public long getAllocatedBytes() {
+        return outgoing.getAllocatedBytes() + (incoming == null ? 0 : incoming.getAllocatedBytes());
+    }
+
+    public long getLoadMillis() {
+        return loadMillis;
+    }
+
+    public Map<String, Object> getConfig() {
+        return Util.map(CONFIG_LABEL, label, CONFIG_RELATIONSHIP, relationshipType, CONFIG_WEIGHT, weightProperty, CONFIG_REVERSE, hasReverse());
+    }
+
+    private boolean retain() {
+        if (!outgoing.retain()) return false;
+        if (incoming != null && !incoming.retain()) {
+            outgoing.release();
+            return false;
+        }
+        return true;
+    }
+
+    private void release() {
+        outgoing.release();
+        if (incoming != null) incoming.release();
+    }
+
+    /**
+     * releases the reference of a reader obtained by {@link #get(String)}
+     */
+    @Override
+    public void close() {
+        release();
+    }
+
+    private static class BothAdjacency implements Adjacency {
+        private final Adjacency outgoing, incoming;
+
+        BothAdjacency(Adjacency outgoing, Adjacency incoming) {
+            this.outgoing = outgoing;
+            this.incoming = incoming;
+        }
+
+        @Override
+        public int getNodeCount() {
+            return outgoing.getNodeCount();
+        }
+
+        @Override
+        public int degree(int node) {
+            return outgoing.degree(node) + incoming.degree(node);
+        }
+
+        @Override
+        public Cursor cursor() {
+            Cursor out = outgoing.cursor(), in = incoming.cursor();
+            return new Cursor() {
+                Cursor current;
+
+                @Override
+                public Cursor init(int node) {
+                    out.init(node);
+                    in.init(node);
+                    current = out;
+                    return this;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    if (current.hasNext()) return true;
+                    if (current == out) current = in;
+                    return current.hasNext();
+                }
+
+                @Override
+                public int next() {
+                    return current.next();
+                }
+
+                @Override
+                public float weight() {
+                    return current.weight();
+                }
+            };
+        }
+    }
+}
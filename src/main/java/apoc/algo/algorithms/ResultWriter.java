@@ -0,0 +1,121 @@
+package apoc.algo.algorithms;
+
+import apoc.util.Util;
+import org.neo4j.kernel.api.DataWriteOperations;
+import org.neo4j.kernel.api.properties.DefinedProperty;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.logging.Log;
+import org.neo4j.logging.NullLog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.IntPredicate;
+
+/**
+ * Writes algorithm results back as node properties in parallel transactions of batchSize nodes.
+ * The node-ids are sorted first, so every batch writes a consecutive range of node records and the transactions of
+ * the batches don't compete for the same pages. Small batches keep the locks of each transaction short lived,
+ * so that concurrent transactions are not blocked for long.
+ */
+public class ResultWriter {
+    public static final int DEFAULT_BATCH_SIZE = 10_000;
+
+    private final GraphDatabaseAPI db;
+    private final ExecutorService pool;
+    private Log log = NullLog.getInstance();
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    interface PropertyValue {
+        DefinedProperty get(int propertyKeyId, long node);
+    }
+
+    public ResultWriter(GraphDatabaseAPI db, ExecutorService pool) {
+        this.db = db;
+        this.pool = pool;
+    }
+
+    public ResultWriter withBatchSize(int batchSize) {
+        this.batchSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+        return this;
+    }
+
+    public ResultWriter withLog(Log log) {
+        this.log = log;
+        return this;
+    }
+
+    /**
+     * writes the results as double property {@link AlgorithmInterface#getPropertyName()} for all mapped nodes
+     */
+    public WriteStatistics write(AlgorithmInterface algorithm) {
+        int count = (int) algorithm.numberOfNodes();
+        long[] nodeIds = new long[count];
+        int size = 0;
+        for (int algoId = 0; algoId < count; algoId++) {
+            long node = algorithm.getMappedNode(algoId);
+            if (node != -1) nodeIds[size++] = node;
+        }
+        return write(algorithm.getPropertyName(), Arrays.copyOf(nodeIds, size),
+                (key, node) -> DefinedProperty.doubleProperty(key, algorithm.getResult(node)));
+    }
+
+    /**
+     * writes values[node] as long property for the node-ids accepted by the filter
+     */
+    public WriteStatistics write(String property, int[] values, IntPredicate filter) {
+        long[] nodeIds = new long[values.length];
+        int size = 0;
+        for (int node = 0; node < values.length; node++) {
+            if (filter.test(node)) nodeIds[size++] = node;
+        }
+        return write(property, Arrays.copyOf(nodeIds, size), (key, node) -> DefinedProperty.longProperty(key, values[(int) node]));
+    }
+
+    WriteStatistics write(String property, long[] nodeIds, PropertyValue value) {
+        long start = System.currentTimeMillis();
+        Arrays.parallelSort(nodeIds);
+        int propertyKeyId = Util.inTx(db, () -> {
+            ThreadToStatementContextBridge ctx = db.getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class);
+            return ctx.get().tokenWriteOperations().propertyKeyGetOrCreateForName(property);
+        });
+        List<Future<Integer>> futures = new ArrayList<>(nodeIds.length / batchSize + 1);
+        for (int from = 0; from < nodeIds.length; from += batchSize) {
+            int batchStart = from, batchEnd = Math.min(nodeIds.length, from + batchSize);
+            futures.add(Util.inTxFuture(pool, db, (stmt, readOps) -> {
+                try {
+                    DataWriteOperations ops = stmt.dataWriteOperations();
+                    for (int i = batchStart; i < batchEnd; i++) {
+                        ops.nodeSetProperty(nodeIds[i], value.get(propertyKeyId, nodeIds[i]));
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException("Error writing property " + property + " for nodes " + nodeIds[batchStart] + " to " + nodeIds[batchEnd - 1], e);
+                }
+                return batchEnd - batchStart;
+            }));
+        }
+        WriteStatistics stats = new WriteStatistics();
+        for (Future<Integer> future : futures) {
+            try {
+                stats.nodes += future.get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new RuntimeException("Error writing back results", e);
+            }
+        }
+        stats.batches = futures.size();
+        stats.batchSize = batchSize;
+        stats.writeMillis = System.currentTimeMillis() - start;
+        stats.nodesPerSecond = stats.nodes * 1000 / Math.max(1, stats.writeMillis);
+        log.info("Wrote property %s of %d nodes in %d batches of %d in %d ms, %d nodes per second",
+                property, stats.nodes, stats.batches, stats.batchSize, stats.writeMillis, stats.nodesPerSecond);
+        return stats;
+    }
+
+    public static class WriteStatistics {
+        public long nodes, batches, batchSize, writeMillis, nodesPerSecond;
+    }
+}
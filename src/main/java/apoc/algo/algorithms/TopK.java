@@ -0,0 +1,104 @@
+package apoc.algo.algorithms;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the k entries with the highest scores in a bounded min-heap on primitive arrays, so that only k results have
+ * to be materialized and sorted instead of one per node. On equal scores the smaller id wins.
+ */
+public class TopK {
+    // the arrays grow up to k, as k comes from the user and may be far more than there are candidates
+    private static final int INITIAL_CAPACITY = 1024;
+    private final int k;
+    private long[] ids;
+    private double[] scores;
+    private int size;
+
+    public interface Mapper<T> {
+        T map(long id, double score);
+    }
+
+    public TopK(int k) {
+        this.k = Math.max(0, k);
+        this.ids = new long[Math.min(this.k, INITIAL_CAPACITY)];
+        this.scores = new double[ids.length];
+    }
+
+    public void offer(long id, double score) {
+        if (size < k) {
+            if (size == ids.length) grow();
+            ids[size] = id;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (size > 0 && worse(ids[0], scores[0], id, score)) {
+            ids[0] = id;
+            scores[0] = score;
+            siftDown(0, size);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * the entries ordered by descending score, the heap is consumed
+     */
+    public <T> Stream<T> stream(Mapper<T> mapper) {
+        // heap sort in place, repeatedly moving the worst entry behind the heap leaves them best first
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+        int count = size;
+        size = 0;
+        return IntStream.range(0, count).mapToObj(i -> mapper.map(ids[i], scores[i]));
+    }
+
+    private void grow() {
+        int capacity = (int) Math.min(k, 2L * ids.length);
+        ids = Arrays.copyOf(ids, capacity);
+        scores = Arrays.copyOf(scores, capacity);
+    }
+
+    // if entry a ranks below entry b
+    private static boolean worse(long idA, double scoreA, long idB, double scoreB) {
+        int cmp = Double.compare(scoreA, scoreB);
+        return cmp < 0 || cmp == 0 && idA > idB;
+    }
+
+    private boolean worse(int a, int b) {
+        return worse(ids[a], scores[a], ids[b], scores[b]);
+    }
+
+    private void siftUp(int idx) {
+        while (idx > 0) {
+            int parent = (idx - 1) >>> 1;
+            if (!worse(idx, parent)) return;
+            swap(idx, parent);
+            idx = parent;
+        }
+    }
+
+    private void siftDown(int idx, int end) {
+        while (true) {
+            int child = 2 * idx + 1;
+            if (child >= end) return;
+            if (child + 1 < end && worse(child + 1, child)) child++;
+            if (!worse(child, idx)) return;
+            swap(idx, child);
+            idx = child;
+        }
+    }
+
+    private void swap(int a, int b) {
+        long id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        double score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
@@ -9,6 +9,17 @@ public interface PageRank extends PageRankAlgorithm
 
     void compute( int iterations, RelationshipType... relationshipTypes );
 
+    /**
+     * stop before the given number of iterations once the L1 norm of the rank changes of an iteration drops below
+     * the tolerance, 0 always runs all iterations
+     */
+    PageRank withTolerance( double tolerance );
+
+    /**
+     * only propagate the rank change of the previous iteration, from nodes whose change exceeds tolerance / nodes
+     */
+    PageRank withDelta( boolean delta );
+
     double getResult( long node );
 
     long numberOfNodes();
@@ -21,6 +32,8 @@ public interface PageRank extends PageRankAlgorithm
         public long nodes, relationships, iterations, readNodeMillis, readRelationshipMillis,computeMillis,writeMillis;
         public boolean write;
         public String property;
+        public double tolerance, l1Norm;
+        public boolean delta, converged;
 
         public PageRankStatistics(long nodes, long relationships, long iterations, long readNodeMillis, long readRelationshipMillis, long computeMillis, long writeMillis, boolean write, String property) {
             this.nodes = nodes;
@@ -1,8 +1,8 @@
 package apoc.algo.pagerank;
 
-import apoc.algo.algorithms.AlgoUtils;
 import apoc.algo.algorithms.Algorithm;
 import apoc.algo.algorithms.AlgorithmInterface;
+import apoc.algo.algorithms.ResultWriter;
 import org.neo4j.graphdb.RelationshipType;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.logging.Log;
@@ -18,7 +18,6 @@ import static apoc.algo.pagerank.PageRankUtils.toInt;
 public class PageRankArrayStorageParallelCypher implements PageRank, AlgorithmInterface
 {
     public static final int ONE_MINUS_ALPHA_INT = toInt( ONE_MINUS_ALPHA );
-    public static final int WRITE_BATCH=100_100;
     public static final int INITIAL_ARRAY_SIZE=100_000;
     public final int BATCH_SIZE = 100_000 ;
     private final GraphDatabaseAPI db;
@@ -35,6 +34,9 @@ public class PageRankArrayStorageParallelCypher implements PageRank, AlgorithmIn
 
     private Algorithm algorithm;
     private String property;
+    private int writeBatchSize = ResultWriter.DEFAULT_BATCH_SIZE;
+    private double tolerance;
+    private boolean delta;
 
     public PageRankArrayStorageParallelCypher(
             GraphDatabaseAPI db,
@@ -74,21 +76,55 @@ public class PageRankArrayStorageParallelCypher implements PageRank, AlgorithmIn
         previousPageRanks = new int[nodeCount];
         pageRanksAtomic = new AtomicIntegerArray(nodeCount);
 
-        stats.iterations = iterations;
+        stats.tolerance = tolerance;
+        stats.delta = delta;
         long before = System.currentTimeMillis();
 
+        // ranks of the previous iteration, or the accumulated ranks in delta mode
+        int[] ranks = tolerance > 0 || delta ? new int[nodeCount] : null;
+        int threshold = toInt(tolerance / nodeCount);
         for (int iteration = 0; iteration < iterations; iteration++) {
             long beforeIteration = System.currentTimeMillis();
-            startIteration(sourceChunkStartingIndex, sourceDegreeData, relationshipWeight);
+            if (delta && iteration > 0) {
+                startDeltaIteration(sourceChunkStartingIndex, sourceDegreeData, relationshipWeight, threshold);
+            } else {
+                startIteration(sourceChunkStartingIndex, sourceDegreeData, relationshipWeight, ranks);
+            }
             iterateParallel(iteration, sourceDegreeData, sourceChunkStartingIndex, relationshipTarget, relationshipWeight);
             long afterIteration = System.currentTimeMillis();
             log.info("Time for iteration " + iteration + "  " + (afterIteration - beforeIteration) + " millis");
+            stats.iterations = iteration + 1;
+            if (ranks != null) {
+                stats.l1Norm = toFloat(delta ? accumulateDeltas(ranks) : l1Norm(ranks));
+                if (stats.l1Norm < tolerance) {
+                    stats.converged = true;
+                    log.info("Pagerank: converged after " + stats.iterations + " iterations with an L1 norm of " + stats.l1Norm);
+                    break;
+                }
+            }
+        }
+        if (delta) {
+            for (int node = 0; node < nodeCount; node++) {
+                pageRanksAtomic.set(node, ranks[node]);
+            }
         }
         long after = System.currentTimeMillis();
         stats.computeMillis = (after - before);
 
     }
 
+    @Override
+    public PageRankArrayStorageParallelCypher withTolerance(double tolerance) {
+        this.tolerance = tolerance;
+        return this;
+    }
+
+    @Override
+    public PageRankArrayStorageParallelCypher withDelta(boolean delta) {
+        this.delta = delta;
+        return this;
+    }
+
     @Override
     public void compute(int iterations, RelationshipType... relationshipTypes) {
         compute(iterations,
@@ -123,6 +159,7 @@ public class PageRankArrayStorageParallelCypher implements PageRank, AlgorithmIn
                 @Override
                 public void run() {
                     for (int i = start; i < end; i++) {
+                        if (previousPageRanks[i] == 0) continue;
                         int chunkIndex = sourceChunkStartingIndex[i];
                         int degree = sourceDegreeData[i];
 
@@ -159,7 +196,8 @@ public class PageRankArrayStorageParallelCypher implements PageRank, AlgorithmIn
 
     private void startIteration(int[] sourceChunkStartingIndex,
                                 int[] sourceDegreeData,
-                                int[] relationshipWeight)
+                                int[] relationshipWeight,
+                                int[] ranks)
     {
         for (int node = 0; node < nodeCount; node++) {
             int weightedDegree = getTotalWeightForNode(node, sourceChunkStartingIndex, sourceDegreeData, relationshipWeight);
@@ -168,17 +206,61 @@ public class PageRankArrayStorageParallelCypher implements PageRank, AlgorithmIn
                 continue;
             }
             int prevRank = pageRanksAtomic.get(node);
-            previousPageRanks[node] =  toInt(ALPHA * toFloat(prevRank) / weightedDegree);
+            if (ranks != null) ranks[node] = prevRank;
+            previousPageRanks[node] = contribution(prevRank, weightedDegree);
             pageRanksAtomic.set(node, ONE_MINUS_ALPHA_INT);
         }
     }
 
+    // pageRanksAtomic holds the rank changes of the last iteration, only changes above the threshold are propagated
+    private void startDeltaIteration(int[] sourceChunkStartingIndex,
+                                     int[] sourceDegreeData,
+                                     int[] relationshipWeight,
+                                     int threshold)
+    {
+        for (int node = 0; node < nodeCount; node++) {
+            int change = pageRanksAtomic.getAndSet(node, 0);
+            if (Math.abs(change) <= threshold) {
+                previousPageRanks[node] = 0;
+                continue;
+            }
+            int weightedDegree = getTotalWeightForNode(node, sourceChunkStartingIndex, sourceDegreeData, relationshipWeight);
+            previousPageRanks[node] = contribution(change, weightedDegree);
+        }
+    }
+
+    // nodes without outgoing weight, i.e. no or only zero weight relationships, don't pass on their rank
+    private static int contribution(int rank, int weightedDegree) {
+        return weightedDegree <= 0 ? 0 : toInt(ALPHA * toFloat(rank) / weightedDegree);
+    }
+
+    private long l1Norm(int[] previous) {
+        long sum = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            sum += Math.abs(pageRanksAtomic.get(node) - previous[node]);
+        }
+        return sum;
+    }
+
+    private long accumulateDeltas(int[] ranks) {
+        long sum = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            int change = pageRanksAtomic.get(node);
+            ranks[node] += change;
+            sum += Math.abs(change);
+        }
+        return sum;
+    }
+
+    public PageRankArrayStorageParallelCypher withWriteBatchSize(int writeBatchSize) {
+        this.writeBatchSize = writeBatchSize;
+        return this;
+    }
+
     public void writeResultsToDB(String property) {
         this.property = property;
         stats.write = true;
-        long before = System.currentTimeMillis();
-        AlgoUtils.writeBackResults(pool, db, this, WRITE_BATCH);
-        stats.writeMillis = System.currentTimeMillis() - before;
+        stats.writeMillis = new ResultWriter(db, pool).withLog(log).withBatchSize(writeBatchSize).write(this).writeMillis;
         stats.property = getPropertyName();
     }
 
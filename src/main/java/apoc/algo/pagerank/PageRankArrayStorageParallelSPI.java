@@ -1,36 +1,48 @@
 package apoc.algo.pagerank;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.BitSet;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.atomic.AtomicIntegerArray;
-import java.util.function.IntPredicate;
+import java.util.concurrent.Future;
 
-import apoc.algo.algorithms.AlgoUtils;
+import apoc.Pools;
+import apoc.algo.CoreGraphAlgorithms;
 import apoc.algo.algorithms.AlgorithmInterface;
-import org.neo4j.collection.primitive.PrimitiveLongIterator;
+import apoc.algo.algorithms.ResultWriter;
+import apoc.util.Util;
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.RelationshipType;
-import org.neo4j.kernel.api.ReadOperations;
-import org.neo4j.kernel.impl.api.RelationshipVisitor;
-import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
 
-import static apoc.algo.pagerank.PageRankArrayStorageParallelCypher.WRITE_BATCH;
 import static apoc.algo.pagerank.PageRankUtils.*;
 
+/**
+ * Pull based page rank, the incoming relationships are loaded once, then each thread owns a partition of the nodes
+ * and sums up the contributions of their incoming relationships, so there is no contention and no atomic operations.
+ * Contributions are published in a second array for the next iteration, so the partitions never read what other
+ * partitions write in the same iteration.
+ */
 public class PageRankArrayStorageParallelSPI implements PageRank, AlgorithmInterface
 {
     public static final int ONE_MINUS_ALPHA_INT = toInt( ONE_MINUS_ALPHA );
+    // partitions per thread, so that partitions with many incoming relationships don't leave the other threads idle
+    static final int PARTITIONS_PER_THREAD = 4;
     private final GraphDatabaseAPI db;
-    private final int nodeCount;
+    private int nodeCount;
     private final ExecutorService pool;
-    private final int relCount;
-    private AtomicIntegerArray dst;
+    private final int concurrency;
+    private double[] dst;
+    // outgoing degrees of the last computation, -1 for unused node-ids
+    private int[] degrees;
+    private int writeBatchSize = ResultWriter.DEFAULT_BATCH_SIZE;
+    private double tolerance;
+    private boolean delta;
 
     private PageRankStatistics stats = new PageRankStatistics();
+    private CoreGraphAlgorithms.LoadStatistics loadStatistics;
 
     public PageRankArrayStorageParallelSPI(
             GraphDatabaseService db,
@@ -39,7 +51,7 @@ public class PageRankArrayStorageParallelSPI implements PageRank, AlgorithmInter
         this.pool = pool;
         this.db = (GraphDatabaseAPI) db;
         this.nodeCount = new NodeCounter().getNodeCount( db );
-        this.relCount = new NodeCounter().getRelationshipCount( db );
+        this.concurrency = Pools.getNoThreadsInAlgoPool();
     }
 
     @Override
@@ -47,86 +59,177 @@ public class PageRankArrayStorageParallelSPI implements PageRank, AlgorithmInter
             int iterations,
             RelationshipType... relationshipTypes )
     {
-        stats.iterations = iterations;
-        long start = System.currentTimeMillis();
-        final int[] src = new int[nodeCount];
-        dst = new AtomicIntegerArray( nodeCount );
-        final int[] degrees = computeDegrees(ctx(this.db));
-        stats.readNodeMillis = System.currentTimeMillis() - start;
+        // the incoming relationships of node n are sources[offsets[n]] until sources[offsets[n] + inDegrees[n]]
+        CoreGraphAlgorithms graph = new CoreGraphAlgorithms( db, pool ).initParallel( relationshipTypeIds( relationshipTypes ), Direction.INCOMING );
+        loadStatistics = graph.getLoadStatistics();
+        nodeCount = graph.getNodeIdSpace();
+        // outgoing degrees, -1 for unused node-ids
+        final int[] degrees = graph.getOutDegrees();
+        final int[] inDegrees = graph.getDegrees();
+        final int[] offsets = graph.getNodeRelOffsets();
+        // -1 for relationships deleted while loading
+        final int[] sources = graph.getRels();
         stats.nodes = nodeCount;
-        start = System.currentTimeMillis();
-
-        final ReadOperations ops = ctx(this.db).get().readOperations();
-        final IntPredicate isValidRelationshipType = relationshipTypeArrayToIntPredicate( ops, relationshipTypes );
-        final RelationshipVisitor<RuntimeException> visitor = isValidRelationshipType == null ?
-                ( relId, relTypeId, startNode, endNode ) -> dst.addAndGet((int) endNode, src[(int) startNode] ) :
-                ( relId, relTypeId, startNode, endNode ) -> {
-                    if ( isValidRelationshipType.test( relTypeId ) )
-                    {
-                        dst.addAndGet( (int) endNode, src[(int) startNode] );
-                    }
-                };
-
-        PrimitiveLongIterator rels = ops.relationshipsGetAll();
-        List<BatchRunnable> runners = prepareOperations(rels, relCount, db, (readOps, id) -> readOps.relationshipVisit(id, visitor));
-        stats.readRelationshipMillis = System.currentTimeMillis() - start;
-        stats.relationships = relCount;
-
-        start = System.currentTimeMillis();
+        stats.relationships = graph.getRelCount();
+        stats.readNodeMillis = loadStatistics.degreeMillis + loadStatistics.offsetMillis;
+        stats.readRelationshipMillis = loadStatistics.relationshipMillis;
+
+        long start = System.currentTimeMillis();
+        stats.tolerance = tolerance;
+        stats.delta = delta;
+        final List<int[]> partitions = partition( inDegrees );
+        final double threshold = tolerance / nodeCount;
+        // rank of the previous iteration, or the accumulated rank in delta mode
+        final double[] rank = new double[nodeCount];
+        // contributions per outgoing relationship
+        double[] contributions = new double[nodeCount];
+        double[] nextContributions = new double[nodeCount];
         for ( int iteration = 0; iteration < iterations; iteration++ )
         {
-            startIteration( src, dst, degrees );
-            //PrimitiveLongIterator rels = ops.relationshipsGetAll();
-            //runOperations( pool, rels, relCount, ctx, (readOps, id) -> readOps.relationshipVisit( id, visitor ) );
-            runOperations(pool, runners);
+            final boolean propagateDelta = delta && iteration > 0;
+            final double[] src = contributions, next = nextContributions;
+            double l1Norm = 0;
+            List<Future<Double>> futures = new ArrayList<>( partitions.size() );
+            for ( int[] partition : partitions )
+            {
+                futures.add( pool.submit( () -> iterate( partition[0], partition[1], propagateDelta, threshold,
+                        degrees, inDegrees, offsets, sources, src, next, rank ) ) );
+            }
+            for ( Future<Double> future : futures )
+            {
+                l1Norm += get( future );
+            }
+            contributions = next;
+            nextContributions = src;
+            stats.iterations = iteration + 1;
+            stats.l1Norm = l1Norm;
+            if ( l1Norm < tolerance )
+            {
+                stats.converged = true;
+                break;
+            }
         }
+        dst = rank;
+        this.degrees = degrees;
         stats.computeMillis = System.currentTimeMillis() - start;
     }
 
-    private IntPredicate relationshipTypeArrayToIntPredicate(
-            ReadOperations ops,
-            RelationshipType... relationshipTypes )
+    private double iterate( int from, int to, boolean propagateDelta, double threshold, int[] degrees, int[] inDegrees,
+            int[] offsets, int[] sources, double[] src, double[] next, double[] rank )
+    {
+        double l1Norm = 0;
+        for ( int node = from; node < to; node++ )
+        {
+            if ( degrees[node] == -1 )
+            { continue; }
+            double pulled = 0;
+            for ( int i = offsets[node], end = i + inDegrees[node]; i < end; i++ )
+            {
+                int source = sources[i];
+                if ( source >= 0 )
+                { pulled += src[source]; }
+            }
+            double change;
+            if ( propagateDelta )
+            {
+                change = pulled;
+                rank[node] += change;
+            }
+            else
+            {
+                double value = ONE_MINUS_ALPHA + pulled;
+                change = value - rank[node];
+                rank[node] = value;
+            }
+            l1Norm += Math.abs( change );
+            if ( degrees[node] == 0 || (delta && Math.abs( change ) <= threshold) )
+            {
+                next[node] = 0;
+            }
+            else
+            {
+                next[node] = ALPHA * (delta ? change : rank[node]) / degrees[node];
+            }
+        }
+        return l1Norm;
+    }
+
+    @Override
+    public PageRankArrayStorageParallelSPI withTolerance( double tolerance )
+    {
+        this.tolerance = tolerance;
+        return this;
+    }
+
+    @Override
+    public PageRankArrayStorageParallelSPI withDelta( boolean delta )
+    {
+        this.delta = delta;
+        return this;
+    }
+
+    private int[] relationshipTypeIds( RelationshipType... relationshipTypes )
     {
         if ( 0 == relationshipTypes.length )
         {
             return null;
         }
-        else
-        {
-            BitSet relationshipTypeSet = new BitSet( relationshipTypes.length );
+        return Util.withStatement( db, ( stmt, ops ) -> {
+            int[] ids = new int[relationshipTypes.length];
+            int count = 0;
             for ( RelationshipType relationshipType : relationshipTypes )
             {
-                int relTypeId = ops.relationshipTypeGetForName(relationshipType.name());
-                if (relTypeId >= 0) relationshipTypeSet.set(relTypeId);
+                int relTypeId = ops.relationshipTypeGetForName( relationshipType.name() );
+                if ( relTypeId >= 0 ) ids[count++] = relTypeId;
             }
-            return relationshipTypeSet::get;
-        }
+            return Arrays.copyOf( ids, count );
+        } );
     }
 
-    private void startIteration( int[] src, AtomicIntegerArray dst, int[] degrees )
+    // node ranges with about the same number of nodes plus incoming relationships
+    private List<int[]> partition( int[] inDegrees )
     {
-        for ( int node = 0; node < this.nodeCount; node++ )
+        long total = nodeCount;
+        for ( int inDegree : inDegrees )
         {
-            if ( degrees[node] == -1 )
-            { continue; }
-            src[node] = toInt( ALPHA * toFloat( dst.getAndSet( node, ONE_MINUS_ALPHA_INT ) ) / degrees[node] );
-
+            total += Math.max( 0, inDegree );
+        }
+        long perPartition = Math.max( 1, total / ((long) concurrency * PARTITIONS_PER_THREAD) );
+        List<int[]> partitions = new ArrayList<>();
+        int from = 0;
+        long cost = 0;
+        for ( int node = 0; node < nodeCount; node++ )
+        {
+            cost += 1 + Math.max( 0, inDegrees[node] );
+            if ( cost >= perPartition )
+            {
+                partitions.add( new int[]{from, node + 1} );
+                from = node + 1;
+                cost = 0;
+            }
+        }
+        if ( from < nodeCount )
+        {
+            partitions.add( new int[]{from, nodeCount} );
         }
+        return partitions;
     }
 
-    private int[] computeDegrees( final ThreadToStatementContextBridge ctx )
+    private static <T> T get( Future<T> future )
     {
-        final int[] degree = new int[nodeCount];
-        Arrays.fill( degree, -1 );
-        PrimitiveLongIterator it = ctx.get().readOperations().nodesGetAll();
-        int totalCount = nodeCount;
-        runOperations( pool, it, totalCount, db , (ops,id) -> degree[id] = ops.nodeGetDegree( id, Direction.OUTGOING ) );
-        return degree;
+        try
+        {
+            return future.get();
+        }
+        catch ( InterruptedException | ExecutionException e )
+        {
+            throw new RuntimeException( "Error computing page rank", e );
+        }
     }
 
     public double getResult( long node )
     {
-        return dst != null ? toFloat( dst.get( (int) node ) ) : 0;
+        return dst != null && node >= 0 && node < nodeCount ? dst[(int) node] : 0;
     }
 
 
@@ -145,17 +248,27 @@ public class PageRankArrayStorageParallelSPI implements PageRank, AlgorithmInter
         return stats;
     }
 
+    /**
+     * the phase timings of the parallel loader of the last computation
+     */
+    public CoreGraphAlgorithms.LoadStatistics getLoadStatistics() {
+        return loadStatistics;
+    }
+
     @Override
     public long getMappedNode(int algoId) {
-        return (int) algoId;
+        return degrees != null && degrees[algoId] == -1 ? -1 : algoId;
+    }
+
+    public PageRankArrayStorageParallelSPI withWriteBatchSize( int writeBatchSize )
+    {
+        this.writeBatchSize = writeBatchSize;
+        return this;
     }
 
     public void writeResultsToDB() {
         stats.write = true;
-        long before = System.currentTimeMillis();
-        AlgoUtils.writeBackResults(pool, db, this, WRITE_BATCH);
-        stats.write = true;
-        stats.writeMillis = System.currentTimeMillis() - before;
+        stats.writeMillis = new ResultWriter( db, pool ).withBatchSize( writeBatchSize ).write( this ).writeMillis;
         stats.property = getPropertyName();
     }
 
@@ -0,0 +1,152 @@
+package apoc.algo.pagerank;
+
+import apoc.algo.algorithms.Adjacency;
+import apoc.algo.algorithms.AlgorithmInterface;
+import apoc.algo.algorithms.ProjectedGraph;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.RelationshipType;
+
+/**
+ * page rank on a {@link ProjectedGraph}, the relationship-types are given by the projection
+ */
+public class PageRankArrayStorageProjected implements PageRank, AlgorithmInterface
+{
+    private final ProjectedGraph graph;
+    private final int nodeCount;
+    private double[] dst;
+    private String property = "pagerank";
+    private double tolerance;
+    private boolean delta;
+
+    private PageRankStatistics stats = new PageRankStatistics();
+
+    public PageRankArrayStorageProjected( ProjectedGraph graph )
+    {
+        this.graph = graph;
+        this.nodeCount = graph.getNodeCount();
+        stats.nodes = graph.getProjectedNodeCount();
+        stats.relationships = graph.getRelCount();
+        stats.readNodeMillis = graph.getLoadMillis();
+    }
+
+    @Override
+    public void compute( int iterations, RelationshipType... relationshipTypes )
+    {
+        stats.tolerance = tolerance;
+        stats.delta = delta;
+        long start = System.currentTimeMillis();
+        Adjacency outgoing = graph.adjacency( Direction.OUTGOING );
+        Adjacency.Cursor cursor = outgoing.cursor();
+        int[] degrees = graph.degrees( Direction.OUTGOING );
+        double[] src = new double[nodeCount];
+        dst = new double[nodeCount];
+        // ranks of the previous iteration, or the accumulated ranks in delta mode
+        double[] ranks = tolerance > 0 || delta ? new double[nodeCount] : null;
+        double threshold = tolerance / nodeCount;
+        for ( int iteration = 0; iteration < iterations; iteration++ )
+        {
+            boolean propagateDelta = delta && iteration > 0;
+            for ( int node = 0; node < nodeCount; node++ )
+            {
+                if ( propagateDelta )
+                {
+                    double change = dst[node];
+                    src[node] = degrees[node] == 0 || Math.abs( change ) <= threshold ? 0 : ALPHA * change / degrees[node];
+                    dst[node] = 0;
+                    continue;
+                }
+                if ( ranks != null ) ranks[node] = dst[node];
+                src[node] = degrees[node] == 0 ? 0 : ALPHA * dst[node] / degrees[node];
+                dst[node] = ONE_MINUS_ALPHA;
+            }
+            for ( int node = 0; node < nodeCount; node++ )
+            {
+                double rank = src[node];
+                if ( rank == 0 ) continue;
+                cursor.init( node );
+                while ( cursor.hasNext() )
+                {
+                    dst[cursor.next()] += rank;
+                }
+            }
+            stats.iterations = iteration + 1;
+            if ( ranks != null )
+            {
+                double l1Norm = 0;
+                for ( int node = 0; node < nodeCount; node++ )
+                {
+                    if ( delta )
+                    {
+                        ranks[node] += dst[node];
+                        l1Norm += Math.abs( dst[node] );
+                    }
+                    else
+                    {
+                        l1Norm += Math.abs( dst[node] - ranks[node] );
+                    }
+                }
+                stats.l1Norm = l1Norm;
+                if ( l1Norm < tolerance )
+                {
+                    stats.converged = true;
+                    break;
+                }
+            }
+        }
+        if ( delta )
+        {
+            dst = ranks;
+        }
+        stats.computeMillis = System.currentTimeMillis() - start;
+    }
+
+    @Override
+    public PageRankArrayStorageProjected withTolerance( double tolerance )
+    {
+        this.tolerance = tolerance;
+        return this;
+    }
+
+    @Override
+    public PageRankArrayStorageProjected withDelta( boolean delta )
+    {
+        this.delta = delta;
+        return this;
+    }
+
+    public PageRankArrayStorageProjected withProperty( String property )
+    {
+        this.property = property;
+        return this;
+    }
+
+    @Override
+    public double getResult( long node )
+    {
+        return dst != null && node >= 0 && node < nodeCount ? dst[(int) node] : 0;
+    }
+
+    @Override
+    public long numberOfNodes()
+    {
+        return nodeCount;
+    }
+
+    @Override
+    public String getPropertyName()
+    {
+        return property;
+    }
+
+    @Override
+    public long getMappedNode( int algoId )
+    {
+        return graph.contains( algoId ) ? algoId : -1;
+    }
+
+    @Override
+    public PageRankStatistics getStatistics()
+    {
+        return stats;
+    }
+}
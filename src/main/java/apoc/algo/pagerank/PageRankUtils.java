@@ -24,6 +24,11 @@ public class PageRankUtils
         return value / 100_000.0;
     }
 
+    public static double toFloat( long value )
+    {
+        return value / 100_000.0;
+    }
+
     public static int waitForTasks( List<Future> futures )
     {
         int total = 0;
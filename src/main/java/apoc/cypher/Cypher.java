@@ -229,13 +229,11 @@ public class Cypher {
         if (!(value instanceof Collection))
             throw new RuntimeException("Can't parallelize a non collection " + key + " : " + value);
 
-        final String statement = withParamMapping(fragment, params.keySet());
+        final PreparedCypher statement = new PreparedCypher(db, withParamMapping(fragment, params.keySet())).prepare(log);
         Collection<Object> coll = (Collection<Object>) value;
         return coll.parallelStream().flatMap((v) -> {
             terminationGuard.check();
-            Map<String, Object> parallelParams = new HashMap<>(params);
-            parallelParams.replace(key, v);
-            return db.execute(statement, parallelParams).stream().map(MapResult::new);
+            return statement.result(params, Collections.singletonMap(key, v)).stream().map(MapResult::new);
         });
 
         /*
@@ -254,10 +252,9 @@ public class Cypher {
     @Procedure
     @Description("apoc.cypher.mapParallel(fragment, params, list-to-parallelize) yield value - executes fragment in parallel batches with the list segments being assigned to _")
     public Stream<MapResult> mapParallel(@Name("fragment") String fragment, @Name("params") Map<String, Object> params, @Name("list") List<Object> data) {
-        final String statement = withParamsAndIterator(fragment, params.keySet(), "_");
-        db.execute("EXPLAIN " + statement).close();
+        final PreparedCypher statement = new PreparedCypher(db, withParamsAndIterator(fragment, params.keySet(), "_")).prepare(log);
         return Util.partitionSubList(data, PARTITIONS,null)
-                .flatMap((partition) -> Iterators.addToCollection(db.execute(statement, parallelParams(params, "_", partition)),
+                .flatMap((partition) -> Iterators.addToCollection(statement.result(params, Collections.singletonMap("_", partition)),
                         new ArrayList<>(partition.size())).stream())
                 .map(MapResult::new);
     }
@@ -0,0 +1,128 @@
+package apoc.cypher;
+
+import apoc.util.Util;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Result;
+import org.neo4j.logging.Log;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A statement that is executed many times, e.g. per row or batch of apoc.periodic.iterate or per partition of
+ * apoc.cypher.parallel.
+ * It is planned once up front with EXPLAIN, so that the plan is in the query cache before concurrent executions would
+ * all plan it at the same time. Each execution passes only the parameters the statement uses, taken from all parameter
+ * maps in a single map, instead of merging copies of them. Unused parameters like the whole batch for each row would
+ * otherwise be converted by Cypher on every execution.
+ * Keeps the time of the initial planning, the time until each execution returned its result and the time to consume
+ * the results. The former includes the lookup of the plan in the query cache, and for updating statements, which are
+ * executed eagerly, the whole execution, the latter is the lazy execution of read only statements.
+ */
+public class PreparedCypher {
+    // {name}, {`name`} and $name, $`name`
+    private static final Pattern PARAMETER = Pattern.compile("\\{\\s*(?:`([^`]+)`|(\\w+))\\s*}|\\$(?:`([^`]+)`|(\\w+))");
+
+    private final GraphDatabaseService db;
+    private final String statement;
+    private final Set<String> parameters;
+    private long planNanos;
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong executeNanos = new AtomicLong();
+    private final AtomicLong consumeNanos = new AtomicLong();
+
+    public PreparedCypher(GraphDatabaseService db, String statement) {
+        this.db = db;
+        this.statement = statement;
+        this.parameters = parameterNames(statement);
+    }
+
+    static Set<String> parameterNames(String statement) {
+        Set<String> names = new HashSet<>();
+        Matcher matcher = PARAMETER.matcher(statement);
+        while (matcher.find()) {
+            for (int group = 1; group <= matcher.groupCount(); group++) {
+                if (matcher.group(group) != null) names.add(matcher.group(group));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * plans the statement in a separate transaction, errors are logged and reported again by each execution
+     */
+    public PreparedCypher prepare(Log log) {
+        long start = System.nanoTime();
+        try {
+            Util.inTx(db, () -> {
+                db.execute("EXPLAIN " + statement).close();
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("Failed to plan statement `" + statement + "`: " + e.getMessage(), e);
+        }
+        planNanos = System.nanoTime() - start;
+        return this;
+    }
+
+    /**
+     * the parameters used by the statement, later maps take precedence
+     */
+    @SafeVarargs
+    public final Map<String, Object> parameters(Map<String, Object>... sources) {
+        Map<String, Object> result = new HashMap<>(parameters.size() * 2);
+        for (Map<String, Object> source : sources) {
+            if (source == null) continue;
+            for (String name : parameters) {
+                if (source.containsKey(name)) result.put(name, source.get(name));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * executes the statement with the parameters from the maps and consumes the result
+     */
+    @SafeVarargs
+    public final void execute(Map<String, Object>... sources) {
+        long start = System.nanoTime();
+        Result result = db.execute(statement, parameters(sources));
+        long executed = System.nanoTime();
+        executeNanos.addAndGet(executed - start);
+        executions.incrementAndGet();
+        try {
+            result.close();
+        } finally {
+            consumeNanos.addAndGet(System.nanoTime() - executed);
+        }
+    }
+
+    /**
+     * executes the statement with the parameters from the maps, the caller consumes the result
+     */
+    @SafeVarargs
+    public final Result result(Map<String, Object>... sources) {
+        long start = System.nanoTime();
+        Result result = db.execute(statement, parameters(sources));
+        executeNanos.addAndGet(System.nanoTime() - start);
+        executions.incrementAndGet();
+        return result;
+    }
+
+    public String getStatement() {
+        return statement;
+    }
+
+    public Map<String, Object> getStatistics() {
+        return Util.map("executions", executions.get(),
+                "planMillis", TimeUnit.NANOSECONDS.toMillis(planNanos),
+                "executeMillis", TimeUnit.NANOSECONDS.toMillis(executeNanos.get()),
+                "consumeMillis", TimeUnit.NANOSECONDS.toMillis(consumeNanos.get()));
+    }
+}
@@ -0,0 +1,287 @@
+package apoc.index;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.kernel.lifecycle.LifeSupport;
+import org.neo4j.logging.Log;
+
+import java.util.*;
+
+/**
+ * Applies the index updates of committed transactions in background threads. The updates are sharded by node id, so
+ * that the updates of a node are applied by the same thread in commit order. The pending updates of a node in an index
+ * are coalesced until the thread takes them, so that repeated writes to a node end up as one remove and add per key and
+ * the queue capacity limits the number of pending nodes instead of single updates.
+ */
+class AsyncIndexWriter {
+    private final GraphDatabaseAPI db;
+    private final Log log;
+    private final IndexUpdateStatistics stats;
+    private final long opsCountRollover, millisRollover;
+    private final Shard[] shards;
+
+    AsyncIndexWriter(GraphDatabaseAPI db, Log log, IndexUpdateStatistics stats, int threads, int queueCapacity, long opsCountRollover, long millisRollover) {
+        this.db = db;
+        this.log = log;
+        this.stats = stats;
+        this.opsCountRollover = opsCountRollover;
+        this.millisRollover = millisRollover;
+        this.shards = new Shard[Math.max(1, threads)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(Math.max(1, queueCapacity / shards.length));
+        }
+    }
+
+    void start() {
+        for (int i = 0; i < shards.length; i++) {
+            new Thread(shards[i], "apoc-autoindex-" + i).start();
+        }
+        log.info("started %d background threads for async index updates", shards.length);
+    }
+
+    /**
+     * blocks while the queue of a thread is full
+     */
+    void add(Collection<Updates> updates) throws InterruptedException {
+        long now = System.nanoTime();
+        for (Updates update : updates) {
+            update.enqueuedNanos = now;
+            shards[(int) (update.node.getId() % shards.length)].put(update);
+        }
+    }
+
+    int threads() {
+        return shards.length;
+    }
+
+    int queueSize() {
+        int size = 0;
+        for (Shard shard : shards) size += shard.size();
+        return size;
+    }
+
+    /**
+     * the time since the commit of the oldest transaction whose updates are not visible yet, 0 if there is none
+     */
+    long lagNanos() {
+        long oldest = Long.MAX_VALUE;
+        for (Shard shard : shards) oldest = Math.min(oldest, shard.oldest());
+        return oldest == Long.MAX_VALUE ? 0 : Math.max(0, System.nanoTime() - oldest);
+    }
+
+    /**
+     * The updates of a node in an index. A remove of a key drops the values that were added for it before, as it
+     * removes all values of the node for the key.
+     */
+    static class Updates {
+        private final Index<Node> index;
+        private final Node node;
+        private final Map<String, KeyUpdate> keys = new LinkedHashMap<>();
+        // when the transaction was committed, for the merged updates the oldest one
+        private long enqueuedNanos;
+
+        Updates(Index<Node> index, Node node) {
+            this.index = index;
+            this.node = node;
+        }
+
+        void remove(String key) {
+            keys.put(key, new KeyUpdate(true));
+        }
+
+        void add(String key, Object value) {
+            keys.computeIfAbsent(key, k -> new KeyUpdate(false)).values.add(value);
+        }
+
+        private void merge(Updates later) {
+            later.keys.forEach((key, update) -> {
+                if (update.remove) keys.put(key, update);
+                else keys.computeIfAbsent(key, k -> new KeyUpdate(false)).values.addAll(update.values);
+            });
+        }
+
+        Key key() {
+            return new Key(index.getName(), node.getId());
+        }
+
+        /**
+         * @return the number of index operations
+         */
+        int apply() {
+            int ops = 0;
+            for (Map.Entry<String, KeyUpdate> entry : keys.entrySet()) {
+                KeyUpdate update = entry.getValue();
+                if (update.remove) {
+                    index.remove(node, entry.getKey());
+                    ops++;
+                }
+                for (Object value : update.values) {
+                    index.add(node, entry.getKey(), value);
+                    ops++;
+                }
+            }
+            return ops;
+        }
+    }
+
+    private static class KeyUpdate {
+        final boolean remove;
+        final Set<Object> values = new LinkedHashSet<>();
+
+        KeyUpdate(boolean remove) {
+            this.remove = remove;
+        }
+    }
+
+    static class Key {
+        final String index;
+        final long node;
+
+        Key(String index, long node) {
+            this.index = index;
+            this.node = node;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return node == key.node && index.equals(key.index);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * index.hashCode() + Long.hashCode(node);
+        }
+    }
+
+    private class Shard implements Runnable {
+        private final int capacity;
+        private Map<Key, Updates> pending = new LinkedHashMap<>();
+        // the enqueue times of the updates in the transaction of the thread, they are visible when it is committed
+        private long[] uncommitted = new long[1024];
+        private int uncommittedCount;
+        private volatile long oldestUncommitted = Long.MAX_VALUE;
+
+        Shard(int capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized void put(Updates updates) throws InterruptedException {
+            Key key = updates.key();
+            long blockedSince = 0;
+            try {
+                while (true) {
+                    Updates existing = pending.get(key);
+                    if (existing != null) {
+                        existing.merge(updates);
+                        stats.enqueued(true);
+                        return;
+                    }
+                    if (pending.size() < capacity) {
+                        pending.put(key, updates);
+                        stats.enqueued(false);
+                        notifyAll();
+                        return;
+                    }
+                    if (blockedSince == 0) blockedSince = System.nanoTime();
+                    wait();
+                }
+            } finally {
+                if (blockedSince != 0) stats.blocked(System.nanoTime() - blockedSince);
+            }
+        }
+
+        synchronized int size() {
+            return pending.size();
+        }
+
+        /**
+         * the enqueue time of the oldest update that is pending or not committed, the pending updates are in insertion order
+         */
+        synchronized long oldest() {
+            long oldest = oldestUncommitted;
+            if (!pending.isEmpty()) oldest = Math.min(oldest, pending.values().iterator().next().enqueuedNanos);
+            return oldest;
+        }
+
+        /**
+         * all pending updates, waits up to the given time if there are none
+         */
+        synchronized Collection<Updates> take(long millis) throws InterruptedException {
+            if (pending.isEmpty()) wait(millis);
+            Collection<Updates> taken = pending.values();
+            if (!taken.isEmpty()) oldestUncommitted = Math.min(oldestUncommitted, taken.iterator().next().enqueuedNanos);
+            pending = new LinkedHashMap<>();
+            notifyAll();
+            return taken;
+        }
+
+        @Override
+        public void run() {
+            Transaction tx = db.beginTx();
+            long opsCount = 0;
+            long lastCommit = System.currentTimeMillis();
+            try {
+                while (true) {
+                    Collection<Updates> batch = take(millisRollover);
+                    if (batch.isEmpty() && !db.getDependencyResolver().resolveDependency(LifeSupport.class).isRunning()) {
+                        // check if a database shutdown is already in progress, if so, terminate this thread
+                        log.info("system shutdown detected, terminating indexing background thread");
+                        break;
+                    }
+                    for (Updates updates : batch) {
+                        try {
+                            int ops = updates.apply();
+                            opsCount += ops;
+                            stats.applied(ops);
+                        } catch (RuntimeException e) {
+                            stats.failed();
+                            log.warn("failed to update index " + updates.index.getName() + " for node " + updates.node.getId(), e);
+                        }
+                        if (uncommittedCount == uncommitted.length) uncommitted = Arrays.copyOf(uncommitted, uncommittedCount * 2);
+                        uncommitted[uncommittedCount++] = updates.enqueuedNanos;
+                        if (opsCount >= opsCountRollover) {
+                            tx = rollover(tx, opsCount, lastCommit);
+                            opsCount = 0;
+                            lastCommit = System.currentTimeMillis();
+                        }
+                    }
+                    long now = System.currentTimeMillis();
+                    if (opsCount == 0) {
+                        // in case we couldn't get anything from queue, we'll update lastcommit to prevent too early commits
+                        lastCommit = now;
+                    } else if (now - lastCommit > millisRollover) {
+                        tx = rollover(tx, opsCount, lastCommit);
+                        opsCount = 0;
+                        lastCommit = now;
+                    }
+                }
+            } catch (InterruptedException e) {
+                log.error(e.getMessage(), e);
+                throw new RuntimeException(e);
+            } finally {
+                commit(tx);
+                log.info("stopping background thread for async index updates");
+            }
+        }
+
+        private void commit(Transaction tx) {
+            long start = System.nanoTime();
+            tx.success();
+            tx.close();
+            stats.committed(System.nanoTime() - start, uncommitted, uncommittedCount);
+            uncommittedCount = 0;
+            oldestUncommitted = Long.MAX_VALUE;
+        }
+
+        private Transaction rollover(Transaction tx, long opsCount, long lastCommit) {
+            commit(tx);
+            log.info("background indexing thread doing tx rollover, opscount " + opsCount + ", millis since last rollover " + (System.currentTimeMillis() - lastCommit));
+            return db.beginTx();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package apoc.index;
+
+import apoc.Pools;
+import apoc.util.Util;
+import org.neo4j.collection.primitive.PrimitiveLongIterator;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.index.lucene.ValueContext;
+import org.neo4j.kernel.api.ReadOperations;
+import org.neo4j.kernel.api.Statement;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.logging.Log;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * Populates a free text index from the label scans of the configured labels. The scans are merged in node id order
+ * by the calling thread and split into batches of consecutive node ids, which are indexed in parallel, each batch in its
+ * own transaction. The node id up to which all batches are committed is reported as the watermark, so that an
+ * interrupted population can continue after it.
+ */
+class FreeTextPopulator {
+    static final int DEFAULT_BATCH_SIZE = 10_000;
+    // the watermark is reported after this many batches, not after each one
+    private static final int REPORT_BATCHES = 10;
+
+    private final GraphDatabaseAPI db;
+    private final Log log;
+    private final Map<String, String[]> structure;
+    private final int batchSize, concurrency;
+    private final Map<String, Map<String, LongAdder>> stats = new ConcurrentHashMap<>();
+
+    FreeTextPopulator(GraphDatabaseAPI db, Log log, Map<String, String[]> structure, int batchSize, int concurrency) {
+        this.db = db;
+        this.log = log;
+        this.structure = structure;
+        this.batchSize = Math.max(1, batchSize);
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    /**
+     * the number of indexed nodes per label and property
+     */
+    Map<String, Map<String, LongAdder>> stats() {
+        return stats;
+    }
+
+    /**
+     * indexes the nodes with an id above fromNodeId, the watermark is called with the id of the last node of the
+     * batches that are committed
+     */
+    void populate(Index<Node> index, long fromNodeId, LongConsumer watermark) {
+        Deque<Batch> running = new ArrayDeque<>();
+        long committed = fromNodeId;
+        int batches = 0;
+        // the label scans are read lazily, so their statement stays open until they are merged
+        try (Transaction tx = db.beginTx();
+             Statement statement = db.getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class).get()) {
+            PrimitiveLongIterator nodeIds = labelScan(statement.readOperations());
+            long[] batch = new long[batchSize];
+            int size = 0;
+            while (nodeIds.hasNext()) {
+                long nodeId = nodeIds.next();
+                if (nodeId <= fromNodeId) continue;
+                batch[size++] = nodeId;
+                if (size < batchSize && nodeIds.hasNext()) continue;
+                long[] submitted = Arrays.copyOf(batch, size);
+                size = 0;
+                running.add(new Batch(submitted[submitted.length - 1], Util.inTxFuture(Pools.IMPORT, db, () -> indexNodes(index, submitted))));
+                // the batches complete in any order, the watermark only moves past the ones that are committed in a row
+                while (!running.isEmpty() && (running.size() > 2 * concurrency || running.peek().future.isDone())) {
+                    committed = running.poll().get();
+                    if (++batches % REPORT_BATCHES == 0) watermark.accept(committed);
+                }
+            }
+            while (!running.isEmpty()) {
+                committed = running.poll().get();
+            }
+            tx.success();
+        } finally {
+            running.forEach(batch -> batch.future.cancel(false));
+        }
+        watermark.accept(committed);
+    }
+
+    /**
+     * the union of the label scans of the configured labels in ascending node id order, the label scan store returns
+     * the nodes of a label in node id order
+     */
+    private PrimitiveLongIterator labelScan(ReadOperations ops) {
+        List<PrimitiveLongIterator> scans = new ArrayList<>();
+        for (String label : structure.keySet()) {
+            int labelId = ops.labelGetForName(label);
+            if (labelId >= 0) scans.add(ops.nodesGetForLabel(labelId));
+        }
+        long[] heads = new long[scans.size()];
+        for (int i = 0; i < heads.length; i++) {
+            heads[i] = scans.get(i).hasNext() ? scans.get(i).next() : Long.MAX_VALUE;
+        }
+        return new PrimitiveLongIterator() {
+            public boolean hasNext() {
+                for (long head : heads) {
+                    if (head != Long.MAX_VALUE) return true;
+                }
+                return false;
+            }
+
+            public long next() {
+                long min = Long.MAX_VALUE;
+                for (long head : heads) min = Math.min(min, head);
+                if (min == Long.MAX_VALUE) throw new NoSuchElementException();
+                // advances every scan that is at the node, so that a node with several labels is returned once
+                for (int i = 0; i < heads.length; i++) {
+                    if (heads[i] == min) heads[i] = scans.get(i).hasNext() ? scans.get(i).next() : Long.MAX_VALUE;
+                }
+                return min;
+            }
+        };
+    }
+
+    private Void indexNodes(Index<Node> index, long[] nodeIds) {
+        for (long nodeId : nodeIds) {
+            Node node;
+            try {
+                node = db.getNodeById(nodeId);
+            } catch (NotFoundException e) {
+                continue; // deleted concurrently
+            }
+            for (Label label : node.getLabels()) {
+                String[] keys = structure.get(label.name());
+                if (keys == null) continue;
+                Map<String, Object> properties = keys.length == 0 ? node.getAllProperties() : node.getProperties(keys);
+                for (Map.Entry<String, Object> entry : properties.entrySet()) {
+                    Object value = entry.getValue();
+                    index.add(node, FreeTextSearch.KEY, value.toString());
+                    if (value instanceof Number) {
+                        value = ValueContext.numeric(((Number) value).doubleValue());
+                    }
+                    index.add(node, label.name() + "." + entry.getKey(), value);
+                    stats.computeIfAbsent(label.name(), x -> new ConcurrentHashMap<>())
+                            .computeIfAbsent(entry.getKey(), x -> new LongAdder()).increment();
+                }
+            }
+        }
+        return null;
+    }
+
+    private class Batch {
+        final long lastNodeId;
+        final Future<Void> future;
+
+        Batch(long lastNodeId, Future<Void> future) {
+            this.lastNodeId = lastNodeId;
+            this.future = future;
+        }
+
+        long get() {
+            try {
+                future.get();
+                return lastNodeId;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while populating the index", e);
+            } catch (ExecutionException e) {
+                log.warn("Error while populating the index up to node " + lastNodeId, e.getCause());
+                throw new RuntimeException("Error while populating the index: " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+    }
+}
@@ -1,21 +1,21 @@
 package apoc.index;
 
 import apoc.ApocKernelExtensionFactory;
+import apoc.Pools;
 import apoc.util.Util;
 import org.neo4j.kernel.KernelApi;
 import org.neo4j.procedure.*;
 import apoc.result.WeightedNodeResult;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.search.Sort;
-import org.neo4j.graphdb.Label;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.graphdb.index.Index;
-import org.neo4j.graphdb.index.IndexHits;
+import org.neo4j.graphdb.index.IndexManager;
 import org.neo4j.index.impl.lucene.legacy.LuceneDataSource;
 import org.neo4j.index.impl.lucene.legacy.LuceneIndexImplementation;
 import org.neo4j.index.lucene.QueryContext;
-import org.neo4j.index.lucene.ValueContext;
+import org.neo4j.kernel.api.LegacyIndexHits;
 import org.neo4j.kernel.impl.util.JobScheduler;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.logging.Log;
@@ -47,10 +47,15 @@ public class FreeTextSearch {
      * <p>
      * This will populate the index with all currently matching data. Updates will not be reflected in the index.
      * In order to get updates into the index, the index has to be rebuilt.
+     * <p>
+     * An existing index stays searchable while the new one is populated, the new one replaces it when it is complete.
+     * A population that was interrupted continues where it stopped when it is started again with the same structure
+     * and options.
      *
      * @param index     The name of the index to create.
      * @param structure The labels of nodes to index, and the properties to index for each label.
-     * @return a stream containing a single element that describes the created index.
+     * @param options   The index configuration, and the batchSize and concurrency of the population.
+     * @return a stream of the number of indexed nodes for each label and property.
      */
     @Procedure(mode = Mode.SCHEMA)
     @Description("apoc.index.addAllNodes('name',{label1:['prop1',...],...}, {options}) YIELD type, name, config - create a free text search index")
@@ -59,7 +64,7 @@ public class FreeTextSearch {
             throw new IllegalArgumentException("No structure given.");
         }
         return async(executor(), "Creating index '" + index + "'", result -> {
-            populate(index(index, structure, options ), structure, result);
+            populate(index, structure, options, result);
         });
     }
 
@@ -92,22 +97,29 @@ public class FreeTextSearch {
      * @param index The name of the index to search in.
      * @param query The query specifying what to search for.
      * @param maxNumberOfresults maximum number of results to be retruned. Defaults to 100. If -1, returns all the results.
-     * @return a stream of all matching nodes.
+     * @param skip the number of results to skip, for the following pages of the results.
+     * @return a stream of all matching nodes, the nodes are loaded while the stream is consumed.
      */
     @Procedure(mode = Mode.READ)
-    @Description("apoc.index.search('name', 'query', [maxNumberOfResults]) YIELD node, weight - search for nodes in the free text index matching the given query")
+    @Description("apoc.index.search('name', 'query', [maxNumberOfResults], [skip]) YIELD node, weight - search for nodes in the free text index matching the given query")
     public Stream<WeightedNodeResult> search(@Name("index") String index, @Name("query") String query,
-                                             @Name(value="numberOfResults", defaultValue = "100") long maxNumberOfresults) throws Exception {
-        if (!db.index().existsForNodes(index)) {
+                                             @Name(value="numberOfResults", defaultValue = "100") long maxNumberOfresults,
+                                             @Name(value="skip", defaultValue = "0") long skip) throws Exception {
+        String indexName = indexName(db.index(), index);
+        if (indexName == null) {
             return Stream.empty();
         }
         QueryContext queryParam = new QueryContext(parseFreeTextQuery(query)).sort(Sort.RELEVANCE);
         if (maxNumberOfresults!=-1) {
-            queryParam = queryParam.top((int)maxNumberOfresults);
+            // the top docs of the pages up to this one, the legacy index has no search after a previous hit
+            queryParam = queryParam.top((int) Math.min(Integer.MAX_VALUE, Math.max(0, skip) + maxNumberOfresults));
         }
-        List<WeightedNodeResult> hits = KernelApi.toWeightedNodeResultFromLegacyIndex(KernelApi.nodeQueryIndex(index, queryParam, db), db);
-
-        return hits.stream();
+        LegacyIndexHits hits = KernelApi.nodeQueryIndex(indexName, queryParam, db);
+        // the hits of the previous pages are skipped by id, without loading their nodes
+        for (long i = 0; i < skip && hits.hasNext(); i++) {
+            hits.next();
+        }
+        return result(hits).onClose(hits::close);
     }
 
 
@@ -121,10 +133,15 @@ public class FreeTextSearch {
 
     private static final Map<String, String> CONFIG = LuceneIndexImplementation.FULLTEXT_CONFIG;
     static final String KEY = "search";
+    // config key of an index that is being populated, with the node id up to which it is populated
+    static final String POPULATING = "apoc.populating";
+    // a rebuilt index is a new index named <name>@<generation>, legacy indexes can't be renamed
+    static final String GENERATION_SEPARATOR = "@";
+    private static final Set<String> POPULATION_OPTIONS = new HashSet<>(Arrays.asList("batchSize", "concurrency", "resume"));
     private static final JobScheduler.Group GROUP = new JobScheduler.Group(
             FreeTextSearch.class.getSimpleName(), JobScheduler.SchedulingStrategy.POOLED);
 
-    private static Stream<WeightedNodeResult> result(IndexHits<Node> hits) {
+    private Stream<WeightedNodeResult> result(LegacyIndexHits hits) {
         return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new Iterator<WeightedNodeResult>() {
             @Override
             public boolean hasNext() {
@@ -133,50 +150,44 @@ public class FreeTextSearch {
 
             @Override
             public WeightedNodeResult next() {
-                Node node = hits.next();
+                Node node = db.getNodeById(hits.next());
                 float weight = hits.currentScore();
                 return new WeightedNodeResult(node, weight);
             }
-        }, 0), false);
+        }, Spliterator.ORDERED), false);
     }
 
-    private void populate(Index<Node> index, Map<String, List<String>> config, Consumer<IndexStats> result) {
+    private void populate(String name, Map<String, List<String>> config, Map<String, Object> options, Consumer<IndexStats> result) {
         Map<String, String[]> structure = convertStructure(config);
-        Map<LabelProperty, Counter> stats = new HashMap<>();
-        Transaction tx = db.beginTx();
-        try {
-            int batch = 0;
-            for (Node node : db.getAllNodes()) {
-                boolean indexed = false;
-                for (Label label : node.getLabels()) {
-                    String[] keys = structure.get(label.name());
-                    if (keys == null) continue;
-                    indexed = true;
-                    Map<String, Object> properties = keys.length == 0 ? node.getAllProperties() : node.getProperties(keys);
-                    for (Map.Entry<String, Object> entry : properties.entrySet()) {
-                        Object value = entry.getValue();
-                        index.add(node, KEY, value.toString());
-                        if (value instanceof Number) {
-                            value = ValueContext.numeric(((Number) value).doubleValue());
-                        }
-                        index.add(node, label.name() + "." + entry.getKey(), value);
-                        stats.computeIfAbsent(new LabelProperty(label.name(), entry.getKey()), x -> new Counter()).count++;
-                    }
-                }
-                if (indexed) {
-                    if (++batch == 50_000) {
-                        batch = 0;
-                        tx.success();
-                        tx.close();
-                        tx = db.beginTx();
-                    }
-                }
+        int batchSize = Util.toLong(options.getOrDefault("batchSize", FreeTextPopulator.DEFAULT_BATCH_SIZE)).intValue();
+        int concurrency = Util.toLong(options.getOrDefault("concurrency", Pools.getNoThreadsInPool(Pools.IMPORT_POOL))).intValue();
+        Generation generation = index(name, config, options);
+        FreeTextPopulator populator = new FreeTextPopulator(db, log, structure, batchSize, concurrency);
+        populator.populate(generation.index, generation.populatedUpTo, populatedUpTo -> Util.inTx(db, () ->
+                db.index().setConfiguration(generation.index, POPULATING, String.valueOf(populatedUpTo))));
+        complete(name, generation.index);
+        populator.stats().forEach((label, properties) -> properties.forEach((property, count) ->
+                result.accept(new IndexStats(label, property, count.sum()))));
+    }
+
+    /**
+     * Makes the populated index the searchable one, by removing the marker of the population in one transaction, and
+     * drops the older generations afterwards.
+     */
+    private void complete(String name, Index<Node> index) {
+        try (Transaction tx = db.beginTx()) {
+            db.index().removeConfiguration(index, POPULATING);
+            tx.success();
+        }
+        try (Transaction tx = db.beginTx()) {
+            for (String existing : generations(db.index(), name).values()) {
+                if (existing.equals(index.getName())) continue;
+                log.info("Dropping index '%s', replaced by '%s'", existing, index.getName());
+                db.index().forNodes(existing).delete();
             }
+            resetIndexUpdateConfiguration();
             tx.success();
-        } finally {
-            tx.close();
         }
-        stats.forEach((key,counter) -> result.accept(key.stats(counter)));
     }
 
     private Map<String, String[]> convertStructure(Map<String, List<String>> config) {
@@ -188,32 +199,77 @@ public class FreeTextSearch {
         return structure;
     }
 
-    private Index<Node> index(String index, Map<String, List<String>> structure, final Map<String,Object> options ) {
+    /**
+     * The index to populate: an incomplete one with the same configuration to continue unless resume is false, or a
+     * new generation. The complete generation stays as it is, the incomplete ones that are not continued are dropped.
+     */
+    private Generation index(String name, Map<String, List<String>> structure, final Map<String,Object> options ) {
         Map<String, String> config = new HashMap<>(CONFIG);
-        try (Transaction tx = db.beginTx()) {
-            if (db.index().existsForNodes(index)) {
-                Index<Node> old = db.index().forNodes(index);
-                Map<String,String> oldConfig = new HashMap<>(db.index().getConfiguration(old));
-                log.info("Dropping existing index '%s', with config: %s", index, oldConfig);
-                old.delete();
-            }
-            tx.success();
-        }
-        try (Transaction tx = db.beginTx()) {
-            updateConfigFromParameters(config, structure);
+        updateConfigFromParameters(config, structure);
 
-            /* add options to the parameters */
-            options.forEach((k,v) -> {
+        /* add options to the parameters */
+        options.forEach((k,v) -> {
+            if (!POPULATION_OPTIONS.contains(k)) {
                 config.put(k, String.valueOf(v)); // explicit conversion to String
+            }
+        });
+        boolean resume = Util.toBoolean(options.getOrDefault("resume", true));
+        try (Transaction tx = db.beginTx()) {
+            IndexManager mgr = db.index();
+            NavigableMap<Integer, String> generations = generations(mgr, name);
+            Generation generation = null;
+            for (String existing : generations.values()) {
+                Index<Node> index = mgr.forNodes(existing);
+                Map<String,String> existingConfig = new HashMap<>(mgr.getConfiguration(index));
+                String populatedUpTo = existingConfig.remove(POPULATING);
+                if (populatedUpTo == null) continue;
+                if (generation == null && resume && existingConfig.equals(config)) {
+                    log.info("Continuing population of index '%s' after node %s", existing, populatedUpTo);
+                    generation = new Generation(index, Long.parseLong(populatedUpTo));
+                } else {
+                    log.info("Dropping incomplete index '%s', with config: %s", existing, existingConfig);
+                    index.delete();
                 }
-            );
-            log.info("Creating or updating index '%s' with config '%s'", index, config );
-            Index<Node> nodeIndex = db.index().forNodes(index, config);
+            }
+            if (generation == null) {
+                String indexName = generations.isEmpty() ? name : name + GENERATION_SEPARATOR + (generations.lastKey() + 1);
+                config.put(POPULATING, "-1");
+                log.info("Creating index '%s' with config '%s'", indexName, config );
+                generation = new Generation(mgr.forNodes(indexName, config), -1);
+            }
 
             resetIndexUpdateConfiguration();
             tx.success();
-            return nodeIndex;
+            return generation;
+        }
+    }
+
+    /**
+     * the generations of the index by number, the first one has the name of the index
+     */
+    static NavigableMap<Integer, String> generations(IndexManager mgr, String name) {
+        NavigableMap<Integer, String> generations = new TreeMap<>();
+        String prefix = name + GENERATION_SEPARATOR;
+        for (String existing : mgr.nodeIndexNames()) {
+            if (existing.equals(name)) {
+                generations.put(0, existing);
+            } else if (existing.startsWith(prefix) && existing.substring(prefix.length()).matches("\\d{1,9}")) {
+                generations.put(Integer.parseInt(existing.substring(prefix.length())), existing);
+            }
+        }
+        return generations;
+    }
+
+    /**
+     * the latest complete generation of the index, or the one that is being populated if there is none, null if the index doesn't exist
+     */
+    static String indexName(IndexManager mgr, String name) {
+        String latest = null;
+        for (String existing : generations(mgr, name).descendingMap().values()) {
+            if (!mgr.getConfiguration(mgr.forNodes(existing)).containsKey(POPULATING)) return existing;
+            if (latest == null) latest = existing;
         }
+        return latest;
     }
 
     private void resetIndexUpdateConfiguration() {
@@ -264,34 +320,13 @@ public class FreeTextSearch {
         return key.replace("$", "$$").replace(":", "$");
     }
 
-    private static class LabelProperty {
-        private final String label, property;
-
-        LabelProperty(String label, String property) {
-            this.label = label;
-            this.property = property;
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-            LabelProperty that = (LabelProperty) o;
-            return Objects.equals(label, that.label) &&
-                    Objects.equals(property, that.property);
-        }
-
-        @Override
-        public int hashCode() {
-            return Objects.hash(label, property);
-        }
+    private static class Generation {
+        private final Index<Node> index;
+        private final long populatedUpTo;
 
-        IndexStats stats(Counter counter) {
-            return new IndexStats(label, property, counter.count);
+        Generation(Index<Node> index, long populatedUpTo) {
+            this.index = index;
+            this.populatedUpTo = populatedUpTo;
         }
     }
-
-    private static class Counter {
-        long count;
-    }
 }
@@ -41,8 +41,9 @@ public class FulltextIndex {
     @Description("apoc.index.nodes('Label','prop:value*') YIELD node - lucene query on node index with the given label name")
     @Procedure(mode = Mode.READ)
     public Stream<WeightedNodeResult> nodes(@Name("label") String label, @Name("query") String query) throws Exception {
-        if (!db.index().existsForNodes(label)) return Stream.empty();
-        List<WeightedNodeResult> hits = KernelApi.toWeightedNodeResultFromLegacyIndex(KernelApi.nodeQueryIndex(label, query,db), db);
+        String indexName = FreeTextSearch.indexName(db.index(), label);
+        if (indexName == null) return Stream.empty();
+        List<WeightedNodeResult> hits = KernelApi.toWeightedNodeResultFromLegacyIndex(KernelApi.nodeQueryIndex(indexName, query,db), db);
 
         return hits.stream();
     }
@@ -63,12 +64,17 @@ public class FulltextIndex {
     @Procedure(mode = Mode.WRITE)
     public Stream<IndexInfo> forNodes(@Name("name") String name, @Name("config") Map<String,String> config) {
         Index<Node> index = getNodeIndex(name, config);
-        return Stream.of(new IndexInfo(NODE, name, db.index().getConfiguration(index)));
+        return Stream.of(new IndexInfo(NODE, index.getName(), db.index().getConfiguration(index)));
     }
 
+    /**
+     * the current generation of an index rebuilt by apoc.index.addAllNodes, otherwise the index of that name
+     */
     private Index<Node> getNodeIndex(@Name("name") String name, @Name("config") Map<String, String> config) {
         IndexManager mgr = db.index();
-        return config == null ? mgr.forNodes(name) : mgr.forNodes(name, config);
+        String indexName = FreeTextSearch.indexName(mgr, name);
+        if (indexName == null) indexName = name;
+        return config == null ? mgr.forNodes(indexName) : mgr.forNodes(indexName, config);
     }
 
     @Description("apoc.index.forRelationships('name',{config}) YIELD type,name,config - gets or creates relationship index")
@@ -88,9 +94,10 @@ public class FulltextIndex {
     public Stream<IndexInfo> remove(@Name("name") String name) {
         IndexManager mgr = db.index();
         List<IndexInfo> indexInfos = new ArrayList<>(2);
-        if (mgr.existsForNodes(name)) {
-            Index<Node> index = mgr.forNodes(name);
-            indexInfos.add(new IndexInfo(NODE, name, mgr.getConfiguration(index)));
+        // all generations of an index rebuilt by apoc.index.addAllNodes
+        for (String generation : FreeTextSearch.generations(mgr, name).values()) {
+            Index<Node> index = mgr.forNodes(generation);
+            indexInfos.add(new IndexInfo(NODE, generation, mgr.getConfiguration(index)));
             index.delete();
         }
         if (mgr.existsForRelationships(name)) {
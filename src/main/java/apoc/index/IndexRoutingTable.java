@@ -0,0 +1,109 @@
+package apoc.index;
+
+import apoc.util.Util;
+import org.neo4j.collection.primitive.Primitive;
+import org.neo4j.collection.primitive.PrimitiveIntObjectMap;
+import org.neo4j.collection.primitive.PrimitiveLongObjectMap;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.graphdb.index.IndexManager;
+import org.neo4j.kernel.api.Statement;
+
+import java.util.*;
+
+/**
+ * The indexes with autoUpdate for each label and property key, by token id, so that the transaction event handler
+ * doesn't resolve names or scan all properties of a node. It is built from the index configuration and not changed
+ * afterwards, a configuration change builds a new one.
+ */
+class IndexRoutingTable {
+    /**
+     * an index to update, with the key of the label and property in it
+     */
+    static class Route {
+        final Index<Node> index;
+        final String key;
+
+        Route(Index<Node> index, String key) {
+            this.index = index;
+            this.key = key;
+        }
+    }
+
+    private static final Route[] NO_ROUTES = new Route[0];
+
+    // label id << 32 | property key id
+    private final PrimitiveLongObjectMap<Route[]> routes = Primitive.longObjectMap();
+    private final PrimitiveIntObjectMap<int[]> propertyKeysByLabel = Primitive.intObjectMap();
+
+    private IndexRoutingTable() {
+    }
+
+    /**
+     * must be called in a transaction, the tokens of the configured labels and properties are created if they don't
+     * exist yet, so that the nodes that get them later are routed as well
+     */
+    static IndexRoutingTable build(IndexManager indexManager, Statement statement) {
+        Map<Long, List<Route>> routes = new HashMap<>();
+        Map<Integer, Set<Integer>> propertyKeys = new HashMap<>();
+        for (String indexName : indexManager.nodeIndexNames()) {
+            Map<String, String> indexConfig = indexManager.getConfiguration(indexManager.forNodes(indexName));
+            if (!Util.toBoolean(indexConfig.get("autoUpdate"))) continue;
+            Index<Node> index = indexManager.forNodes(indexName);
+            for (String label : indexConfig.getOrDefault("labels", "").split(":")) {
+                int labelId = labelId(statement, label);
+                if (labelId < 0) continue;
+                for (String property : indexConfig.getOrDefault("keysForLabel:" + label, "").split(":")) {
+                    int propertyKeyId = propertyKeyId(statement, property);
+                    if (propertyKeyId < 0) continue;
+                    routes.computeIfAbsent(key(labelId, propertyKeyId), k -> new ArrayList<>()).add(new Route(index, label + "." + property));
+                    propertyKeys.computeIfAbsent(labelId, k -> new LinkedHashSet<>()).add(propertyKeyId);
+                }
+            }
+        }
+        IndexRoutingTable table = new IndexRoutingTable();
+        routes.forEach((key, list) -> table.routes.put(key, list.toArray(new Route[list.size()])));
+        propertyKeys.forEach((labelId, keys) -> table.propertyKeysByLabel.put(labelId, keys.stream().mapToInt(Integer::intValue).toArray()));
+        return table;
+    }
+
+    private static int labelId(Statement statement, String label) {
+        if (label.isEmpty()) return -1;
+        try {
+            return statement.tokenWriteOperations().labelGetOrCreateForName(label);
+        } catch (Exception e) {
+            // e.g. a read only database
+            return statement.readOperations().labelGetForName(label);
+        }
+    }
+
+    private static int propertyKeyId(Statement statement, String property) {
+        if (property.isEmpty()) return -1;
+        try {
+            return statement.tokenWriteOperations().propertyKeyGetOrCreateForName(property);
+        } catch (Exception e) {
+            return statement.readOperations().propertyKeyGetForName(property);
+        }
+    }
+
+    private static long key(int labelId, int propertyKeyId) {
+        return ((long) labelId << 32) | (propertyKeyId & 0xFFFFFFFFL);
+    }
+
+    boolean isEmpty() {
+        return routes.isEmpty();
+    }
+
+    Route[] routes(int labelId, int propertyKeyId) {
+        if (labelId < 0 || propertyKeyId < 0) return NO_ROUTES;
+        Route[] result = routes.get(key(labelId, propertyKeyId));
+        return result == null ? NO_ROUTES : result;
+    }
+
+    /**
+     * the property keys with indexes for the label, null if there are none
+     */
+    int[] propertyKeys(int labelId) {
+        return labelId < 0 ? null : propertyKeysByLabel.get(labelId);
+    }
+}
@@ -0,0 +1,163 @@
+package apoc.index;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static apoc.util.Util.map;
+
+/**
+ * Counters and histograms of the automatic index updates. The lag is the time from the commit of a transaction to the
+ * commit of the background transaction that made its index updates visible, so it is only recorded in async mode.
+ * The rates and percentiles cover the last minute, the counters everything since the start.
+ */
+class IndexUpdateStatistics {
+    private final LongAdder enqueued = new LongAdder(), coalesced = new LongAdder(), applied = new LongAdder(),
+            indexOperations = new LongAdder(), failed = new LongAdder(), dropped = new LongAdder(),
+            blockedEnqueues = new LongAdder(), blockedNanos = new LongAdder(), rollovers = new LongAdder();
+    private final Rate enqueueRate = new Rate(), applyRate = new Rate();
+    // milliseconds
+    private final SlidingHistogram lag = new SlidingHistogram(), rollover = new SlidingHistogram();
+
+    void enqueued(boolean merged) {
+        enqueued.increment();
+        enqueueRate.mark(1);
+        if (merged) coalesced.increment();
+    }
+
+    void blocked(long nanos) {
+        blockedEnqueues.increment();
+        blockedNanos.add(nanos);
+    }
+
+    void dropped(long count) {
+        dropped.add(count);
+    }
+
+    void applied(int ops) {
+        applied.increment();
+        applyRate.mark(1);
+        indexOperations.add(ops);
+    }
+
+    void failed() {
+        failed.increment();
+    }
+
+    /**
+     * the commit of a background transaction, with the enqueue times of the updates it applied
+     */
+    void committed(long commitNanos, long[] enqueuedNanos, int count) {
+        long now = System.nanoTime();
+        rollovers.increment();
+        rollover.recordValue(TimeUnit.NANOSECONDS.toMillis(commitNanos));
+        for (int i = 0; i < count; i++) {
+            lag.recordValue(TimeUnit.NANOSECONDS.toMillis(Math.max(0, now - enqueuedNanos[i])));
+        }
+    }
+
+    Map<String, Object> toMap() {
+        Map<String, Object> stats = map(
+                "enqueued", enqueued.sum(),
+                "coalesced", coalesced.sum(),
+                "applied", applied.sum(),
+                "indexOperations", indexOperations.sum(),
+                "failed", failed.sum(),
+                "dropped", dropped.sum(),
+                "blockedEnqueues", blockedEnqueues.sum(),
+                "blockedMillis", TimeUnit.NANOSECONDS.toMillis(blockedNanos.sum()),
+                "enqueuedPerSecond", enqueueRate.perSecond(),
+                "appliedPerSecond", applyRate.perSecond(),
+                "rollovers", rollovers.sum());
+        stats.putAll(percentiles("lag", lag.lastMinute()));
+        stats.putAll(percentiles("rollover", rollover.lastMinute()));
+        return stats;
+    }
+
+    private static Map<String, Object> percentiles(String name, Histogram histogram) {
+        boolean empty = histogram.getTotalCount() == 0;
+        return map(name + "P50Millis", empty ? null : histogram.getValueAtPercentile(50),
+                name + "P95Millis", empty ? null : histogram.getValueAtPercentile(95),
+                name + "P99Millis", empty ? null : histogram.getValueAtPercentile(99),
+                name + "MaxMillis", empty ? null : histogram.getMaxValue());
+    }
+
+    /**
+     * Values of the last minute, in intervals of ten seconds. The recorder hands the values over to the histogram of
+     * the current interval whenever an interval is over or the values are read, so recording doesn't lock and the
+     * histograms only hold the values of the last six intervals.
+     */
+    private static class SlidingHistogram {
+        private static final int INTERVALS = 6;
+        private static final long INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+        private final Recorder recorder = new Recorder(3);
+        // the histograms resize to the highest recorded value
+        private final Histogram[] intervals = new Histogram[INTERVALS];
+        private final long[] intervalNumbers = new long[INTERVALS];
+        private volatile long currentInterval = interval();
+
+        private static long interval() {
+            return System.currentTimeMillis() / INTERVAL_MILLIS;
+        }
+
+        void recordValue(long value) {
+            // the values of the previous interval are handed over before the first value of a new one
+            if (interval() != currentInterval) roll();
+            recorder.recordValue(value);
+        }
+
+        private synchronized void roll() {
+            long interval = interval();
+            Histogram recorded = recorder.getIntervalHistogram();
+            int slot = (int) (currentInterval % INTERVALS);
+            if (intervals[slot] == null || intervalNumbers[slot] != currentInterval) {
+                intervals[slot] = new Histogram(3);
+                intervalNumbers[slot] = currentInterval;
+            }
+            intervals[slot].add(recorded);
+            currentInterval = interval;
+        }
+
+        synchronized Histogram lastMinute() {
+            roll();
+            Histogram result = new Histogram(3);
+            for (int slot = 0; slot < INTERVALS; slot++) {
+                if (intervals[slot] != null && currentInterval - intervalNumbers[slot] < INTERVALS) result.add(intervals[slot]);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * events per second over the last minute, counted in buckets of one second
+     */
+    private static class Rate {
+        private static final int SECONDS = 60;
+        private final AtomicLongArray counts = new AtomicLongArray(SECONDS), seconds = new AtomicLongArray(SECONDS);
+
+        void mark(long count) {
+            long second = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+            int bucket = (int) (second % SECONDS);
+            long current = seconds.get(bucket);
+            if (current != second && seconds.compareAndSet(bucket, current, second)) {
+                counts.set(bucket, 0);
+            }
+            counts.addAndGet(bucket, count);
+        }
+
+        double perSecond() {
+            long second = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+            long total = 0;
+            for (int bucket = 0; bucket < SECONDS; bucket++) {
+                // the current second is not complete yet
+                long age = second - seconds.get(bucket);
+                if (age > 0 && age < SECONDS) total += counts.get(bucket);
+            }
+            return (double) total / (SECONDS - 1);
+        }
+    }
+}
@@ -10,55 +10,56 @@ import org.neo4j.graphdb.event.PropertyEntry;
 import org.neo4j.graphdb.event.TransactionData;
 import org.neo4j.graphdb.event.TransactionEventHandler;
 import org.neo4j.graphdb.index.Index;
-import org.neo4j.graphdb.index.IndexManager;
-import org.neo4j.kernel.KernelApi;
-import org.neo4j.helpers.collection.Iterables;
+import org.neo4j.collection.primitive.Primitive;
+import org.neo4j.collection.primitive.PrimitiveIntIterator;
+import org.neo4j.collection.primitive.PrimitiveLongSet;
+import org.neo4j.kernel.api.ReadOperations;
+import org.neo4j.kernel.api.exceptions.EntityNotFoundException;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
-import org.neo4j.kernel.lifecycle.LifeSupport;
 import org.neo4j.logging.Log;
 
 import java.util.*;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
-import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 import static org.neo4j.helpers.collection.Iterables.stream;
-import static org.neo4j.helpers.collection.Iterators.*;
 
 /**
  * a transaction event handler that updates manual indexes based on configuration in graph properties
  * based on configuration the updates are process synchronously via {@link #beforeCommit(TransactionData)} or async via
- * {@link #afterCommit(TransactionData, Collection<Consumer<Void>)}
+ * {@link #afterCommit(TransactionData, Map)}, the updates of a node in an index are coalesced per transaction
  * @author Stefan Armbruster
  */
-public class IndexUpdateTransactionEventHandler extends TransactionEventHandler.Adapter<Collection<Consumer<Void>>> {
+public class IndexUpdateTransactionEventHandler extends TransactionEventHandler.Adapter<Map<AsyncIndexWriter.Key, AsyncIndexWriter.Updates>> {
 
-    private final GraphDatabaseService graphDatabaseService;
+    private final GraphDatabaseAPI graphDatabaseService;
     private final boolean async;
 
-    private final BlockingQueue<Consumer<Void>> indexCommandQueue ;
+    private final AsyncIndexWriter asyncIndexWriter;
+    private final IndexUpdateStatistics statistics = new IndexUpdateStatistics();
+    private final int queueCapacity;
     private final boolean stopWatchEnabled;
     private final Log log;
-    private Map<String, Map<String, Collection<Index<Node>>>> indexesByLabelAndProperty;
+    private volatile IndexRoutingTable routingTable;
     private ScheduledFuture<?> configUpdateFuture = null;
 
     public IndexUpdateTransactionEventHandler(GraphDatabaseAPI graphDatabaseService, Log log, boolean async, int queueCapacity, boolean stopWatchEnabled) {
+        this(graphDatabaseService, log, async, 1, queueCapacity, 50_000, 5_000, stopWatchEnabled);
+    }
+
+    public IndexUpdateTransactionEventHandler(GraphDatabaseAPI graphDatabaseService, Log log, boolean async, int threads, int queueCapacity,
+                                              long opsCountRollover, long millisRollover, boolean stopWatchEnabled) {
         this.graphDatabaseService = graphDatabaseService;
         this.log = log;
         this.async = async;
-        this.indexCommandQueue = new LinkedBlockingQueue<>(queueCapacity);
+        this.queueCapacity = queueCapacity;
+        this.asyncIndexWriter = async ? new AsyncIndexWriter(graphDatabaseService, log, statistics, threads, queueCapacity, opsCountRollover, millisRollover) : null;
         this.stopWatchEnabled = stopWatchEnabled;
     }
 
-    public BlockingQueue<Consumer<Void>> getIndexCommandQueue() {
-        return indexCommandQueue;
-    }
-
     @FunctionalInterface
     interface IndexFunction<A, B, C, D, E> {
         void apply (A a, B b, C c, D d, E e);
@@ -81,158 +82,169 @@ public class IndexUpdateTransactionEventHandler extends TransactionEventHandler.
     }
 
     @Override
-    public Collection<Consumer<Void>> beforeCommit(TransactionData data) throws Exception {
+    public Map<AsyncIndexWriter.Key, AsyncIndexWriter.Updates> beforeCommit(TransactionData data) throws Exception {
 
-        return (Collection<Consumer<Void>>) logDuration("beforeCommit", () -> {
-            getIndexesByLabelAndProperty();
-            Collection<Consumer<Void>> state = async ? new LinkedList<>() : null;
+        return (Map<AsyncIndexWriter.Key, AsyncIndexWriter.Updates>) logDuration("beforeCommit", () -> {
+            IndexRoutingTable routingTable = getRoutingTable();
+            Map<AsyncIndexWriter.Key, AsyncIndexWriter.Updates> state = async ? new LinkedHashMap<>() : null;
+            if (routingTable.isEmpty()) {
+                return state;
+            }
 
-            iterateNodePropertyChange(stream(data.assignedNodeProperties()),false, (index, node, key, value, oldValue) -> indexUpdate(state, aVoid -> {
-                if (oldValue != null) {
-                    index.remove(node, key);
-                    index.remove(node, FreeTextSearch.KEY);
-                }
-                index.add(node, key, value);
-                index.add(node, FreeTextSearch.KEY, value);
-            }));
-
-            // filter out removedNodeProperties from node deletions
-            iterateNodePropertyChange(stream(data.removedNodeProperties()).filter(nodePropertyEntry -> !contains(data.deletedNodes().iterator(), nodePropertyEntry.entity())), true, (index, node, key, value, oldValue) -> indexUpdate(state, aVoid -> {
-                index.remove(node, key);
-                index.remove(node, FreeTextSearch.KEY);
-            }));
-
-            // performance tweak: converted create/deleted nodes to a set, so we can apply `contains` on it fast
-            final Set<Node> createdNodes = Iterables.asSet(data.createdNodes());
-            final Set<Node> deletedNodes = Iterables.asSet(data.deletedNodes());
-            iterateLabelChanges(
-                    stream(data.assignedLabels()).filter( labelEntry -> !createdNodes.contains( labelEntry.node() ) ),
-                    (index, node, key, value, ignore) -> indexUpdate(state, aVoid -> {
-                        index.add(node, key, value);
-                        index.add(node, FreeTextSearch.KEY, value);
-                    }));
-
-            iterateLabelChanges(
-                    stream(data.removedLabels()).filter( labelEntry -> !deletedNodes.contains( labelEntry.node() ) ),
-                    (index, node, key, value, ignore) -> indexUpdate(state, aVoid -> {
-                        index.remove(node, key);
-                        index.remove(node, FreeTextSearch.KEY);
-                    }));
-
-            return state;
+            return Util.withStatement(graphDatabaseService, (statement, ops) -> {
+                // ids of the created and deleted nodes, so that the filters below take constant time per entry
+                final PrimitiveLongSet createdNodes = nodeIds(data.createdNodes());
+                final PrimitiveLongSet deletedNodes = nodeIds(data.deletedNodes());
 
+                iterateNodePropertyChange(ops, routingTable, stream(data.assignedNodeProperties()),false, (index, node, key, value, oldValue) -> indexUpdate(state, index, node, updates -> {
+                    if (oldValue != null) {
+                        updates.remove(key);
+                        updates.remove(FreeTextSearch.KEY);
+                    }
+                    updates.add(key, value);
+                    updates.add(FreeTextSearch.KEY, value);
+                }));
+
+                // filter out removedNodeProperties from node deletions
+                iterateNodePropertyChange(ops, routingTable, stream(data.removedNodeProperties()).filter(nodePropertyEntry -> !deletedNodes.contains(nodePropertyEntry.entity().getId())), true, (index, node, key, value, oldValue) -> indexUpdate(state, index, node, updates -> {
+                    updates.remove(key);
+                    updates.remove(FreeTextSearch.KEY);
+                }));
+
+                iterateLabelChanges(ops, routingTable,
+                        stream(data.assignedLabels()).filter( labelEntry -> !createdNodes.contains( labelEntry.node().getId() ) ),
+                        (index, node, key, value, ignore) -> indexUpdate(state, index, node, updates -> {
+                            updates.add(key, value);
+                            updates.add(FreeTextSearch.KEY, value);
+                        }));
+
+                iterateLabelChanges(ops, routingTable,
+                        stream(data.removedLabels()).filter( labelEntry -> !deletedNodes.contains( labelEntry.node().getId() ) ),
+                        (index, node, key, value, ignore) -> indexUpdate(state, index, node, updates -> {
+                            updates.remove(key);
+                            updates.remove(FreeTextSearch.KEY);
+                        }));
+
+                return state;
+            });
         });
 
 
     }
 
+    private static PrimitiveLongSet nodeIds(Iterable<Node> nodes) {
+        PrimitiveLongSet ids = Primitive.longSet();
+        for (Node node : nodes) {
+            ids.add(node.getId());
+        }
+        return ids;
+    }
+
     @Override
-    public void afterCommit(TransactionData data, Collection<Consumer<Void>> state) {
+    public void afterCommit(TransactionData data, Map<AsyncIndexWriter.Key, AsyncIndexWriter.Updates> state) {
         logDuration("afterCommit", () -> {
             if (async) {
-                for (Consumer<Void> consumer: state) {
-                    try {
-                        indexCommandQueue.put(consumer);
-                    } catch (InterruptedException e) {
-                        throw new RuntimeException(e);
-                    }
+                try {
+                    asyncIndexWriter.add(state.values());
+                } catch (InterruptedException e) {
+                    statistics.dropped(state.size());
+                    throw new RuntimeException(e);
                 }
             }
             return null;
         });
     }
 
-    private void iterateNodePropertyChange(Stream<PropertyEntry<Node>> stream, boolean propertyRemoved,
+    private void iterateNodePropertyChange(ReadOperations ops, IndexRoutingTable routingTable, Stream<PropertyEntry<Node>> stream, boolean propertyRemoved,
           IndexFunction<Index<Node>, Node, String, Object, Object> function) {
         stream.forEach(nodePropertyEntry -> {
+            final int propertyKeyId = ops.propertyKeyGetForName(nodePropertyEntry.key());
+            if (propertyKeyId < 0) return;
             final Node entity = nodePropertyEntry.entity();
-            final String key = nodePropertyEntry.key();
             final Object value = propertyRemoved ? null : nodePropertyEntry.value();
-            entity.getLabels().forEach(label -> {
-                final String labelName = label.name();
-                final Map<String, Collection<Index<Node>>> propertyIndexMap = indexesByLabelAndProperty.get(labelName);
-                if (propertyIndexMap!=null) {
-                    final Collection<Index<Node>> indices = propertyIndexMap.get(key);
-                    if (indices!= null) {
-                        for (Index<Node> index : indices) {
-                            String indexKey = labelName + "." + key;
-                            function.apply(index, entity, indexKey, value, nodePropertyEntry.previouslyCommitedValue());
-                        }
+            try {
+                PrimitiveIntIterator labels = ops.nodeGetLabels(entity.getId());
+                while (labels.hasNext()) {
+                    for (IndexRoutingTable.Route route : routingTable.routes(labels.next(), propertyKeyId)) {
+                        function.apply(route.index, entity, route.key, value, nodePropertyEntry.previouslyCommitedValue());
                     }
                 }
-            });
+            } catch (EntityNotFoundException e) {
+                // deleted in this transaction
+            }
         });
     }
 
-    private void iterateLabelChanges(Stream<LabelEntry> stream, IndexFunction<Index<Node>, Node, String, Object, Void> function) {
+    private void iterateLabelChanges(ReadOperations ops, IndexRoutingTable routingTable, Stream<LabelEntry> stream, IndexFunction<Index<Node>, Node, String, Object, Void> function) {
         stream.forEach(labelEntry -> {
-            final String labelName = labelEntry.label().name();
-            final Map<String, Collection<Index<Node>>> propertyIndicesMap = indexesByLabelAndProperty.get(labelName);
-            if (propertyIndicesMap != null) {
-                final Node entity = labelEntry.node();
-                for (String key : entity.getPropertyKeys()) {
-                    Collection<Index<Node>> indices = propertyIndicesMap.get(key);
-                    if (indices != null) {
-                        for (Index<Node> index : indices) {
-                            Object value = entity.getProperty(key);
-                            String indexKey = labelName + "." + key;
-                            function.apply(index, entity, indexKey, value, null);
-                        }
-                    }
+            final int labelId = ops.labelGetForName(labelEntry.label().name());
+            final int[] propertyKeys = routingTable.propertyKeys(labelId);
+            if (propertyKeys == null) return;
+            final Node entity = labelEntry.node();
+            // only the indexed properties of the label, instead of all properties of the node
+            for (int propertyKeyId : propertyKeys) {
+                Object value;
+                try {
+                    value = ops.nodeGetProperty(entity.getId(), propertyKeyId);
+                } catch (EntityNotFoundException e) {
+                    return;
+                }
+                if (value == null) continue;
+                for (IndexRoutingTable.Route route : routingTable.routes(labelId, propertyKeyId)) {
+                    function.apply(route.index, entity, route.key, value, null);
                 }
             }
         });
     }
 
     /**
-     * in async mode add the index action to a collection for consumption in {@link #afterCommit(TransactionData, Collection)}, in sync mode, run it directly
+     * in async mode add the index action to the updates of the node for consumption in {@link #afterCommit(TransactionData, Map)}, in sync mode, run it directly
      */
-    private Void indexUpdate(Collection<Consumer<Void>> state, Consumer<Void> indexAction) {
+    private Void indexUpdate(Map<AsyncIndexWriter.Key, AsyncIndexWriter.Updates> state, Index<Node> index, Node node, Consumer<AsyncIndexWriter.Updates> indexAction) {
         if (state==null) {  // sync
-            indexAction.accept(null);
+            AsyncIndexWriter.Updates updates = new AsyncIndexWriter.Updates(index, node);
+            indexAction.accept(updates);
+            statistics.applied(updates.apply());
         } else { // async
-            state.add(indexAction);
+            indexAction.accept(state.computeIfAbsent(new AsyncIndexWriter.Key(index.getName(), node.getId()), k -> new AsyncIndexWriter.Updates(index, node)));
         }
         return null;
     }
 
-    public Map<String, Map<String, Collection<Index<Node>>>> getIndexesByLabelAndProperty() {
-        if (indexesByLabelAndProperty == null ) {
-            indexesByLabelAndProperty = initIndexConfiguration();
+    private IndexRoutingTable getRoutingTable() {
+        IndexRoutingTable routingTable = this.routingTable;
+        if (routingTable == null) {
+            routingTable = initIndexConfiguration();
+            this.routingTable = routingTable;
         }
-        return indexesByLabelAndProperty;
+        return routingTable;
     }
 
     public void resetConfiguration() {
-        indexesByLabelAndProperty = null;
+        routingTable = null;
+    }
+
+    /**
+     * the counters of the index updates, with the queue and the lag of the visibility in async mode
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = Util.map("enabled", true, "async", async,
+                "threads", async ? asyncIndexWriter.threads() : 0,
+                "queueSize", async ? asyncIndexWriter.queueSize() : 0,
+                "queueCapacity", async ? queueCapacity : 0,
+                "currentLagMillis", async ? TimeUnit.NANOSECONDS.toMillis(asyncIndexWriter.lagNanos()) : 0);
+        stats.putAll(statistics.toMap());
+        return stats;
     }
 
     // might be run from a scheduler, so we need to make sure we have a transaction
-    private synchronized Map<String, Map<String, Collection<Index<Node>>>> initIndexConfiguration() {
-        Map<String, Map<String, Collection<Index<Node>>>> indexesByLabelAndProperty = new HashMap<>();
+    private synchronized IndexRoutingTable initIndexConfiguration() {
         try (Transaction tx = graphDatabaseService.beginTx() ) {
-
-            final IndexManager indexManager = graphDatabaseService.index();
-            for (String indexName : indexManager.nodeIndexNames()) {
-
-                final Index<Node> index = indexManager.forNodes(indexName);
-
-                Map<String, String> indexConfig = KernelApi.getIndexConfiguration(indexName, graphDatabaseService);
-
-                if (Util.toBoolean(indexConfig.get("autoUpdate"))) {
-                    String labels = indexConfig.getOrDefault("labels", "");
-                    for (String label : labels.split(":")) {
-                        Map<String, Collection<Index<Node>>> propertyKeyToIndexMap = indexesByLabelAndProperty.computeIfAbsent(label, s -> new HashMap<>());
-                        String[] keysForLabel = indexConfig.getOrDefault("keysForLabel:" + label, "").split(":");
-                        for (String property : keysForLabel) {
-                            propertyKeyToIndexMap.computeIfAbsent(property, s -> new ArrayList<>()).add(index);
-                        }
-                    }
-                }
-            }
+            IndexRoutingTable routingTable = Util.withStatement(graphDatabaseService, (statement, ops) ->
+                    IndexRoutingTable.build(graphDatabaseService.index(), statement));
             tx.success();
+            return routingTable;
         }
-        return indexesByLabelAndProperty;
     }
 
     public static class LifeCycle {
@@ -251,13 +263,13 @@ public class IndexUpdateTransactionEventHandler extends TransactionEventHandler.
                 boolean async = ApocConfiguration.isEnabled("autoIndex.async");
                 boolean stopWatchEnabled = ApocConfiguration.isEnabled("autoIndex.tx_handler_stopwatch");
                 int queueCapacity = Integer.parseInt(ApocConfiguration.get("autoIndex.queue_capacity", "100000"));
-                indexUpdateTransactionEventHandler = new IndexUpdateTransactionEventHandler(db, log, async, queueCapacity, stopWatchEnabled);
+                int threads = Integer.parseInt(ApocConfiguration.get("autoIndex.async_threads", "1"));
+                long opsCountRollover = Long.parseLong(ApocConfiguration.get("autoIndex.async_rollover_opscount", "50000"));
+                long millisRollover = Long.parseLong(ApocConfiguration.get("autoIndex.async_rollover_millis", "5000"));
+                indexUpdateTransactionEventHandler = new IndexUpdateTransactionEventHandler(db, log, async, threads, queueCapacity,
+                        opsCountRollover, millisRollover, stopWatchEnabled);
                 if (async) {
-                    startIndexTrackingThread(db, indexUpdateTransactionEventHandler.getIndexCommandQueue(),
-                            Long.parseLong(ApocConfiguration.get("autoIndex.async_rollover_opscount", "50000")),
-                            Long.parseLong(ApocConfiguration.get("autoIndex.async_rollover_millis", "5000")),
-                            log
-                    );
+                    indexUpdateTransactionEventHandler.asyncIndexWriter.start();
                 }
                 db.registerTransactionEventHandler(indexUpdateTransactionEventHandler);
                 long indexConfigUpdateInternal = Util.toLong(ApocConfiguration.get("autoIndex.configUpdateInterval",10l));
@@ -266,51 +278,6 @@ public class IndexUpdateTransactionEventHandler extends TransactionEventHandler.
                 }
             }
         }
-        private void startIndexTrackingThread(GraphDatabaseAPI db, BlockingQueue<Consumer<Void>> indexCommandQueue, long opsCountRollover, long millisRollover, Log log) {
-            new Thread(() -> {
-                Transaction tx = db.beginTx();
-                int opsCount = 0;
-                long lastCommit = System.currentTimeMillis();
-                try {
-                    while (true) {
-                        Consumer<Void> indexCommand = indexCommandQueue.poll(millisRollover, TimeUnit.MILLISECONDS);
-                        long now = System.currentTimeMillis();
-                        if ((opsCount>0) && ((now - lastCommit > millisRollover) || (opsCount >= opsCountRollover))) {
-                            tx.success();
-                            tx.close();
-                            tx = db.beginTx();
-                            log.info("background indexing thread doing tx rollover, opscount " + opsCount + ", millis since last rollover " + (now-lastCommit));
-                            lastCommit = now;
-                            opsCount = 0;
-                        }
-                        if (indexCommand == null) {
-                            boolean running = db.getDependencyResolver().resolveDependency(LifeSupport.class).isRunning();
-                            if (running) {
-                                // in case we couldn't get anything from queue, we'll update lastcommit to prevent too early commits
-                                if (opsCount==0) {
-                                    lastCommit = now;
-                                }
-                            } else {
-                                // check if a database shutdown is already in progress, if so, terminate this thread
-                                log.info("system shutdown detected, terminating indexing background thread");
-                                break;
-                            }
-                        } else {
-                            opsCount++;
-                            indexCommand.accept(null);
-                        }
-                    }
-                } catch (InterruptedException e) {
-                    log.error(e.getMessage(), e);
-                    throw new RuntimeException(e);
-                } finally {
-                    tx.success();
-                    tx.close();
-                    log.info("stopping background thread for async index updates");
-                }
-            }).start();
-            log.info("started background thread for async index updates");
-        }
 
         public void stop() {
             if (indexUpdateTransactionEventHandler!=null) {
@@ -324,11 +291,18 @@ public class IndexUpdateTransactionEventHandler extends TransactionEventHandler.
                 indexUpdateTransactionEventHandler.resetConfiguration();
             }
         }
+
+        public Map<String, Object> getStatistics() {
+            if (indexUpdateTransactionEventHandler == null) {
+                return Util.map("enabled", false, "async", false);
+            }
+            return indexUpdateTransactionEventHandler.getStatistics();
+        }
     }
 
     private void startPeriodicIndexConfigChangeUpdates(long indexConfigUpdateInternal) {
         configUpdateFuture = Pools.SCHEDULED.scheduleAtFixedRate(() ->
-                indexesByLabelAndProperty = initIndexConfiguration(), indexConfigUpdateInternal, indexConfigUpdateInternal, TimeUnit.SECONDS);
+                routingTable = initIndexConfiguration(), indexConfigUpdateInternal, indexConfigUpdateInternal, TimeUnit.SECONDS);
     }
 
     private void stopPeriodicIndexConfigChangeUpdates() {
@@ -0,0 +1,92 @@
+package apoc.monitor;
+
+import apoc.ApocKernelExtensionFactory;
+import apoc.util.Util;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.procedure.Context;
+import org.neo4j.procedure.Description;
+import org.neo4j.procedure.Procedure;
+
+import java.util.Map;
+import java.util.stream.Stream;
+
+public class AutoIndex {
+
+    @Context
+    public GraphDatabaseAPI db;
+
+    @Procedure
+    @Description("apoc.monitor.autoIndex() yield queueSize, currentLagMillis, lagP99Millis, ... returns queue, throughput, failures and the lag from commit to index visibility of the automatic index updates")
+    public Stream<AutoIndexInfoResult> autoIndex() {
+        ApocKernelExtensionFactory.ApocLifecycle apocLifecycle = db.getDependencyResolver().resolveDependency(ApocKernelExtensionFactory.ApocLifecycle.class);
+        Map<String, Object> stats = apocLifecycle == null || apocLifecycle.getIndexUpdateLifeCycle() == null
+                ? Util.map("enabled", false, "async", false)
+                : apocLifecycle.getIndexUpdateLifeCycle().getStatistics();
+        return Stream.of(new AutoIndexInfoResult(stats));
+    }
+
+    public static class AutoIndexInfoResult {
+        public boolean enabled;
+        public boolean async;
+        // null if the automatic index updates are disabled
+        public Long threads;
+        public Long queueSize;
+        public Long queueCapacity;
+        public Long currentLagMillis;
+        public Long enqueued;
+        // updates of a node that were merged into its pending updates
+        public Long coalesced;
+        public Long applied;
+        public Long indexOperations;
+        public Long failed;
+        public Long dropped;
+        // transactions that waited for room in the queue
+        public Long blockedEnqueues;
+        public Long blockedMillis;
+        // over the last minute
+        public Double enqueuedPerSecond;
+        public Double appliedPerSecond;
+        public Long rollovers;
+        // over the last minute, null if no update became visible in it
+        public Long lagP50Millis;
+        public Long lagP95Millis;
+        public Long lagP99Millis;
+        public Long lagMaxMillis;
+        public Long rolloverP50Millis;
+        public Long rolloverP95Millis;
+        public Long rolloverP99Millis;
+        public Long rolloverMaxMillis;
+
+        public AutoIndexInfoResult(Map<String, Object> stats) {
+            this.enabled = (Boolean) stats.get("enabled");
+            this.async = (Boolean) stats.get("async");
+            this.threads = toLong(stats.get("threads"));
+            this.queueSize = toLong(stats.get("queueSize"));
+            this.queueCapacity = toLong(stats.get("queueCapacity"));
+            this.currentLagMillis = toLong(stats.get("currentLagMillis"));
+            this.enqueued = toLong(stats.get("enqueued"));
+            this.coalesced = toLong(stats.get("coalesced"));
+            this.applied = toLong(stats.get("applied"));
+            this.indexOperations = toLong(stats.get("indexOperations"));
+            this.failed = toLong(stats.get("failed"));
+            this.dropped = toLong(stats.get("dropped"));
+            this.blockedEnqueues = toLong(stats.get("blockedEnqueues"));
+            this.blockedMillis = toLong(stats.get("blockedMillis"));
+            this.enqueuedPerSecond = (Double) stats.get("enqueuedPerSecond");
+            this.appliedPerSecond = (Double) stats.get("appliedPerSecond");
+            this.rollovers = toLong(stats.get("rollovers"));
+            this.lagP50Millis = toLong(stats.get("lagP50Millis"));
+            this.lagP95Millis = toLong(stats.get("lagP95Millis"));
+            this.lagP99Millis = toLong(stats.get("lagP99Millis"));
+            this.lagMaxMillis = toLong(stats.get("lagMaxMillis"));
+            this.rolloverP50Millis = toLong(stats.get("rolloverP50Millis"));
+            this.rolloverP95Millis = toLong(stats.get("rolloverP95Millis"));
+            this.rolloverP99Millis = toLong(stats.get("rolloverP99Millis"));
+            this.rolloverMaxMillis = toLong(stats.get("rolloverMaxMillis"));
+        }
+
+        private static Long toLong(Object value) {
+            return value == null ? null : ((Number) value).longValue();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package apoc.monitor;
+
+import apoc.Pools;
+import org.neo4j.procedure.Description;
+import org.neo4j.procedure.Procedure;
+
+import java.util.Map;
+import java.util.stream.Stream;
+
+public class ThreadPools {
+
+    @Procedure
+    @Description("apoc.monitor.pools() yield name, threads, activeThreads, queueSize, ... returns threads, queue, rejected tasks and task latencies of the APOC thread pools")
+    public Stream<PoolInfoResult> pools() {
+        return Pools.getStatistics().stream().map(PoolInfoResult::new);
+    }
+
+    public static class PoolInfoResult {
+        public String name;
+        public long coreThreads;
+        public long maxThreads;
+        public long threads;
+        public long activeThreads;
+        public long queueSize;
+        // null for the work stealing pool
+        public Long largestThreads;
+        public Long queueRemaining;
+        public Long completedTasks;
+        // tasks taken from the queue of another thread, only for the work stealing pool
+        public Long stolenTasks;
+        // null for pools without instrumentation
+        public Long submittedTasks;
+        public Long rejectedTasks;
+        public Double avgWaitMillis;
+        public Double maxWaitMillis;
+        public Double avgRunMillis;
+        public Double maxRunMillis;
+
+        public PoolInfoResult(Map<String, Object> stats) {
+            this.name = (String) stats.get("name");
+            this.coreThreads = toLong(stats.get("coreThreads"));
+            this.maxThreads = toLong(stats.get("maxThreads"));
+            this.threads = toLong(stats.get("threads"));
+            this.activeThreads = toLong(stats.get("activeThreads"));
+            this.queueSize = toLong(stats.get("queueSize"));
+            this.largestThreads = toLongOrNull(stats.get("largestThreads"));
+            this.queueRemaining = toLongOrNull(stats.get("queueRemaining"));
+            this.completedTasks = toLongOrNull(stats.get("completedTasks"));
+            this.stolenTasks = (Long) stats.get("stolenTasks");
+            this.submittedTasks = (Long) stats.get("submittedTasks");
+            this.rejectedTasks = (Long) stats.get("rejectedTasks");
+            this.avgWaitMillis = (Double) stats.get("avgWaitMillis");
+            this.maxWaitMillis = (Double) stats.get("maxWaitMillis");
+            this.avgRunMillis = (Double) stats.get("avgRunMillis");
+            this.maxRunMillis = (Double) stats.get("maxRunMillis");
+        }
+
+        private static long toLong(Object value) {
+            return ((Number) value).longValue();
+        }
+
+        private static Long toLongOrNull(Object value) {
+            return value == null ? null : toLong(value);
+        }
+    }
+}
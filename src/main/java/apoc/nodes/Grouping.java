@@ -1,9 +1,9 @@
 package apoc.nodes;
 
 import apoc.Description;
-import apoc.Pools;
 import apoc.result.GraphResult;
 import apoc.result.VirtualNode;
+import apoc.util.TxBatchTask;
 import apoc.util.Util;
 import org.neo4j.graphdb.*;
 import org.neo4j.helpers.collection.Iterables;
@@ -15,7 +15,6 @@ import org.neo4j.procedure.Procedure;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -55,7 +54,7 @@ public class Grouping {
 
         List<Future> futures = new ArrayList<>(1000);
 
-        ExecutorService pool = Pools.DEFAULT;
+        // the batches split themselves on the work stealing pool, as the cost of nodes and relationships is uneven
         for (String labelName : labels) {
             Label label = Label.label(labelName);
             Label[] singleLabel = {label};
@@ -63,31 +62,28 @@ public class Grouping {
             try (ResourceIterator<Node> nodes = (labelName.equals(ASTERISK)) ? db.getAllNodes().iterator() : db.findNodes(label)) {
                 while (nodes.hasNext()) {
                     List<Node> batch = Util.take(nodes, BATCHSIZE);
-                    futures.add(Util.inTxFuture(pool, db, () -> {
+                    futures.add(TxBatchTask.submit(db, batch, (node) -> {
                         try {
-                            for (Node node : batch) {
-                                NodeKey key = keyFor(node, labelName, keys);
-                                grouped.compute(key, (k, v) -> {
-                                    if (v == null) v = new HashSet<>();
-                                    v.add(node);
-                                    return v;
-                                });
-                                virtualNodes.compute(key, (k, v) -> {
-                                            if (v == null) {
-                                                v = new VirtualNode(singleLabel, propertiesFor(node, keys), db);
-                                            }
-                                            Node vn = v;
-                                            if (!nodeAggNames.isEmpty()) {
-                                                aggregate(vn, nodeAggNames, nodeAggKeys.length > 0 ? node.getProperties(nodeAggKeys) : Collections.emptyMap());
-                                            }
-                                            return vn;
+                            NodeKey key = keyFor(node, labelName, keys);
+                            grouped.compute(key, (k, v) -> {
+                                if (v == null) v = new HashSet<>();
+                                v.add(node);
+                                return v;
+                            });
+                            virtualNodes.compute(key, (k, v) -> {
+                                        if (v == null) {
+                                            v = new VirtualNode(singleLabel, propertiesFor(node, keys), db);
                                         }
-                                );
-                            }
+                                        Node vn = v;
+                                        if (!nodeAggNames.isEmpty()) {
+                                            aggregate(vn, nodeAggNames, nodeAggKeys.length > 0 ? node.getProperties(nodeAggKeys) : Collections.emptyMap());
+                                        }
+                                        return vn;
+                                    }
+                            );
                         } catch (Exception e) {
                             log.debug("Error grouping nodes", e);
                         }
-                        return null;
                     }));
                     Util.removeFinished(futures);
                 }
@@ -97,41 +93,40 @@ public class Grouping {
         futures.clear();
         Iterator<Map.Entry<NodeKey, Set<Node>>> entries = grouped.entrySet().iterator();
         int size = 0;
-        List<Map.Entry<NodeKey, Set<Node>>> batch = new ArrayList<>();
+        // the nodes with their group, so that a group with many nodes can be split as well
+        List<Map.Entry<NodeKey, Node>> batch = new ArrayList<>();
         while (entries.hasNext()) {
             Map.Entry<NodeKey, Set<Node>> outerEntry = entries.next();
-            batch.add(outerEntry);
+            for (Node node : outerEntry.getValue()) {
+                batch.add(new AbstractMap.SimpleImmutableEntry<>(outerEntry.getKey(), node));
+            }
             size += outerEntry.getValue().size();
             if (size > BATCHSIZE || !entries.hasNext()) {
-                ArrayList<Map.Entry<NodeKey, Set<Node>>> submitted = new ArrayList<>(batch);
+                ArrayList<Map.Entry<NodeKey, Node>> submitted = new ArrayList<>(batch);
                 batch.clear();
                 size = 0;
-                futures.add(Util.inTxFuture(pool, db, () -> {
+                futures.add(TxBatchTask.submit(db, submitted, (entry) -> {
                     try {
-                        for (Map.Entry<NodeKey, Set<Node>> entry : submitted) {
-                            for (Node node : entry.getValue()) {
-                                NodeKey startKey = entry.getKey();
-                                Node v1 = virtualNodes.get(startKey);
-                                for (Relationship rel : node.getRelationships(Direction.OUTGOING)) {
-                                    Node endNode = rel.getEndNode();
-                                    for (NodeKey endKey : keysFor(endNode, labels, keys)) {
-                                        Node v2 = virtualNodes.get(endKey);
-                                        if (v2 == null) continue;
-                                        virtualRels.compute(new RelKey(startKey, endKey, rel), (rk, vRel) -> {
-                                            if (vRel == null) vRel = v1.createRelationshipTo(v2, rel.getType());
-                                            if (!relAggNames.isEmpty()) {
-                                                aggregate(vRel, relAggNames, relAggKeys.length > 0 ? rel.getProperties(relAggKeys) : Collections.emptyMap());
-                                            }
-                                            return vRel;
-                                        });
+                        Node node = entry.getValue();
+                        NodeKey startKey = entry.getKey();
+                        Node v1 = virtualNodes.get(startKey);
+                        for (Relationship rel : node.getRelationships(Direction.OUTGOING)) {
+                            Node endNode = rel.getEndNode();
+                            for (NodeKey endKey : keysFor(endNode, labels, keys)) {
+                                Node v2 = virtualNodes.get(endKey);
+                                if (v2 == null) continue;
+                                virtualRels.compute(new RelKey(startKey, endKey, rel), (rk, vRel) -> {
+                                    if (vRel == null) vRel = v1.createRelationshipTo(v2, rel.getType());
+                                    if (!relAggNames.isEmpty()) {
+                                        aggregate(vRel, relAggNames, relAggKeys.length > 0 ? rel.getProperties(relAggKeys) : Collections.emptyMap());
                                     }
-                                }
+                                    return vRel;
+                                });
                             }
                         }
                     } catch (Exception e) {
                         log.debug("Error grouping relationships", e);
                     }
-                    return null;
                 }));
                 Util.removeFinished(futures);
             }
@@ -0,0 +1,308 @@
+package apoc.periodic;
+
+import apoc.Pools;
+import apoc.util.Util;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded producer/consumer pipeline for batched execution.
+ * The calling thread reads the batches and submits one pool task per batch, which executes it in its own transaction
+ * and puts the outcome into a completion queue that the calling thread aggregates. At most `workers` batches are
+ * executed at a time, the others wait in a backlog. When the backlog is full the reader blocks until the next batch
+ * completes and frees a worker, so the memory for pending batches is bounded and nobody polls.
+ * No task waits for batches, a pool thread is only taken while it executes one, so concurrent iterations and the
+ * other users of the pool take turns on its threads instead of waiting for a whole iteration to finish.
+ * The execution time of each batch including its commit is reported to the {@link BatchSizer} of the reader, the
+ * completion of the batches, numbered in the order of submission, to the {@link Checkpoint} if there is one.
+ * In partitioned mode every batch belongs to a partition, the batches of a partition wait in its own backlog and
+ * only one batch of a partition is executed at a time, so batches of the same partition never run concurrently
+ * and can't deadlock each other. The workers are not bound to partitions, so a busy partition doesn't leave workers idle.
+ * A failed batch is retried in a new transaction after a backoff if it has retries left. Its failed transaction is
+ * rolled back first, so it doesn't hold locks while it waits, and it keeps its worker until its last attempt completes.
+ * Apart from the completion queue, the state is only used by the calling thread.
+ */
+class BatchPipeline {
+    private static final int NO_PARTITION = -1;
+
+    private final GraphDatabaseService db;
+    private final ExecutorService pool;
+    private final int workers;
+    private final int capacity;
+    private final int partitionCount;
+    // batches waiting for a worker, one backlog per partition in partitioned mode
+    private final ArrayDeque<Task>[] backlogs;
+    // partitions with an executing batch
+    private final boolean[] busy;
+    // partition to look at first, so that the partitions take turns
+    private int nextPartition;
+    private int waiting;
+    private int running;
+    private final BlockingQueue<Outcome> completed = new LinkedBlockingQueue<>();
+    private final BatchSizer batchSizer;
+    private Checkpoint checkpoint;
+    private long retries;
+    private long retryBackoffMillis;
+    private final AtomicLong retried = new AtomicLong();
+
+    private final Map<String, Long> batchErrors = new ConcurrentHashMap<>();
+    private final AtomicInteger failedBatches = new AtomicInteger();
+    private long successes;
+    private long submitted;
+
+    // metrics
+    private long readerBlockedNanos;
+    private int maxQueueDepth;
+    private int maxCompletedDepth;
+
+    /**
+     * a batch that is executed in a transaction, the transaction is rolled back if it throws an exception
+     */
+    interface Batch {
+        /**
+         * @param retry the number of the attempt, 0 for the first one
+         * @return the number of successfully processed rows
+         */
+        long execute(long retry) throws Exception;
+    }
+
+    private static class Task {
+        final Batch batch;
+        final int partition;
+        final long sequence;
+        // set by the thread that executes the attempt before the retry is scheduled
+        long retry;
+
+        Task(Batch batch, int partition, long sequence) {
+            this.batch = batch;
+            this.partition = partition;
+            this.sequence = sequence;
+        }
+    }
+
+    private static class Outcome {
+        final long successes;
+        final Throwable error;
+        final long nanos;
+        final Task task;
+
+        Outcome(long successes, Throwable error, long nanos, Task task) {
+            this.successes = successes;
+            this.error = error;
+            this.nanos = nanos;
+            this.task = task;
+        }
+    }
+
+    BatchPipeline(GraphDatabaseService db, ExecutorService pool, int workers, int capacity, BatchSizer batchSizer) {
+        this(db, pool, workers, capacity, 0, batchSizer);
+    }
+
+    BatchPipeline(GraphDatabaseService db, ExecutorService pool, int workers, int capacity, int partitionCount, BatchSizer batchSizer) {
+        this.db = db;
+        this.pool = pool;
+        this.batchSizer = batchSizer;
+        this.workers = Math.max(1, workers);
+        this.capacity = Math.max(1, capacity);
+        this.partitionCount = partitionCount;
+        this.backlogs = new ArrayDeque[Math.max(1, partitionCount)];
+        for (int i = 0; i < backlogs.length; i++) backlogs[i] = new ArrayDeque<>();
+        this.busy = new boolean[backlogs.length];
+    }
+
+    private Outcome execute(Task task) {
+        long start = System.nanoTime();
+        long result;
+        // a failing commit on close is caught too
+        try (Transaction tx = db.beginTx()) {
+            result = task.batch.execute(task.retry);
+            tx.success();
+        } catch (Exception e) {
+            return new Outcome(0, e, System.nanoTime() - start, task);
+        }
+        return new Outcome(result, null, System.nanoTime() - start, task);
+    }
+
+    // the reader waits for an outcome of every submitted batch, so there is one even if the batch throws an error
+    private void run(Task task) {
+        Outcome outcome;
+        try {
+            outcome = execute(task);
+        } catch (Throwable t) {
+            completed.add(new Outcome(0, t, 0, task));
+            throw t;
+        }
+        if (outcome.error != null && task.retry < retries) retryLater(task, outcome);
+        else completed.add(outcome);
+    }
+
+    // nobody sleeps during the backoff, the batch is handed to the pool again when it is over
+    private void retryLater(Task task, Outcome failed) {
+        long delay = Periodic.backoff(task.retry, retryBackoffMillis);
+        task.retry++;
+        retried.incrementAndGet();
+        try {
+            Pools.SCHEDULED.schedule(() -> resubmit(task, failed), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            completed.add(failed);
+        }
+    }
+
+    private void resubmit(Task task, Outcome failed) {
+        try {
+            pool.execute(() -> run(task));
+        } catch (RejectedExecutionException e) {
+            completed.add(failed);
+        }
+    }
+
+    /**
+     * hands the batch to the workers, blocks while the backlog is full
+     */
+    void submit(Batch batch) {
+        enqueue(new Task(batch, NO_PARTITION, submitted++));
+    }
+
+    /**
+     * hands the batch to the partition, blocks while the backlog is full
+     */
+    void submit(Batch batch, int partition) {
+        enqueue(new Task(batch, partition, submitted++));
+    }
+
+    private void enqueue(Task task) {
+        long start = System.nanoTime();
+        while (waiting >= capacity) {
+            try {
+                completed(completed.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while submitting batch", e);
+            }
+        }
+        readerBlockedNanos += System.nanoTime() - start;
+        backlogs[task.partition == NO_PARTITION ? 0 : task.partition].add(task);
+        waiting++;
+        dispatch();
+        maxQueueDepth = Math.max(maxQueueDepth, waiting);
+        aggregate();
+    }
+
+    // starts waiting batches while there are idle workers
+    private void dispatch() {
+        while (running < workers) {
+            Task task = nextTask();
+            if (task == null) return;
+            waiting--;
+            running++;
+            if (task.partition != NO_PARTITION) busy[task.partition] = true;
+            try {
+                pool.execute(() -> run(task));
+            } catch (RejectedExecutionException e) {
+                completed.add(new Outcome(0, e, 0, task));
+            }
+        }
+    }
+
+    private Task nextTask() {
+        for (int i = 0; i < backlogs.length; i++) {
+            int partition = (nextPartition + i) % backlogs.length;
+            if (busy[partition] || backlogs[partition].isEmpty()) continue;
+            nextPartition = partition + 1;
+            return backlogs[partition].poll();
+        }
+        return null;
+    }
+
+    BatchPipeline withCheckpoint(Checkpoint checkpoint) {
+        this.checkpoint = checkpoint;
+        return this;
+    }
+
+    /**
+     * retries a failed batch up to the given number of times, each time in a new transaction
+     */
+    BatchPipeline withRetries(long retries, long backoffMillis) {
+        this.retries = retries;
+        this.retryBackoffMillis = backoffMillis;
+        return this;
+    }
+
+    int getPartitionCount() {
+        return partitionCount;
+    }
+
+    // aggregates what the workers completed so far, without waiting
+    private void aggregate() {
+        maxCompletedDepth = Math.max(maxCompletedDepth, completed.size());
+        Outcome outcome;
+        while ((outcome = completed.poll()) != null) {
+            completed(outcome);
+        }
+    }
+
+    private void completed(Outcome outcome) {
+        running--;
+        if (outcome.task.partition != NO_PARTITION) busy[outcome.task.partition] = false;
+        long sequence = outcome.task.sequence;
+        if (outcome.error == null) {
+            successes += outcome.successes;
+            batchSizer.completed(outcome.successes, outcome.nanos);
+            if (checkpoint != null) checkpoint.completed(sequence, outcome.successes, false);
+        } else {
+            batchSizer.failed();
+            if (checkpoint != null) checkpoint.completed(sequence, 0, true);
+            // same message as for a failed future
+            failedBatches.incrementAndGet();
+            batchErrors.compute(outcome.error.toString(), (s, i) -> i == null ? 1 : i + 1);
+        }
+        dispatch();
+    }
+
+    /**
+     * waits for the workers to execute the pending batches
+     * @return the sum of the results of the successful batches
+     */
+    long finish() {
+        boolean interrupted = false;
+        dispatch();
+        while (running > 0) {
+            try {
+                completed(completed.take());
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        return successes;
+    }
+
+    Map<String, Long> getBatchErrors() {
+        return batchErrors;
+    }
+
+    int getFailedBatches() {
+        return failedBatches.get();
+    }
+
+    long getRetries() {
+        return retried.get();
+    }
+
+    Map<String, Object> getStatistics() {
+        return Util.map("workers", workers, "partitions", getPartitionCount(), "queueCapacity", capacity, "maxQueueDepth", maxQueueDepth,
+                "maxCompletedDepth", maxCompletedDepth,
+                "readerBlockedMillis", TimeUnit.NANOSECONDS.toMillis(readerBlockedNanos));
+    }
+}
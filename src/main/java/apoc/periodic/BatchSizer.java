@@ -0,0 +1,93 @@
+package apoc.periodic;
+
+import apoc.util.Util;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Determines the size of the next batch. A fixed sizer always returns the configured size, an adaptive one measures
+ * the time each batch takes to execute and commit and moves the size toward the number of operations that fit into
+ * the target time. The time per operation is smoothed over the batches and the size changes at most by a factor of
+ * two per batch, so that a single slow commit doesn't collapse the batch size. Failed batches halve the size, as they
+ * are often caused by transactions that are too large or hold their locks for too long.
+ */
+class BatchSizer {
+    static final long DEFAULT_TARGET_MILLIS = 200;
+    static final int DEFAULT_MIN_BATCH_SIZE = 1;
+    static final int DEFAULT_MAX_BATCH_SIZE = 100_000;
+    // weight of the latest batch for the average time per operation
+    private static final double SMOOTHING = 0.3;
+
+    private final boolean adaptive;
+    private final int initial;
+    private final int min;
+    private final int max;
+    private final double targetMillis;
+    private int current;
+    private double millisPerOperation = -1;
+    private int smallest, largest, adjustments;
+
+    private BatchSizer(boolean adaptive, int initial, int min, int max, long targetMillis) {
+        this.adaptive = adaptive;
+        this.min = Math.max(1, min);
+        this.max = Math.max(this.min, max);
+        this.initial = clamp(initial);
+        this.targetMillis = Math.max(1, targetMillis);
+        this.current = smallest = largest = this.initial;
+    }
+
+    static BatchSizer fixed(int batchSize) {
+        return new BatchSizer(false, batchSize, batchSize, batchSize, DEFAULT_TARGET_MILLIS);
+    }
+
+    static BatchSizer adaptive(int initial, int min, int max, long targetMillis) {
+        return new BatchSizer(true, initial, min, max, targetMillis);
+    }
+
+    /**
+     * the config keys adaptive, targetBatchMillis, minBatchSize and maxBatchSize, starting at batchSize
+     */
+    static BatchSizer from(Map<String, Object> config, int batchSize) {
+        if (!Util.toBoolean(config.getOrDefault("adaptive", false))) return fixed(batchSize);
+        return adaptive(batchSize,
+                Util.toLong(config.getOrDefault("minBatchSize", DEFAULT_MIN_BATCH_SIZE)).intValue(),
+                Util.toLong(config.getOrDefault("maxBatchSize", DEFAULT_MAX_BATCH_SIZE)).intValue(),
+                Util.toLong(config.getOrDefault("targetBatchMillis", DEFAULT_TARGET_MILLIS)));
+    }
+
+    int next() {
+        return current;
+    }
+
+    void completed(long operations, long nanos) {
+        if (!adaptive || operations <= 0) return;
+        double millis = Math.max(nanos, 1) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        double latest = millis / operations;
+        millisPerOperation = millisPerOperation < 0 ? latest : SMOOTHING * latest + (1 - SMOOTHING) * millisPerOperation;
+        long ideal = Math.round(targetMillis / millisPerOperation);
+        resize((int) Math.max(current / 2, Math.min((long) current * 2, ideal)));
+    }
+
+    void failed() {
+        if (adaptive) resize(current / 2);
+    }
+
+    private void resize(int size) {
+        int next = clamp(size);
+        if (next == current) return;
+        current = next;
+        adjustments++;
+        smallest = Math.min(smallest, current);
+        largest = Math.max(largest, current);
+    }
+
+    private int clamp(int size) {
+        return Math.max(min, Math.min(max, size));
+    }
+
+    Map<String, Object> getStatistics() {
+        return Util.map("adaptive", adaptive, "initial", initial, "current", current, "smallest", smallest,
+                "largest", largest, "adjustments", adjustments, "targetMillis", (long) targetMillis);
+    }
+}
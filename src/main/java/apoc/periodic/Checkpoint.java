@@ -0,0 +1,202 @@
+package apoc.periodic;
+
+import apoc.util.Util;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.impl.core.GraphProperties;
+import org.neo4j.kernel.impl.core.NodeManager;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Progress of a named apoc.periodic.iterate, stored as JSON in a graph property every few batches, so that a failed
+ * or cancelled run can resume where it stopped.
+ * Batches complete out of order, so the checkpoint only covers the batches up to the first one that is still running.
+ * It stores the number of rows of those batches as offset and the value of the key column of their last row, which
+ * the outer statement gets as parameters {_offset} and {_lastKey} when resuming.
+ * A failed batch stops the checkpoint, the batches from there on are executed again when resuming.
+ * All methods are called by the thread reading the outer statement, the checkpoint is written in a transaction of its
+ * own on that thread, while the transaction of the procedure is suspended.
+ */
+class Checkpoint {
+    static final String PROPERTY_PREFIX = "apoc.periodic.checkpoint.";
+    static final int DEFAULT_EVERY = 10;
+
+    private final GraphDatabaseAPI db;
+    private final String name;
+    private final int every;
+    private final String keyColumn;
+    private final boolean resumed;
+    private final boolean skipOffset;
+
+    // progress of all runs up to the last completed batch without gaps
+    private volatile long offset;
+    private Object lastKey;
+    private long batches, committedOperations, failedBatches;
+    // a batch up to which the checkpoint advanced failed
+    private boolean failed;
+
+    // batches of this run, numbered in the order of submission
+    private long submitted, completedUpTo, sinceSave;
+    private final Map<Long, Batch> pending = new HashMap<>();
+
+    private static class Batch {
+        final long rows;
+        final Object lastKey;
+        boolean done, failed;
+        long committed;
+
+        Batch(long rows, Object lastKey) {
+            this.rows = rows;
+            this.lastKey = lastKey;
+        }
+    }
+
+    private Checkpoint(GraphDatabaseAPI db, String name, int every, String keyColumn, boolean skipOffset, Map<String, Object> state) {
+        this.db = db;
+        this.skipOffset = skipOffset;
+        this.name = name;
+        this.every = Math.max(1, every);
+        this.keyColumn = keyColumn;
+        this.resumed = state != null;
+        if (state != null) {
+            this.offset = Util.toLong(state.getOrDefault("offset", 0));
+            this.lastKey = state.get("lastKey");
+            this.batches = Util.toLong(state.getOrDefault("batches", 0));
+            this.committedOperations = Util.toLong(state.getOrDefault("committedOperations", 0));
+            this.failedBatches = Util.toLong(state.getOrDefault("failedBatches", 0));
+        }
+    }
+
+    /**
+     * continues from the stored checkpoint of that name if there is one and resume is set, otherwise starts from the beginning
+     * @param skipOffset whether to skip the rows of the offset when resuming, false if the outer statement continues
+     *                   after {_offset} or {_lastKey} itself
+     */
+    static Checkpoint start(GraphDatabaseAPI db, String name, int every, String keyColumn, boolean resume, boolean skipOffset) {
+        Map<String, Object> state = resume ? load(db, name) : null;
+        return new Checkpoint(db, name, every, keyColumn, skipOffset, state);
+    }
+
+    static Map<String, Object> load(GraphDatabaseAPI db, String name) {
+        return inOwnTx(db, properties -> {
+            String json = (String) properties.getProperty(PROPERTY_PREFIX + name, null);
+            return json == null ? null : (Map<String, Object>) Util.fromJson(json, Map.class);
+        });
+    }
+
+    /**
+     * executes the work in a new transaction on the calling thread, the transaction of a procedure bound to the thread
+     * is suspended meanwhile, so that the checkpoint is committed on its own without waiting for a pool thread
+     */
+    private static <T> T inOwnTx(GraphDatabaseAPI db, Function<GraphProperties, T> work) {
+        ThreadToStatementContextBridge bridge = db.getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class);
+        KernelTransaction outer = bridge.getKernelTransactionBoundToThisThread(false);
+        if (outer != null) bridge.unbindTransactionFromCurrentThread();
+        try {
+            try (Transaction tx = db.beginTx()) {
+                T result = work.apply(graphProperties(db));
+                tx.success();
+                return result;
+            }
+        } finally {
+            if (outer != null) bridge.bindTransactionToCurrentThread(outer);
+        }
+    }
+
+    private static GraphProperties graphProperties(GraphDatabaseAPI db) {
+        return db.getDependencyResolver().resolveDependency(NodeManager.class).newGraphProperties();
+    }
+
+    /**
+     * the parameters {_offset} and {_lastKey} for the outer statement
+     */
+    Map<String, Object> parameters() {
+        return Util.map("_offset", offset, "_lastKey", lastKey);
+    }
+
+    /**
+     * skips the rows of the offset, unless the outer statement uses the parameters to do that
+     */
+    void skip(Iterator<Map<String, Object>> iterator) {
+        if (!skipOffset) return;
+        for (long row = 0; row < offset && iterator.hasNext(); row++) {
+            iterator.next();
+        }
+    }
+
+    void submitted(List<Map<String, Object>> rows) {
+        Object key = rows.isEmpty() || keyColumn == null ? null : keyValue(rows.get(rows.size() - 1).get(keyColumn));
+        pending.put(submitted++, new Batch(rows.size(), key));
+    }
+
+    private static Object keyValue(Object value) {
+        if (value instanceof Node) return ((Node) value).getId();
+        if (value instanceof Relationship) return ((Relationship) value).getId();
+        return value;
+    }
+
+    void completed(long sequence, long committed, boolean failed) {
+        Batch batch = pending.get(sequence);
+        if (batch == null) return;
+        batch.done = true;
+        batch.failed = failed;
+        batch.committed = committed;
+        while (!this.failed && (batch = pending.get(completedUpTo)) != null && batch.done) {
+            pending.remove(completedUpTo++);
+            if (batch.failed) {
+                // its rows were rolled back, so the offset stays before them to execute them again when resuming
+                this.failed = true;
+                failedBatches++;
+                save();
+                return;
+            }
+            offset += batch.rows;
+            if (keyColumn != null && batch.lastKey != null) lastKey = batch.lastKey;
+            batches++;
+            committedOperations += batch.committed;
+            if (++sinceSave >= every) save();
+        }
+    }
+
+    /**
+     * whether a batch failed, the iteration stops reading rows then, as the checkpoint doesn't advance any further
+     */
+    boolean isFailed() {
+        return failed;
+    }
+
+    void save() {
+        sinceSave = 0;
+        String json = Util.toJson(getState());
+        inOwnTx(db, properties -> {
+            properties.setProperty(PROPERTY_PREFIX + name, json);
+            return null;
+        });
+    }
+
+    /**
+     * removes the checkpoint after the iteration completed
+     */
+    void clear() {
+        inOwnTx(db, properties -> properties.removeProperty(PROPERTY_PREFIX + name));
+    }
+
+    long getOffset() {
+        return offset;
+    }
+
+    Map<String, Object> getState() {
+        return Util.map("name", name, "resumed", resumed, "offset", offset, "lastKey", lastKey, "batches", batches,
+                "committedOperations", committedOperations, "failedBatches", failedBatches,
+                "updated", System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,95 @@
+package apoc.periodic;
+
+import apoc.Pools;
+import apoc.util.Util;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Options for the batched execution of apoc.periodic.iterate and the rock_n_roll procedures.
+ */
+class IterateConfig {
+    // batches waiting in the queue per worker, so that a worker never waits for the reader
+    static final int QUEUED_BATCHES_PER_WORKER = 2;
+    static final long DEFAULT_RETRY_BACKOFF_MILLIS = 100;
+    private static final AtomicLong JOB_IDS = new AtomicLong();
+
+    final BatchSizer batchSizer;
+    final boolean parallel;
+    final boolean iterateList;
+    final long retries;
+    final long retryBackoffMillis;
+    final int concurrency;
+    final int queueCapacity;
+    // column of the outer statement, rows with the same value are executed by the same partition
+    final String partitionBy;
+    // name of the checkpoint, null without checkpoints
+    final String checkpoint;
+    final int checkpointEvery;
+    // column of the outer statement whose last value is stored in the checkpoint
+    final String checkpointKey;
+    final boolean resume;
+    // skip the rows of the checkpoint offset when resuming, false if the outer statement uses {_offset} or {_lastKey}
+    final boolean checkpointSkip;
+    // name in apoc.periodic.list while running
+    final String jobName;
+
+    private IterateConfig(BatchSizer batchSizer, boolean parallel, boolean iterateList, long retries, long retryBackoffMillis,
+                          int concurrency, int queueCapacity, String partitionBy,
+                          String checkpoint, int checkpointEvery, String checkpointKey, boolean resume, boolean checkpointSkip, String jobName) {
+        this.batchSizer = batchSizer;
+        this.parallel = parallel;
+        this.iterateList = iterateList;
+        this.retries = retries;
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.concurrency = parallel ? Math.max(1, concurrency) : 1;
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.partitionBy = parallel ? partitionBy : null;
+        this.checkpoint = checkpoint;
+        this.checkpointEvery = checkpointEvery;
+        this.checkpointKey = checkpointKey;
+        this.resume = resume;
+        this.checkpointSkip = checkpointSkip;
+        this.jobName = jobName;
+        if (this.checkpoint != null && this.partitionBy != null) {
+            throw new IllegalArgumentException("The checkpoint option can't be combined with partitionBy, as the partitions are not processed in the order of the rows");
+        }
+    }
+
+    static IterateConfig from(Map<String, Object> config) {
+        int batchSize = Util.toLong(config.getOrDefault("batchSize", 10000)).intValue();
+        boolean parallel = Util.toBoolean(config.getOrDefault("parallel", false));
+        int concurrency = parallel ? Util.toLong(config.getOrDefault("concurrency", defaultConcurrency())).intValue() : 1;
+        return new IterateConfig(BatchSizer.from(config, batchSize), parallel,
+                Util.toBoolean(config.getOrDefault("iterateList", false)),
+                Util.toLong(config.getOrDefault("retries", 0)),
+                Util.toLong(config.getOrDefault("retryBackoffMillis", DEFAULT_RETRY_BACKOFF_MILLIS)),
+                concurrency,
+                Util.toLong(config.getOrDefault("queueCapacity", concurrency * QUEUED_BATCHES_PER_WORKER)).intValue(),
+                (String) config.get("partitionBy"),
+                (String) config.get("checkpoint"),
+                Util.toLong(config.getOrDefault("checkpointEvery", Checkpoint.DEFAULT_EVERY)).intValue(),
+                (String) config.get("checkpointKey"),
+                Util.toBoolean(config.getOrDefault("resume", true)),
+                Util.toBoolean(config.getOrDefault("checkpointSkip", true)),
+                (String) config.getOrDefault("jobName", config.getOrDefault("checkpoint", "apoc.periodic.iterate-" + JOB_IDS.incrementAndGet())));
+    }
+
+    /**
+     * a single worker executing batches of a fixed size without retries
+     */
+    static IterateConfig sequential(int batchSize) {
+        return new IterateConfig(BatchSizer.fixed(batchSize), false, false, 0, DEFAULT_RETRY_BACKOFF_MILLIS, 1, QUEUED_BATCHES_PER_WORKER, null,
+                null, Checkpoint.DEFAULT_EVERY, null, false, true, "apoc.periodic.rock_n_roll-" + JOB_IDS.incrementAndGet());
+    }
+
+    boolean isPartitioned() {
+        return partitionBy != null;
+    }
+
+    // half of the import pool, so that two parallel iterations can run side by side
+    static int defaultConcurrency() {
+        return Math.max(1, Pools.getNoThreadsInPool(Pools.IMPORT_POOL) / 2);
+    }
+}
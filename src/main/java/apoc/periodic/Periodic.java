@@ -2,7 +2,10 @@ package apoc.periodic;
 
 import org.neo4j.procedure.*;
 import apoc.Pools;
+import apoc.cypher.PreparedCypher;
 import apoc.util.Util;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.Result;
 import org.neo4j.helpers.collection.Iterators;
 import org.neo4j.kernel.api.KernelTransaction;
@@ -13,8 +16,9 @@ import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
@@ -29,6 +33,7 @@ public class Periodic {
     @Context public Log log;
 
     final static Map<JobInfo,Future> list = new ConcurrentHashMap<>();
+    static final long MAX_RETRY_BACKOFF_MILLIS = 10_000;
     static {
         Runnable runnable = () -> {
             for (Iterator<Map.Entry<JobInfo, Future>> it = list.entrySet().iterator(); it.hasNext(); ) {
@@ -230,8 +235,9 @@ public class Periodic {
 
             log.info("starting batched operation using iteration `%s` in separate thread", cypherIterate);
             try (Result result = db.execute(cypherIterate)) {
+                PreparedCypher action = new PreparedCypher(db, cypherAction).prepare(log);
                 Stream<BatchAndTotalResult> oneResult =
-                    iterateAndExecuteBatchedInSeparateThread((int) batchSize, false, false,0, result, params -> db.execute(cypherAction, params));
+                    iterateAndExecuteBatchedInSeparateThread(IterateConfig.sequential((int) batchSize), null, action, result, p -> action.execute(p));
                 final Object loopParam = value;
                 allResults = Stream.concat(allResults, oneResult.map(r -> r.inLoop(loopParam)));
             }
@@ -244,34 +250,39 @@ public class Periodic {
      * @param cypherAction
      */
     @Procedure(mode = Mode.WRITE)
-    @Description("apoc.periodic.iterate('statement returning items', 'statement per item', {batchSize:1000,iterateList:false,parallel:true}) YIELD batches, total - run the second statement for each item returned by the first statement. Returns number of batches and total processed rows")
+    @Description("apoc.periodic.iterate('statement returning items', 'statement per item', {batchSize:1000,iterateList:false,parallel:true,concurrency:_,queueCapacity:_,adaptive:false,partitionBy:null,checkpoint:null}) YIELD batches, total - run the second statement for each item returned by the first statement. Returns number of batches and total processed rows")
     public Stream<BatchAndTotalResult> iterate(
             @Name("cypherIterate") String cypherIterate,
             @Name("cypherAction") String cypherAction,
             @Name("config") Map<String,Object> config) {
 
-        long batchSize = Util.toLong(config.getOrDefault("batchSize", 10000));
-        boolean parallel = Util.toBoolean(config.getOrDefault("parallel", false));
-        boolean iterateList = Util.toBoolean(config.getOrDefault("iterateList", false));
-        long retries = Util.toLong(config.getOrDefault("retries", 0)); // todo sleep/delay or push to end of batch to try again or immediate ?
+        IterateConfig iterateConfig = IterateConfig.from(config);
         Map<String,Object> params = (Map)config.getOrDefault("params", Collections.emptyMap());
-        try (Result result = db.execute(cypherIterate,params)) {
-            String innerStatement = prepareInnerStatement(cypherAction, iterateList, result.columns(), "_batch");
+        Checkpoint checkpoint = iterateConfig.checkpoint == null ? null :
+                Checkpoint.start(db, iterateConfig.checkpoint, iterateConfig.checkpointEvery, iterateConfig.checkpointKey, iterateConfig.resume, iterateConfig.checkpointSkip);
+        Map<String,Object> iterateParams = checkpoint == null ? params : merge(params, checkpoint.parameters());
+        try (Result result = db.execute(cypherIterate,iterateParams)) {
+            if (iterateConfig.isPartitioned() && !result.columns().contains(iterateConfig.partitionBy)) {
+                throw new IllegalArgumentException("The partitionBy column " + iterateConfig.partitionBy + " is not returned by the outer statement, its columns are " + result.columns());
+            }
+            String innerStatement = prepareInnerStatement(cypherAction, iterateConfig.iterateList, result.columns(), "_batch");
+            if (checkpoint != null && checkpoint.getOffset() > 0) {
+                log.info("resuming iteration `%s` from checkpoint %s at row %d", cypherIterate, iterateConfig.checkpoint, checkpoint.getOffset());
+                checkpoint.skip(result);
+            }
             log.info("starting batching from `%s` operation using iteration `%s` in separate thread", cypherIterate,cypherAction);
-            return iterateAndExecuteBatchedInSeparateThread((int)batchSize, parallel, iterateList, retries, result, (p) -> db.execute(innerStatement, merge(params, p)).close());
+            PreparedCypher inner = new PreparedCypher(db, innerStatement).prepare(log);
+            return iterateAndExecuteBatchedInSeparateThread(iterateConfig, checkpoint, inner, result, (p) -> inner.execute(params, p));
         }
     }
 
-    public long retry(Consumer<Map<String, Object>> executor, Map<String, Object> params, long retry, long maxRetries) {
-        try {
-            executor.accept(merge(params, singletonMap("_retry", retry)));
-            return retry;
-        } catch (Exception e) {
-            if (retry >= maxRetries) throw e;
-            log.warn("Retrying operation "+retry+" of "+maxRetries);
-            Util.sleep(100);
-            return retry(executor, params, retry + 1, maxRetries);
-        }
+    /**
+     * exponential backoff with jitter, between half and the full backoffMillis * 2^retry, so that transactions which
+     * deadlocked each other don't retry at the same time again
+     */
+    static long backoff(long retry, long backoffMillis) {
+        long max = (long) Math.min(MAX_RETRY_BACKOFF_MILLIS, Math.max(0, backoffMillis) * Math.pow(2, retry));
+        return max / 2 + ThreadLocalRandom.current().nextLong(max / 2 + 1);
     }
 
 
@@ -295,82 +306,156 @@ public class Periodic {
 
         log.info("starting batched operation using iteration `%s` in separate thread", cypherIterate);
         try (Result result = db.execute(cypherIterate)) {
-            return iterateAndExecuteBatchedInSeparateThread((int)batchSize, false, false, 0, result, p -> db.execute(cypherAction, p).close());
+            PreparedCypher action = new PreparedCypher(db, cypherAction).prepare(log);
+            return iterateAndExecuteBatchedInSeparateThread(IterateConfig.sequential((int) batchSize), null, action, result, p -> action.execute(p));
         }
     }
 
-    private Stream<BatchAndTotalResult> iterateAndExecuteBatchedInSeparateThread(int batchsize, boolean parallel, boolean iterateList, long retries,
+    /**
+     * the calling thread reads the batches from the iterator, at most queueCapacity of them are waiting for the
+     * concurrency workers, which execute each batch in its own transaction, the batchSizer determines the size of each batch.
+     * While running, the job is listed with its progress by apoc.periodic.list and can be stopped by apoc.periodic.cancel,
+     * the optional checkpoint stores the progress to resume from. The consumer executes the statement with the parameters.
+     */
+    private Stream<BatchAndTotalResult> iterateAndExecuteBatchedInSeparateThread(IterateConfig config, Checkpoint checkpoint, PreparedCypher statement,
                                                                                  Iterator<Map<String,Object>> iterator, Consumer<Map<String,Object>> consumer) {
-        ExecutorService pool = parallel ? Pools.DEFAULT : Pools.SINGLE;
-        List<Future<Long>> futures = new ArrayList<>(1000);
-        long batches = 0;
+        JobInfo job = new JobInfo(config.jobName);
+        CompletableFuture<Void> running = register(job);
+        ExecutorService pool = config.parallel ? Pools.IMPORT : Pools.SINGLE;
+        BatchSizer batchSizer = config.batchSizer;
+        BatchPipeline pipeline = new BatchPipeline(db, pool, config.concurrency, config.queueCapacity,
+                config.isPartitioned() ? config.concurrency : 0, batchSizer).withCheckpoint(checkpoint)
+                .withRetries(config.retries, config.retryBackoffMillis);
+        AtomicLong batches = new AtomicLong();
         long start = System.nanoTime();
         AtomicLong count = new AtomicLong();
         AtomicInteger failedOps = new AtomicInteger();
-        AtomicLong retried = new AtomicLong();
         Map<String,Long> operationErrors = new ConcurrentHashMap<>();
-        AtomicInteger failedBatches = new AtomicInteger();
-        Map<String,Long> batchErrors = new HashMap<>();
-        long successes = 0;
-        do {
-            if (log.isDebugEnabled()) log.debug("execute in batch no " + batches + " batch size " + batchsize);
-            List<Map<String,Object>> batch = Util.take(iterator, batchsize);
+        job.withProgress(() -> Util.map("batches", batches.get(), "total", count.get(),
+                "failedOperations", failedOps.get(), "failedBatches", pipeline.getFailedBatches(), "retries", pipeline.getRetries(),
+                "elapsedMillis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                "checkpointOffset", checkpoint == null ? null : checkpoint.getOffset()));
+        // a failing row fails the whole batch while it can be retried, the pipeline retries it in a new transaction
+        Function<List<Map<String,Object>>, BatchPipeline.Batch> toTask = batch -> {
             long currentBatchSize = batch.size();
-            Callable<Long> task;
-            if (iterateList) {
-                task = () -> {
-                    long c = count.addAndGet(currentBatchSize);
-                    List<Map<String,Object>> batchLocal = batch;
+            // the rows are counted by the first attempt
+            long[] counted = {-1};
+            if (config.iterateList) {
+                return retry -> {
+                    if (counted[0] == -1) counted[0] = count.addAndGet(currentBatchSize);
                     try {
-                        Map<String, Object> params = Util.map("_count", c, "_batch", batchLocal);
-                        retried.addAndGet(retry(consumer,params,0,retries));
+                        consumer.accept(Util.map("_count", counted[0], "_batch", batch, "_retry", retry));
                     } catch (Exception e) {
-                        failedOps.addAndGet(batchsize);
+                        if (retry < config.retries) throw e;
+                        failedOps.addAndGet(currentBatchSize);
                         recordError(operationErrors, e);
                     }
                     return currentBatchSize;
                 };
-            } else {
-                task = () -> batch.stream().map(
-                        p -> {
-                            long c = count.incrementAndGet();
-                            List<Map<String,Object>> batchLocal = batch;
-                            try {
-                                Map<String, Object> params = merge(p, Util.map("_count", c, "_batch", batchLocal));
-                                retried.addAndGet(retry(consumer,params,0,retries));
-                            } catch (Exception e) {
-                                failedOps.incrementAndGet();
-                                recordError(operationErrors, e);
-                            }
-                            return 1;
-                        }).mapToLong(l -> l).sum();
             }
-            futures.add(Util.inTxFuture(pool, db, task));
-            batches++;
-            if (futures.size() > 50) {
-                while (futures.stream().filter(Future::isDone).count()==0) { // none done yet, block for a bit
-                    LockSupport.parkNanos(1000);
-                }
-                Iterator<Future<Long>> it = futures.iterator();
-                while (it.hasNext()) {
-                    Future<Long> future = it.next();
-                    if (future.isDone()) {
-                        successes += Util.getFuture(future, batchErrors, failedBatches, 0L);
-                        it.remove();
+            return retry -> {
+                if (counted[0] == -1) counted[0] = count.getAndAdd(currentBatchSize);
+                long c = counted[0];
+                for (Map<String, Object> p : batch) {
+                    try {
+                        consumer.accept(merge(p, Util.map("_count", ++c, "_batch", batch, "_retry", retry)));
+                    } catch (Exception e) {
+                        if (retry < config.retries) throw e;
+                        failedOps.incrementAndGet();
+                        recordError(operationErrors, e);
                     }
                 }
+                return currentBatchSize;
+            };
+        };
+        long successes;
+        boolean exhausted = false;
+        try {
+            if (config.isPartitioned()) {
+                submitPartitioned(pipeline, config.partitionBy, batchSizer, iterator, toTask, batches, running);
+            } else {
+                do {
+                    int batchsize = batchSizer.next();
+                    if (log.isDebugEnabled()) log.debug("execute in batch no " + batches + " batch size " + batchsize);
+                    List<Map<String,Object>> batch = Util.take(iterator, batchsize);
+                    if (checkpoint != null) checkpoint.submitted(batch);
+                    pipeline.submit(toTask.apply(batch));
+                    batches.incrementAndGet();
+                } while (iterator.hasNext() && !running.isCancelled() && (checkpoint == null || !checkpoint.isFailed()));
             }
-        } while (iterator.hasNext());
+            exhausted = !running.isCancelled() && !iterator.hasNext();
+        } finally {
+            successes = pipeline.finish();
+            running.complete(null);
+            if (checkpoint != null) {
+                if (exhausted && !checkpoint.isFailed()) checkpoint.clear(); else checkpoint.save();
+            }
+        }
+        if (running.isCancelled()) log.info("iteration %s was cancelled after %d batches", config.jobName, batches.get());
+        else if (!exhausted) log.info("iteration %s stopped after %d batches at the failed batch of checkpoint %s", config.jobName, batches.get(), config.checkpoint);
 
-        successes += futures.stream().mapToLong(f -> Util.getFuture(f, batchErrors, failedBatches, 0L)).sum();
-        Util.logErrors("Error during iterate.commit:", batchErrors, log);
+        Util.logErrors("Error during iterate.commit:", pipeline.getBatchErrors(), log);
         Util.logErrors("Error during iterate.execute:", operationErrors, log);
+        Map<String, Object> pipelineStats = merge(pipeline.getStatistics(), Util.map("batchSize", batchSizer.getStatistics(), "statement", statement.getStatistics()));
+        log.info("iterate pipeline: %s", pipelineStats);
         long timeTaken = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start);
         BatchAndTotalResult result =
-                new BatchAndTotalResult(batches, count.get(), timeTaken, successes, failedOps.get(), failedBatches.get(), retried.get(), operationErrors, batchErrors);
+                new BatchAndTotalResult(batches.get(), count.get(), timeTaken, successes, failedOps.get(), pipeline.getFailedBatches(), pipeline.getRetries(), operationErrors, pipeline.getBatchErrors())
+                        .withPipeline(pipelineStats);
+        if (checkpoint != null) result.checkpoint = merge(checkpoint.getState(), singletonMap("completed", exhausted && !checkpoint.isFailed()));
         return Stream.of(result);
     }
 
+    // lists the running iteration, a finished job of the same name is replaced
+    private CompletableFuture<Void> register(JobInfo job) {
+        CompletableFuture<Void> running = new CompletableFuture<>();
+        Future previous = list.putIfAbsent(job, running);
+        if (previous != null) {
+            if (!previous.isDone()) throw new IllegalStateException("Job " + job.name + " is already running");
+            list.remove(job);
+            list.put(job, running);
+        }
+        return running;
+    }
+
+    /**
+     * collects the rows into one batch per partition, rows with the same value in the partitionBy column always go
+     * into the same partition, whose batches are never executed concurrently
+     */
+    private void submitPartitioned(BatchPipeline pipeline, String partitionBy, BatchSizer batchSizer, Iterator<Map<String,Object>> iterator,
+                                   Function<List<Map<String,Object>>, BatchPipeline.Batch> toTask, AtomicLong batches, Future running) {
+        int partitionCount = pipeline.getPartitionCount();
+        List<List<Map<String,Object>>> buffers = new ArrayList<>(partitionCount);
+        for (int i = 0; i < partitionCount; i++) buffers.add(new ArrayList<>());
+        while (iterator.hasNext() && !running.isCancelled()) {
+            Map<String, Object> row = iterator.next();
+            int partition = partition(row.get(partitionBy), partitionCount);
+            List<Map<String,Object>> buffer = buffers.get(partition);
+            buffer.add(row);
+            if (buffer.size() >= batchSizer.next()) {
+                pipeline.submit(toTask.apply(buffer), partition);
+                buffers.set(partition, new ArrayList<>());
+                batches.incrementAndGet();
+            }
+        }
+        for (int partition = 0; partition < partitionCount; partition++) {
+            if (buffers.get(partition).isEmpty()) continue;
+            pipeline.submit(toTask.apply(buffers.get(partition)), partition);
+            batches.incrementAndGet();
+        }
+    }
+
+    static int partition(Object key, int partitionCount) {
+        long hash;
+        if (key instanceof Node) hash = ((Node) key).getId();
+        else if (key instanceof Relationship) hash = ((Relationship) key).getId();
+        else if (key instanceof Number && ((Number) key).doubleValue() == ((Number) key).longValue()) hash = ((Number) key).longValue();
+        else hash = Objects.hashCode(key);
+        // spread consecutive ids, e.g. of nodes created together, over the partitions
+        hash *= 0x9E3779B97F4A7C15L;
+        return (int) Math.floorMod(hash ^ (hash >>> 32), (long) partitionCount);
+    }
+
     public static class BatchAndTotalResult {
         public final long batches;
         public final long total;
@@ -382,6 +467,8 @@ public class Periodic {
         public final Map<String,Long> errorMessages;
         public final Map<String,Object> batch;
         public final Map<String,Object> operations;
+        public Map<String,Object> pipeline = Collections.emptyMap();
+        public Map<String,Object> checkpoint = Collections.emptyMap();
 
         public BatchAndTotalResult(long batches, long total, long timeTaken, long committedOperations, long failedOperations, long failedBatches,long retries, Map<String, Long> operationErrors, Map<String, Long> batchErrors) {
             this.batches = batches;
@@ -396,6 +483,11 @@ public class Periodic {
             this.operations = Util.map("total",total,"failed",failedOperations,"committed", committedOperations,"errors",operationErrors);
         }
 
+        BatchAndTotalResult withPipeline(Map<String, Object> pipeline) {
+            this.pipeline = pipeline;
+            return this;
+        }
+
         public LoopingBatchAndTotalResult inLoop(Object loop) {
             return new LoopingBatchAndTotalResult(loop, batches, total);
         }
@@ -432,6 +524,8 @@ public class Periodic {
         public long rate;
         public boolean done;
         public boolean cancelled;
+        public Map<String,Object> progress = Collections.emptyMap();
+        private volatile Supplier<Map<String,Object>> progressSupplier;
 
         public JobInfo(String name) {
             this.name = name;
@@ -446,6 +540,12 @@ public class Periodic {
         public JobInfo update(Future future) {
             this.done = future.isDone();
             this.cancelled = future.isCancelled();
+            if (progressSupplier != null) this.progress = progressSupplier.get();
+            return this;
+        }
+
+        JobInfo withProgress(Supplier<Map<String,Object>> progressSupplier) {
+            this.progressSupplier = progressSupplier;
             return this;
         }
 
@@ -0,0 +1,13 @@
+package apoc.result;
+
+import org.neo4j.graphdb.Node;
+
+public class NodePartition {
+    public final Node node;
+    public final long partition;
+
+    public NodePartition(Node node, long partition) {
+        this.node = node;
+        this.partition = partition;
+    }
+}
@@ -1,5 +1,6 @@
 package apoc.search;
 
+import apoc.Pools;
 import org.neo4j.procedure.Description;
 import apoc.result.NodeResult;
 import apoc.util.Util;
@@ -13,6 +14,7 @@ import org.neo4j.procedure.Name;
 import org.neo4j.procedure.Procedure;
 
 import java.util.*;
+import java.util.concurrent.RecursiveTask;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -38,7 +40,7 @@ public class ParallelNodeSearch {
     @Procedure("apoc.search.nodeAllReduced")
     @Description("Do a parallel search over multiple indexes returning a reduced representation of the nodes found: node id, labels and the searched property. apoc.search.nodeShortAll( map of label and properties which will be searched upon, operator: EXACT / CONTAINS / STARTS WITH | ENDS WITH / = / <> / < / > ..., value ). All 'hits' are returned.")
     public Stream<NodeReducedResult> multiSearchAll(@Name("LabelPropertyMap") final Object labelProperties, @Name("operator") final String operator, @Name("value") final Object value) throws Exception {
-        return createWorkersFromValidInput(labelProperties, operator, value).flatMap(QueryWorker::queryForData);
+        return search(createWorkersFromValidInput(labelProperties, operator, value), QueryWorker::queryForData);
     }
 
 
@@ -53,8 +55,7 @@ public class ParallelNodeSearch {
     @Procedure("apoc.search.nodeReduced")
     @Description("Do a parallel search over multiple indexes returning a reduced representation of the nodes found: node id, labels and the searched properties. apoc.search.nodeReduced( map of label and properties which will be searched upon, operator: EXACT | CONTAINS | STARTS WITH | ENDS WITH, searchValue ). Multiple search results for the same node are merged into one record.")
     public Stream<NodeReducedResult> multiSearch(@Name("LabelPropertyMap") final Object labelProperties, @Name("operator") final String operator, @Name("value") final String value) throws Exception {
-        return createWorkersFromValidInput(labelProperties, operator, value)
-                    .flatMap(QueryWorker::queryForData)
+        return search(createWorkersFromValidInput(labelProperties, operator, value), QueryWorker::queryForData)
                     .collect(groupingBy(res -> res.id,Collectors.reducing(this::merge)))
                     .values().stream().filter(Optional::isPresent).map(Optional::get);
     }
@@ -62,8 +63,7 @@ public class ParallelNodeSearch {
     @Procedure("apoc.search.multiSearchReduced")
     @Description("Do a parallel search over multiple indexes returning a reduced representation of the nodes found: node id, labels and the searched properties. apoc.search.multiSearchReduced( map of label and properties which will be searched upon, operator: EXACT | CONTAINS | STARTS WITH | ENDS WITH, searchValue ). Multiple search results for the same node are merged into one record.")
     public Stream<NodeReducedResult> multiSearchOld(@Name("LabelPropertyMap") final Object labelProperties, @Name("operator") final String operator, @Name("value") final String value) throws Exception {
-            return createWorkersFromValidInput(labelProperties, operator, value)
-                    .flatMap(QueryWorker::queryForData)
+            return search(createWorkersFromValidInput(labelProperties, operator, value), QueryWorker::queryForData)
                     .collect(groupingBy(res -> res.id))
                     .values().stream().map( list -> list.stream().reduce( this::merge ))
                     .filter(Optional::isPresent).map(Optional::get);
@@ -72,15 +72,14 @@ public class ParallelNodeSearch {
     @Procedure("apoc.search.nodeAll")
     @Description("Do a parallel search over multiple indexes returning nodes. usage apoc.search.nodeAll( map of label and properties which will be searched upon, operator: EXACT | CONTAINS | STARTS WITH | ENDS WITH, searchValue ) returns all the Nodes found in the different searches.")
     public Stream<NodeResult> multiSearchNodeAll(@Name("LabelPropertyMap") final Object labelProperties, @Name("operator") final String operator, @Name("value") final String value) throws Exception {
-        return createWorkersFromValidInput(labelProperties, operator, value).flatMap(QueryWorker::queryForNode);
+        return search(createWorkersFromValidInput(labelProperties, operator, value), QueryWorker::queryForNode);
     }
 
 
     @Procedure("apoc.search.node")
     @Description("Do a parallel search over multiple indexes returning nodes. usage apoc.search.node( map of label and properties which will be searched upon, operator: EXACT | CONTAINS | STARTS WITH | ENDS WITH, searchValue ) returns all the DISTINCT Nodes found in the different searches.")
     public Stream<NodeResult> multiSearchNode(@Name("LabelPropertyMap") final Object labelProperties, @Name("operator") final String operator, @Name("value") final String value) throws Exception {
-        return createWorkersFromValidInput(labelProperties, operator, value)
-                .flatMap(QueryWorker::queryForNode)
+        return search(createWorkersFromValidInput(labelProperties, operator, value), QueryWorker::queryForNode)
                 .distinct();
     }
 
@@ -97,7 +96,7 @@ public class ParallelNodeSearch {
         }
         Map<String, Object> labelProperties = labelPropertiesInput instanceof Map ? (Map<String, Object>) labelPropertiesInput : Util.readMap(labelPropertiesInput.toString());
 
-        return labelProperties.entrySet().parallelStream().flatMap(e -> {
+        return labelProperties.entrySet().stream().flatMap(e -> {
             String label = e.getKey();
             Object properties = e.getValue();
             if (properties instanceof String) {
@@ -109,6 +108,42 @@ public class ParallelNodeSearch {
         });
     }
 
+    /**
+     * runs the searches on the work stealing pool instead of the common pool, which all parallel streams of the JVM share
+     */
+    private static <T> Stream<T> search(Stream<QueryWorker> workers, Function<QueryWorker, Stream<T>> search) {
+        List<QueryWorker> list = workers.collect(Collectors.toList());
+        if (list.isEmpty()) return Stream.empty();
+        return Pools.WORK_STEALING.invoke(new SearchTask<>(list, search)).stream();
+    }
+
+    /**
+     * Splits the searches in halves until each task runs a single one, so that an idle thread takes over the pending
+     * searches of a thread that is busy with a large label.
+     */
+    private static class SearchTask<T> extends RecursiveTask<List<T>> {
+        private final List<QueryWorker> workers;
+        private final Function<QueryWorker, Stream<T>> search;
+
+        SearchTask(List<QueryWorker> workers, Function<QueryWorker, Stream<T>> search) {
+            this.workers = workers;
+            this.search = search;
+        }
+
+        @Override
+        protected List<T> compute() {
+            if (workers.size() == 1) {
+                return search.apply(workers.get(0)).collect(Collectors.toList());
+            }
+            int middle = workers.size() / 2;
+            SearchTask<T> second = new SearchTask<>(workers.subList(middle, workers.size()), search);
+            second.fork();
+            List<T> result = new ArrayList<>(new SearchTask<>(workers.subList(0, middle), search).compute());
+            result.addAll(second.join());
+            return result;
+        }
+    }
+
     public static class QueryWorker {
         private GraphDatabaseAPI db;
         private String label, prop, operator;
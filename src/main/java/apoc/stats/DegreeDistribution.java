@@ -98,7 +98,7 @@ public class DegreeDistribution {
             List<Future> futures = new ArrayList<>();
             do {
                 long[] batch = Util.takeIds(it, 10000);
-                futures.add(Util.inTxFuture(Pools.DEFAULT, db, (stmt, ro) -> computeDegree(ro, stats, batch)));
+                futures.add(Util.inTxFuture(Pools.ALGO, db, (stmt, ro) -> computeDegree(ro, stats, batch)));
                 Util.removeFinished(futures);
             } while (it.hasNext());
             Util.waitForFutures(futures);
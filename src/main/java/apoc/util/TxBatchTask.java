@@ -0,0 +1,52 @@
+package apoc.util;
+
+import apoc.Pools;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Executes an action for each item of a batch in one transaction on the work stealing pool.
+ * As long as no other batches wait for a thread, the batch is split in halves, which idle threads steal, so that a few
+ * expensive items, e.g. nodes with a high degree, don't keep a single thread busy while the others have run out of work.
+ * The transaction is only opened once the batch isn't split any further.
+ */
+public class TxBatchTask<T> extends RecursiveAction {
+    public static final int MIN_SPLIT_SIZE = 64;
+    // tasks forked by this thread and not yet stolen, beyond this there is enough work for the idle threads
+    private static final int MAX_SURPLUS_TASKS = 2;
+
+    private final GraphDatabaseService db;
+    private final List<T> items;
+    private final Consumer<T> action;
+
+    public TxBatchTask(GraphDatabaseService db, List<T> items, Consumer<T> action) {
+        this.db = db;
+        this.items = items;
+        this.action = action;
+    }
+
+    public static <T> ForkJoinTask<Void> submit(GraphDatabaseService db, List<T> items, Consumer<T> action) {
+        return Pools.WORK_STEALING.submit(new TxBatchTask<>(db, items, action));
+    }
+
+    @Override
+    protected void compute() {
+        int size = items.size();
+        if (size > MIN_SPLIT_SIZE && getPool().getQueuedSubmissionCount() == 0 && getSurplusQueuedTaskCount() < MAX_SURPLUS_TASKS) {
+            int middle = size / 2;
+            invokeAll(new TxBatchTask<>(db, items.subList(0, middle), action), new TxBatchTask<>(db, items.subList(middle, size), action));
+            return;
+        }
+        try (Transaction tx = db.beginTx()) {
+            for (T item : items) {
+                action.accept(item);
+            }
+            tx.success();
+        }
+    }
+}
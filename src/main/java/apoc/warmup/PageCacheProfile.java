@@ -0,0 +1,69 @@
+package apoc.warmup;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The pages of each store that were in the page cache, as a compressed file with a bitmap per store.
+ * The page size of each store file is stored with it, a profile is only restored into stores with the same page size.
+ */
+class PageCacheProfile {
+    private static final int MAGIC = 0x41504350; // APCP
+    private static final int VERSION = 1;
+
+    static class Entry {
+        final String store;
+        final int filePageSize;
+        final BitSet pages;
+
+        Entry(String store, int filePageSize, BitSet pages) {
+            this.store = store;
+            this.filePageSize = filePageSize;
+            this.pages = pages;
+        }
+    }
+
+    /**
+     * writes to a temporary file first, so that a failure doesn't destroy the previous profile
+     */
+    static void write(File file, List<Entry> entries) throws IOException {
+        File tmp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tmp))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeUTF(entry.store);
+                out.writeInt(entry.filePageSize);
+                byte[] bitmap = entry.pages.toByteArray();
+                out.writeInt(bitmap.length);
+                out.write(bitmap);
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static List<Entry> read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a page cache profile: " + file);
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported version " + version + " of the page cache profile " + file);
+            int count = in.readInt();
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String store = in.readUTF();
+                int filePageSize = in.readInt();
+                byte[] bitmap = new byte[in.readInt()];
+                in.readFully(bitmap);
+                entries.add(new Entry(store, filePageSize, BitSet.valueOf(bitmap)));
+            }
+            return entries;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package apoc.warmup;
+
+import apoc.Pools;
+import org.neo4j.io.pagecache.PageCache;
+import org.neo4j.io.pagecache.PageCursor;
+import org.neo4j.io.pagecache.PagedFile;
+import org.neo4j.kernel.impl.store.CommonAbstractStore;
+import org.neo4j.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Loads the pages of store files into the page cache by pinning each page with a read cursor, the record contents are
+ * not read. The pages of a file are split into ranges, which are loaded in parallel, ranges are whole multiples of
+ * the page size of the file as the store mapped it, i.e. the page cache page size rounded down to whole records.
+ */
+class StoreWarmup {
+    // at least this many pages per range, so that the tasks are not dominated by pinning the cursor
+    static final int MIN_PAGES_PER_RANGE = 64;
+    // ranges per thread, so that the threads that are done early take over the remaining ranges
+    private static final int RANGES_PER_THREAD = 4;
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+
+    private final PageCache pageCache;
+    private final int concurrency;
+    private final Log log;
+    private final BooleanSupplier terminated;
+
+    StoreWarmup(PageCache pageCache, int concurrency, Log log, BooleanSupplier terminated) {
+        this.pageCache = pageCache;
+        this.concurrency = Math.max(1, concurrency);
+        this.log = log;
+        this.terminated = terminated;
+    }
+
+    int pageSize() {
+        return pageCache.pageSize();
+    }
+
+    static int filePageSize(CommonAbstractStore<?, ?> store) {
+        return store.getRecordsPerPage() * store.getRecordSize();
+    }
+
+    /**
+     * loads the pages up to the one of the highest record id in use
+     */
+    Result warm(String name, CommonAbstractStore<?, ?> store) {
+        long highestId = store.getHighestPossibleIdInUse();
+        if (highestId < 0) return new Result(name, store.getStorageFileName(), filePageSize(store));
+        return warm(name, store.getStorageFileName(), filePageSize(store), highestId / store.getRecordsPerPage());
+    }
+
+    /**
+     * loads the pages up to lastPage, -1 for all pages of the file
+     */
+    Result warm(String name, File file, int filePageSize, long lastPage) {
+        long start = System.nanoTime();
+        Result result = new Result(name, file, filePageSize);
+        try (PagedFile pagedFile = pageCache.map(file, filePageSize)) {
+            long lastPageId = pagedFile.getLastPageId();
+            result.pages = 1 + (lastPage < 0 ? lastPageId : Math.min(lastPage, lastPageId));
+            long pagesPerRange = Math.max(MIN_PAGES_PER_RANGE, result.pages / (concurrency * RANGES_PER_THREAD) + 1);
+            List<Future<Long>> futures = new ArrayList<>();
+            for (long first = 0; first < result.pages; first += pagesPerRange) {
+                long from = first, to = Math.min(result.pages, first + pagesPerRange);
+                futures.add(Pools.WARMUP.submit(() -> loadPages(pagedFile, from, to)));
+            }
+            long ranges = futures.size(), done = 0, nextReport = Math.max(1, ranges / 10);
+            for (Future<Long> future : futures) {
+                result.pagesLoaded += get(future);
+                if (++done % nextReport == 0 && done < ranges) {
+                    log.info("Warmup of %s: %d of %d pages loaded", name, done * pagesPerRange, result.pages);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Warmup of " + name + " failed: " + e.getMessage(), e);
+        }
+        result.timeMillis = NANOSECONDS.toMillis(System.nanoTime() - start);
+        log.info("Warmup of %s: %d pages loaded in %d ms", name, result.pagesLoaded, result.timeMillis);
+        return result;
+    }
+
+    /**
+     * the pages of the file that are in the page cache, without loading the others
+     */
+    BitSet resident(File file, int filePageSize) throws IOException {
+        BitSet resident = new BitSet();
+        try (PagedFile pagedFile = pageCache.map(file, filePageSize);
+             PageCursor cursor = pagedFile.io(0, PagedFile.PF_SHARED_READ_LOCK | PagedFile.PF_NO_FAULT)) {
+            long lastPageId = pagedFile.getLastPageId();
+            for (long page = 0; page <= lastPageId && page < Integer.MAX_VALUE; page++) {
+                // the cursor isn't bound to a page (id -1) if the page is not in memory
+                if (cursor.next(page) && cursor.getCurrentPageId() >= 0) {
+                    resident.set((int) page);
+                }
+            }
+        }
+        return resident;
+    }
+
+    /**
+     * loads the given pages, the pages are split into ranges with the same number of pages, each range is loaded in
+     * ascending order, so that the reads of a thread are sequential
+     */
+    Result warm(String name, File file, int filePageSize, BitSet pages) {
+        long start = System.nanoTime();
+        Result result = new Result(name, file, filePageSize);
+        result.pages = pages.cardinality();
+        try (PagedFile pagedFile = pageCache.map(file, filePageSize)) {
+            long pagesPerRange = Math.max(MIN_PAGES_PER_RANGE, result.pages / (concurrency * RANGES_PER_THREAD) + 1);
+            List<Future<Long>> futures = new ArrayList<>();
+            int first = pages.nextSetBit(0);
+            while (first >= 0) {
+                int from = first, to = first;
+                for (long count = 0; count < pagesPerRange && to >= 0; count++) {
+                    first = to;
+                    to = pages.nextSetBit(to + 1);
+                }
+                int last = first;
+                futures.add(Pools.WARMUP.submit(() -> loadPages(pagedFile, pages, from, last)));
+                first = to;
+            }
+            for (Future<Long> future : futures) {
+                result.pagesLoaded += get(future);
+            }
+        } catch (IOException e) {
+            log.warn("Warmup of " + name + " failed: " + e.getMessage(), e);
+        }
+        result.timeMillis = NANOSECONDS.toMillis(System.nanoTime() - start);
+        log.info("Warmup of %s: %d of %d pages loaded in %d ms", name, result.pagesLoaded, result.pages, result.timeMillis);
+        return result;
+    }
+
+    private long loadPages(PagedFile pagedFile, BitSet pages, int from, int last) throws IOException {
+        long loaded = 0;
+        try (PageCursor cursor = pagedFile.io(from, PagedFile.PF_SHARED_READ_LOCK)) {
+            for (int page = from; page >= 0 && page <= last; page = pages.nextSetBit(page + 1)) {
+                if (terminated.getAsBoolean()) break;
+                if (!cursor.next(page)) break;
+                loaded++;
+            }
+        }
+        return loaded;
+    }
+
+    private long get(Future<Long> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException | ExecutionException e) {
+            log.warn("Error during task execution", e);
+            return 0;
+        }
+    }
+
+    private long loadPages(PagedFile pagedFile, long from, long to) throws IOException {
+        long loaded = 0;
+        try (PageCursor cursor = pagedFile.io(from, PagedFile.PF_SHARED_READ_LOCK)) {
+            for (long page = from; page < to; page++) {
+                if (terminated.getAsBoolean()) break;
+                if (!cursor.next(page)) break;
+                loaded++;
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * reads the files into the file system cache, for the schema indexes that are not in the page cache
+     */
+    Result read(String name, File directory) {
+        long start = System.nanoTime();
+        Result result = new Result(name, directory, READ_BUFFER_SIZE);
+        if (directory.isDirectory()) {
+            try (Stream<java.nio.file.Path> paths = Files.walk(directory.toPath())) {
+                List<Future<Long>> futures = paths.filter(Files::isRegularFile)
+                        .map(path -> Pools.WARMUP.submit(() -> readFile(path)))
+                        .collect(Collectors.toList());
+                for (Future<Long> future : futures) {
+                    long bytes = get(future);
+                    if (bytes == 0) continue;
+                    result.pages += 1 + (bytes - 1) / READ_BUFFER_SIZE;
+                    result.pagesLoaded += 1 + (bytes - 1) / READ_BUFFER_SIZE;
+                }
+            } catch (IOException | UncheckedIOException e) {
+                log.warn("Warmup of " + name + " failed: " + e.getMessage(), e);
+            }
+        }
+        result.timeMillis = NANOSECONDS.toMillis(System.nanoTime() - start);
+        log.info("Warmup of %s: %d blocks read in %d ms", name, result.pagesLoaded, result.timeMillis);
+        return result;
+    }
+
+    private long readFile(java.nio.file.Path path) throws IOException {
+        long bytes = 0;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            int read;
+            while (!terminated.getAsBoolean() && (read = channel.read(buffer)) > 0) {
+                bytes += read;
+                buffer.clear();
+            }
+        }
+        return bytes;
+    }
+
+    static class Result {
+        final String name;
+        final File file;
+        final int pageSize;
+        long pages, pagesLoaded, timeMillis;
+
+        Result(String name, File file, int pageSize) {
+            this.name = name;
+            this.file = file;
+            this.pageSize = pageSize;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package apoc.warmup;
+
+import apoc.Pools;
+import apoc.util.Util;
+import org.neo4j.collection.primitive.PrimitiveIntIterator;
+import org.neo4j.collection.primitive.PrimitiveLongIterator;
+import org.neo4j.cursor.Cursor;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Result;
+import org.neo4j.kernel.api.ReadOperations;
+import org.neo4j.kernel.api.exceptions.EntityNotFoundException;
+import org.neo4j.kernel.impl.api.RelationshipVisitor;
+import org.neo4j.kernel.impl.api.store.RelationshipIterator;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.logging.Log;
+import org.neo4j.storageengine.api.NodeItem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Loads the records reachable from a set of start nodes: the node records, the relationship chains of the given types
+ * (all types for an empty array, none for null) with the records of the other nodes, and optionally the properties of both.
+ * The start nodes come from the label scan store or from an index range, they are read by the calling thread and
+ * processed in batches in parallel, each batch in its own transaction.
+ */
+class SubgraphWarmup {
+    static final int DEFAULT_BATCH_SIZE = 10_000;
+
+    private final GraphDatabaseAPI db;
+    private final Log log;
+    private final int[] relationshipTypes;
+    private final boolean nodeProperties, relationshipProperties, neighbours;
+    private final int batchSize;
+
+    SubgraphWarmup(GraphDatabaseAPI db, Log log, int[] relationshipTypes, Map<String, Object> config) {
+        this.db = db;
+        this.log = log;
+        this.relationshipTypes = relationshipTypes;
+        this.nodeProperties = Util.toBoolean(config.getOrDefault("properties", false));
+        this.relationshipProperties = Util.toBoolean(config.getOrDefault("relationshipProperties", false));
+        this.neighbours = Util.toBoolean(config.getOrDefault("neighbours", true));
+        this.batchSize = Math.max(1, Util.toLong(config.getOrDefault("batchSize", DEFAULT_BATCH_SIZE)).intValue());
+    }
+
+    static class Counts {
+        final String source;
+        final LongAdder nodes = new LongAdder(), relationships = new LongAdder(), properties = new LongAdder();
+        long timeMillis;
+
+        Counts(String source) {
+            this.source = source;
+        }
+    }
+
+    /**
+     * the nodes with the label, all nodes for null
+     */
+    Counts label(ReadOperations ops, String label) {
+        Counts counts = new Counts(label == null ? "*" : ":" + label);
+        if (label == null) return warm(counts, ops.nodesGetAll());
+        int labelId = ops.labelGetForName(label);
+        if (labelId < 0) return counts;
+        return warm(counts, ops.nodesGetForLabel(labelId));
+    }
+
+    /**
+     * the nodes with the label whose property is between from and to (inclusive), found with the schema index if there is one
+     */
+    Counts indexRange(String label, String property, Object from, Object to) {
+        Counts counts = new Counts(":" + label + "(" + property + ")");
+        String query = String.format("MATCH (n:`%s`) WHERE %s %s RETURN id(n) AS id", label,
+                from == null ? "true" : "n.`" + property + "` >= {from}",
+                to == null ? "AND exists(n.`" + property + "`)" : "AND n.`" + property + "` <= {to}");
+        try (Result result = db.execute(query, Util.map("from", from, "to", to))) {
+            Iterator<Long> ids = result.columnAs("id");
+            return warm(counts, new PrimitiveLongIterator() {
+                public boolean hasNext() {
+                    return ids.hasNext();
+                }
+
+                public long next() {
+                    return ids.next();
+                }
+            });
+        }
+    }
+
+    private Counts warm(Counts counts, PrimitiveLongIterator nodeIds) {
+        long start = System.nanoTime();
+        List<Future<Void>> futures = new ArrayList<>();
+        long[] batch = new long[batchSize];
+        int size = 0;
+        while (nodeIds.hasNext() && !Util.transactionIsTerminated(db)) {
+            batch[size++] = nodeIds.next();
+            if (size == batchSize || !nodeIds.hasNext()) {
+                long[] submitted = Arrays.copyOf(batch, size);
+                size = 0;
+                futures.add(Util.inTxFuture(Pools.WARMUP, db, (s, ops) -> warmNodes(ops, submitted, counts)));
+                futures.removeIf(Future::isDone);
+            }
+        }
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException | ExecutionException e) {
+                log.warn("Error during warmup of " + counts.source, e);
+            }
+        }
+        counts.timeMillis = NANOSECONDS.toMillis(System.nanoTime() - start);
+        log.info("Warmup of %s: %d nodes, %d relationships and %d properties loaded in %d ms", counts.source,
+                counts.nodes.sum(), counts.relationships.sum(), counts.properties.sum(), counts.timeMillis);
+        return counts;
+    }
+
+    private Void warmNodes(ReadOperations ops, long[] nodeIds, Counts counts) {
+        long nodes = 0, relationships = 0, properties = 0;
+        long[] neighbour = new long[1];
+        for (long nodeId : nodeIds) {
+            try (Cursor<NodeItem> node = ops.nodeCursorById(nodeId)) {
+                if (!node.next()) continue;
+            } catch (EntityNotFoundException e) {
+                continue; // deleted concurrently
+            }
+            nodes++;
+            RelationshipVisitor<RuntimeException> visitor = (relId, type, startNode, endNode) -> neighbour[0] = startNode == nodeId ? endNode : startNode;
+            try {
+                if (nodeProperties) properties += nodeProperties(ops, nodeId);
+                if (relationshipTypes == null) continue;
+                RelationshipIterator rels = relationshipTypes.length == 0
+                        ? ops.nodeGetRelationships(nodeId, Direction.BOTH)
+                        : ops.nodeGetRelationships(nodeId, Direction.BOTH, relationshipTypes);
+                while (rels.hasNext()) {
+                    long relId = rels.next();
+                    // loads the relationship record
+                    rels.relationshipVisit(relId, visitor);
+                    relationships++;
+                    if (neighbours) ops.nodeExists(neighbour[0]);
+                    if (relationshipProperties) properties += relationshipProperties(ops, relId);
+                }
+            } catch (EntityNotFoundException e) {
+                // deleted concurrently
+            }
+        }
+        counts.nodes.add(nodes);
+        counts.relationships.add(relationships);
+        counts.properties.add(properties);
+        return null;
+    }
+
+    // reads the values as well, so that long strings and arrays are loaded from the dynamic stores
+    private static long nodeProperties(ReadOperations ops, long nodeId) throws EntityNotFoundException {
+        long count = 0;
+        PrimitiveIntIterator keys = ops.nodeGetPropertyKeys(nodeId);
+        while (keys.hasNext()) {
+            ops.nodeGetProperty(nodeId, keys.next());
+            count++;
+        }
+        return count;
+    }
+
+    private static long relationshipProperties(ReadOperations ops, long relId) throws EntityNotFoundException {
+        long count = 0;
+        PrimitiveIntIterator keys = ops.relationshipGetPropertyKeys(relId);
+        while (keys.hasNext()) {
+            ops.relationshipGetProperty(relId, keys.next());
+            count++;
+        }
+        return count;
+    }
+}
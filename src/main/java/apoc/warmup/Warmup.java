@@ -1,15 +1,18 @@
 package apoc.warmup;
 
 import apoc.Pools;
+import apoc.export.util.FileUtils;
 import apoc.util.Util;
+import org.neo4j.io.pagecache.PageCache;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
 import org.neo4j.kernel.impl.storageengine.impl.recordstorage.RecordStorageEngine;
+import org.neo4j.kernel.impl.store.CommonAbstractStore;
 import org.neo4j.kernel.impl.store.NeoStores;
-import org.neo4j.kernel.impl.store.RecordStore;
+import org.neo4j.kernel.impl.store.NodeStore;
+import org.neo4j.kernel.impl.store.PropertyStore;
+import org.neo4j.kernel.impl.store.RelationshipStore;
 import org.neo4j.kernel.impl.store.StoreAccess;
-import org.neo4j.kernel.impl.store.format.standard.NodeRecordFormat;
-import org.neo4j.kernel.impl.store.format.standard.PropertyRecordFormat;
-import org.neo4j.kernel.impl.store.format.standard.RelationshipRecordFormat;
-import org.neo4j.kernel.impl.store.record.*;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.logging.Log;
 import org.neo4j.procedure.Context;
@@ -17,15 +20,17 @@ import org.neo4j.procedure.Description;
 import org.neo4j.procedure.Name;
 import org.neo4j.procedure.Procedure;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Iterator;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.Map;
 import java.util.stream.Stream;
 
-import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 /**
  * @author Sascha Peukert
@@ -33,7 +38,13 @@ import static java.util.concurrent.TimeUnit.NANOSECONDS;
  */
 public class Warmup {
 
-    private static final int BATCH_SIZE = 100_000;
+    // the stores of apoc.warmup.stores, in the order they are loaded for 'all'
+    static final List<String> STORES = asList("nodes", "labels", "relationships", "relationshipGroups", "properties", "strings", "arrays", "indexes");
+    // the stores in the page cache whose residency is profiled
+    static final List<String> RECORD_STORES = asList("nodes", "labels", "relationships", "relationshipGroups", "properties", "strings", "arrays");
+    static final String LABEL_SCAN_STORE = "neostore.labelscanstore.db";
+    static final String SCHEMA_INDEX_DIRECTORY = "schema/index";
+
     @Context
     public GraphDatabaseAPI db;
     @Context
@@ -42,101 +53,203 @@ public class Warmup {
     @Procedure
     @Description("apoc.warmup.run() - quickly loads all nodes and rels into memory by skipping one page at a time")
     public Stream<WarmupResult> run(@Name(value = "loadProperties", defaultValue = "false") boolean loadProperties) {
-
-        int pageSize = 1 << 13; // default page size, todo read from config
-        int nodesPerPage = pageSize / NodeRecordFormat.RECORD_SIZE;
-        int relsPerPage = pageSize / RelationshipRecordFormat.RECORD_SIZE;
-        int propsPerPage = pageSize / PropertyRecordFormat.RECORD_SIZE;
+        StoreWarmup warmup = storeWarmup(Collections.emptyMap());
+        NeoStores neoStore = neoStores();
+        NodeStore nodeStore = neoStore.getNodeStore();
+        RelationshipStore relationshipStore = neoStore.getRelationshipStore();
+        PropertyStore propertyStore = neoStore.getPropertyStore();
         long nodesTotal = Util.nodeCount(db);
         long relsTotal = Util.relCount(db);
-        long nodePages, relPages, propPages = 0;
-        long start, timeNodes, timeRels, timeProps = 0;
-
-        StoreAccess storeAccess = new StoreAccess(db.getDependencyResolver()
-                .resolveDependency(RecordStorageEngine.class).testAccessNeoStores());
-        NeoStores neoStore = storeAccess.getRawNeoStores();
-        long highestNodeId = neoStore.getNodeStore().getHighestPossibleIdInUse();
-        long highestRelationshipId = neoStore.getRelationshipStore().getHighestPossibleIdInUse();
-        long highestPropertyId = neoStore.getPropertyStore().getHighestPossibleIdInUse();
-        long propRecordsTotal = highestPropertyId + 1;
-
-        if (loadProperties) {
-            start = System.nanoTime();
-            propPages = loadRecords(propsPerPage, highestPropertyId, neoStore.getPropertyStore(), new PropertyRecord(-1));
-            timeProps = System.nanoTime() - start;
-        }
+        long propRecordsTotal = propertyStore.getHighestPossibleIdInUse() + 1;
 
-        start = System.nanoTime();
-        relPages = loadRecords(relsPerPage, highestRelationshipId, neoStore.getRelationshipStore(), new RelationshipRecord(-1));
-        timeRels = System.nanoTime() - start;
-
-        start = System.nanoTime();
-        nodePages = loadRecords(nodesPerPage, highestNodeId, neoStore.getNodeStore(), new NodeRecord(-1));
-        timeNodes = System.nanoTime() - start;
+        StoreWarmup.Result props = loadProperties ? warmup.warm("properties", propertyStore) : null;
+        StoreWarmup.Result rels = warmup.warm("relationships", relationshipStore);
+        StoreWarmup.Result nodes = warmup.warm("nodes", nodeStore);
+        long timeProps = props == null ? 0 : props.timeMillis;
 
         WarmupResult result = new WarmupResult(
-                pageSize,
-                nodesPerPage, nodesTotal, nodePages, NANOSECONDS.toSeconds(timeNodes),
-                relsPerPage, relsTotal, relPages, NANOSECONDS.toSeconds(timeRels),
-                loadProperties, propsPerPage, propRecordsTotal, propPages, NANOSECONDS.toSeconds(timeProps),
-                NANOSECONDS.toSeconds(timeNodes+timeRels+timeProps),
+                warmup.pageSize(),
+                nodeStore.getRecordsPerPage(), nodesTotal, nodes.pagesLoaded, MILLISECONDS.toSeconds(nodes.timeMillis),
+                relationshipStore.getRecordsPerPage(), relsTotal, rels.pagesLoaded, MILLISECONDS.toSeconds(rels.timeMillis),
+                loadProperties, propertyStore.getRecordsPerPage(), propRecordsTotal, props == null ? 0 : props.pagesLoaded, MILLISECONDS.toSeconds(timeProps),
+                MILLISECONDS.toSeconds(nodes.timeMillis + rels.timeMillis + timeProps),
                 Util.transactionIsTerminated(db));
         return Stream.of(result);
     }
 
-    public <R extends AbstractBaseRecord> long loadRecords(int recordsPerPage, long highestRecordId, RecordStore<R> recordStore, R record) {
-        long[] ids = new long[BATCH_SIZE];
-        long pages = 0;
-        int idx = 0;
-        List<Future<Long>> futures = new ArrayList<>(100);
-        for (long id = 0; id <= highestRecordId; id += recordsPerPage) {
-            ids[idx++] = id;
-            if (idx == BATCH_SIZE) {
-                long[] submitted = ids.clone();
-                idx = 0;
-                futures.add(Util.inTxFuture(Pools.DEFAULT, db, () -> loadRecords(submitted, record, recordStore)));
+    @Procedure
+    @Description("apoc.warmup.stores(['nodes','relationships','properties',...], {concurrency}) - loads the pages of the given stores into the page cache in parallel, 'all' for all of "
+            + "nodes, labels, relationships, relationshipGroups, properties, strings, arrays and indexes, returns a row per store as soon as it is loaded")
+    public Stream<StoreResult> stores(@Name(value = "stores", defaultValue = "[\"nodes\",\"relationships\"]") List<String> stores,
+                                      @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        List<String> selected = stores.contains("all") ? STORES : stores;
+        for (String store : selected) {
+            if (!STORES.contains(store)) {
+                throw new IllegalArgumentException("Unknown store " + store + ", the stores are " + STORES + " or all");
             }
-            pages += removeDone(futures, false);
         }
-        if (idx > 0) {
-            long[] submitted = Arrays.copyOf(ids, idx);
-            futures.add(Util.inTxFuture(Pools.DEFAULT, db, () -> loadRecords(submitted, record, recordStore)));
+        StoreWarmup warmup = storeWarmup(config == null ? Collections.emptyMap() : config);
+        NeoStores neoStore = neoStores();
+        // each store is loaded when its row is consumed, so that the rows report the progress
+        return selected.stream().map(store -> new StoreResult(warm(warmup, neoStore, store)));
+    }
+
+    @Procedure
+    @Description("apoc.warmup.subgraph(['Label'], ['TYPE'], {properties:false, relationshipProperties:false, neighbours:true, indexes:[{label, property, from, to}], batchSize:10000}) - "
+            + "loads the nodes with the labels or in the index ranges, their relationships of the types and the nodes at the other end, returns a row per label and index range as soon as it is loaded")
+    public Stream<SubgraphResult> subgraph(@Name(value = "labels", defaultValue = "[]") List<String> labels,
+                                           @Name(value = "relationshipTypes", defaultValue = "[]") List<String> relationshipTypes,
+                                           @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        Map<String, Object> conf = config == null ? Collections.emptyMap() : config;
+        List<Map<String, Object>> indexes = (List<Map<String, Object>>) conf.getOrDefault("indexes", Collections.emptyList());
+        int[] types = Util.withStatement(db, (s, ops) -> relationshipTypes.stream()
+                .mapToInt(ops::relationshipTypeGetForName).filter(type -> type >= 0).toArray());
+        // none of the types exists, so there are no relationships to load
+        SubgraphWarmup warmup = new SubgraphWarmup(db, log, types.length == 0 && !relationshipTypes.isEmpty() ? null : types, conf);
+
+        // without labels and index ranges all nodes, with only the relationships of the types
+        List<String> sources = labels.isEmpty() && indexes.isEmpty() ? Collections.singletonList(null) : labels;
+        Stream<SubgraphWarmup.Counts> byLabel = sources.stream().map(label -> Util.withStatement(db, (s, ops) -> warmup.label(ops, label)));
+        Stream<SubgraphWarmup.Counts> byIndex = indexes.stream().map(index -> warmup.indexRange((String) index.get("label"),
+                (String) index.get("property"), index.get("from"), index.get("to")));
+        return Stream.concat(byLabel, byIndex).map(SubgraphResult::new);
+    }
+
+    @Procedure
+    @Description("apoc.warmup.profile(file) - writes which pages of the stores are in the page cache to the file, for apoc.warmup.restore(file) after a restart, returns a row per store")
+    public Stream<ProfileResult> profile(@Name("file") String file) throws IOException {
+        FileUtils.checkWriteAllowed();
+        StoreWarmup warmup = storeWarmup(Collections.emptyMap());
+        NeoStores neoStore = neoStores();
+        List<PageCacheProfile.Entry> entries = new ArrayList<>(RECORD_STORES.size());
+        List<ProfileResult> results = new ArrayList<>(RECORD_STORES.size());
+        for (String name : RECORD_STORES) {
+            CommonAbstractStore<?, ?> store = recordStore(neoStore, name);
+            int filePageSize = StoreWarmup.filePageSize(store);
+            BitSet resident = warmup.resident(store.getStorageFileName(), filePageSize);
+            entries.add(new PageCacheProfile.Entry(name, filePageSize, resident));
+            long pages = (store.getHighestPossibleIdInUse() + store.getRecordsPerPage()) / store.getRecordsPerPage();
+            results.add(new ProfileResult(name, store.getStorageFileName().getPath(), filePageSize, pages, resident.cardinality()));
         }
-        pages += removeDone(futures, true);
-        return pages;
+        PageCacheProfile.write(new File(file), entries);
+        return results.stream();
     }
 
-    public <R extends AbstractBaseRecord> long loadRecords(long[] submitted, R record, RecordStore<R> recordStore) {
-        if (Util.transactionIsTerminated(db)) return 0;
-        for (long recordId : submitted) {
-            record.setId(recordId);
-            record.clear();
-            try {
-                recordStore.getRecord(recordId, record, RecordLoad.NORMAL);
-            } catch (Exception ignore) {
-                // ignore
+    @Procedure
+    @Description("apoc.warmup.restore(file, {concurrency}) - loads the pages of the stores in the profile written by apoc.warmup.profile(file) in parallel, returns a row per store as soon as it is loaded")
+    public Stream<StoreResult> restore(@Name("file") String file, @Name(value = "config", defaultValue = "{}") Map<String, Object> config) throws IOException {
+        FileUtils.checkReadAllowed(file);
+        List<PageCacheProfile.Entry> entries = PageCacheProfile.read(new File(file));
+        StoreWarmup warmup = storeWarmup(config == null ? Collections.emptyMap() : config);
+        NeoStores neoStore = neoStores();
+        return entries.stream().filter(entry -> RECORD_STORES.contains(entry.store)).map(entry -> {
+            CommonAbstractStore<?, ?> store = recordStore(neoStore, entry.store);
+            if (StoreWarmup.filePageSize(store) != entry.filePageSize) {
+                log.warn("Page size of %s changed from %d to %d, its pages are not restored", entry.store, entry.filePageSize, StoreWarmup.filePageSize(store));
+                return new StoreResult(new StoreWarmup.Result(entry.store, store.getStorageFileName(), StoreWarmup.filePageSize(store)));
             }
+            return new StoreResult(warmup.warm(entry.store, store.getStorageFileName(), entry.filePageSize, entry.pages));
+        });
+    }
+
+    private StoreWarmup.Result warm(StoreWarmup warmup, NeoStores neoStore, String store) {
+        CommonAbstractStore<?, ?> recordStore = recordStore(neoStore, store);
+        return recordStore == null ? warmIndexes(warmup) : warmup.warm(store, recordStore);
+    }
+
+    /**
+     * the store of the name, null for the indexes
+     */
+    static CommonAbstractStore<?, ?> recordStore(NeoStores neoStore, String store) {
+        switch (store) {
+            case "nodes": return neoStore.getNodeStore();
+            case "labels": return neoStore.getNodeStore().getDynamicLabelStore();
+            case "relationships": return neoStore.getRelationshipStore();
+            case "relationshipGroups": return neoStore.getRelationshipGroupStore();
+            case "properties": return neoStore.getPropertyStore();
+            case "strings": return neoStore.getPropertyStore().getStringStore();
+            case "arrays": return neoStore.getPropertyStore().getArrayStore();
+            default: return null;
         }
-        return submitted.length;
     }
 
-    public long removeDone(List<Future<Long>> futures, boolean wait) {
-        long pages = 0;
-        if (wait || futures.size() > 25) {
-            Iterator<Future<Long>> it = futures.iterator();
-            while (it.hasNext()) {
-                Future<Long> future = it.next();
-                if (wait || future.isDone()) {
-                    try {
-                        pages += future.get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        log.warn("Error during task execution", e);
-                    }
-                    it.remove();
-                }
-            }
+    /**
+     * the native label scan store is in the page cache, the lucene schema indexes are read into the file system cache
+     */
+    private StoreWarmup.Result warmIndexes(StoreWarmup warmup) {
+        File storeDir = db.getStoreDir();
+        StoreWarmup.Result result = warmup.read("indexes", new File(storeDir, SCHEMA_INDEX_DIRECTORY));
+        File labelScanStore = new File(storeDir, LABEL_SCAN_STORE);
+        if (labelScanStore.isFile()) {
+            StoreWarmup.Result labels = warmup.warm("indexes", labelScanStore, warmup.pageSize(), -1);
+            result.pages += labels.pages;
+            result.pagesLoaded += labels.pagesLoaded;
+            result.timeMillis += labels.timeMillis;
+        }
+        return result;
+    }
+
+    private StoreWarmup storeWarmup(Map<String, Object> config) {
+        int concurrency = Util.toLong(config.getOrDefault("concurrency", Pools.getNoThreadsInPool(Pools.WARMUP_POOL))).intValue();
+        // the procedure's transaction, to stop loading when it is terminated
+        KernelTransaction tx = db.getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class).getKernelTransactionBoundToThisThread(true);
+        PageCache pageCache = db.getDependencyResolver().resolveDependency(PageCache.class);
+        return new StoreWarmup(pageCache, concurrency, log, () -> tx.getReasonIfTerminated().isPresent());
+    }
+
+    private NeoStores neoStores() {
+        return new StoreAccess(db.getDependencyResolver()
+                .resolveDependency(RecordStorageEngine.class).testAccessNeoStores()).getRawNeoStores();
+    }
+
+    public static class SubgraphResult {
+        public final String source;
+        public final long nodes;
+        public final long relationships;
+        public final long properties;
+        public final long timeMillis;
+
+        SubgraphResult(SubgraphWarmup.Counts counts) {
+            this.source = counts.source;
+            this.nodes = counts.nodes.sum();
+            this.relationships = counts.relationships.sum();
+            this.properties = counts.properties.sum();
+            this.timeMillis = counts.timeMillis;
+        }
+    }
+
+    public static class ProfileResult {
+        public final String store;
+        public final String file;
+        public final long pageSize;
+        public final long pages;
+        public final long residentPages;
+
+        ProfileResult(String store, String file, long pageSize, long pages, long residentPages) {
+            this.store = store;
+            this.file = file;
+            this.pageSize = pageSize;
+            this.pages = pages;
+            this.residentPages = residentPages;
+        }
+    }
+
+    public static class StoreResult {
+        public final String store;
+        public final String file;
+        public final long pageSize;
+        public final long pages;
+        public final long pagesLoaded;
+        public final long timeMillis;
+
+        StoreResult(StoreWarmup.Result result) {
+            this.store = result.name;
+            this.file = result.file.getPath();
+            this.pageSize = result.pageSize;
+            this.pages = result.pages;
+            this.pagesLoaded = result.pagesLoaded;
+            this.timeMillis = result.timeMillis;
         }
-        return pages;
     }
 
     public static class WarmupResult {
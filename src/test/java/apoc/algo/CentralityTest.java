@@ -177,6 +177,24 @@ public class CentralityTest
     }
 
 
+    @Test
+    public void shouldStreamTopKLikeOrderByLimitWhenUsingBetweenness()
+    {
+        db.execute( RANDOM_GRAPH ).close();
+        // compare only the scores, the order of nodes with equal scores is not defined for ORDER BY
+        String nodes = "MATCH (n) WITH n LIMIT 50 WITH collect(n) AS nodes ";
+        assertResultsAreEqual( nodes + "CALL apoc.algo.betweenness([],nodes,'BOTH') YIELD score RETURN score ORDER BY score DESC LIMIT 5",
+                nodes + "CALL apoc.algo.betweenness([],nodes,'BOTH',{topK:5}) YIELD score RETURN score" );
+    }
+
+    @Test
+    public void shouldStreamTopKWhenUsingCloseness()
+    {
+        db.execute( RANDOM_GRAPH ).close();
+        assertExpectedResult( 5, "MATCH (n) WITH n LIMIT 50 WITH collect(n) AS nodes " +
+                "CALL apoc.algo.closeness([],nodes,'BOTH',{topK:5}) YIELD node, score RETURN node, score" );
+    }
+
     // ==========================================================================================
 
     @Test
@@ -349,6 +367,58 @@ public class CentralityTest
         t.close();
     }
 
+    @Test
+    public void shouldHaveExpectedBetweennessWhenSamplingAllSources()
+    {
+        db.execute( STAR_GRAPH ).close();
+        // only d, e and f have outgoing relationships, so three uniform samples are exact
+        db.execute("CALL apoc.algo.betweennessCypher({write:true, samples:3, seed:42})").close();
+        Result t =  db.execute("MATCH (n) RETURN n.name as name, n.betweenness_centrality as score ORDER BY score DESC LIMIT 1");
+        assertEquals( CentralityTest.STAR_GRAPH_EXPECTED, (double)t.next().get("score"), 0.1D );
+        t.close();
+    }
+
+    @Test
+    public void shouldApproximateBetweennessWithDegreeSampling()
+    {
+        db.execute( STAR_GRAPH ).close();
+        String query = "CALL apoc.algo.betweennessCypher({write:true, samples:50, sampling:'degree', seed:42}) YIELD nodes " +
+                "MATCH (n) RETURN n.name as name, n.betweenness_centrality as score ORDER BY score DESC LIMIT 1";
+        Map<String, Object> row = db.execute(query).next();
+        assertEquals( "f", row.get("name") );
+        assertEquals( CentralityTest.STAR_GRAPH_EXPECTED, (double) row.get("score"), 4D );
+        // the same seed gives the same sample
+        assertEquals( row, db.execute(query).next() );
+    }
+
+    @Test
+    public void shouldComputeClosenessAndHarmonicForCypher()
+    {
+        db.execute( "CREATE (a {name:'a'})-[:X]->(b {name:'b'})-[:X]->(c {name:'c'})" ).close();
+        db.execute( "CALL apoc.algo.closenessCypher({write:true})" ).close();
+        TestUtil.testResult( db, "MATCH (n) RETURN n.closeness as closeness, n.harmonic as harmonic ORDER BY n.name", ( r ) -> {
+            Map<String, Object> row = r.next();
+            assertEquals( 1 / 3D, (double) row.get( "closeness" ), 0.0001D );
+            assertEquals( 1.5D, (double) row.get( "harmonic" ), 0.0001D );
+            row = r.next();
+            assertEquals( 1D, (double) row.get( "closeness" ), 0.0001D );
+            assertEquals( 1D, (double) row.get( "harmonic" ), 0.0001D );
+            row = r.next();
+            assertEquals( 0D, (double) row.get( "closeness" ), 0.0001D );
+            assertEquals( 0D, (double) row.get( "harmonic" ), 0.0001D );
+            assertFalse( r.hasNext() );
+        } );
+    }
+
+    @Test
+    public void testSampleSize()
+    {
+        assertEquals( 0, apoc.algo.algorithms.BetweennessCentrality.sampleSize( 0, 0.01, 0.95 ) );
+        assertEquals( 100, apoc.algo.algorithms.BetweennessCentrality.sampleSize( 100, 0.01, 0.95 ) );
+        // ln(2 * 20M / 0.05) / (2 * 0.01^2)
+        assertEquals( 102_501, apoc.algo.algorithms.BetweennessCentrality.sampleSize( 20_000_000, 0.01, 0.95 ) );
+    }
+
     public String algoQuery( String algo )
     {
         return "MATCH (n) WITH n LIMIT 50 " +
@@ -1,5 +1,6 @@
 package apoc.algo;
 
+import apoc.Pools;
 import org.junit.*;
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.Result;
@@ -98,6 +99,54 @@ public class CoreGraphAlgorithmsTest {
         assertEquals(idB,rels[0]);
     }
 
+    @Test
+    public void testInitAllParallel() throws Exception {
+        CoreGraphAlgorithms algos = new CoreGraphAlgorithms(db, Pools.DEFAULT).init();
+        assertEquals(4,algos.getNodeCount());
+        assertEquals(2,algos.getRelCount());
+        int[] offsets = algos.getNodeRelOffsets();
+        assertEquals(0,offsets[idA]);
+        assertEquals(1,offsets[idB]);
+        assertEquals(2,offsets[idC]);
+        assertEquals(2,offsets[idD]);
+        int[] rels = algos.getRels();
+        assertEquals(idB,rels[0]);
+        assertEquals(idC,rels[1]);
+        CoreGraphAlgorithms.LoadStatistics stats = algos.getLoadStatistics();
+        assertEquals(4,stats.nodes);
+        assertEquals(2,stats.relationships);
+        assertEquals(1,stats.batches);
+    }
+
+    @Test
+    public void testInitLabelRelParallel() throws Exception {
+        CoreGraphAlgorithms algos = new CoreGraphAlgorithms(db, Pools.DEFAULT).init("A","X");
+        assertEquals(2,algos.getNodeCount());
+        assertEquals(1,algos.getRelCount());
+        int[] offsets = algos.getNodeRelOffsets();
+        assertEquals(0,offsets[idA]);
+        assertEquals(1,offsets[idB]);
+        int[] rels = algos.getRels();
+        assertEquals(1,rels.length);
+        assertEquals(idB,rels[0]);
+    }
+
+    @Test
+    public void pageRankParallel() throws Exception {
+        CoreGraphAlgorithms algos = new CoreGraphAlgorithms(db, Pools.DEFAULT).init();
+        float[] rank = algos.pageRank(2);
+        assertEquals(0.85f,rank[idA],0f);
+        assertEquals(0.9775f,rank[idB],0f);
+        assertEquals(0.9775f,rank[idC],0f);
+        assertEquals(0,rank[idD],0f);
+    }
+
+    @Test
+    public void testBatchSizeIsPageAligned() throws Exception {
+        assertEquals(546, CoreGraphAlgorithms.batchSize(100, 546, 8));
+        assertEquals(546 * 3, CoreGraphAlgorithms.batchSize(546 * 100, 546, 8));
+    }
+
     @Test
     public void pageRank() throws Exception {
         CoreGraphAlgorithms algos = new CoreGraphAlgorithms(stmt).init();
@@ -110,6 +159,67 @@ public class CoreGraphAlgorithmsTest {
 
     }
 
+    @Test
+    public void pageRankHilbertOrder() throws Exception {
+        CoreGraphAlgorithms algos = new CoreGraphAlgorithms(stmt).init().withHilbertOrder();
+        float[] rank = algos.pageRank(2);
+        assertEquals(0.85f,rank[idA],0f);
+        assertEquals(0.9775f,rank[idB],0f);
+        assertEquals(0.9775f,rank[idC],0f);
+        assertEquals(0,rank[idD],0f);
+    }
+
+    @Test
+    public void pageRankHilbertOrderArrays() throws Exception {
+        // 0 -> 1,2,3 ; 1 -> 2 ; 2 -> 0 ; 3 -> 2,0
+        int[] offsets = {0, 3, 4, 5};
+        int[] rels = {1, 2, 3, 2, 0, 2, 0};
+        float[] expected = new CoreGraphAlgorithms(offsets, rels).pageRank(20);
+        float[] rank = new CoreGraphAlgorithms(offsets, rels).withHilbertOrder().pageRank(20);
+        assertArrayEquals(expected, rank, 0.0001f);
+    }
+
+    @Test
+    public void pageRankTolerance() throws Exception {
+        int[] offsets = {0, 3, 4, 5};
+        int[] rels = {1, 2, 3, 2, 0, 2, 0};
+        CoreGraphAlgorithms algos = new CoreGraphAlgorithms(offsets, rels);
+        float[] expected = algos.pageRank(100);
+        float[] rank = algos.pageRank(100, 0.0001, false);
+        assertTrue(algos.getIterations() < 100);
+        assertTrue(algos.getL1Norm() < 0.0001);
+        assertArrayEquals(expected, rank, 0.001f);
+    }
+
+    @Test
+    public void pageRankDelta() throws Exception {
+        int[] offsets = {0, 3, 4, 5};
+        int[] rels = {1, 2, 3, 2, 0, 2, 0};
+        CoreGraphAlgorithms algos = new CoreGraphAlgorithms(offsets, rels);
+        float[] expected = algos.pageRank(20);
+        assertArrayEquals(expected, algos.pageRank(20, 0, true), 0.0001f);
+        assertArrayEquals(expected, algos.withHilbertOrder().pageRank(20, 0, true), 0.0001f);
+        float[] rank = algos.pageRank(100, 0.0001, true);
+        assertTrue(algos.getIterations() < 100);
+        assertArrayEquals(expected, rank, 0.001f);
+    }
+
+    @Test
+    public void testHilbertIndex() throws Exception {
+        long n = CoreGraphAlgorithms.hilbertSize(100);
+        assertEquals(128, n);
+        int[] xs = new int[1], ys = new int[1];
+        for (int x = 0; x < n; x += 7) {
+            for (int y = 0; y < n; y += 5) {
+                CoreGraphAlgorithms.hilbertCell(n, CoreGraphAlgorithms.hilbertIndex(n, x, y), xs, ys, 0);
+                assertEquals(x, xs[0]);
+                assertEquals(y, ys[0]);
+            }
+        }
+        assertEquals(0, CoreGraphAlgorithms.hilbertIndex(4, 0, 0));
+        assertEquals(15, CoreGraphAlgorithms.hilbertIndex(4, 3, 0));
+    }
+
     @Test
     public void labelPropagation() throws Exception {
         CoreGraphAlgorithms algos = new CoreGraphAlgorithms(stmt).init();
@@ -130,6 +240,17 @@ public class CoreGraphAlgorithmsTest {
         assertEquals(idD,labels[idD]);
     }
 
+    @Test
+    public void unionFindParallel() throws Exception {
+        CoreGraphAlgorithms algos = new CoreGraphAlgorithms(db, Pools.DEFAULT).init();
+        int[] labels = algos.unionFind(Pools.DEFAULT);
+        assertEquals(idA,labels[idA]);
+        assertEquals(idA,labels[idB]);
+        assertEquals(idA,labels[idC]);
+        assertEquals(idD,labels[idD]);
+        assertTrue(algos.contains(idD));
+    }
+
     @Test
     public void testLoadDegreesOutgoing() throws Exception {
         CoreGraphAlgorithms algos = new CoreGraphAlgorithms(stmt).init();
@@ -15,6 +15,7 @@ import org.neo4j.graphdb.ResourceIterator;
 import org.neo4j.graphdb.Result;
 import org.neo4j.test.TestGraphDatabaseFactory;
 
+import static apoc.util.TestUtil.testCall;
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
@@ -141,6 +142,46 @@ public class PageRankTest
         assertFalse( result.hasNext() );
     }
 
+    @Test
+    public void shouldGetPageRankStatsWithTolerance() throws IOException
+    {
+        db.execute( COMPANIES_QUERY ).close();
+        testCall(db, "CALL apoc.algo.pageRankStats({iterations:100,tolerance:0.001})", (row) -> {
+            assertEquals(true, row.get("converged"));
+            assertTrue((long) row.get("iterations") < 100);
+            assertTrue((double) row.get("l1Norm") < 0.001);
+        });
+    }
+
+    @Test
+    public void shouldGetPageRankWithCypherDelta() throws IOException
+    {
+        db.execute( COMPANIES_QUERY ).close();
+        testCall(db, "CALL apoc.algo.pageRankWithCypher({iterations:50, tolerance:0.001, delta:true, write:true})", (row) -> {
+            assertEquals(true, row.get("delta"));
+            assertEquals(true, row.get("converged"));
+        });
+        ResourceIterator<Double> it = db.execute("MATCH (n) RETURN n.name as name, n.pagerank as score ORDER BY score DESC LIMIT 1").columnAs("score");
+        assertEquals(PageRankAlgoTest.EXPECTED, it.next(), 0.1D);
+        it.close();
+    }
+
+    @Test
+    public void shouldIgnoreZeroWeightRelationshipsInDeltaPageRank() throws IOException
+    {
+        db.execute( COMPANIES_QUERY ).close();
+        testCall(db, "CALL apoc.algo.pageRankWithCypher({iterations:20, delta:true, write:true, weight:1, " +
+                "rel_cypher:'MATCH (s)-[r]->(t) RETURN id(s) as source, id(t) as target, 0 as weight'})", (row) -> {
+            assertEquals(true, row.get("delta"));
+        });
+        ResourceIterator<Double> it = db.execute("MATCH (n) RETURN n.pagerank as score").columnAs("score");
+        while (it.hasNext()) {
+            // nothing is propagated, so every node keeps the base rank
+            assertEquals(0.15D, it.next(), 0.01D);
+        }
+        it.close();
+    }
+
     @Test
     public void shouldGetPageRankWithCypherExpectedResult() throws IOException
     {
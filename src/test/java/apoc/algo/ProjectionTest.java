@@ -0,0 +1,124 @@
+package apoc.algo;
+
+import apoc.algo.pagerank.PageRankAlgoTest;
+import apoc.util.TestUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import java.util.Map;
+
+import static apoc.util.TestUtil.testCall;
+import static apoc.util.TestUtil.testResult;
+import static org.junit.Assert.*;
+
+public class ProjectionTest {
+
+    private GraphDatabaseService db;
+
+    @Before
+    public void setUp() throws Exception {
+        db = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        TestUtil.registerProcedure(db, Projection.class);
+    }
+
+    @After
+    public void tearDown() {
+        db.execute("CALL apoc.algo.graph.list() YIELD name CALL apoc.algo.graph.remove(name) YIELD nodes RETURN count(*)").close();
+        db.shutdown();
+    }
+
+    @Test
+    public void testLoadListRemove() throws Exception {
+        db.execute(PageRankTest.COMPANIES_QUERY_LABEL).close();
+        testCall(db, "CALL apoc.algo.graph.load('companies',{label:'Company',relationship:'TYPE_1',reverse:true})", (row) -> {
+            assertEquals("companies", row.get("name"));
+            assertEquals(11L, row.get("nodes"));
+            assertEquals(8L, row.get("relationships"));
+            assertEquals(true, ((Map) row.get("config")).get("reverse"));
+        });
+        testCall(db, "CALL apoc.algo.graph.list()", (row) -> assertEquals("companies", row.get("name")));
+        testCall(db, "CALL apoc.algo.graph.remove('companies')", (row) -> assertEquals(11L, row.get("nodes")));
+        TestUtil.testCallEmpty(db, "CALL apoc.algo.graph.list()", null);
+    }
+
+    @Test
+    public void testPageRank() throws Exception {
+        db.execute(PageRankTest.COMPANIES_QUERY).close();
+        db.execute("CALL apoc.algo.graph.load('companies')").close();
+        testCall(db, "CALL apoc.algo.graph.pageRank('companies',{iterations:20}) YIELD node, score " +
+                "RETURN node.name as name, score ORDER BY score DESC LIMIT 1", (row) -> {
+            assertEquals("b", row.get("name"));
+            assertEquals(PageRankAlgoTest.EXPECTED, (double) row.get("score"), 0.1D);
+        });
+    }
+
+    @Test
+    public void testPageRankTopK() throws Exception {
+        db.execute(PageRankTest.COMPANIES_QUERY).close();
+        db.execute("CALL apoc.algo.graph.load('companies')").close();
+        testResult(db, "CALL apoc.algo.graph.pageRank('companies',{iterations:20,topK:2}) YIELD node, score " +
+                "RETURN node.name as name, score", (r) -> {
+            Map<String, Object> row = r.next();
+            assertEquals("b", row.get("name"));
+            assertEquals(PageRankAlgoTest.EXPECTED, (double) row.get("score"), 0.1D);
+            assertTrue((double) r.next().get("score") <= (double) row.get("score"));
+            assertFalse(r.hasNext());
+        });
+    }
+
+    @Test
+    public void testBetweenness() throws Exception {
+        db.execute(CentralityTest.STAR_GRAPH).close();
+        db.execute("CALL apoc.algo.graph.load('star')").close();
+        testCall(db, "CALL apoc.algo.graph.betweenness('star') YIELD node, score " +
+                "RETURN node.name as name, score ORDER BY score DESC LIMIT 1", (row) -> {
+            assertEquals("f", row.get("name"));
+            assertEquals(CentralityTest.STAR_GRAPH_EXPECTED, (double) row.get("score"), 0.1D);
+        });
+    }
+
+    @Test
+    public void testCloseness() throws Exception {
+        db.execute("CREATE (a {name:'a'})-[:X]->(b {name:'b'})-[:X]->(c {name:'c'})").close();
+        db.execute("CALL apoc.algo.graph.load('line',{reverse:true})").close();
+        testResult(db, "CALL apoc.algo.graph.closeness('line',{direction:'BOTH'}) YIELD node, score " +
+                "RETURN node.name as name, score ORDER BY name", (r) -> {
+            assertEquals(1 / 3D, (double) r.next().get("score"), 0.0001D);
+            assertEquals(1 / 2D, (double) r.next().get("score"), 0.0001D);
+            assertEquals(1 / 3D, (double) r.next().get("score"), 0.0001D);
+            assertFalse(r.hasNext());
+        });
+    }
+
+    @Test
+    public void testHarmonicCloseness() throws Exception {
+        db.execute("CREATE (a {name:'a'})-[:X]->(b {name:'b'})-[:X]->(c {name:'c'})").close();
+        db.execute("CALL apoc.algo.graph.load('line')").close();
+        testResult(db, "CALL apoc.algo.graph.closeness('line',{harmonic:true}) YIELD node, score " +
+                "RETURN node.name as name, score ORDER BY name", (r) -> {
+            assertEquals(1.5D, (double) r.next().get("score"), 0.0001D);
+            assertEquals(1D, (double) r.next().get("score"), 0.0001D);
+            assertEquals(0D, (double) r.next().get("score"), 0.0001D);
+            assertFalse(r.hasNext());
+        });
+    }
+
+    @Test
+    public void testUnionFindAndLabelPropagation() throws Exception {
+        db.execute("CREATE (a {name:'a'})-[:X]->(b {name:'b'})-[:X]->(c {name:'c'}), (d {name:'d'})-[:X]->(e {name:'e'}), (f {name:'f'})").close();
+        db.execute("CALL apoc.algo.graph.load('components')").close();
+        for (String algo : new String[]{"unionFind", "labelPropagation"}) {
+            testCall(db, "CALL apoc.algo.graph." + algo + "('components') YIELD node, partition " +
+                    "WITH partition, count(*) as size ORDER BY size DESC RETURN collect(size) as sizes", (row) ->
+                    assertEquals(java.util.Arrays.asList(3L, 2L, 1L), row.get("sizes")));
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testUnknownGraph() throws Exception {
+        db.execute("CALL apoc.algo.graph.pageRank('unknown')").close();
+    }
+}
@@ -1,9 +1,13 @@
 package apoc.algo;
 
+import static apoc.util.MapUtil.map;
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -36,11 +40,12 @@ public class WeaklyConnectedComponentsTest {
 	@Before
 	public void setUp() throws Exception {
 		db = new TestGraphDatabaseFactory().newImpermanentDatabase();
-		TestUtil.registerProcedure(db, WeaklyConnectedComponents.class);
+		TestUtil.registerProcedure(db, WeaklyConnectedComponents.class, Projection.class);
 	}
 
 	@After
 	public void tearDown() {
+		db.execute("CALL apoc.algo.graph.list() YIELD name CALL apoc.algo.graph.remove(name) YIELD nodes RETURN count(*)").close();
 		db.shutdown();
 	}
 
@@ -60,6 +65,79 @@ public class WeaklyConnectedComponentsTest {
     	assertExpectedResultOfType( Long.class, "CALL apoc.algo.wcc()" + "" );
     }
     
+    @Test
+    public void shouldStreamComponentSizesLargestFirst()
+    {
+    	db.execute(CC_GRAPH).close();
+    	TestUtil.testCall( db, "CALL apoc.algo.wccSizes() YIELD size RETURN collect(size) as sizes",
+    			( row ) -> assertEquals( Arrays.asList( 8L, 3L, 2L, 1L, 1L ), row.get( "sizes" ) ) );
+    	TestUtil.testCallCount( db, "CALL apoc.algo.wccSizes({limit:2})", null, 2 );
+    }
+
+    @Test
+    public void shouldWriteComponentIds()
+    {
+    	db.execute(CC_GRAPH).close();
+    	TestUtil.testCall( db, "CALL apoc.algo.wccStats({label:'Node',relationship:'LINK',write:true,batchSize:3})", ( row ) -> {
+    		assertEquals( 15L, row.get( "nodes" ) );
+    		assertEquals( 5L, row.get( "components" ) );
+    		assertEquals( 8L, row.get( "maxSize" ) );
+    		assertEquals( "component", row.get( "property" ) );
+    	} );
+    	TestUtil.testResult( db, "MATCH (n:Node) WITH n.component as component, count(*) as size, collect(n.name) as names " +
+    			"RETURN size, names ORDER BY size DESC, names[0]", ( result ) -> {
+    		assertEquals( 8L, result.next().get( "size" ) );
+    		assertEquals( 3L, result.next().get( "size" ) );
+    		assertEquals( 2L, result.next().get( "size" ) );
+    		assertEquals( 1L, result.next().get( "size" ) );
+    		assertEquals( 1L, result.next().get( "size" ) );
+    		assertFalse( result.hasNext() );
+    	} );
+    }
+
+    @Test
+    public void shouldNotWriteForUnknownLabelOrType()
+    {
+    	db.execute(CC_GRAPH).close();
+    	TestUtil.testCall( db, "CALL apoc.algo.wccStats({label:'Missing',write:true})", ( row ) -> {
+    		assertEquals( 0L, row.get( "nodes" ) );
+    		assertEquals( 0L, row.get( "components" ) );
+    	} );
+    	TestUtil.testCall( db, "CALL apoc.algo.wccStats({relationship:'MISSING',write:true})", ( row ) -> assertEquals( 0L, row.get( "nodes" ) ) );
+    	TestUtil.testCall( db, "MATCH (n) WHERE exists(n.component) RETURN count(*) as count", ( row ) -> assertEquals( 0L, row.get( "count" ) ) );
+    }
+
+    @Test
+    public void shouldOnlyJoinNodesWithTheLabel()
+    {
+    	db.execute(CC_GRAPH).close();
+    	// without the hub O, its neighbours are not connected
+    	db.execute("MATCH (o:Node {name:'O'}) REMOVE o:Node").close();
+    	TestUtil.testCall( db, "CALL apoc.algo.wccStats({label:'Node',relationship:'LINK',write:true})", ( row ) -> {
+    		assertEquals( 14L, row.get( "nodes" ) );
+    		assertEquals( 11L, row.get( "components" ) );
+    		assertEquals( 3L, row.get( "maxSize" ) );
+    	} );
+    	TestUtil.testCall( db, "MATCH (o {name:'O'}) RETURN o.component as component", ( row ) -> assertEquals( null, row.get( "component" ) ) );
+    }
+
+    @Test
+    public void shouldJoinTheSameNodesOnTheLabelAndTheProjection()
+    {
+    	db.execute(CC_GRAPH).close();
+    	db.execute("MATCH (o:Node {name:'O'}) REMOVE o:Node").close();
+    	db.execute("CALL apoc.algo.graph.load('nodes',{label:'Node',relationship:'LINK'})").close();
+    	String query = "CALL apoc.algo.wccSizes({config}) YIELD component, size RETURN collect([component, size]) as sizes";
+    	Object[] byLabel = new Object[1];
+    	TestUtil.testCall( db, query, map( "config", map( "label", "Node", "relationship", "LINK" ) ), ( row ) -> byLabel[0] = row.get( "sizes" ) );
+    	TestUtil.testCall( db, query, map( "config", map( "graph", "nodes" ) ), ( row ) -> assertEquals( byLabel[0], row.get( "sizes" ) ) );
+    	TestUtil.testCall( db, "CALL apoc.algo.wccStats({graph:'nodes'})", ( row ) -> {
+    		assertEquals( 14L, row.get( "nodes" ) );
+    		assertEquals( 11L, row.get( "components" ) );
+    		assertEquals( 3L, row.get( "maxSize" ) );
+    	} );
+    }
+
     private void assertExpected( int expectedResultCount, String query )
     {
         TestUtil.testCallCount( db, query, null,5 );
@@ -0,0 +1,57 @@
+package apoc.algo.algorithms;
+
+import apoc.Pools;
+import org.junit.Test;
+import org.neo4j.logging.NullLog;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class ClosenessTest {
+
+    @Test
+    public void testMatchesSingleSourceBreadthFirstSearch() throws Exception {
+        // more than one word of sources, some nodes without relationships
+        int nodes = 300, degree = 3;
+        Random random = new Random(42);
+        int[] degrees = new int[nodes];
+        int[] offsets = new int[nodes];
+        int[] targets = new int[nodes * degree];
+        int relCount = 0;
+        for (int node = 0; node < nodes; node++) {
+            offsets[node] = relCount;
+            if (node % 10 == 0) continue;
+            for (int i = 0; i < degree; i++) targets[relCount++] = random.nextInt(nodes);
+            degrees[node] = degree;
+        }
+        Adjacency adjacency = new ArrayAdjacency(nodes, degrees, offsets, targets, null);
+        Closeness closeness = new Closeness(adjacency, Pools.DEFAULT, NullLog.getInstance());
+        closeness.compute();
+
+        for (int source = 0; source < nodes; source++) {
+            int[] distance = new int[nodes];
+            Arrays.fill(distance, -1);
+            distance[source] = 0;
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            queue.add(source);
+            long sum = 0;
+            double harmonic = 0;
+            while (!queue.isEmpty()) {
+                int node = queue.poll();
+                for (int i = offsets[node]; i < offsets[node] + degrees[node]; i++) {
+                    int target = targets[i];
+                    if (distance[target] != -1) continue;
+                    distance[target] = distance[node] + 1;
+                    sum += distance[target];
+                    harmonic += 1D / distance[target];
+                    queue.add(target);
+                }
+            }
+            assertEquals(sum == 0 ? 0 : 1D / sum, closeness.getResult(source), 1e-12);
+            assertEquals(harmonic, closeness.getHarmonic(source), 1e-9);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package apoc.algo.algorithms;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CompressedAdjacencyTest {
+
+    @Test
+    public void testEncodeDecodeSorted() throws Exception {
+        CompressedAdjacency adjacency = new CompressedAdjacency(5, false);
+        adjacency.add(1, new int[]{4, 2, 300_000, 2}, null, 4);
+        adjacency.add(3, new int[]{0}, null, 1);
+        assertEquals(5, adjacency.getRelCount());
+        assertEquals(0, adjacency.degree(0));
+        assertEquals(4, adjacency.degree(1));
+        assertEquals(1, adjacency.degree(3));
+        assertArrayEquals(new int[]{2, 2, 4, 300_000}, neighbours(adjacency, 1));
+        assertArrayEquals(new int[]{0}, neighbours(adjacency, 3));
+        assertArrayEquals(new int[0], neighbours(adjacency, 4));
+    }
+
+    @Test
+    public void testWeightsStayWithTargets() throws Exception {
+        CompressedAdjacency adjacency = new CompressedAdjacency(2, true);
+        adjacency.add(0, new int[]{1, 0}, new float[]{1.5f, 2.5f}, 2);
+        Adjacency.Cursor cursor = adjacency.cursor().init(0);
+        assertEquals(0, cursor.next());
+        assertEquals(2.5f, cursor.weight(), 0f);
+        assertEquals(1, cursor.next());
+        assertEquals(1.5f, cursor.weight(), 0f);
+        assertFalse(cursor.hasNext());
+    }
+
+    @Test
+    public void testSpanningPages() throws Exception {
+        int nodes = 100_000, degree = 200;
+        CompressedAdjacency adjacency = new CompressedAdjacency(nodes, false);
+        int[] targets = new int[degree];
+        long expected = 0;
+        for (int node = 0; node < nodes; node++) {
+            for (int i = 0; i < degree; i++) {
+                targets[i] = (node * 31 + i * 7919) % nodes;
+                expected += targets[i];
+            }
+            adjacency.add(node, targets, null, degree);
+        }
+        assertTrue(adjacency.getAllocatedBytes() > CompressedAdjacency.PAGE_SIZE);
+        long sum = 0;
+        Adjacency.Cursor cursor = adjacency.cursor();
+        for (int node = 0; node < nodes; node++) {
+            cursor.init(node);
+            while (cursor.hasNext()) sum += cursor.next();
+        }
+        assertEquals(expected, sum);
+    }
+
+    @Test
+    public void testReleaseWaitsForReaders() throws Exception {
+        CompressedAdjacency adjacency = new CompressedAdjacency(2, false);
+        adjacency.add(0, new int[]{1}, null, 1);
+        assertTrue(adjacency.retain());
+        // the owner releases while a reader is still decoding
+        adjacency.release();
+        assertArrayEquals(new int[]{1}, neighbours(adjacency, 0));
+        adjacency.release();
+        assertFalse(adjacency.retain());
+        try {
+            adjacency.release();
+            fail("released twice");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    private int[] neighbours(Adjacency adjacency, int node) {
+        int[] result = new int[adjacency.degree(node)];
+        Adjacency.Cursor cursor = adjacency.cursor().init(node);
+        int i = 0;
+        while (cursor.hasNext()) result[i++] = cursor.next();
+        return result;
+    }
+}
@@ -0,0 +1,64 @@
+package apoc.algo.algorithms;
+
+import apoc.Pools;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Result;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import java.util.Arrays;
+
+import static apoc.util.TestUtil.testCall;
+import static org.junit.Assert.assertEquals;
+
+public class ResultWriterTest {
+
+    private GraphDatabaseAPI db;
+
+    @Before
+    public void setUp() throws Exception {
+        db = (GraphDatabaseAPI) new TestGraphDatabaseFactory().newImpermanentDatabase();
+        db.execute("UNWIND range(0,9) AS id CREATE ({id:id})").close();
+    }
+
+    @After
+    public void tearDown() {
+        db.shutdown();
+    }
+
+    @Test
+    public void testWriteAlgorithmResultsInBatches() throws Exception {
+        // reverse mapping, to check that the writes are sorted by node-id, even node-ids are not mapped
+        AlgorithmInterface algorithm = new AlgorithmInterface() {
+            public double getResult(long node) { return node * 1.5; }
+            public long numberOfNodes() { return 10; }
+            public String getPropertyName() { return "score"; }
+            public long getMappedNode(int algoId) { return algoId % 2 == 0 ? -1 : 9 - algoId; }
+        };
+        ResultWriter.WriteStatistics stats = new ResultWriter(db, Pools.DEFAULT).withBatchSize(2).write(algorithm);
+        assertEquals(5, stats.nodes);
+        assertEquals(3, stats.batches);
+        assertEquals(2, stats.batchSize);
+        testCall(db, "MATCH (n) WHERE exists(n.score) RETURN collect(n.id) as ids, sum(n.score) as total", (row) -> {
+            assertEquals(Arrays.asList(0L, 2L, 4L, 6L, 8L), row.get("ids"));
+            assertEquals(30D, (double) row.get("total"), 0.0001D);
+        });
+    }
+
+    @Test
+    public void testWriteLongValues() throws Exception {
+        int[] values = {7, 7, 7, 3, 3, 3, 3, 0, 0, 0};
+        ResultWriter.WriteStatistics stats = new ResultWriter(db, Pools.DEFAULT).withBatchSize(4)
+                .write("component", values, node -> node != 9);
+        assertEquals(9, stats.nodes);
+        assertEquals(3, stats.batches);
+        try (Result result = db.execute("MATCH (n) RETURN n.component as component ORDER BY n.id")) {
+            for (int node = 0; node < 9; node++) {
+                assertEquals((long) values[node], result.next().get("component"));
+            }
+            assertEquals(null, result.next().get("component"));
+        }
+    }
+}
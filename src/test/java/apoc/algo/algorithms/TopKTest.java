@@ -0,0 +1,47 @@
+package apoc.algo.algorithms;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class TopKTest {
+
+    @Test
+    public void testKeepsHighestScoresInDescendingOrder() throws Exception {
+        TopK top = new TopK(3);
+        double[] scores = {0.5, 3, 1, 3, 2, 0, 2.5};
+        for (int id = 0; id < scores.length; id++) top.offer(id, scores[id]);
+        assertEquals(3, top.size());
+        // equal scores are ordered by id
+        assertEquals(Arrays.asList("1:3.0", "3:3.0", "6:2.5"), entries(top));
+    }
+
+    @Test
+    public void testFewerEntriesThanK() throws Exception {
+        TopK top = new TopK(5);
+        top.offer(7, 1);
+        top.offer(3, 2);
+        assertEquals(Arrays.asList("3:2.0", "7:1.0"), entries(top));
+        assertEquals(Collections.emptyList(), entries(new TopK(0)));
+    }
+
+    @Test
+    public void testHugeKGrowsWithTheEntries() throws Exception {
+        TopK top = new TopK(Integer.MAX_VALUE);
+        for (int id = 0; id < 5000; id++) top.offer(id, id % 100);
+        assertEquals(5000, top.size());
+        List<String> entries = entries(top);
+        assertEquals(5000, entries.size());
+        assertEquals("99:99.0", entries.get(0));
+        assertEquals("4900:0.0", entries.get(4999));
+    }
+
+    private List<String> entries(TopK top) {
+        return top.stream((id, score) -> id + ":" + score).collect(Collectors.toList());
+    }
+}
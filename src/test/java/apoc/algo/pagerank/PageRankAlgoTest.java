@@ -1,7 +1,9 @@
 package apoc.algo.pagerank;
 
 import apoc.Pools;
+import apoc.algo.CoreGraphAlgorithms;
 import apoc.algo.LabelPropagation;
+import apoc.algo.algorithms.ProjectedGraph;
 import apoc.util.TestUtil;
 import org.junit.After;
 import org.junit.Before;
@@ -16,9 +18,11 @@ import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.RelationshipType;
 import org.neo4j.graphdb.Result;
 import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.test.TestGraphDatabaseFactory;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class PageRankAlgoTest
 {
@@ -80,10 +84,13 @@ public class PageRankAlgoTest
     {
         db.execute( COMPANIES_QUERY ).close();
         try (Transaction tx = db.beginTx()) {
-            PageRank pageRank = new PageRankArrayStorageParallelSPI(db, pool);
+            PageRankArrayStorageParallelSPI pageRank = new PageRankArrayStorageParallelSPI(db, pool);
             pageRank.compute(20);
             long id = (long) getEntry("b").get("id");
             assertEquals(EXPECTED, pageRank.getResult(id), 0.1D);
+            CoreGraphAlgorithms.LoadStatistics load = pageRank.getLoadStatistics();
+            assertEquals(pageRank.getStatistics().relationships, load.relationships);
+            assertTrue(load.batches >= 1);
             tx.success();
         }
 //        for ( int i = 0; i < pageRank.numberOfNodes(); i++ )
@@ -109,6 +116,55 @@ public class PageRankAlgoTest
 //        }
     }
 
+    @Test
+    public void shouldStopPageRankArrayStorageSPIWhenConverged() throws IOException
+    {
+        db.execute( COMPANIES_QUERY ).close();
+        try (Transaction tx = db.beginTx()) {
+            PageRank pageRank = new PageRankArrayStorageParallelSPI(db, pool).withTolerance(0.001);
+            pageRank.compute(100);
+            long id = (long) getEntry("b").get("id");
+            assertEquals(EXPECTED, pageRank.getResult(id), 0.1D);
+            assertTrue(pageRank.getStatistics().converged);
+            assertTrue(pageRank.getStatistics().iterations < 100);
+            assertTrue(pageRank.getStatistics().l1Norm < 0.001);
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldGetPageRankArrayStorageSPIDelta() throws IOException
+    {
+        db.execute( COMPANIES_QUERY ).close();
+        try (Transaction tx = db.beginTx()) {
+            PageRank pageRank = new PageRankArrayStorageParallelSPI(db, pool).withDelta(true);
+            pageRank.compute(20);
+            long id = (long) getEntry("b").get("id");
+            assertEquals(EXPECTED, pageRank.getResult(id), 0.1D);
+            assertTrue(pageRank.getStatistics().delta);
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldMatchPushBasedPageRank() throws IOException
+    {
+        db.execute( COMPANIES_QUERY ).close();
+        try (Transaction tx = db.beginTx()) {
+            ProjectedGraph graph = ProjectedGraph.load((GraphDatabaseAPI) db, "companies", Collections.emptyMap());
+            PageRank pull = new PageRankArrayStorageParallelSPI(db, pool);
+            pull.compute(20);
+            PageRank push = new PageRankArrayStorageProjected(graph);
+            push.compute(20);
+            for (long id = 0; id < pull.numberOfNodes(); id++) {
+                assertEquals(push.getResult(id), pull.getResult(id), 1e-9);
+            }
+            tx.success();
+        } finally {
+            ProjectedGraph.remove("companies");
+        }
+    }
+
     private Map<String,Object> getEntry( String name )
     {
         try ( Result result = db
@@ -0,0 +1,65 @@
+package apoc.cypher;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.collection.Iterators;
+import org.neo4j.logging.NullLog;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+
+import static apoc.util.MapUtil.map;
+import static org.junit.Assert.assertEquals;
+
+public class PreparedCypherTest {
+
+    private static GraphDatabaseService db;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        db = new TestGraphDatabaseFactory().newImpermanentDatabase();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        db.shutdown();
+    }
+
+    @Test
+    public void testParameterNames() throws Exception {
+        assertEquals(new HashSet<>(Arrays.asList("_batch", "id", "a b", "x")),
+                PreparedCypher.parameterNames("UNWIND {`_batch`} AS row WITH { id } AS id, {`a b`} AS ab, $x AS x RETURN {y:1}"));
+    }
+
+    @Test
+    public void testOnlyUsedParameters() throws Exception {
+        PreparedCypher statement = new PreparedCypher(db, "RETURN {a} AS a, $b AS b");
+        Map<String, Object> params = statement.parameters(map("a", 1, "c", 3), map("b", 2, "a", 4));
+        assertEquals(map("a", 4, "b", 2), params);
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+        PreparedCypher statement = new PreparedCypher(db, "CREATE (:Prepared {id:{id}})").prepare(NullLog.getInstance());
+        try (Transaction tx = db.beginTx()) {
+            for (int id = 0; id < 10; id++) {
+                statement.execute(map("id", id, "unused", Arrays.asList(1, 2, 3)));
+            }
+            tx.success();
+        }
+        PreparedCypher count = new PreparedCypher(db, "MATCH (n:Prepared) RETURN count(*) AS count");
+        try (Transaction tx = db.beginTx(); Result result = count.result()) {
+            assertEquals(10L, Iterators.single(result.columnAs("count")));
+            tx.success();
+        }
+        Map<String, Object> stats = statement.getStatistics();
+        assertEquals(10L, stats.get("executions"));
+        assertEquals(new HashSet<>(Arrays.asList("executions", "planMillis", "executeMillis", "consumeMillis")), stats.keySet());
+    }
+}
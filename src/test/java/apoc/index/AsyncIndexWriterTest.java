@@ -0,0 +1,65 @@
+package apoc.index;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.logging.NullLog;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import java.util.Collections;
+
+import static apoc.util.TestUtil.assertEventually;
+import static org.junit.Assert.assertEquals;
+
+public class AsyncIndexWriterTest {
+
+    private GraphDatabaseAPI db;
+
+    @Before
+    public void setUp() throws Exception {
+        db = (GraphDatabaseAPI) new TestGraphDatabaseFactory().newImpermanentDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        db.shutdown();
+    }
+
+    @Test
+    public void shouldCoalesceThePendingUpdatesOfANode() throws Exception {
+        Index<Node> index;
+        Node node;
+        try (Transaction tx = db.beginTx()) {
+            index = db.index().forNodes("cities");
+            node = db.createNode();
+            tx.success();
+        }
+        IndexUpdateStatistics stats = new IndexUpdateStatistics();
+        AsyncIndexWriter writer = new AsyncIndexWriter(db, NullLog.getInstance(), stats, 2, 100, 10, 100);
+
+        // the threads are not started, so the updates stay pending
+        for (String name : new String[]{"Berlin", "Paris", "London"}) {
+            AsyncIndexWriter.Updates updates = new AsyncIndexWriter.Updates(index, node);
+            updates.remove("name");
+            updates.add("name", name);
+            writer.add(Collections.singletonList(updates));
+        }
+        assertEquals(1, writer.queueSize());
+        assertEquals(3L, stats.toMap().get("enqueued"));
+        assertEquals(2L, stats.toMap().get("coalesced"));
+
+        writer.start();
+        assertEventually("the pending updates are applied", () -> (long) stats.toMap().get("rollovers") > 0, 10_000);
+        assertEquals(1L, stats.toMap().get("applied"));
+        try (Transaction tx = db.beginTx()) {
+            assertEquals(node, index.get("name", "London").getSingle());
+            assertEquals(null, index.get("name", "Paris").getSingle());
+            assertEquals(null, index.get("name", "Berlin").getSingle());
+            tx.success();
+        }
+    }
+}
@@ -105,6 +105,90 @@ public class FreeTextSearchTest {
         assertSingle(search("people", "GeeGee"), hasProperty("name", "George Goldman"));
         assertSingle(search("people", "Jones"), hasProperty("name", "Cyrus Jones"));
     }
+
+    @Test
+    public void shouldReplaceIndexWithNewGenerationOnRebuild() throws Exception {
+        // given
+        execute("CREATE (:Person{name:'George Goldman', nick:'GeeGee'}), (:Person{name:'Cyrus Jones', age:103})");
+        execute("CALL apoc.index.addAllNodes('people', {Person:['name']})");
+
+        // when
+        execute("CALL apoc.index.addAllNodes('people', {Person:['name','nick']}, {batchSize:1, concurrency:2})");
+
+        // then
+        assertSingle(search("people", "GeeGee"), hasProperty("name", "George Goldman"));
+        TestUtil.testResult(db, "CALL apoc.index.list() YIELD name, config", result -> {
+            Map<String, Object> row = result.next();
+            assertEquals("people" + FreeTextSearch.GENERATION_SEPARATOR + "1", row.get("name"));
+            assertFalse(((Map) row.get("config")).containsKey(FreeTextSearch.POPULATING));
+            assertFalse(((Map) row.get("config")).containsKey("batchSize"));
+            assertFalse(result.hasNext());
+        });
+    }
+
+    @Test
+    public void shouldResolveRebuiltIndexByName() throws Exception {
+        // given
+        execute("CREATE (:Person{name:'George Goldman', nick:'GeeGee'}), (:Person{name:'Cyrus Jones', age:103})");
+        execute("CALL apoc.index.addAllNodes('people', {Person:['name']})");
+        execute("CALL apoc.index.addAllNodes('people', {Person:['name','nick']})");
+
+        // then
+        TestUtil.testCall(db, "CALL apoc.index.nodes('people', 'Person.nick:geegee') YIELD node RETURN node.name AS name",
+                row -> assertEquals("George Goldman", row.get("name")));
+        TestUtil.testCall(db, "CALL apoc.index.forNodes('people', null) YIELD name",
+                row -> assertEquals("people" + FreeTextSearch.GENERATION_SEPARATOR + "1", row.get("name")));
+
+        // when
+        TestUtil.testCall(db, "CALL apoc.index.remove('people') YIELD name",
+                row -> assertEquals("people" + FreeTextSearch.GENERATION_SEPARATOR + "1", row.get("name")));
+
+        // then
+        TestUtil.testCallEmpty(db, "CALL apoc.index.list()", Collections.emptyMap());
+    }
+
+    @Test
+    public void shouldStartOverWithoutResume() throws Exception {
+        // given
+        execute("UNWIND range(1,10) AS x CREATE (:Person{name:'person'+x})");
+        execute("CALL apoc.index.addAllNodes('people', {Person:['name']})");
+        try (Transaction tx = db.beginTx()) {
+            long populatedUpTo = Iterators.single(db.execute("MATCH (n:Person) RETURN max(id(n)) AS id").<Long>columnAs("id"));
+            db.index().setConfiguration(db.index().forNodes("people"), FreeTextSearch.POPULATING, String.valueOf(populatedUpTo));
+            tx.success();
+        }
+
+        // when
+        TestUtil.testCall(db, "CALL apoc.index.addAllNodes('people', {Person:['name']}, {resume:false})",
+                row -> assertEquals(10L, row.get("nodeCount")));
+
+        // then
+        assertSingle(search("people", "person1"), hasProperty("name", "person1"));
+    }
+
+    @Test
+    public void shouldContinueIncompletePopulation() throws Exception {
+        // given
+        execute("UNWIND range(1,10) AS x CREATE (:Person{name:'person'+x})");
+        execute("CALL apoc.index.addAllNodes('people', {Person:['name']})");
+        long populatedUpTo;
+        try (Transaction tx = db.beginTx()) {
+            populatedUpTo = Iterators.single(db.execute("MATCH (n:Person) RETURN max(id(n)) AS id").<Long>columnAs("id"));
+            db.index().setConfiguration(db.index().forNodes("people"), FreeTextSearch.POPULATING, String.valueOf(populatedUpTo));
+            tx.success();
+        }
+        execute("UNWIND range(11,15) AS x CREATE (:Person{name:'person'+x})");
+
+        // when
+        TestUtil.testCall(db, "CALL apoc.index.addAllNodes('people', {Person:['name']})",
+                row -> assertEquals(5L, row.get("nodeCount")));
+
+        // then
+        assertSingleNode("people", termQuery("person1"), hasProperty("name", "person1"));
+        assertSingleNode("people", termQuery("person15"), hasProperty("name", "person15"));
+        assertSingle(search("people", "person15"), hasProperty("name", "person15"));
+    }
+
     @Test
     public void shouldQueryFreeTextIndex() throws Exception {
         // given
@@ -213,6 +297,29 @@ public class FreeTextSearchTest {
         assertEquals(10000, Iterators.count(result));
     }
 
+    @Test
+    public void shouldPageThroughResults() throws Exception {
+        // given
+        execute("UNWIND range(1, 100) AS num CREATE (:Number{name:'The ' + num + 'th',number:num})");
+        execute("CALL apoc.index.addAllNodes('numbers', {Number:['name','number']})");
+
+        // when
+        List<Object> all = Iterators.asList(db.execute("CALL apoc.index.search('numbers', 'The', 25) YIELD node RETURN id(node) AS id").columnAs("id"));
+        List<Object> pages = new ArrayList<>();
+        for (int skip = 0; skip < 25; skip += 10) {
+            pages.addAll(Iterators.asList(db.execute("CALL apoc.index.search('numbers', 'The', 10, {skip}) YIELD node RETURN id(node) AS id",
+                    singletonMap("skip", skip)).columnAs("id")));
+        }
+
+        // then
+        assertEquals(25, all.size());
+        assertEquals(30, pages.size());
+        assertEquals(100, new HashSet<>(Iterators.asList(db.execute("CALL apoc.index.search('numbers', 'The', -1) YIELD node RETURN id(node) AS id").columnAs("id"))).size());
+        assertEquals(new HashSet<>(all), new HashSet<>(pages.subList(0, 25)));
+        assertEquals(30, new HashSet<>(pages).size());
+        assertEquals(0, Iterators.count(db.execute("CALL apoc.index.search('numbers', 'The', 10, 100)")));
+    }
+
     @Test
     public void shouldFindWithWildcards() throws Exception {
         // given
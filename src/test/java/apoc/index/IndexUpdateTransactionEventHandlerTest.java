@@ -1,5 +1,6 @@
 package apoc.index;
 
+import apoc.monitor.AutoIndex;
 import apoc.util.TestUtil;
 import org.junit.After;
 import org.junit.Before;
@@ -7,6 +8,9 @@ import org.junit.Test;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.test.TestGraphDatabaseFactory;
 
+import java.util.Map;
+
+import static apoc.util.MapUtil.map;
 import static apoc.util.TestUtil.*;
 import static org.junit.Assert.*;
 
@@ -70,4 +74,96 @@ public class IndexUpdateTransactionEventHandlerTest {
         testCallCount(db, "match (s:Submarine) remove s.periscope return s", null, 2);
     }
 
+    @Test
+    public void shouldUpdateIndexOnLabelChanges() {
+        // setup
+        testCallEmpty(db, "call apoc.index.addAllNodesExtended('cities',{City:['name']},{autoUpdate:true})", null);
+        testCallEmpty(db, "create (c:Place{name:'Berlin', country:'Germany'})", null);
+        testCallCount(db, "start n=node:cities('City.name:Berlin') return n", null, 0);
+
+        // when
+        testCallCount(db, "match (c:Place) set c:City return c", null, 1);
+
+        // then
+        testCallCount(db, "start n=node:cities('City.name:Berlin') return n", null, 1);
+        testCallCount(db, "start n=node:cities('City.country:Germany') return n", null, 0);
+
+        // when
+        testCallCount(db, "match (c:City) remove c:City return c", null, 1);
+
+        // then
+        testCallCount(db, "start n=node:cities('City.name:Berlin') return n", null, 0);
+    }
+
+    @Test
+    public void shouldDeleteManyIndexedNodesInOneTransaction() {
+        // setup
+        testCallEmpty(db, "call apoc.index.addAllNodesExtended('cities',{City:['name']},{autoUpdate:true})", null);
+        testCallEmpty(db, "unwind range(1,10000) as x create (:City{name:'city' + x})", null);
+        testCallCount(db, "start n=node:cities('City.name:city*') return n", null, 10000);
+
+        // when
+        TestUtil.testCall(db, "match (c:City) delete c return count(c) as count", map -> assertEquals(10000L, map.get("count")));
+
+        // then
+        testCallCount(db, "start n=node:cities('City.name:city*') return n", null, 0);
+    }
+
+    @Test
+    public void shouldIndexOnlyTheLastValueOfRepeatedUpdates() {
+        // setup
+        testCallEmpty(db, "call apoc.index.addAllNodesExtended('cities',{City:['name']},{autoUpdate:true})", null);
+        testCallEmpty(db, "create (c:City{name:'Berlin'})", null);
+
+        // when
+        testCallCount(db, "match (c:City) set c.name = 'Paris' set c.name = 'London' return c", null, 1);
+
+        // then
+        testCallCount(db, "start n=node:cities('City.name:London') return n", null, 1);
+        testCallCount(db, "start n=node:cities('City.name:Paris') return n", null, 0);
+        testCallCount(db, "start n=node:cities('City.name:Berlin') return n", null, 0);
+        testCallCount(db, "start n=node:cities('search:london') return n", null, 1);
+    }
+
+    @Test
+    public void shouldIndexOnlyTheLastValueOfRepeatedAsyncUpdates() throws Exception {
+        GraphDatabaseService asyncDb = new TestGraphDatabaseFactory().newImpermanentDatabaseBuilder()
+                .setConfig("apoc.autoIndex.enabled", "true")
+                .setConfig("apoc.autoIndex.async", "true")
+                .setConfig("apoc.autoIndex.async_threads", "2")
+                .setConfig("apoc.autoIndex.async_rollover_opscount", "10")
+                .setConfig("apoc.autoIndex.async_rollover_millis", "100")
+                .newGraphDatabase();
+        try {
+            TestUtil.registerProcedure(asyncDb, FreeTextSearch.class, AutoIndex.class);
+            testCallEmpty(asyncDb, "call apoc.index.addAllNodesExtended('cities',{City:['name']},{autoUpdate:true})", null);
+            testCallEmpty(asyncDb, "create (c:City{name:'city0'})", null);
+
+            // when: one transaction per update of the same node
+            int updates = 50;
+            for (int i = 1; i <= updates; i++) {
+                testCallEmpty(asyncDb, "match (c:City) set c.name = {name}", map("name", "city" + i));
+            }
+
+            // then: the updates of a node are applied in commit order, so the last value is visible after all others
+            assertEventually("the last update is visible", () -> countNodes(asyncDb, "City.name:city" + updates) == 1, 10_000);
+            assertEquals(0, countNodes(asyncDb, "City.name:city0"));
+            assertEquals(0, countNodes(asyncDb, "City.name:city" + (updates - 1)));
+            assertEquals(1, countNodes(asyncDb, "search:city" + updates));
+
+            Map<String, Object> stats = asyncDb.execute("CALL apoc.monitor.autoIndex()").next();
+            assertEquals(2L, stats.get("threads"));
+            assertEquals(0L, stats.get("queueSize"));
+            // the create and the updates, each one either applied or merged into the pending updates of the node
+            assertEquals(updates + 1L, stats.get("enqueued"));
+            assertEquals(updates + 1L, (long) stats.get("applied") + (long) stats.get("coalesced"));
+            assertEquals(0L, stats.get("failed"));
+        } finally {
+            asyncDb.shutdown();
+        }
+    }
+
+    private static long countNodes(GraphDatabaseService db, String query) {
+        return (long) db.execute("start n=node:cities({query}) return count(n) as count", map("query", query)).next().get("count");
+    }
 }
@@ -0,0 +1,65 @@
+package apoc.monitor;
+
+import apoc.index.FreeTextSearch;
+import apoc.util.TestUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import static apoc.util.TestUtil.assertEventually;
+import static apoc.util.TestUtil.testCall;
+import static apoc.util.TestUtil.testCallEmpty;
+import static org.junit.Assert.*;
+
+public class AutoIndexProcedureTest {
+
+    private GraphDatabaseService db;
+
+    @Before
+    public void setUp() throws Exception {
+        db = new TestGraphDatabaseFactory().newImpermanentDatabaseBuilder()
+                .setConfig("apoc.autoIndex.enabled", "true")
+                .setConfig("apoc.autoIndex.async", "true")
+                .setConfig("apoc.autoIndex.async_threads", "2")
+                .setConfig("apoc.autoIndex.async_rollover_opscount", "10")
+                .setConfig("apoc.autoIndex.async_rollover_millis", "100")
+                .newGraphDatabase();
+        TestUtil.registerProcedure(db, FreeTextSearch.class, AutoIndex.class);
+    }
+
+    @After
+    public void tearDown() {
+        db.shutdown();
+    }
+
+    @Test
+    public void testAutoIndexStatistics() throws Exception {
+        testCallEmpty(db, "CALL apoc.index.addAllNodes('cities', {City:['name']}, {autoUpdate:true})", null);
+        testCallEmpty(db, "UNWIND range(1,20) AS x CREATE (:City{name:'city' + x})", null);
+        testCallEmpty(db, "MATCH (c:City) SET c.name = c.name + ' updated'", null);
+        // the last update of each node becomes visible with the commit of the background transaction that applied it,
+        // the lag is reset right after that commit
+        assertEventually("the index updates are visible", () ->
+                db.execute("CALL apoc.index.search('cities', 'City.name:updated') YIELD node RETURN count(*) AS count")
+                        .<Long>columnAs("count").next() == 20L
+                && db.execute("CALL apoc.monitor.autoIndex() YIELD currentLagMillis RETURN currentLagMillis")
+                        .<Long>columnAs("currentLagMillis").next() == 0L, 10_000);
+
+        testCall(db, "CALL apoc.monitor.autoIndex()", (row) -> {
+            assertEquals(true, row.get("enabled"));
+            assertEquals(true, row.get("async"));
+            assertEquals(2L, row.get("threads"));
+            assertEquals(0L, row.get("queueSize"));
+            assertEquals(0L, row.get("currentLagMillis"));
+            assertEquals(40L, row.get("enqueued"));
+            assertEquals(40L, (long) row.get("applied") + (long) row.get("coalesced"));
+            assertEquals(0L, row.get("failed"));
+            assertEquals(0L, row.get("dropped"));
+            assertTrue((long) row.get("rollovers") > 0);
+            assertNotNull(row.get("lagP99Millis"));
+            assertTrue((long) row.get("lagMaxMillis") >= (long) row.get("lagP50Millis"));
+        });
+    }
+}
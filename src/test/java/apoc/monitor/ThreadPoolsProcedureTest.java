@@ -0,0 +1,54 @@
+package apoc.monitor;
+
+import apoc.Pools;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import static apoc.util.TestUtil.testResult;
+import static org.junit.Assert.*;
+
+public class ThreadPoolsProcedureTest extends MonitorTestCase {
+
+    @Override
+    Class procedureClass() {
+        return ThreadPools.class;
+    }
+
+    @Test
+    public void testPools() throws Exception {
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(Pools.ALGO.submit(() -> { }));
+        }
+        for (Future<?> future : futures) future.get();
+
+        testResult(db, "CALL apoc.monitor.pools()", (result) -> {
+            List<String> names = new ArrayList<>();
+            while (result.hasNext()) {
+                Map<String, Object> row = result.next();
+                names.add((String) row.get("name"));
+                assertTrue((long) row.get("maxThreads") >= 1);
+                if (row.get("name").equals(Pools.ALGO_POOL)) {
+                    assertEquals((long) Pools.getNoThreadsInAlgoPool(), (long) row.get("maxThreads"));
+                    assertTrue((long) row.get("submittedTasks") >= 10);
+                    assertTrue((long) row.get("completedTasks") >= 10);
+                    assertEquals(0L, (long) row.get("rejectedTasks"));
+                    assertTrue((double) row.get("maxRunMillis") >= (double) row.get("avgRunMillis"));
+                }
+                if (row.get("name").equals(Pools.WORK_STEALING_POOL)) {
+                    assertNotNull(row.get("stolenTasks"));
+                    assertNull(row.get("completedTasks"));
+                }
+                if (row.get("name").equals("scheduled")) {
+                    assertNull(row.get("submittedTasks"));
+                }
+            }
+            assertTrue(names.containsAll(Arrays.asList("single", "default", "algo", "import", "warmup", "forkjoin", "scheduled")));
+        });
+    }
+}
@@ -0,0 +1,56 @@
+package apoc.periodic;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static apoc.util.Util.map;
+import static org.junit.Assert.assertEquals;
+
+public class BatchSizerTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testFixed() throws Exception {
+        BatchSizer sizer = BatchSizer.fixed(100);
+        sizer.completed(100, 10_000 * MILLIS);
+        sizer.failed();
+        assertEquals(100, sizer.next());
+        assertEquals(false, sizer.getStatistics().get("adaptive"));
+    }
+
+    @Test
+    public void testGrowsTowardTarget() throws Exception {
+        BatchSizer sizer = BatchSizer.adaptive(100, 1, 100_000, 200);
+        // 1ms per operation, at most doubling per batch
+        sizer.completed(100, 100 * MILLIS);
+        assertEquals(200, sizer.next());
+        sizer.completed(200, 200 * MILLIS);
+        assertEquals(200, sizer.next());
+        // faster operations grow up to the maximum
+        for (int i = 0; i < 20; i++) sizer.completed(sizer.next(), sizer.next() * MILLIS / 1000);
+        assertEquals(100_000, sizer.next());
+        assertEquals(100_000, sizer.getStatistics().get("largest"));
+    }
+
+    @Test
+    public void testShrinks() throws Exception {
+        BatchSizer sizer = BatchSizer.adaptive(1000, 10, 100_000, 100);
+        // 10ms per operation, at most halving per batch
+        sizer.completed(1000, 10_000 * MILLIS);
+        assertEquals(500, sizer.next());
+        for (int i = 0; i < 20; i++) sizer.completed(sizer.next(), sizer.next() * 10 * MILLIS);
+        assertEquals(10, sizer.next());
+        sizer.failed();
+        assertEquals(10, sizer.next());
+    }
+
+    @Test
+    public void testFailedHalves() throws Exception {
+        BatchSizer sizer = BatchSizer.from(map("adaptive", true), 1000);
+        sizer.failed();
+        assertEquals(500, sizer.next());
+        assertEquals(1, sizer.getStatistics().get("adjustments"));
+    }
+}
@@ -3,12 +3,14 @@ package apoc.periodic;
 import apoc.load.Jdbc;
 import apoc.util.MapUtil;
 import apoc.util.TestUtil;
+import apoc.util.Utils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.ResourceIterator;
 import org.neo4j.helpers.collection.Iterators;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.test.TestGraphDatabaseFactory;
 
 import java.sql.SQLException;
@@ -19,6 +21,9 @@ import static apoc.util.TestUtil.testResult;
 import static apoc.util.Util.map;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class PeriodicTest {
 
@@ -145,6 +150,279 @@ public class PeriodicTest {
         );
     }
 
+    @Test
+    public void testIteratePipeline() throws Exception {
+        db.execute("UNWIND range(1,100) AS x CREATE (:Person{name:'Person_'+x})").close();
+
+        testResult(db, "CALL apoc.periodic.iterate('match (p:Person) return p', 'SET p.lastname = p.name', {batchSize:10,parallel:true,concurrency:2,queueCapacity:2})", result -> {
+            Map<String, Object> row = Iterators.single(result);
+            assertEquals(10L, row.get("batches"));
+            assertEquals(100L, row.get("total"));
+            assertEquals(100L, row.get("committedOperations"));
+            Map<String, Object> pipeline = (Map<String, Object>) row.get("pipeline");
+            assertEquals(2L, pipeline.get("workers"));
+            assertEquals(2L, pipeline.get("queueCapacity"));
+            assertTrue((long) pipeline.get("maxQueueDepth") <= 2L);
+            assertEquals(100L, ((Map) pipeline.get("statement")).get("executions"));
+        });
+
+        testCall(db,
+                "MATCH (p:Person) where p.lastname is not null return count(p) as count",
+                row -> assertEquals(100L, row.get("count"))
+        );
+    }
+
+    @Test
+    public void testConcurrentSequentialIterations() throws Exception {
+        TestUtil.registerProcedure(db, Utils.class);
+        // 20 batches of 100ms each on the single thread of the sequential iterations
+        Thread slow = new Thread(() -> db.execute("CALL apoc.periodic.iterate('UNWIND range(1,20) AS x RETURN x', 'CALL apoc.util.sleep(100) RETURN x', {batchSize:1})").close());
+        slow.start();
+        Thread.sleep(300);
+        long start = System.currentTimeMillis();
+        testCall(db, "CALL apoc.periodic.iterate('UNWIND range(1,10) AS x RETURN x', 'RETURN {x}', {batchSize:5})",
+                row -> assertEquals(10L, row.get("committedOperations")));
+        // takes turns with the batches of the other iteration instead of waiting for all of them
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        slow.join();
+    }
+
+    @Test
+    public void testIterateAdaptive() throws Exception {
+        db.execute("UNWIND range(1,1000) AS x CREATE (:Person{name:'Person_'+x})").close();
+
+        testResult(db, "CALL apoc.periodic.iterate('match (p:Person) return p', 'SET p.lastname = p.name', {batchSize:10,adaptive:true,maxBatchSize:200})", result -> {
+            Map<String, Object> row = Iterators.single(result);
+            assertEquals(1000L, row.get("total"));
+            assertEquals(1000L, row.get("committedOperations"));
+            Map<String, Object> batchSize = (Map<String, Object>) ((Map<String, Object>) row.get("pipeline")).get("batchSize");
+            assertEquals(true, batchSize.get("adaptive"));
+            assertEquals(10L, batchSize.get("initial"));
+            assertTrue((long) batchSize.get("largest") <= 200L);
+        });
+
+        testCall(db,
+                "MATCH (p:Person) where p.lastname is not null return count(p) as count",
+                row -> assertEquals(1000L, row.get("count"))
+        );
+    }
+
+    @Test
+    public void testIteratePartitioned() throws Exception {
+        db.execute("UNWIND range(0,9) AS x CREATE (:Hub{id:x})").close();
+        db.execute("UNWIND range(1,1000) AS x CREATE (:Item{id:x})").close();
+
+        testResult(db, "CALL apoc.periodic.iterate('MATCH (i:Item) MATCH (h:Hub {id:i.id % 10}) RETURN i, h', 'CREATE (i)-[:IN]->(h)', {batchSize:10,parallel:true,concurrency:4,partitionBy:'h'})", result -> {
+            Map<String, Object> row = Iterators.single(result);
+            assertEquals(1000L, row.get("total"));
+            assertEquals(1000L, row.get("committedOperations"));
+            assertEquals(0L, row.get("failedBatches"));
+            assertEquals(4L, ((Map) row.get("pipeline")).get("partitions"));
+        });
+
+        testCall(db,
+                "MATCH (:Item)-[r:IN]->(:Hub) return count(r) as count",
+                row -> assertEquals(1000L, row.get("count"))
+        );
+    }
+
+    @Test
+    public void testIteratePartitionedByUnknownColumn() throws Exception {
+        db.execute("UNWIND range(1,10) AS x CREATE (:Item{id:x})").close();
+        try {
+            db.execute("CALL apoc.periodic.iterate('MATCH (i:Item) RETURN i', 'SET i.done = true', {batchSize:2,parallel:true,partitionBy:'item'})").close();
+            fail("the partitionBy column item is not returned by the outer statement");
+        } catch (Exception e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("partitionBy column item"));
+        }
+        testCall(db, "MATCH (i:Item) WHERE i.done return count(i) as count", row -> assertEquals(0L, row.get("count")));
+    }
+
+    @Test
+    public void testIterateRetriesBatchInNewTransaction() throws Exception {
+        // the first attempt creates the first node and fails at the second row, its node is rolled back with the batch
+        testResult(db, "CALL apoc.periodic.iterate('UNWIND range(1,2) AS x RETURN x', 'CREATE (:Retried {x:x, attempt:{_retry}}) WITH x WHERE 1 / (x * 10 + {_retry} - 20) <> 0 RETURN x', {batchSize:2,retries:2,retryBackoffMillis:1})", result -> {
+            Map<String, Object> row = Iterators.single(result);
+            assertEquals(1L, row.get("retries"));
+            assertEquals(2L, row.get("total"));
+            assertEquals(0L, row.get("failedOperations"));
+            assertEquals(0L, row.get("failedBatches"));
+        });
+        testCall(db, "MATCH (n:Retried) RETURN count(n) AS count, min(n.attempt) AS attempt", row -> {
+            assertEquals(2L, row.get("count"));
+            assertEquals(1L, row.get("attempt"));
+        });
+    }
+
+    @Test
+    public void testPartition() throws Exception {
+        for (long id = 0; id < 100; id++) {
+            int partition = Periodic.partition(id, 4);
+            assertTrue(partition >= 0 && partition < 4);
+            assertEquals(partition, Periodic.partition(id, 4));
+        }
+        assertEquals(Periodic.partition("foo", 3), Periodic.partition("foo", 3));
+        assertEquals(0, Periodic.partition(null, 1));
+    }
+
+    @Test
+    public void testBackoff() throws Exception {
+        for (int retry = 0; retry < 5; retry++) {
+            long backoff = Periodic.backoff(retry, 100);
+            long max = 100L << retry;
+            assertTrue(backoff >= max / 2 && backoff <= max);
+        }
+        assertTrue(Periodic.backoff(30, 100) <= Periodic.MAX_RETRY_BACKOFF_MILLIS);
+        assertEquals(0, Periodic.backoff(3, 0));
+    }
+
+    @Test
+    public void testIterateCheckpointResume() throws Exception {
+        String iterate = "UNWIND range(1,100) AS id WITH id WHERE {fail} = 0 OR 1 / (id - {fail}) <> 0 RETURN id";
+        try {
+            db.execute("CALL apoc.periodic.iterate({iterate}, 'CREATE (:Item {id:{id}})', {batchSize:10, checkpoint:'items', checkpointEvery:1, params:{fail:55}})",
+                    map("iterate", iterate)).close();
+            fail("iteration should fail at row 55");
+        } catch (Exception e) {
+            // the batches before the failing row are committed and checkpointed
+        }
+        Map<String, Object> state = Checkpoint.load((GraphDatabaseAPI) db, "items");
+        assertEquals(50L, ((Number) state.get("offset")).longValue());
+
+        testCall(db, "CALL apoc.periodic.iterate({iterate}, 'CREATE (:Item {id:{id}})', {batchSize:10, checkpoint:'items', params:{fail:0}})",
+                map("iterate", iterate), row -> {
+                    assertEquals(5L, row.get("batches"));
+                    assertEquals(50L, row.get("total"));
+                    Map<String, Object> checkpoint = (Map<String, Object>) row.get("checkpoint");
+                    assertEquals(true, checkpoint.get("resumed"));
+                    assertEquals(true, checkpoint.get("completed"));
+                    assertEquals(100L, checkpoint.get("offset"));
+                    assertEquals(10L, checkpoint.get("batches"));
+                });
+        assertNull(Checkpoint.load((GraphDatabaseAPI) db, "items"));
+
+        testCall(db, "MATCH (i:Item) RETURN count(*) AS count, count(distinct i.id) AS ids", row -> {
+            assertEquals(100L, row.get("count"));
+            assertEquals(100L, row.get("ids"));
+        });
+    }
+
+    @Test
+    public void testIterateCheckpointResumeParallel() throws Exception {
+        String iterate = "UNWIND range(1,100) AS id WITH id WHERE {fail} = 0 OR 1 / (id - {fail}) <> 0 RETURN id";
+        try {
+            db.execute("CALL apoc.periodic.iterate({iterate}, 'CREATE (:Item {id:{id}})', {batchSize:10, parallel:true, concurrency:4, checkpoint:'items', checkpointEvery:1, params:{fail:55}})",
+                    map("iterate", iterate)).close();
+            fail("iteration should fail at row 55");
+        } catch (Exception e) {
+            // the batches before the failing row are committed and checkpointed
+        }
+        Map<String, Object> state = Checkpoint.load((GraphDatabaseAPI) db, "items");
+        assertEquals(50L, ((Number) state.get("offset")).longValue());
+
+        testCall(db, "CALL apoc.periodic.iterate({iterate}, 'CREATE (:Item {id:{id}})', {batchSize:10, parallel:true, concurrency:4, checkpoint:'items', checkpointEvery:1, params:{fail:0}})",
+                map("iterate", iterate), row -> {
+                    assertEquals(50L, row.get("total"));
+                    Map<String, Object> checkpoint = (Map<String, Object>) row.get("checkpoint");
+                    assertEquals(true, checkpoint.get("completed"));
+                    assertEquals(100L, checkpoint.get("offset"));
+                });
+        assertNull(Checkpoint.load((GraphDatabaseAPI) db, "items"));
+
+        testCall(db, "MATCH (i:Item) RETURN count(*) AS count, count(distinct i.id) AS ids", row -> {
+            assertEquals(100L, row.get("count"));
+            assertEquals(100L, row.get("ids"));
+        });
+    }
+
+    @Test
+    public void testIterateCheckpointStopsAtFailedBatch() throws Exception {
+        String action = "MERGE (i:Item {id:{id}}) WITH i WHERE {fail} = 0 OR 1 / (i.id - {fail}) <> 0 RETURN i";
+        testCall(db, "CALL apoc.periodic.iterate('UNWIND range(1,100) AS id RETURN id', {action}, {batchSize:10, checkpoint:'items', checkpointEvery:1, params:{fail:35}})",
+                map("action", action), row -> {
+                    assertEquals(1L, row.get("failedBatches"));
+                    Map<String, Object> checkpoint = (Map<String, Object>) row.get("checkpoint");
+                    assertEquals(false, checkpoint.get("completed"));
+                    // the rows of the failed batch were rolled back, so they are not skipped on resume
+                    assertEquals(30L, checkpoint.get("offset"));
+                });
+        assertEquals(30L, ((Number) Checkpoint.load((GraphDatabaseAPI) db, "items").get("offset")).longValue());
+
+        testCall(db, "CALL apoc.periodic.iterate('UNWIND range(1,100) AS id RETURN id', {action}, {batchSize:10, checkpoint:'items', params:{fail:0}})",
+                map("action", action), row -> {
+                    assertEquals(70L, row.get("total"));
+                    assertEquals(0L, row.get("failedBatches"));
+                });
+        testCall(db, "MATCH (i:Item) RETURN count(*) AS count, count(distinct i.id) AS ids", row -> {
+            assertEquals(100L, row.get("count"));
+            assertEquals(100L, row.get("ids"));
+        });
+    }
+
+    @Test
+    public void testIterateCheckpointCancelAndResume() throws Exception {
+        TestUtil.registerProcedure(db, Utils.class);
+        String action = "CALL apoc.util.sleep(20) CREATE (:Item {id:{id}})";
+        Thread iteration = new Thread(() -> db.execute("CALL apoc.periodic.iterate('UNWIND range(1,100) AS id RETURN id', {action}, {batchSize:5, checkpoint:'items', checkpointEvery:1})",
+                map("action", action)).close());
+        iteration.start();
+        Map<String, Object> state;
+        do {
+            Thread.sleep(10);
+            state = Checkpoint.load((GraphDatabaseAPI) db, "items");
+        } while (state == null || ((Number) state.get("offset")).longValue() < 20);
+        db.execute("CALL apoc.periodic.cancel('items')").close();
+        iteration.join();
+
+        long offset = ((Number) Checkpoint.load((GraphDatabaseAPI) db, "items").get("offset")).longValue();
+        assertTrue(offset >= 20 && offset < 100);
+        // the batches read before the cancellation are completed and checkpointed
+        testCall(db, "MATCH (i:Item) RETURN count(*) AS count", row -> assertEquals(offset, row.get("count")));
+
+        testCall(db, "CALL apoc.periodic.iterate('UNWIND range(1,100) AS id RETURN id', {action}, {batchSize:5, checkpoint:'items'})",
+                map("action", action), row -> {
+                    assertEquals(100L - offset, row.get("total"));
+                    Map<String, Object> checkpoint = (Map<String, Object>) row.get("checkpoint");
+                    assertEquals(true, checkpoint.get("resumed"));
+                    assertEquals(true, checkpoint.get("completed"));
+                });
+        testCall(db, "MATCH (i:Item) RETURN count(*) AS count, count(distinct i.id) AS ids", row -> {
+            assertEquals(100L, row.get("count"));
+            assertEquals(100L, row.get("ids"));
+        });
+    }
+
+    @Test
+    public void testIterateCheckpointWithoutSkip() throws Exception {
+        String iterate = "UNWIND range(1,100) AS id WITH id WHERE {fail} = 0 OR 1 / (id - {fail}) <> 0 RETURN id";
+        try {
+            db.execute("CALL apoc.periodic.iterate({iterate}, 'CREATE (:Item {id:{id}})', {batchSize:10, checkpoint:'items', checkpointEvery:1, params:{fail:55}})",
+                    map("iterate", iterate)).close();
+            fail("iteration should fail at row 55");
+        } catch (Exception e) {
+            // the batches before the failing row are committed and checkpointed
+        }
+        // the outer statement continues after the offset itself, so its rows are not skipped again
+        testCall(db, "CALL apoc.periodic.iterate('UNWIND range(1,100) AS id WITH id WHERE id > {_offset} RETURN id', 'CREATE (:Item {id:{id}})', {batchSize:10, checkpoint:'items', checkpointSkip:false})",
+                row -> assertEquals(50L, row.get("total")));
+        testCall(db, "MATCH (i:Item) RETURN count(*) AS count, count(distinct i.id) AS ids", row -> {
+            assertEquals(100L, row.get("count"));
+            assertEquals(100L, row.get("ids"));
+        });
+    }
+
+    @Test
+    public void testIterateProgressInList() throws Exception {
+        db.execute("CALL apoc.periodic.iterate('UNWIND range(1,100) AS id RETURN id', 'CREATE (:Item {id:{id}})', {batchSize:10, jobName:'items'})").close();
+
+        testCall(db, "CALL apoc.periodic.list() YIELD name, done, progress WHERE name = 'items' RETURN done, progress", row -> {
+            assertEquals(true, row.get("done"));
+            Map<String, Object> progress = (Map<String, Object>) row.get("progress");
+            assertEquals(10L, progress.get("batches"));
+            assertEquals(100L, progress.get("total"));
+        });
+    }
+
     @Test
     public void testIteratePrefix() throws Exception {
         db.execute("UNWIND range(1,100) AS x CREATE (:Person{name:'Person_'+x})").close();
@@ -14,6 +14,7 @@ import org.neo4j.test.TestGraphDatabaseFactory;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Map;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
@@ -136,6 +137,22 @@ public class TestUtil {
         }
     }
 
+    /**
+     * polls the condition until it holds, for background work that the test can't wait for otherwise
+     */
+    public static void assertEventually(String message, BooleanSupplier condition, long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!condition.getAsBoolean()) {
+            assertTrue(message + " within " + timeoutMillis + " ms", System.currentTimeMillis() < deadline);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
     public static void assumeTravis() {
         assumeFalse("we're running on travis, so skipping","true".equals(System.getenv("TRAVIS")));
     }
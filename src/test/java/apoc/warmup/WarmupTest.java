@@ -7,7 +7,16 @@ import org.junit.Test;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.test.TestGraphDatabaseFactory;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import static apoc.util.MapUtil.map;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author Sascha Peukert
@@ -56,4 +65,98 @@ public class WarmupTest {
             assertEquals(5L, r.get("propPages"));
         });
     }
+
+    @Test
+    public void testWarmupStores() throws Exception {
+        db.execute("UNWIND range(1, 1000) AS i CREATE (n:Foo {name:'name-' + i, tags:['a','b']})-[:KNOWS {bar:2}]->(m:Bar {foobar:3})").close();
+
+        TestUtil.testResult(db, "CALL apoc.warmup.stores(['all'], {concurrency:2})", result -> {
+            List<String> stores = new ArrayList<>();
+            while (result.hasNext()) {
+                Map<String, Object> row = result.next();
+                stores.add((String) row.get("store"));
+                assertTrue((long) row.get("pagesLoaded") <= (long) row.get("pages"));
+                if (row.get("store").equals("nodes")) {
+                    // 546 records of 15 bytes per page, 2000 nodes
+                    assertEquals(8190L, row.get("pageSize"));
+                    assertEquals(4L, row.get("pagesLoaded"));
+                }
+                if (row.get("store").equals("relationships")) {
+                    // 240 records per page, 1000 relationships
+                    assertEquals(5L, row.get("pagesLoaded"));
+                }
+            }
+            assertEquals(Warmup.STORES, stores);
+        });
+        TestUtil.testCall(db, "CALL apoc.warmup.stores()", r -> assertEquals("nodes", r.get("store")));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testWarmupUnknownStore() throws Exception {
+        TestUtil.testCall(db, "CALL apoc.warmup.stores(['edges'])", r -> {});
+    }
+
+    @Test
+    public void testWarmupSubgraph() throws Exception {
+        db.execute("UNWIND range(1, 100) AS i CREATE (n:Foo {id:i, name:'name-' + i})-[:KNOWS {since:i}]->(m:Bar {id:i}), (n)-[:LIKES]->(m)").close();
+
+        TestUtil.testCall(db, "CALL apoc.warmup.subgraph(['Foo'], ['KNOWS'], {properties:true, relationshipProperties:true, batchSize:7})", r -> {
+            assertEquals(":Foo", r.get("source"));
+            assertEquals(100L, r.get("nodes"));
+            assertEquals(100L, r.get("relationships"));
+            assertEquals(300L, r.get("properties"));
+        });
+        TestUtil.testCall(db, "CALL apoc.warmup.subgraph(['Bar'])", r -> {
+            assertEquals(100L, r.get("nodes"));
+            assertEquals(200L, r.get("relationships"));
+            assertEquals(0L, r.get("properties"));
+        });
+        TestUtil.testCall(db, "CALL apoc.warmup.subgraph(['Foo'], ['UNKNOWN'])", r -> {
+            assertEquals(100L, r.get("nodes"));
+            assertEquals(0L, r.get("relationships"));
+        });
+        TestUtil.testCall(db, "CALL apoc.warmup.subgraph([], ['LIKES'], {indexes:[{label:'Foo', property:'id', from:11, to:20}]})", r -> {
+            assertEquals(":Foo(id)", r.get("source"));
+            assertEquals(10L, r.get("nodes"));
+            assertEquals(10L, r.get("relationships"));
+        });
+        TestUtil.testCall(db, "CALL apoc.warmup.subgraph([], ['LIKES'])", r -> {
+            assertEquals("*", r.get("source"));
+            assertEquals(200L, r.get("nodes"));
+            // each relationship from both of its nodes
+            assertEquals(200L, r.get("relationships"));
+        });
+    }
+
+    @Test
+    public void testProfileAndRestore() throws Exception {
+        db.shutdown();
+        db = new TestGraphDatabaseFactory().newImpermanentDatabaseBuilder()
+                .setConfig("apoc.export.file.enabled", "true")
+                .setConfig("apoc.import.file.enabled", "true")
+                .newGraphDatabase();
+        TestUtil.registerProcedure(db, Warmup.class);
+        db.execute("UNWIND range(1, 2000) AS i CREATE (:Foo {id:i})").close();
+        File file = new File("target/warmup/pagecache.profile");
+        file.getParentFile().mkdirs();
+
+        BitSet pages = new BitSet();
+        pages.set(1);
+        pages.set(3);
+        PageCacheProfile.write(file, Arrays.asList(new PageCacheProfile.Entry("nodes", 8190, pages), new PageCacheProfile.Entry("unknown", 8192, pages)));
+        TestUtil.testCall(db, "CALL apoc.warmup.restore({file})", map("file", file.getPath()), r -> {
+            assertEquals("nodes", r.get("store"));
+            assertEquals(2L, r.get("pages"));
+            assertEquals(2L, r.get("pagesLoaded"));
+        });
+
+        db.execute("CALL apoc.warmup.stores(['nodes'])").close();
+        TestUtil.testResult(db, "CALL apoc.warmup.profile({file})", map("file", file.getPath()), result -> {
+            Map<String, Object> row = result.next();
+            assertEquals("nodes", row.get("store"));
+            assertEquals(4L, row.get("pages"));
+            assertEquals(4L, row.get("residentPages"));
+        });
+        assertEquals(4, PageCacheProfile.read(file).get(0).pages.cardinality());
+    }
 }